@@ -0,0 +1,389 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, structured server log.
+ * Request threads only claim a slot of a preallocated ring buffer and copy a few
+ * references and primitives into it, so logging never blocks and never allocates
+ * on the hot path. A single background thread drains the ring in batches, formats
+ * the entries as {@code key=value} lines and appends them to a size-rotated file.
+ * When the ring is full the entry is dropped and counted instead of waiting.
+ *
+ * <p>Configured with system properties:
+ * {@code microspringboot.log.level} (DEBUG, INFO, WARN, ERROR, OFF; default INFO),
+ * {@code microspringboot.log.file} (default logs/microspringboot.log, or "stdout"),
+ * {@code microspringboot.log.maxBytes} (default 10 MB),
+ * {@code microspringboot.log.maxFiles} (default 5) and
+ * {@code microspringboot.log.bufferSize} (default 8192 entries).</p>
+ *
+ * @author daniel.aldana-b
+ */
+public class AccessLog {
+
+    /**
+     * Severity of a log entry, in increasing order.
+     */
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    // Event name used for the one-line-per-request access entries
+    public static final String ACCESS_EVENT = "access";
+
+    /**
+     * A preallocated ring slot. Fields are written by one producer and then read
+     * by the writer thread once the slot sequence has been published.
+     */
+    private static final class Entry {
+        long timestampMillis;
+        Level level;
+        String event;
+        String method;
+        String path;
+        String detail;
+        int status;
+        long bytes;
+        long durationNanos;
+    }
+
+    private static final int capacity = ringCapacity(Integer.getInteger("microspringboot.log.bufferSize", 8192));
+    private static final int mask = capacity - 1;
+    private static final Entry[] ring = new Entry[capacity];
+    // Sequence published in each slot (sequence + 1), 0 means never written
+    private static final AtomicLongArray published = new AtomicLongArray(capacity);
+    // Next sequence to be claimed by a producer
+    private static final AtomicLong head = new AtomicLong();
+    // Next sequence to be consumed by the writer thread
+    private static final AtomicLong tail = new AtomicLong();
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile Level threshold = parseLevel(System.getProperty("microspringboot.log.level", "INFO"));
+    private static volatile Path file = Path.of(System.getProperty("microspringboot.log.file", "logs/microspringboot.log"));
+    private static volatile boolean reopen = true;
+    private static final long maxBytes = Long.getLong("microspringboot.log.maxBytes", 10L * 1024 * 1024);
+    private static final int maxFiles = Integer.getInteger("microspringboot.log.maxFiles", 5);
+
+    // Writer thread state, only touched by the writer thread
+    private static Writer writer;
+    private static boolean writerIsStdout;
+    private static long fileBytes;
+    private static final StringBuilder line = new StringBuilder(256);
+    private static final int BATCH = 256;
+
+    static {
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Entry();
+        }
+        Thread thread = new Thread(AccessLog::drainLoop, "access-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private AccessLog() {
+    }
+
+    /**
+     * Checks whether entries of the given level are currently written.
+     * Callers building an expensive detail string should check this first.
+     *
+     * @param level the level to check
+     * @return true if the level is at or above the configured threshold
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold.ordinal() && level != Level.OFF;
+    }
+
+    /**
+     * Changes the minimum level written from now on.
+     * @param level the new threshold
+     */
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static Level getLevel() {
+        return threshold;
+    }
+
+    /**
+     * Redirects the log to another file (or "stdout"). Pending entries are flushed first.
+     * @param target the new log file
+     */
+    public static void setFile(Path target) {
+        flush(1, TimeUnit.SECONDS);
+        file = target;
+        reopen = true;
+    }
+
+    /**
+     * Records one served request.
+     *
+     * @param method        the HTTP method
+     * @param path          the request path
+     * @param status        the status code sent to the client
+     * @param bytes         the number of bytes written to the client
+     * @param durationNanos the time spent serving the request
+     */
+    public static void access(String method, String path, int status, long bytes, long durationNanos) {
+        publish(Level.INFO, ACCESS_EVENT, method, path, null, status, bytes, durationNanos);
+    }
+
+    /**
+     * Records a free-form event.
+     *
+     * @param level  the severity
+     * @param event  a short dotted event name (e.g. "route.registered")
+     * @param detail an optional detail value, may be null
+     */
+    public static void log(Level level, String event, String detail) {
+        publish(level, event, null, null, detail, 0, 0, 0);
+    }
+
+    public static void debug(String event, String detail) {
+        publish(Level.DEBUG, event, null, null, detail, 0, 0, 0);
+    }
+
+    public static void info(String event, String detail) {
+        publish(Level.INFO, event, null, null, detail, 0, 0, 0);
+    }
+
+    /**
+     * Returns how many entries were discarded because the ring buffer was full.
+     * @return the number of dropped entries
+     */
+    public static long droppedCount() {
+        return dropped.sum();
+    }
+
+    private static void publish(Level level, String event, String method, String path, String detail,
+                                int status, long bytes, long durationNanos) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long sequence;
+        while (true) {
+            sequence = head.get();
+            if (sequence - tail.get() >= capacity) {
+                dropped.increment();
+                return;
+            }
+            if (head.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) (sequence & mask);
+        Entry entry = ring[index];
+        entry.timestampMillis = System.currentTimeMillis();
+        entry.level = level;
+        entry.event = event;
+        entry.method = method;
+        entry.path = path;
+        entry.detail = detail;
+        entry.status = status;
+        entry.bytes = bytes;
+        entry.durationNanos = durationNanos;
+        published.set(index, sequence + 1);
+    }
+
+    /**
+     * Waits until every entry published before this call has been written.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the log caught up before the timeout
+     */
+    public static boolean flush(long timeout, TimeUnit unit) {
+        long target = head.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (tail.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    private static void drainLoop() {
+        long idleParkNanos = 100_000;
+        while (true) {
+            try {
+                int written = drainBatch();
+                if (written == 0) {
+                    LockSupport.parkNanos(idleParkNanos);
+                    idleParkNanos = Math.min(idleParkNanos * 2, 10_000_000);
+                } else {
+                    idleParkNanos = 100_000;
+                }
+            } catch (Throwable t) {
+                // The log must survive disk errors; fall back to stderr and keep draining
+                System.err.println("access log writer error: " + t);
+                closeWriter();
+                LockSupport.parkNanos(100_000_000);
+            }
+        }
+    }
+
+    private static int drainBatch() throws IOException {
+        long sequence = tail.get();
+        int count = 0;
+        while (count < BATCH) {
+            int index = (int) (sequence & mask);
+            if (published.get(index) != sequence + 1) {
+                break;
+            }
+            if (count == 0) {
+                ensureWriter();
+            }
+            format(ring[index]);
+            ring[index].detail = null;
+            sequence++;
+            count++;
+            writer.append(line);
+            fileBytes += line.length();
+        }
+        if (count > 0) {
+            writer.flush();
+            // Release the whole batch of slots once it has reached the file
+            tail.set(sequence);
+            if (fileBytes >= maxBytes && !writerIsStdout) {
+                rotate();
+            }
+        }
+        return count;
+    }
+
+    private static void format(Entry e) {
+        line.setLength(0);
+        line.append("ts=").append(Instant.ofEpochMilli(e.timestampMillis))
+            .append(" level=").append(e.level)
+            .append(" event=").append(e.event);
+        if (e.method != null) {
+            line.append(" method=").append(e.method);
+        }
+        if (e.path != null) {
+            line.append(" path=");
+            appendValue(e.path);
+        }
+        if (ACCESS_EVENT.equals(e.event)) {
+            line.append(" status=").append(e.status)
+                .append(" bytes=").append(e.bytes)
+                .append(" duration_us=").append(e.durationNanos / 1000);
+        }
+        if (e.detail != null) {
+            line.append(" detail=");
+            appendValue(e.detail);
+        }
+        line.append('\n');
+    }
+
+    // Quotes values containing spaces, quotes or line breaks so each entry stays on one line
+    private static void appendValue(String value) {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ' ' || c == '"' || c == '=' || c < 0x20;
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static boolean isStdout() {
+        return "stdout".equals(file.toString());
+    }
+
+    private static void ensureWriter() throws IOException {
+        if (writer != null && !reopen) {
+            return;
+        }
+        reopen = false;
+        closeWriter();
+        writerIsStdout = isStdout();
+        if (writerIsStdout) {
+            writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            fileBytes = 0;
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        fileBytes = Files.exists(file) ? Files.size(file) : 0;
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void rotate() throws IOException {
+        closeWriter();
+        String name = file.getFileName().toString();
+        Files.deleteIfExists(file.resolveSibling(name + "." + maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = file.resolveSibling(name + "." + i);
+            if (Files.exists(source)) {
+                Files.move(source, file.resolveSibling(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, file.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        fileBytes = 0;
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (writerIsStdout) {
+                writer.flush();
+            } else {
+                writer.close();
+            }
+        } catch (IOException e) {
+            System.err.println("access log close error: " + e);
+        }
+        writer = null;
+    }
+
+    static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    private static int ringCapacity(int requested) {
+        int size = Integer.highestOneBit(Math.max(16, requested));
+        return size < requested ? size << 1 : size;
+    }
+}
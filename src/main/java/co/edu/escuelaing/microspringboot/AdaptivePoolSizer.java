@@ -0,0 +1,164 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Sizes a {@link BulkheadPool} from what its requests measure, over short windows like the
+ * {@link AdmissionController}. Little's law gives the threads the current load keeps busy
+ * (arrival rate times handling time), and the share of the handling time spent on the
+ * CPU caps how many threads the cores can actually run: a pool of CPU-bound handlers
+ * stops at the core count, one of handlers blocked on I/O may go well past it.
+ * <p>
+ * While requests wait for a thread longer than a tenth of their handling time, the pool
+ * grows by about the square root of its size, at least to the Little's law estimate,
+ * but never past the CPU bound. Once they stop waiting it shrinks halfway to that
+ * estimate plus some headroom each window, and halfway to its minimum while idle.
+ * Requests too long to complete within a window still grow the pool if they leave
+ * others queued behind every thread.
+ *
+ * @author daniel.aldana-b
+ */
+final class AdaptivePoolSizer {
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    // Windows with fewer completed requests only react to starvation or idleness
+    private static final int MIN_SAMPLES = 10;
+    // Queue wait tolerated, relative to the handling time, before the pool grows
+    private static final double QUEUE_TOLERANCE = 0.1;
+    // Threads kept over the Little's law estimate when shrinking
+    private static final double HEADROOM = 1.25;
+    private static final double MIN_CPU_RATIO = 0.01;
+
+    final int minThreads;
+    final int maxThreads;
+    private final int cores;
+    private final IntConsumer resize;
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder grown = new LongAdder();
+    private final LongAdder shrunk = new LongAdder();
+    private volatile long windowEnd;
+    private volatile int size;
+    // Share of the handling time spent on the CPU, from the last full window; 0 until measured
+    private volatile double cpuRatio;
+    // Guarded by this
+    private long windowStart;
+
+    /**
+     * @param initial    the starting number of threads
+     * @param minThreads the pool never shrinks below this
+     * @param maxThreads the pool never grows above this
+     * @param cores      processors the threads of the pool run on
+     * @param resize     applies a new size to the pool
+     * @param now        the current {@link System#nanoTime()}
+     */
+    AdaptivePoolSizer(int initial, int minThreads, int maxThreads, int cores, IntConsumer resize, long now) {
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("Invalid thread bounds: " + minThreads + ".." + maxThreads);
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.cores = cores;
+        this.resize = resize;
+        this.size = Math.max(minThreads, Math.min(maxThreads, initial));
+        this.windowStart = now;
+        this.windowEnd = now + WINDOW_NANOS;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double cpuRatio() {
+        return cpuRatio;
+    }
+
+    long grown() {
+        return grown.sum();
+    }
+
+    long shrunk() {
+        return shrunk.sum();
+    }
+
+    /**
+     * Records a finished request.
+     * @param queuedNanos how long it waited for a thread
+     * @param wallNanos   how long its handling took
+     * @param cpuNanos    CPU time its thread used while handling it, or -1 if unknown
+     */
+    void record(long queuedNanos, long wallNanos, long cpuNanos) {
+        tasks.increment();
+        waitNanos.add(queuedNanos);
+        this.wallNanos.add(wallNanos);
+        if (cpuNanos >= 0) {
+            this.cpuNanos.add(cpuNanos);
+        }
+    }
+
+    /**
+     * Resizes the pool if the current window is over.
+     * @param now    the current {@link System#nanoTime()}
+     * @param queued requests waiting for a thread
+     * @param active threads running a request
+     */
+    void check(long now, int queued, int active) {
+        if (now - windowEnd >= 0) {
+            update(now, queued, active);
+        }
+    }
+
+    private synchronized void update(long now, int queued, int active) {
+        if (now - windowEnd < 0) {
+            return;
+        }
+        long elapsed = Math.max(1, now - windowStart);
+        windowStart = now;
+        windowEnd = now + WINDOW_NANOS;
+        long count = tasks.sumThenReset();
+        double wait = waitNanos.sumThenReset();
+        double wall = wallNanos.sumThenReset();
+        double cpu = cpuNanos.sumThenReset();
+        int current = size;
+        int next = current;
+        if (count >= MIN_SAMPLES && wall > 0) {
+            if (cpu > 0) {
+                cpuRatio = Math.max(MIN_CPU_RATIO, Math.min(1.0, cpu / wall));
+            }
+            // Little's law: threads kept busy = arrivals per nanosecond * nanoseconds per request
+            double busy = wall / elapsed;
+            int needed = (int) Math.ceil(busy * HEADROOM);
+            if (wait / count > QUEUE_TOLERANCE * (wall / count)) {
+                next = Math.min(Math.max(grow(current), needed), Math.max(current, cpuBound()));
+            } else if (needed < current) {
+                next = current - (current - needed + 1) / 2;
+            }
+        } else if (queued > 0 && active >= current) {
+            next = Math.min(grow(current), Math.max(current, cpuBound()));
+        } else if (count == 0 && active == 0 && queued == 0) {
+            next = current - (current - minThreads + 1) / 2;
+        }
+        next = Math.max(minThreads, Math.min(maxThreads, next));
+        if (next != current) {
+            (next > current ? grown : shrunk).increment();
+            size = next;
+            resize.accept(next);
+        }
+    }
+
+    private static int grow(int current) {
+        return current + (int) Math.ceil(Math.sqrt(current));
+    }
+
+    /**
+     * Threads that can run at once without queueing for the cores, for the measured mix
+     * of CPU and waiting.
+     */
+    private int cpuBound() {
+        double ratio = cpuRatio;
+        return ratio == 0 ? maxThreads : (int) Math.ceil(cores / ratio);
+    }
+}
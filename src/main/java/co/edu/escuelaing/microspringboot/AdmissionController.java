@@ -0,0 +1,171 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of requests processed at the same time, adapting the cap to latency.
+ * Latencies are averaged over short windows and compared with a slowly moving baseline:
+ * while they stay near the baseline the limit grows by about its square root per window,
+ * and when they rise (requests queueing somewhere) the limit shrinks in proportion, down
+ * to half per window. Requests over the limit are refused immediately, before any
+ * routing or file I/O, instead of piling up behind the ones already running.
+ *
+ * @author daniel.aldana-b
+ */
+public class AdmissionController {
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Windows with fewer samples are merged into the next one
+    private static final int MIN_SAMPLES = 10;
+    // Latency may exceed the baseline by this factor before the limit starts to shrink
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAccumulator peakInFlight = new LongAccumulator(Long::max, 0);
+    private final LongAdder windowSum = new LongAdder();
+    private final LongAdder windowCount = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+    private volatile long windowEnd = System.nanoTime() + WINDOW_NANOS;
+    // Baseline latency in nanoseconds, guarded by this
+    private double baselineNanos;
+
+    /**
+     * @param initialLimit the starting limit
+     * @param minLimit     the limit never goes below this
+     * @param maxLimit     the limit never goes above this
+     */
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits: " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Builds the controller configured with {@code microspringboot.admission.initialLimit} (100),
+     * {@code .minLimit} (10) and {@code .maxLimit} (1000).
+     *
+     * @return the controller, or null if {@code microspringboot.admission.enabled} is false
+     */
+    public static AdmissionController fromSystemProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("microspringboot.admission.enabled", "true"))) {
+            return null;
+        }
+        return new AdmissionController(
+                Integer.getInteger("microspringboot.admission.initialLimit", 100),
+                Integer.getInteger("microspringboot.admission.minLimit", 10),
+                Integer.getInteger("microspringboot.admission.maxLimit", 1000));
+    }
+
+    /**
+     * Admits a request if the limit allows it. Every admitted request must be followed
+     * by exactly one call to {@link #release(long)}.
+     *
+     * @return true if the request may proceed
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulate(current + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends an admitted request and records its latency.
+     * @param latencyNanos how long the request took once admitted
+     */
+    public void release(long latencyNanos) {
+        release(latencyNanos, System.nanoTime());
+    }
+
+    /**
+     * Gives back the slot of an admitted request that was turned away before it ran,
+     * without recording a latency sample.
+     */
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    void release(long latencyNanos, long now) {
+        inFlight.decrementAndGet();
+        windowSum.add(latencyNanos);
+        windowCount.increment();
+        if (now - windowEnd >= 0) {
+            update(now);
+        }
+    }
+
+    private synchronized void update(long now) {
+        if (now - windowEnd < 0) {
+            return;
+        }
+        windowEnd = now + WINDOW_NANOS;
+        long count = windowCount.sum();
+        if (count < MIN_SAMPLES) {
+            return;
+        }
+        double sample = (double) windowSum.sumThenReset() / windowCount.sumThenReset();
+        long peak = peakInFlight.getThenReset();
+        if (baselineNanos == 0) {
+            baselineNanos = sample;
+        } else {
+            baselineNanos = baselineNanos * 0.95 + sample * 0.05;
+            // A baseline far above the current latency is stale, let it catch up
+            if (baselineNanos > 2 * sample) {
+                baselineNanos = baselineNanos * 0.9 + sample * 0.1;
+            }
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineNanos / Math.max(1, sample)));
+        int current = limit;
+        double target = current * gradient;
+        // Only grow when the current limit is actually being used
+        if (gradient >= 1.0 && peak >= current / 2) {
+            target += Math.sqrt(current);
+        }
+        double smoothed = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, Math.round(smoothed)));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Appends the controller state in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_admission_limit Current concurrent request limit\n");
+        out.append("# TYPE microspringboot_admission_limit gauge\n");
+        out.append("microspringboot_admission_limit ").append(limit).append('\n');
+        out.append("# HELP microspringboot_admission_inflight Requests currently admitted\n");
+        out.append("# TYPE microspringboot_admission_inflight gauge\n");
+        out.append("microspringboot_admission_inflight ").append(inFlight.get()).append('\n');
+        out.append("# HELP microspringboot_admission_rejected_total Requests refused by admission control\n");
+        out.append("# TYPE microspringboot_admission_rejected_total counter\n");
+        out.append("microspringboot_admission_rejected_total ").append(rejected()).append('\n');
+    }
+}
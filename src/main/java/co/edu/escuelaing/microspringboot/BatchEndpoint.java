@@ -0,0 +1,288 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers {@link HttpServer#BATCH_PATH}: a POST whose JSON body lists several GET route
+ * calls, each a path and optional parameters, answered together in one response. The
+ * calls go through the same route table as single requests, caches and shared flights
+ * included, and run at the same time on the bulkheads of their routes. The thread
+ * answering the batch runs any call no bulkhead thread has picked up yet itself, so a
+ * batch never waits on a pool that it is holding a thread of.
+ * <p>
+ * The response is a JSON array with one {@code {"index", "path", "status", "body"}}
+ * entry per call, in request order. Asking for {@code application/x-ndjson}, or adding
+ * {@code stream=true}, sends each entry on a line of its own as soon as its call
+ * completes instead.
+ *
+ * @author daniel.aldana-b
+ */
+final class BatchEndpoint {
+    static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+    // Calls accepted in one batch
+    static final int MAX_CALLS = Integer.getInteger("microspringboot.batch.maxRequests", 20);
+
+    private BatchEndpoint() {
+    }
+
+    /**
+     * Answers a batch request.
+     * @param request the POST request, its body the list of calls
+     * @param rawOut  the client output stream
+     * @return the status sent
+     * @throws IOException if the response cannot be written
+     */
+    static int handle(HttpRequest request, OutputStream rawOut) throws IOException {
+        List<Call> calls;
+        try {
+            calls = parse(request);
+        } catch (ResponseStatusException e) {
+            return send(rawOut, HttpServer.errorResponse(e));
+        }
+        RequestTrace.mark(RequestTrace.Phase.ARG_BINDING);
+        boolean stream = "true".equals(request.getValue("stream"))
+                || String.valueOf(request.getHeader("accept")).contains("application/x-ndjson");
+        BlockingQueue<Call> completed = new LinkedBlockingQueue<>();
+        for (Call call : calls) {
+            call.completed = completed;
+            BulkheadPool pool = call.route == null || !BulkheadPool.enabled ? null : BulkheadPool.forRoute(call.route);
+            // A call its pool refuses is left for this thread to run below
+            if (pool != null) {
+                pool.execute(call::run);
+            }
+        }
+        ResponseBuffer out = new ResponseBuffer(1024);
+        boolean chunked = stream && "HTTP/1.1".equals(request.getVersion());
+        if (stream) {
+            rawOut.write(("HTTP/1.1 200 OK\r\ncontent-type: " + NDJSON_CONTENT_TYPE + "\r\n"
+                    + (chunked ? "transfer-encoding: chunked\r\n" : "connection: close\r\n") + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            rawOut.flush();
+        }
+        int next = 0;
+        for (int done = 0; done < calls.size(); done++) {
+            Call call = completed.poll();
+            while (call == null && next < calls.size()) {
+                calls.get(next++).run();
+                call = completed.poll();
+            }
+            if (call == null) {
+                try {
+                    call = completed.take();
+                } catch (InterruptedException e) {
+                    // The handler deadline passed; answer with what has completed
+                    Thread.currentThread().interrupt();
+                    calls.forEach(Call::cancel);
+                    break;
+                }
+            }
+            if (stream) {
+                out.reset();
+                writeEntry(call, out);
+                out.write('\n');
+                writeChunk(out, chunked, rawOut);
+            }
+        }
+        RequestTrace.mark(RequestTrace.Phase.HANDLER);
+        if (stream) {
+            if (chunked) {
+                rawOut.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            rawOut.flush();
+            return 200;
+        }
+        out.write('[');
+        for (int i = 0; i < calls.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeEntry(calls.get(i), out);
+        }
+        out.write(']');
+        RequestTrace.mark(RequestTrace.Phase.SERIALIZATION);
+        return send(rawOut, HttpResponse.serialize(200, "OK", HttpServer.JSON_CONTENT_TYPE, Map.of(), out));
+    }
+
+    /**
+     * Reads the calls of a batch from the request body.
+     * @throws ResponseStatusException if the body is not a list of calls (400) or too large (413)
+     */
+    static List<Call> parse(HttpRequest request) {
+        Object body;
+        try {
+            body = JsonReader.parse(new InputStreamReader(request.getBody(), StandardCharsets.UTF_8));
+        } catch (BodyTooLargeException e) {
+            throw new ResponseStatusException(413, e.getMessage(), e);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ResponseStatusException(400, "Invalid batch: " + e.getMessage(), e);
+        }
+        if (!(body instanceof List<?> entries)) {
+            throw new ResponseStatusException(400, "Invalid batch: expected a JSON array of calls");
+        }
+        if (entries.size() > MAX_CALLS) {
+            throw new ResponseStatusException(413, "Batch larger than " + MAX_CALLS + " calls");
+        }
+        List<Call> calls = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            if (!(entry instanceof Map<?, ?> fields) || !(fields.get("path") instanceof String path)
+                    || !path.startsWith("/")) {
+                throw new ResponseStatusException(400, "Invalid batch: call " + calls.size() + " has no path");
+            }
+            URI uri;
+            try {
+                uri = URI.create(path + query(path, fields.get("params")));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(400, "Invalid batch: call " + calls.size() + ": " + e.getMessage(), e);
+            }
+            calls.add(new Call(calls.size(), path, uri));
+        }
+        return calls;
+    }
+
+    /**
+     * Encodes the parameters of a call as a query string, appended to any the path has.
+     * Lists become repeated parameters.
+     */
+    private static String query(String path, Object params) {
+        if (params == null) {
+            return "";
+        }
+        if (!(params instanceof Map<?, ?> map)) {
+            throw new IllegalArgumentException("params must be an object");
+        }
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<?, ?> param : map.entrySet()) {
+            Object value = param.getValue();
+            for (Object v : value instanceof List<?> list ? list : List.of(value == null ? "" : value)) {
+                if (v instanceof Map<?, ?> || v instanceof List<?>) {
+                    throw new IllegalArgumentException("parameter " + param.getKey() + " is not a scalar");
+                }
+                query.append(query.isEmpty() && path.indexOf('?') < 0 ? '?' : '&')
+                        .append(encode(String.valueOf(param.getKey()))).append('=')
+                        .append(encode(v == null ? "" : String.valueOf(v)));
+            }
+        }
+        return query.toString();
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Writes the entry of a call: its status and body, a JSON body embedded as is and
+     * any other as a string. A call that has not completed is reported as timed out.
+     */
+    private static void writeEntry(Call call, ResponseBuffer out) {
+        byte[] response = call.response;
+        if (response == null) {
+            response = HttpServer.errorResponse(new ResponseStatusException(504, "Call did not complete in time"));
+        }
+        int bodyStart = bodyStart(response);
+        String head = new String(response, 0, bodyStart, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        out.writeAscii("{\"index\":");
+        out.writeLong(call.index);
+        out.writeAscii(",\"path\":");
+        JsonWriter.writeString(call.path, out);
+        out.writeAscii(",\"status\":");
+        out.writeLong(HttpServer.statusCode(response));
+        out.writeAscii(",\"body\":");
+        if (bodyStart == response.length) {
+            out.writeAscii("null");
+        } else if (head.contains("\r\ncontent-type: application/json")) {
+            out.write(response, bodyStart, response.length - bodyStart);
+        } else {
+            JsonWriter.writeString(new String(response, bodyStart, response.length - bodyStart, StandardCharsets.UTF_8),
+                    out);
+        }
+        out.write('}');
+    }
+
+    private static int bodyStart(byte[] response) {
+        for (int i = 3; i < response.length; i++) {
+            if (response[i] == '\n' && response[i - 1] == '\r' && response[i - 2] == '\n' && response[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return response.length;
+    }
+
+    private static void writeChunk(ResponseBuffer data, boolean chunked, OutputStream rawOut) throws IOException {
+        if (chunked) {
+            rawOut.write((Integer.toHexString(data.size()) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        data.writeTo(rawOut);
+        if (chunked) {
+            rawOut.write('\r');
+            rawOut.write('\n');
+        }
+        rawOut.flush();
+    }
+
+    private static int send(OutputStream rawOut, byte[] response) throws IOException {
+        rawOut.write(response);
+        rawOut.flush();
+        return HttpServer.statusCode(response);
+    }
+
+    /** One route call of a batch, run by whichever thread claims it first */
+    static final class Call {
+        final int index;
+        final String path;
+        final URI uri;
+        // The GET route of the call, or null if there is none
+        final Method route;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile byte[] response;
+        private BlockingQueue<Call> completed;
+
+        Call(int index, String path, URI uri) {
+            this.index = index;
+            this.path = path;
+            this.uri = uri;
+            this.route = HttpServer.services.get(uri.getPath());
+        }
+
+        /** Keeps the call from running if no thread has claimed it yet. */
+        void cancel() {
+            claimed.set(true);
+        }
+
+        /** Answers the call unless another thread already has. */
+        void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            long start = System.nanoTime();
+            byte[] result;
+            try {
+                if (route == null) {
+                    result = HttpServer.errorResponse(new ResponseStatusException(404, "Service not found"));
+                } else if (route.getReturnType() == EventStream.class) {
+                    result = HttpServer.errorResponse(new ResponseStatusException(400, "Event streams cannot be batched"));
+                } else {
+                    result = HttpServer.serviceResponse(uri);
+                }
+            } catch (RuntimeException e) {
+                result = HttpServer.errorResponse(new ResponseStatusException(500, "Internal Server Error: " + e.getMessage()));
+            }
+            int status = HttpServer.statusCode(result);
+            ServerMetrics.recordRequest(HttpServer.routeLabel(uri, status), status, System.nanoTime() - start);
+            response = result;
+            completed.add(this);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+
+/**
+ * Signals that a request body is larger than the limit of the parameter it is bound to.
+ * Raised before the body is read when the declared {@code Content-Length} is too large,
+ * or while reading a chunked body once the limit is crossed.
+ *
+ * @author daniel.aldana-b
+ */
+public class BodyTooLargeException extends IOException {
+
+    public BodyTooLargeException(long maxBytes) {
+        super("Request body exceeds " + maxBytes + " bytes");
+    }
+}
@@ -0,0 +1,190 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers for socket I/O. Requests are rounded up to one of a few size
+ * classes (4 KiB to 64 KiB). Each thread keeps a small stack of free buffers per class,
+ * so a worker that releases a buffer and acquires another touches no shared state;
+ * buffers beyond that go to a shared queue bounded by
+ * {@code microspringboot.buffers.maxPooledBytes}. Larger requests get a buffer of their
+ * own that is never pooled.
+ * <p>
+ * With {@code microspringboot.buffers.leakDetection=true} (set by the test build) every
+ * buffer handed out is tracked with the stack that acquired it: {@link #leaks()} lists
+ * the ones not yet released, and releasing a buffer twice fails.
+ *
+ * @author daniel.aldana-b
+ */
+final class BufferPool {
+    static final int MIN_CLASS = 4 * 1024;
+    static final int MAX_CLASS = 64 * 1024;
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_CLASS / MIN_CLASS) + 1;
+    // Free bytes each thread keeps per size class
+    private static final int THREAD_CACHE_BYTES = 64 * 1024;
+    static final long MAX_POOLED_BYTES = Long.getLong("microspringboot.buffers.maxPooledBytes", 16L * 1024 * 1024);
+    static final boolean LEAK_DETECTION = Boolean.getBoolean("microspringboot.buffers.leakDetection");
+
+    private static final ThreadLocal<ThreadCache> CACHE = ThreadLocal.withInitial(ThreadCache::new);
+    @SuppressWarnings("unchecked")
+    private static final ConcurrentLinkedQueue<ByteBuffer>[] SHARED = new ConcurrentLinkedQueue[CLASSES];
+    private static final AtomicLong sharedBytes = new AtomicLong();
+    // Buffers handed out and not yet released, with where they were acquired; only with leak detection
+    private static final Map<ByteBuffer, Throwable> OUTSTANDING = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private static final LongAdder threadHits = new LongAdder();
+    private static final LongAdder sharedHits = new LongAdder();
+    private static final LongAdder allocated = new LongAdder();
+    private static final LongAdder unpooled = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder inUse = new LongAdder();
+
+    static {
+        for (int i = 0; i < CLASSES; i++) {
+            SHARED[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /** Free buffers of one thread: a stack per size class */
+    private static final class ThreadCache {
+        final ByteBuffer[][] stacks = new ByteBuffer[CLASSES][];
+        final int[] sizes = new int[CLASSES];
+
+        ThreadCache() {
+            for (int i = 0; i < CLASSES; i++) {
+                stacks[i] = new ByteBuffer[Math.max(1, THREAD_CACHE_BYTES / classSize(i))];
+            }
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    private static int classSize(int index) {
+        return MIN_CLASS << index;
+    }
+
+    private static int classOf(int capacity) {
+        if (capacity <= MIN_CLASS) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(MIN_CLASS);
+    }
+
+    /**
+     * Takes a cleared direct buffer.
+     * @param capacity the least capacity needed
+     * @return a buffer of the size class of {@code capacity}, or of exactly {@code capacity}
+     *         if it is larger than {@link #MAX_CLASS}
+     */
+    static ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer;
+        if (capacity > MAX_CLASS) {
+            unpooled.increment();
+            buffer = ByteBuffer.allocateDirect(capacity);
+        } else {
+            int index = classOf(capacity);
+            ThreadCache cache = CACHE.get();
+            if (cache.sizes[index] > 0) {
+                ByteBuffer[] stack = cache.stacks[index];
+                buffer = stack[--cache.sizes[index]];
+                stack[cache.sizes[index]] = null;
+                threadHits.increment();
+            } else if ((buffer = SHARED[index].poll()) != null) {
+                sharedBytes.addAndGet(-buffer.capacity());
+                sharedHits.increment();
+            } else {
+                buffer = ByteBuffer.allocateDirect(classSize(index));
+                allocated.increment();
+            }
+            buffer.clear();
+        }
+        inUse.increment();
+        if (LEAK_DETECTION) {
+            OUTSTANDING.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes acquired by "
+                    + Thread.currentThread().getName()));
+        }
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back. It must not be used afterwards.
+     * @param buffer a buffer from {@link #acquire}, or null
+     * @throws IllegalStateException with leak detection on, if the buffer is not outstanding
+     */
+    static void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (LEAK_DETECTION && OUTSTANDING.remove(buffer) == null) {
+            throw new IllegalStateException("Buffer released twice or not from the pool");
+        }
+        inUse.decrement();
+        int capacity = buffer.capacity();
+        if (capacity > MAX_CLASS || !buffer.isDirect() || Integer.bitCount(capacity) != 1 || capacity < MIN_CLASS) {
+            return;
+        }
+        int index = classOf(capacity);
+        ThreadCache cache = CACHE.get();
+        ByteBuffer[] stack = cache.stacks[index];
+        if (cache.sizes[index] < stack.length) {
+            stack[cache.sizes[index]++] = buffer;
+        } else if (sharedBytes.addAndGet(capacity) <= MAX_POOLED_BYTES) {
+            SHARED[index].offer(buffer);
+        } else {
+            sharedBytes.addAndGet(-capacity);
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Counts the buffers acquired and not released.
+     * @return the buffers in use
+     */
+    static long inUse() {
+        return inUse.sum();
+    }
+
+    /**
+     * Lists the buffers not released yet, each as the stack trace of its acquisition.
+     * @return the outstanding acquisitions, empty unless leak detection is on
+     */
+    static List<Throwable> leaks() {
+        synchronized (OUTSTANDING) {
+            return new ArrayList<>(OUTSTANDING.values());
+        }
+    }
+
+    /**
+     * Writes the pool metrics in the Prometheus text format. The hit rate is the share of
+     * acquisitions with {@code source} "thread" or "shared".
+     * @param out the metrics document being built
+     */
+    static void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_buffer_acquires_total Direct buffers acquired, by where they came from\n");
+        out.append("# TYPE microspringboot_buffer_acquires_total counter\n");
+        long[] counts = {threadHits.sum(), sharedHits.sum(), allocated.sum(), unpooled.sum()};
+        String[] sources = {"thread", "shared", "allocated", "unpooled"};
+        for (int i = 0; i < counts.length; i++) {
+            out.append("microspringboot_buffer_acquires_total{source=\"").append(sources[i])
+                    .append("\"} ").append(counts[i]).append('\n');
+        }
+        out.append("# HELP microspringboot_buffer_dropped_total Released buffers freed because the pool was full\n");
+        out.append("# TYPE microspringboot_buffer_dropped_total counter\n");
+        out.append("microspringboot_buffer_dropped_total ").append(dropped.sum()).append('\n');
+        out.append("# HELP microspringboot_buffers_in_use Direct buffers acquired and not yet released\n");
+        out.append("# TYPE microspringboot_buffers_in_use gauge\n");
+        out.append("microspringboot_buffers_in_use ").append(inUse.sum()).append('\n');
+        out.append("# HELP microspringboot_buffer_pooled_bytes Bytes of free buffers in the shared pool\n");
+        out.append("# TYPE microspringboot_buffer_pooled_bytes gauge\n");
+        out.append("microspringboot_buffer_pooled_bytes ").append(sharedBytes.get()).append('\n');
+    }
+}
@@ -0,0 +1,28 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the routes of a controller method, or of every method of a controller, on a pool
+ * of threads of their own, so that they neither wait behind nor hold up other routes and
+ * static files. Routes naming the same pool share it; the first route registered sizes it,
+ * unless {@code microspringboot.bulkhead.<name>.threads}, {@code .minThreads},
+ * {@code .maxThreads} or {@code .queueSize} is set.
+ *
+ * @author daniel.aldana-b
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Bulkhead {
+    // Name of the pool
+    String value();
+    // Requests of the pool handled at the same time, at first if the pool is adaptive
+    int threads() default 4;
+    // Threads an adaptive pool may grow to, from one; 0 keeps the pool at its initial size
+    int maxThreads() default 0;
+    // Requests that may wait for a thread before the next ones are refused with 503
+    int queueSize() default 100;
+}
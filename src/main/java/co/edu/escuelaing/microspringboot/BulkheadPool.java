@@ -0,0 +1,290 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded thread pool that a class of requests is handed to once its headers are read,
+ * so that a burst of slow requests of one class fills its own pool and queue instead of
+ * the worker loops every connection goes through. Static files run on the
+ * {@value #STATIC} pool and controller routes on the {@value #ROUTES} pool, or on the
+ * pool named by their {@link Bulkhead} annotation. Requests arriving at a full pool are
+ * refused with 503 right away.
+ * <p>
+ * Each pool starts with {@code microspringboot.bulkhead.<name>.threads} threads and queues
+ * up to {@code .queueSize} requests. A pool whose {@code .maxThreads} is above its
+ * {@code .minThreads} is resized by an {@link AdaptivePoolSizer} from the queue wait and
+ * the CPU share of its requests. {@code microspringboot.bulkheads.enabled=false} answers
+ * every request on its worker loop instead.
+ *
+ * @author daniel.aldana-b
+ */
+final class BulkheadPool {
+    static final String STATIC = "static";
+    static final String ROUTES = "routes";
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("microspringboot.bulkheads.enabled", "true"));
+    private static final Map<String, BulkheadPool> POOLS = new ConcurrentHashMap<>();
+    // Pools of the routes annotated with @Bulkhead
+    private static final Map<Method, BulkheadPool> ROUTE_POOLS = new ConcurrentHashMap<>();
+    // Static files mostly copy cached bytes; controllers may block on anything
+    private static final BulkheadPool STATIC_POOL = pool(STATIC, Math.max(2, CORES), 1000, 1, 4 * CORES);
+    private static final BulkheadPool ROUTES_POOL = pool(ROUTES, Math.max(4, 2 * CORES), 1000, 2, Math.max(64, 8 * CORES));
+
+    final String name;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicInteger pending = new AtomicInteger();
+    // Threads running a request, guarded by itself
+    private final Set<Thread> running = new HashSet<>();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    // Null for a pool of fixed size
+    private final AdaptivePoolSizer sizer;
+
+    private BulkheadPool(String name, int threads, int queueSize, int minThreads, int maxThreads) {
+        this.name = name;
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, r -> {
+            Thread thread = new Thread(r, "bulkhead-" + name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.sizer = maxThreads > minThreads
+                ? new AdaptivePoolSizer(threads, minThreads, maxThreads, CORES, this::resize, System.nanoTime())
+                : null;
+        if (sizer != null) {
+            resize(sizer.size());
+        }
+    }
+
+    /**
+     * Gets a pool by name, creating it with the given sizes unless system properties
+     * override them.
+     */
+    private static BulkheadPool pool(String name, int threads, int queueSize, int minThreads, int maxThreads) {
+        return POOLS.computeIfAbsent(name, n -> {
+            String prefix = "microspringboot.bulkhead." + n + ".";
+            int initial = Math.max(1, Integer.getInteger(prefix + "threads", threads));
+            int min = Math.max(1, Integer.getInteger(prefix + "minThreads", Math.min(minThreads, initial)));
+            int max = Math.max(min, Integer.getInteger(prefix + "maxThreads", Math.max(maxThreads, initial)));
+            return new BulkheadPool(n, initial, Integer.getInteger(prefix + "queueSize", queueSize), min, max);
+        });
+    }
+
+    private void resize(int threads) {
+        // The core size may never exceed the maximum, so the order depends on the direction
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Records the pool of a controller method from its {@link Bulkhead} annotation, or
+     * from its class's.
+     * @param method a route method
+     */
+    static void register(Method method) {
+        Bulkhead bulkhead = method.getAnnotation(Bulkhead.class);
+        if (bulkhead == null) {
+            bulkhead = method.getDeclaringClass().getAnnotation(Bulkhead.class);
+        }
+        if (bulkhead == null) {
+            ROUTE_POOLS.remove(method);
+        } else {
+            int max = bulkhead.maxThreads() > 0 ? bulkhead.maxThreads() : bulkhead.threads();
+            ROUTE_POOLS.put(method, pool(bulkhead.value(), bulkhead.threads(), bulkhead.queueSize(),
+                    bulkhead.maxThreads() > 0 ? 1 : bulkhead.threads(), max));
+        }
+    }
+
+    /**
+     * Gets the pool running a controller method.
+     * @param method a route method
+     * @return its own pool, or the shared {@value #ROUTES} pool
+     */
+    static BulkheadPool forRoute(Method method) {
+        return ROUTE_POOLS.getOrDefault(method, ROUTES_POOL);
+    }
+
+    /**
+     * Gets the shared {@value #ROUTES} pool, which also answers {@link BatchEndpoint batches}.
+     * @return the pool of routes without a bulkhead of their own
+     */
+    static BulkheadPool forRoutes() {
+        return ROUTES_POOL;
+    }
+
+    static BulkheadPool forStatic() {
+        return STATIC_POOL;
+    }
+
+    /**
+     * Runs a request on the pool, if it has a thread or a queue slot free.
+     * @param task the rest of the request
+     * @return false if the pool is full and the request must be refused
+     */
+    boolean execute(Runnable task) {
+        long queuedAt = System.nanoTime();
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                long cpuAt = sizer != null && CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1;
+                queueWait.record(startedAt - queuedAt);
+                synchronized (running) {
+                    running.add(Thread.currentThread());
+                }
+                try {
+                    task.run();
+                } finally {
+                    if (sizer != null) {
+                        long now = System.nanoTime();
+                        sizer.record(startedAt - queuedAt, now - startedAt,
+                                cpuAt < 0 ? -1 : THREADS.getCurrentThreadCpuTime() - cpuAt);
+                        sizer.check(now, executor.getQueue().size(), executor.getActiveCount() - 1);
+                    }
+                    synchronized (running) {
+                        running.remove(Thread.currentThread());
+                        // An interrupt meant for this request must not reach the next one
+                        Thread.interrupted();
+                    }
+                    completed.increment();
+                    pending.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        } finally {
+            if (sizer != null) {
+                sizer.check(queuedAt, executor.getQueue().size(), executor.getActiveCount());
+            }
+        }
+    }
+
+    /**
+     * Waits until no pool has a request queued or running, e.g. while the server drains.
+     * @param deadline the {@link System#nanoTime()} to give up at
+     * @return true if every pool is idle
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    static boolean awaitIdle(long deadline) throws InterruptedException {
+        for (BulkheadPool pool : POOLS.values()) {
+            while (pool.pending.get() > 0) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interrupts every request running on a pool, when the server stops before they finish.
+     */
+    static void interruptRunning() {
+        for (BulkheadPool pool : POOLS.values()) {
+            synchronized (pool.running) {
+                for (Thread thread : pool.running) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the size, load and refusals of each pool in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        Map<String, BulkheadPool> sorted = new TreeMap<>(POOLS);
+        out.append("# HELP microspringboot_bulkhead_threads Threads each bulkhead may run requests on\n");
+        out.append("# TYPE microspringboot_bulkhead_threads gauge\n");
+        for (BulkheadPool pool : sorted.values()) {
+            out.append("microspringboot_bulkhead_threads{pool=\"").append(pool.name).append("\"} ")
+                    .append(pool.executor.getMaximumPoolSize()).append('\n');
+        }
+        out.append("# HELP microspringboot_bulkhead_max_threads Threads an adaptive bulkhead may grow to\n");
+        out.append("# TYPE microspringboot_bulkhead_max_threads gauge\n");
+        for (BulkheadPool pool : sorted.values()) {
+            out.append("microspringboot_bulkhead_max_threads{pool=\"").append(pool.name).append("\"} ")
+                    .append(pool.sizer != null ? pool.sizer.maxThreads : pool.executor.getMaximumPoolSize()).append('\n');
+        }
+        out.append("# HELP microspringboot_bulkhead_cpu_ratio Share of handling time spent on the CPU, per adaptive bulkhead\n");
+        out.append("# TYPE microspringboot_bulkhead_cpu_ratio gauge\n");
+        for (BulkheadPool pool : sorted.values()) {
+            if (pool.sizer != null) {
+                out.append("microspringboot_bulkhead_cpu_ratio{pool=\"").append(pool.name).append("\"} ")
+                        .append(pool.sizer.cpuRatio()).append('\n');
+            }
+        }
+        out.append("# HELP microspringboot_bulkhead_resizes_total Times each adaptive bulkhead grew or shrank\n");
+        out.append("# TYPE microspringboot_bulkhead_resizes_total counter\n");
+        for (BulkheadPool pool : sorted.values()) {
+            if (pool.sizer != null) {
+                out.append("microspringboot_bulkhead_resizes_total{pool=\"").append(pool.name)
+                        .append("\",direction=\"up\"} ").append(pool.sizer.grown()).append('\n');
+                out.append("microspringboot_bulkhead_resizes_total{pool=\"").append(pool.name)
+                        .append("\",direction=\"down\"} ").append(pool.sizer.shrunk()).append('\n');
+            }
+        }
+        out.append("# HELP microspringboot_bulkhead_active Requests running on each bulkhead\n");
+        out.append("# TYPE microspringboot_bulkhead_active gauge\n");
+        for (BulkheadPool pool : sorted.values()) {
+            out.append("microspringboot_bulkhead_active{pool=\"").append(pool.name).append("\"} ")
+                    .append(pool.executor.getActiveCount()).append('\n');
+        }
+        out.append("# HELP microspringboot_bulkhead_queued Requests waiting for a thread of each bulkhead\n");
+        out.append("# TYPE microspringboot_bulkhead_queued gauge\n");
+        for (BulkheadPool pool : sorted.values()) {
+            out.append("microspringboot_bulkhead_queued{pool=\"").append(pool.name).append("\"} ")
+                    .append(pool.executor.getQueue().size()).append('\n');
+        }
+        out.append("# HELP microspringboot_bulkhead_completed_total Requests run by each bulkhead\n");
+        out.append("# TYPE microspringboot_bulkhead_completed_total counter\n");
+        for (BulkheadPool pool : sorted.values()) {
+            out.append("microspringboot_bulkhead_completed_total{pool=\"").append(pool.name).append("\"} ")
+                    .append(pool.completed.sum()).append('\n');
+        }
+        out.append("# HELP microspringboot_bulkhead_rejected_total Requests refused because their bulkhead was full\n");
+        out.append("# TYPE microspringboot_bulkhead_rejected_total counter\n");
+        for (BulkheadPool pool : sorted.values()) {
+            out.append("microspringboot_bulkhead_rejected_total{pool=\"").append(pool.name).append("\"} ")
+                    .append(pool.rejected.sum()).append('\n');
+        }
+        out.append("# HELP microspringboot_bulkhead_queue_wait_seconds Time requests waited for a bulkhead thread\n");
+        out.append("# TYPE microspringboot_bulkhead_queue_wait_seconds histogram\n");
+        for (BulkheadPool pool : sorted.values()) {
+            pool.queueWait.writePrometheus(out, "microspringboot_bulkhead_queue_wait_seconds",
+                    "pool=\"" + pool.name + "\"");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an idempotent {@code @GetMapping} method whose serialized responses can be
+ * reused. Responses are cached per route and per value of the method's
+ * {@code @RequestParam}s, so only the parameters the method actually reads are
+ * part of the cache key.
+ *
+ * @author daniel.aldana-b
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cacheable {
+    // How long a cached response stays valid, in milliseconds
+    long ttlMillis() default 60_000;
+    // Maximum number of distinct responses kept for the route
+    int maxEntries() default 1000;
+}
@@ -0,0 +1,29 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Example WebSocket endpoint: every text message is relayed to all connected clients.
+ *
+ * @author daniel.aldana-b
+ */
+@WebSocketMapping(value = "/ws/chat", maxMessageBytes = 64 * 1024)
+public class ChatWebSocket implements WebSocketHandler {
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void onOpen(WebSocketSession session) {
+        sessions.add(session);
+    }
+
+    @Override
+    public void onText(WebSocketSession session, String message) {
+        WebSocketSession.broadcast(sessions, session.getId() + ": " + message);
+    }
+
+    @Override
+    public void onClose(WebSocketSession session, int code, String reason) {
+        sessions.remove(session);
+    }
+}
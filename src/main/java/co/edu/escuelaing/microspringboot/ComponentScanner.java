@@ -17,7 +17,7 @@ public class ComponentScanner {
         List<Class<?>> classes = loadClasses(basePackage);
 
         return classes.stream()
-                .filter(c -> c.isAnnotationPresent(RestController.class))
+                .filter(c -> c.isAnnotationPresent(RestController.class) || c.isAnnotationPresent(WebSocketMapping.class))
                 .toList();
     }
 
@@ -0,0 +1,618 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * An accepted client connection, seen by the request handling code as a pair of streams.
+ * Wrapping the {@link ByteChannel} instead of a {@link java.net.Socket} keeps request
+ * handling independent of the transport the channel came from. The streams live as long
+ * as the connection, so bytes of a pipelined request read ahead into the input buffer
+ * are still there for the next request on a keep-alive connection. Reads and writes do
+ * not share a lock, so an HTTP/2 connection can write responses while its reader thread
+ * is blocked waiting for the next frame.
+ * <p>
+ * Both streams move bytes through direct buffers from the {@link BufferPool}. The input
+ * buffer is given back whenever the connection goes idle with nothing read ahead, so a
+ * parked keep-alive connection holds no buffer at all.
+ * <p>
+ * While the connection waits for a request on the {@link IdleConnectionParker}, its
+ * channel is non-blocking and {@link #readHead()} gathers the request head into the same
+ * input buffer, so the worker that parses it later never blocks on the client.
+ *
+ * @author daniel.aldana-b
+ */
+public class Connection implements Closeable {
+    private static final int READ_BUFFER = 16 * 1024;
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    /** How much of the next request {@link #readHead()} has gathered */
+    enum HeadState {
+        // Nothing of the next request has arrived yet
+        NONE,
+        // Part of the head has arrived
+        PARTIAL,
+        // The whole head, or more than a head may take, is buffered
+        COMPLETE,
+        // The client closed the connection before sending anything more
+        CLOSED
+    }
+
+    private final ByteChannel channel;
+    private final ServerConfig config;
+    private final ConnectionWatchdog watchdog;
+    private final ChannelInput in;
+    private final ChannelOutput out;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // Set once another protocol (HTTP/2) has taken the connection over
+    private volatile boolean upgraded;
+    // When the connection was last handed to a worker loop, 0 once a request has claimed it
+    private volatile long queuedAt;
+    // Takes the connection back after a request answered off its worker loop, with whether it stays open
+    private volatile BiConsumer<Connection, Boolean> handBackHandler;
+    private String clientAddress;
+
+    /**
+     * Creates a connection without timeouts.
+     * @param channel a connected channel in blocking mode
+     */
+    public Connection(ByteChannel channel) {
+        this(channel, null);
+    }
+
+    /**
+     * Creates a connection whose timeouts are enforced on the shared {@link TimerWheel}.
+     * @param channel a connected channel in blocking mode
+     * @param config  the timeouts, or null for none
+     */
+    public Connection(ByteChannel channel, ServerConfig config) {
+        this.channel = channel;
+        this.config = config;
+        this.watchdog = new ConnectionWatchdog(this, config, TimerWheel.shared());
+        this.in = new ChannelInput();
+        this.out = new ChannelOutput();
+        ServerMetrics.connectionOpened();
+    }
+
+    /**
+     * Identifies the client, e.g. for rate limiting.
+     * @return the client IP address, or "local" if the channel has no IP peer
+     */
+    public String getClientAddress() {
+        if (clientAddress == null) {
+            clientAddress = "local";
+            SocketChannel socket = socketChannel();
+            if (socket != null) {
+                try {
+                    if (socket.getRemoteAddress() instanceof InetSocketAddress remote && remote.getAddress() != null) {
+                        clientAddress = remote.getAddress().getHostAddress();
+                    }
+                } catch (IOException e) {
+                    // Already disconnected; keep the placeholder
+                }
+            }
+        }
+        return clientAddress;
+    }
+
+    public ByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets the TCP channel under the connection, which is the channel itself unless TLS
+     * runs on top of it.
+     * @return the socket channel, or null if the connection has none
+     */
+    SocketChannel socketChannel() {
+        if (channel instanceof TlsChannel tls) {
+            return tls.socket();
+        }
+        return channel instanceof SocketChannel socket ? socket : null;
+    }
+
+    /**
+     * Tells whether the connection is encrypted.
+     * @return true for TLS connections
+     */
+    boolean isSecure() {
+        return channel instanceof TlsChannel;
+    }
+
+    /**
+     * Gets the buffered input of the connection.
+     * @return the stream requests are read from
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Gets the output of the connection. Writes go straight to the channel.
+     * @return the stream responses are written to
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Gets the limits the connection was opened with.
+     * @return the configuration, or null if the connection has no timeouts
+     */
+    ServerConfig getConfig() {
+        return config;
+    }
+
+    ConnectionWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Counts the bytes written so far, for the access log.
+     * @return the bytes sent on this connection
+     */
+    long bytesWritten() {
+        return out.count;
+    }
+
+    /**
+     * Takes the bytes read ahead of the last request, when another protocol takes the
+     * connection over and reads the channel directly.
+     * @return the buffered bytes, possibly none
+     */
+    byte[] takeBuffered() throws IOException {
+        int n = in.buffered();
+        byte[] bytes = n == 0 ? new byte[0] : in.readNBytes(n);
+        in.release(false);
+        return bytes;
+    }
+
+    /**
+     * Reads what the channel has ready without blocking and looks for the end of the
+     * request head in the bytes buffered so far. A head is complete at the blank line
+     * ending its fields, or once it is longer than {@link HttpRequest#MAX_HEADER_BYTES},
+     * so that the worker reading it finds everything it needs (or enough to answer 431)
+     * already buffered. The channel must be in non-blocking mode; over TLS, this also
+     * advances the handshake.
+     * @return how much of the head is buffered
+     * @throws IOException if the channel fails
+     */
+    HeadState readHead() throws IOException {
+        return in.readHead();
+    }
+
+    /**
+     * Tells whether the input buffer holds the whole head of another request, which can
+     * then be read without blocking.
+     * @return true if a pipelined request head is buffered
+     */
+    boolean hasBufferedHead() {
+        return in.scanHead() == HeadState.COMPLETE;
+    }
+
+    /**
+     * Gives the input buffer back to the pool if nothing is read ahead in it, as a
+     * connection goes idle. Does nothing while another thread is reading.
+     */
+    void releaseIdleBuffers() {
+        in.release(false);
+    }
+
+    /**
+     * Tells whether the input buffer already holds the start of another request.
+     * @return true if a pipelined request can be read without blocking
+     */
+    boolean hasBufferedInput() {
+        return in.buffered() > 0 || (channel instanceof TlsChannel tls && tls.hasBufferedInput());
+    }
+
+    /**
+     * Records that the next request started arriving, which starts its clock: from then
+     * on it waits in the server, for the rest of its head or for a worker loop.
+     */
+    void markQueued() {
+        queuedAt = System.nanoTime();
+    }
+
+    /**
+     * Returns when the request started arriving and clears the mark, so that only the
+     * first request after a hand-off counts its time waiting.
+     * @return the start time, or 0 if the connection was not marked since the last call
+     */
+    long takeQueuedAt() {
+        long at = queuedAt;
+        queuedAt = 0;
+        return at;
+    }
+
+    /**
+     * Sets what happens to the connection once a request answered on a {@link BulkheadPool}
+     * is done with it.
+     * @param handler receives the connection and whether it is open for another request
+     */
+    void onHandBack(BiConsumer<Connection, Boolean> handler) {
+        handBackHandler = handler;
+    }
+
+    /**
+     * Gives a connection whose request was answered off its worker loop back to its
+     * connector. Without one, a connection left open is closed.
+     * @param keepAlive true if the connection is open for another request
+     */
+    void handBack(boolean keepAlive) {
+        BiConsumer<Connection, Boolean> handler = handBackHandler;
+        if (handler != null) {
+            handler.accept(this, keepAlive);
+        } else if (keepAlive) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Records that another protocol now owns the connection, so the HTTP/1.1 loop neither
+     * closes nor parks it.
+     */
+    void markUpgraded() {
+        upgraded = true;
+    }
+
+    boolean isUpgraded() {
+        return upgraded;
+    }
+
+    boolean isOpen() {
+        return !closed.get() && channel.isOpen();
+    }
+
+    /**
+     * Closes the underlying channel. Only the first call has any effect.
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            ServerMetrics.connectionClosed();
+            try {
+                channel.close();
+            } finally {
+                in.release(true);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection, ignoring errors.
+     */
+    void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Nothing left to do with this connection
+        }
+    }
+
+    /**
+     * Buffered input read from the channel in blocking mode into a pooled direct buffer.
+     * Unlike {@link java.nio.channels.Channels#newInputStream}, a blocked read does not
+     * hold the channel's blocking lock against writers.
+     */
+    private final class ChannelInput extends InputStream {
+        private final ReentrantLock lock = new ReentrantLock();
+        // In read mode; null while released
+        private ByteBuffer buffer;
+        private boolean released;
+        // Head scan of the bytes from the buffer position, valid until something is read
+        private boolean scanValid;
+        private int scanned;
+        private int headBudget;
+        private int lineChars;
+        private boolean seenLine;
+        private HeadState scanState;
+
+        /**
+         * Reads from the channel into the empty buffer.
+         * @return false at the end of the stream
+         */
+        private boolean fill() throws IOException {
+            if (released) {
+                throw new ClosedChannelException();
+            }
+            if (buffer == null) {
+                buffer = BufferPool.acquire(READ_BUFFER);
+            }
+            buffer.clear();
+            long start = watchdog.readStarted();
+            int n = 0;
+            try {
+                // A blocking channel never returns 0 for a non-empty buffer
+                n = channel.read(buffer);
+            } finally {
+                watchdog.readFinished(start, n);
+                buffer.flip();
+            }
+            if (n > 0) {
+                ServerMetrics.addBytesIn(n);
+            }
+            return n > 0;
+        }
+
+        /**
+         * Appends what the non-blocking channel has ready to the buffer and scans it.
+         */
+        HeadState readHead() throws IOException {
+            lock.lock();
+            try {
+                if (released) {
+                    return HeadState.CLOSED;
+                }
+                HeadState state = scanHead();
+                while (state != HeadState.COMPLETE) {
+                    if (buffer == null) {
+                        buffer = BufferPool.acquire(READ_BUFFER);
+                        buffer.limit(0);
+                    }
+                    if (buffer.limit() == buffer.capacity()) {
+                        makeRoom();
+                    }
+                    int start = buffer.position();
+                    buffer.position(buffer.limit()).limit(buffer.capacity());
+                    int n;
+                    try {
+                        n = channel instanceof TlsChannel tls ? tls.readNow(buffer) : channel.read(buffer);
+                    } finally {
+                        buffer.limit(buffer.position()).position(start);
+                    }
+                    if (n < 0) {
+                        // What did arrive is still parsed, and fails as a truncated head
+                        return buffer.hasRemaining() ? HeadState.COMPLETE : HeadState.CLOSED;
+                    }
+                    if (n == 0) {
+                        // An idle connection waits without a buffer
+                        if (!buffer.hasRemaining()) {
+                            BufferPool.release(buffer);
+                            buffer = null;
+                        }
+                        return state;
+                    }
+                    ServerMetrics.addBytesIn(n);
+                    state = scanHead();
+                    // Plaintext decrypted beyond what fit stays in the TLS layer, where no
+                    // socket event would announce it
+                    if (!(channel instanceof TlsChannel tls && tls.hasBufferedInput())) {
+                        return state;
+                    }
+                }
+                return state;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Frees space after the buffered bytes: moves them to the front or, if they fill
+         * the buffer, moves them to a larger one. A head that needs more than the limit
+         * is complete before it gets here, so the buffer stays within one size class of it.
+         */
+        private void makeRoom() {
+            int position = buffer.position();
+            if (position > 0) {
+                buffer.compact().flip();
+            } else {
+                ByteBuffer bigger = BufferPool.acquire(buffer.capacity() * 2);
+                bigger.put(buffer).flip();
+                BufferPool.release(buffer);
+                buffer = bigger;
+            }
+        }
+
+        /**
+         * Scans the buffered bytes not scanned yet for the end of the head that starts at
+         * the buffer position. Lines are counted like {@link HttpRequest#read}: empty
+         * lines before the request line are skipped, and every byte is charged to the
+         * header budget.
+         */
+        HeadState scanHead() {
+            lock.lock();
+            try {
+                if (!scanValid) {
+                    scanValid = true;
+                    scanned = 0;
+                    headBudget = HttpRequest.MAX_HEADER_BYTES;
+                    lineChars = 0;
+                    seenLine = false;
+                    scanState = HeadState.NONE;
+                }
+                if (buffer == null || scanState == HeadState.COMPLETE) {
+                    return scanState;
+                }
+                int from = buffer.position() + scanned;
+                int to = buffer.limit();
+                for (int i = from; i < to && scanState != HeadState.COMPLETE; i++) {
+                    byte b = buffer.get(i);
+                    scanState = HeadState.PARTIAL;
+                    if (--headBudget < 0) {
+                        scanState = HeadState.COMPLETE;
+                    } else if (b == '\n') {
+                        if (lineChars == 0 && seenLine) {
+                            scanState = HeadState.COMPLETE;
+                        }
+                        seenLine |= lineChars > 0;
+                        lineChars = 0;
+                    } else if (b != '\r') {
+                        lineChars++;
+                    }
+                    scanned++;
+                }
+                return scanState;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            lock.lock();
+            try {
+                scanValid = false;
+                if ((buffer == null || !buffer.hasRemaining()) && !fill()) {
+                    return -1;
+                }
+                return buffer.get() & 0xFF;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                scanValid = false;
+                if ((buffer == null || !buffer.hasRemaining()) && !fill()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            return buffered();
+        }
+
+        int buffered() {
+            lock.lock();
+            try {
+                return buffer == null ? 0 : buffer.remaining();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gives the buffer back to the pool.
+         * @param closing true once the channel is closed: waits for a blocked reader to
+         *                fail and releases the buffer even if unread bytes are left in it;
+         *                false to release a drained buffer only if no thread is reading
+         */
+        void release(boolean closing) {
+            if (closing) {
+                lock.lock();
+            } else if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                if (buffer != null && (closing || !buffer.hasRemaining())) {
+                    BufferPool.release(buffer);
+                    buffer = null;
+                    scanValid = false;
+                }
+                released |= closing;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes whole buffers to the channel in blocking mode, without its blocking lock.
+     * Arrays are copied through a pooled direct buffer, so the channel does not copy
+     * them again into a temporary one of its own.
+     */
+    final class ChannelOutput extends OutputStream {
+        // Bytes written to this connection, for the access log
+        private long count;
+
+        private ChannelOutput() {
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ByteBuffer buffer = BufferPool.acquire(Math.min(len, WRITE_BUFFER));
+            try {
+                while (len > 0) {
+                    int n = Math.min(len, buffer.capacity());
+                    buffer.clear();
+                    buffer.put(b, off, n).flip();
+                    write(buffer);
+                    off += n;
+                    len -= n;
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+
+        /**
+         * Writes the remaining bytes of a buffer. A direct buffer goes to the socket as it is.
+         * @param src the bytes to send; its position ends at its limit
+         * @throws IOException if the channel fails or the request has timed out
+         */
+        void write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            long start = watchdog.writeStarted();
+            try {
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            } finally {
+                watchdog.writeFinished(start, n - src.remaining());
+            }
+            ServerMetrics.addBytesOut(n);
+            count += n;
+        }
+
+        /**
+         * Writes the remaining bytes of two buffers, in one gathering write per system call
+         * on a plain socket, so a head kept apart from its body does not go out alone.
+         * @param first  the bytes to send first
+         * @param second the bytes that follow
+         * @throws IOException if the channel fails or the request has timed out
+         */
+        void write(ByteBuffer first, ByteBuffer second) throws IOException {
+            if (!(channel instanceof GatheringByteChannel gathering)) {
+                write(first);
+                write(second);
+                return;
+            }
+            ByteBuffer[] sources = {first, second};
+            long written = 0;
+            long start = watchdog.writeStarted();
+            try {
+                while (first.hasRemaining() || second.hasRemaining()) {
+                    written += gathering.write(sources);
+                }
+            } finally {
+                watchdog.writeFinished(start, written);
+                ServerMetrics.addBytesOut(written);
+                count += written;
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the timeouts of one connection without a thread of its own.
+ * The worker serving the connection announces each phase of a request (reading headers,
+ * handling) and the connection streams report when a read or write blocks; a single
+ * task on the shared {@link TimerWheel} checks that state at the next deadline, or every
+ * second while a request is being handled. When a limit is exceeded the connection is
+ * answered with an error status if no response has been started yet, and then closed,
+ * which unblocks any read or write in progress on the worker thread.
+ *
+ * @author daniel.aldana-b
+ */
+final class ConnectionWatchdog {
+    /** What ran out of time */
+    enum Kind { HEADER, TRANSFER, RATE, HANDLER, IDLE }
+
+    private enum Phase { IDLE, HEADERS, HANDLER, CLOSED }
+
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Transfers shorter than this are never judged on their rate
+    private static final long RATE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // How long the error response may take before the connection is closed anyway
+    private static final long RESPONSE_GRACE_MILLIS = 1000;
+    // Who writes the response of the current request: nobody yet, the worker or the timer
+    private static final int NOBODY = 0;
+    private static final int WORKER = 1;
+    private static final int TIMER = 2;
+    private static final LongAdder[] TIMEOUTS = new LongAdder[Kind.values().length];
+    // Writes error responses off the timer thread, since a client may not be reading
+    private static final ExecutorService RESPONDER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "timeout-responder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        for (int i = 0; i < TIMEOUTS.length; i++) {
+            TIMEOUTS[i] = new LongAdder();
+        }
+    }
+
+    private final Connection connection;
+    private final TimerWheel wheel;
+    private final boolean enabled;
+    private final long headerNanos;
+    private final long transferNanos;
+    private final long handlerNanos;
+    private final long minBytesPerSecond;
+    private final AtomicInteger responder = new AtomicInteger(NOBODY);
+    // Guarded by this
+    private Phase phase = Phase.IDLE;
+    private long deadline;
+    private Thread worker;
+    private TimerWheel.Timeout check;
+    private volatile Kind expired;
+    // Transfer state, written by the worker and read by the timer
+    private volatile long readStartedAt;
+    private volatile long readBytes;
+    private volatile long readNanos;
+    private volatile long writeStartedAt;
+    private volatile long writeBytes;
+    private volatile long writeNanos;
+
+    /**
+     * @param connection the watched connection
+     * @param config     the limits, or null to disable every timeout
+     * @param wheel      the timer driving the checks
+     */
+    ConnectionWatchdog(Connection connection, ServerConfig config, TimerWheel wheel) {
+        this.connection = connection;
+        this.wheel = wheel;
+        this.enabled = config != null;
+        this.headerNanos = enabled ? TimeUnit.MILLISECONDS.toNanos(config.getHeaderTimeoutMillis()) : 0;
+        this.transferNanos = enabled ? TimeUnit.MILLISECONDS.toNanos(config.getTransferTimeoutMillis()) : 0;
+        this.handlerNanos = enabled ? TimeUnit.MILLISECONDS.toNanos(config.getHandlerTimeoutMillis()) : 0;
+        this.minBytesPerSecond = enabled ? config.getMinBytesPerSecond() : 0;
+    }
+
+    /**
+     * Starts waiting for the headers of a request.
+     * @param startNanos when the request was handed to the worker
+     */
+    synchronized void beginRequest(long startNanos) {
+        responder.set(NOBODY);
+        readBytes = readNanos = writeBytes = writeNanos = 0;
+        if (!enabled || phase == Phase.CLOSED) {
+            return;
+        }
+        worker = Thread.currentThread();
+        enter(Phase.HEADERS, headerNanos > 0 ? startNanos + headerNanos : 0);
+    }
+
+    /**
+     * Starts handling a request whose headers have been read.
+     * @param startNanos when the request was handed to the worker
+     * @return false if the request is already past its deadline and should not be handled
+     */
+    synchronized boolean beginHandler(long startNanos) {
+        if (!enabled || phase == Phase.CLOSED) {
+            return true;
+        }
+        long handlerDeadline = handlerNanos > 0 ? startNanos + handlerNanos : 0;
+        if (handlerDeadline != 0 && System.nanoTime() - handlerDeadline >= 0) {
+            record(Kind.HANDLER);
+            return false;
+        }
+        enter(Phase.HANDLER, handlerDeadline);
+        return true;
+    }
+
+    /**
+     * Moves the handler of the current request to another thread, which a handler timeout
+     * then interrupts instead.
+     * @param thread the thread running the handler from now on, or null while it waits
+     *               for one
+     */
+    synchronized void moveTo(Thread thread) {
+        worker = phase == Phase.HANDLER ? thread : null;
+    }
+
+    /**
+     * Ends the current request. The worker's interrupt status is cleared in case a handler
+     * timeout fired just before.
+     */
+    synchronized void endRequest() {
+        if (phase != Phase.CLOSED) {
+            enter(Phase.IDLE, 0);
+        }
+        worker = null;
+        Thread.interrupted();
+    }
+
+    /**
+     * Answers a request whose head did not arrive within the header timeout while the
+     * connection waited off the workers, then closes the connection.
+     */
+    synchronized void headerTimedOut() {
+        responder.set(NOBODY);
+        expire(Kind.HEADER);
+    }
+
+    /**
+     * Tells whether the connection was closed by a timeout.
+     * @return the timeout that fired, or null
+     */
+    Kind expired() {
+        return expired;
+    }
+
+    private void enter(Phase next, long nextDeadline) {
+        phase = next;
+        deadline = nextDeadline;
+        if (check != null) {
+            check.cancel();
+            check = null;
+        }
+        if (next == Phase.HEADERS && nextDeadline != 0) {
+            schedule(nextDeadline - System.nanoTime());
+        } else if (next == Phase.HANDLER && (nextDeadline != 0 || transferNanos > 0 || minBytesPerSecond > 0)) {
+            schedule(CHECK_INTERVAL_NANOS);
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        long delay = nextDeadlineIn(delayNanos);
+        check = wheel.schedule(this::check, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private long nextDeadlineIn(long delayNanos) {
+        if (phase == Phase.HANDLER && deadline != 0) {
+            return Math.min(delayNanos, deadline - System.nanoTime());
+        }
+        return delayNanos;
+    }
+
+    private synchronized void check() {
+        check = null;
+        if (phase != Phase.HEADERS && phase != Phase.HANDLER) {
+            return;
+        }
+        long now = System.nanoTime();
+        Kind kind = null;
+        if (deadline != 0 && now - deadline >= 0) {
+            kind = phase == Phase.HEADERS ? Kind.HEADER : Kind.HANDLER;
+        } else if (phase == Phase.HANDLER) {
+            kind = stalled(readStartedAt, readBytes, readNanos, now);
+            if (kind == null) {
+                kind = stalled(writeStartedAt, writeBytes, writeNanos, now);
+            }
+        }
+        if (kind != null) {
+            expire(kind);
+        } else if (phase == Phase.HEADERS) {
+            schedule(deadline - now);
+        } else {
+            schedule(CHECK_INTERVAL_NANOS);
+        }
+    }
+
+    /**
+     * Judges a transfer in progress.
+     * @param startedAt when the pending read or write began, 0 if none is pending
+     * @param bytes     bytes transferred in this request so far
+     * @param nanos     time spent blocked in earlier reads or writes of this request
+     */
+    private Kind stalled(long startedAt, long bytes, long nanos, long now) {
+        if (startedAt == 0) {
+            return null;
+        }
+        long blocked = now - startedAt;
+        if (transferNanos > 0 && blocked >= transferNanos) {
+            return Kind.TRANSFER;
+        }
+        long total = nanos + blocked;
+        if (minBytesPerSecond > 0 && total >= RATE_GRACE_NANOS
+                && bytes * 1_000_000_000.0 / total < minBytesPerSecond) {
+            return Kind.RATE;
+        }
+        return null;
+    }
+
+    private void expire(Kind kind) {
+        phase = Phase.CLOSED;
+        expired = kind;
+        record(kind);
+        AccessLog.info("connection.timeout", kind.name().toLowerCase(Locale.ROOT) + " client=" + connection.getClientAddress());
+        int status = switch (kind) {
+            case HEADER -> 408;
+            case HANDLER -> 504;
+            // A stalled body upload is answered, a stalled download cannot be
+            case TRANSFER, RATE -> readStartedAt != 0 ? 408 : 0;
+            case IDLE -> 0;
+        };
+        boolean respond = status != 0 && responder.compareAndSet(NOBODY, TIMER);
+        // Claimed first, so a handler woken by the interrupt cannot send its own response
+        if (kind == Kind.HANDLER && worker != null) {
+            worker.interrupt();
+        }
+        if (respond) {
+            byte[] response = HttpResponse.serialize(status, HttpResponse.reasonPhrase(status),
+                    HttpServer.TEXT_CONTENT_TYPE, Map.of("connection", "close"), new ResponseBuffer(0));
+            wheel.schedule(connection::closeQuietly, RESPONSE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            RESPONDER.execute(() -> {
+                try {
+                    connection.getChannel().write(ByteBuffer.wrap(response));
+                } catch (IOException e) {
+                    // The client is gone; closing is all that is left
+                }
+                connection.closeQuietly();
+            });
+        } else {
+            connection.closeQuietly();
+        }
+    }
+
+    /**
+     * Counts a timeout for the metrics.
+     * @param kind the timeout that fired
+     */
+    static void record(Kind kind) {
+        TIMEOUTS[kind.ordinal()].increment();
+    }
+
+    static long timeouts(Kind kind) {
+        return TIMEOUTS[kind.ordinal()].sum();
+    }
+
+    /**
+     * Appends the timeout counters in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_timeouts_total Connections and requests cut off by a timeout\n");
+        out.append("# TYPE microspringboot_timeouts_total counter\n");
+        for (Kind kind : Kind.values()) {
+            out.append("microspringboot_timeouts_total{kind=\"").append(kind.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(timeouts(kind)).append('\n');
+        }
+    }
+
+    /**
+     * Marks the start of a read from the connection, so a blocked read is visible to the timer.
+     * @return the start time, to pass to {@link #readFinished}
+     */
+    long readStarted() {
+        if (!enabled) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        readStartedAt = start;
+        return start;
+    }
+
+    /**
+     * Marks the end of a read from the connection.
+     * @param start the value returned by {@link #readStarted}
+     * @param n     the bytes read, or -1
+     */
+    void readFinished(long start, int n) {
+        if (!enabled) {
+            return;
+        }
+        readStartedAt = 0;
+        readNanos += System.nanoTime() - start;
+        if (n > 0) {
+            readBytes += n;
+        }
+    }
+
+    /**
+     * Marks the start of a write to the connection, so a blocked write is visible to the
+     * timer, and so that a worker cannot write a response after the timer has answered
+     * the request.
+     * @return the start time, to pass to {@link #writeFinished}
+     * @throws IOException if the timer has already answered the request
+     */
+    long writeStarted() throws IOException {
+        if (!enabled) {
+            return 0;
+        }
+        if (responder.get() != WORKER && !responder.compareAndSet(NOBODY, WORKER)) {
+            throw new IOException("Response abandoned after a timeout");
+        }
+        long start = System.nanoTime();
+        writeStartedAt = start;
+        return start;
+    }
+
+    /**
+     * Marks the end of a write to the connection.
+     * @param start the value returned by {@link #writeStarted}
+     * @param n     the bytes written
+     */
+    void writeFinished(long start, long n) {
+        if (!enabled) {
+            return;
+        }
+        writeStartedAt = 0;
+        writeNanos += System.nanoTime() - start;
+        writeBytes += n;
+    }
+}
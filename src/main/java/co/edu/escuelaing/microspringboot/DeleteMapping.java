@@ -0,0 +1,19 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps HTTP DELETE requests for a path onto a static controller method.
+ * The request body can be bound to a parameter annotated with {@link RequestBody}.
+ *
+ * @author daniel.aldana-b
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface DeleteMapping {
+    public String value();
+
+}
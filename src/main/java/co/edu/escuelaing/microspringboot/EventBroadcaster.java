@@ -0,0 +1,389 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers the events of every {@link EventStream} from one thread. Subscribers on plain
+ * TCP connections are switched to non-blocking mode and registered with a selector: an
+ * event is written to each of them directly, and whatever a socket does not take at once
+ * waits in that subscriber's backlog until the selector reports it writable. Subscribers
+ * that cannot be selected, over TLS or HTTP/2, get the event in a queue drained by the
+ * thread writing their response. Either way an event is shared, not copied, between
+ * subscribers.
+ *
+ * <p>A comment line is sent on every stream when nothing else was sent for
+ * {@code microspringboot.sse.heartbeatMillis}, so proxies keep the connections open and
+ * dead clients are found.
+ *
+ * @author daniel.aldana-b
+ */
+final class EventBroadcaster implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(EventBroadcaster.class.getName());
+    /** Bytes a subscriber may fall behind before it is disconnected */
+    static final long MAX_BACKLOG_BYTES = Long.getLong("microspringboot.sse.maxBacklogBytes", 1024 * 1024);
+    /** Silence after which a heartbeat comment is sent */
+    static final long HEARTBEAT_MILLIS = Long.getLong("microspringboot.sse.heartbeatMillis", 15_000);
+    private static final ByteBuffer HEARTBEAT = ByteBuffer.wrap(":\n\n".getBytes(StandardCharsets.US_ASCII))
+            .asReadOnlyBuffer();
+    private static final LongAdder EVENTS = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final AtomicLong SUBSCRIBERS = new AtomicLong();
+    private static volatile EventBroadcaster shared;
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Streams with at least one subscriber; only touched by the broadcaster thread
+    private final Set<EventStream> streams = new HashSet<>();
+    private final ByteBuffer discard = ByteBuffer.allocate(512);
+    private long lastSent = System.nanoTime();
+
+    private EventBroadcaster() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Gets the broadcaster, starting its thread on first use.
+     * @return the broadcaster shared by all event streams
+     */
+    static EventBroadcaster shared() {
+        EventBroadcaster broadcaster = shared;
+        if (broadcaster == null) {
+            synchronized (EventBroadcaster.class) {
+                broadcaster = shared;
+                if (broadcaster == null) {
+                    try {
+                        broadcaster = new EventBroadcaster();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not open the event selector", e);
+                    }
+                    Thread thread = new Thread(broadcaster, "sse-broadcaster");
+                    thread.setDaemon(true);
+                    thread.start();
+                    shared = broadcaster;
+                }
+            }
+        }
+        return broadcaster;
+    }
+
+    void publish(EventStream stream, ByteBuffer event) {
+        EVENTS.increment();
+        execute(() -> {
+            lastSent = System.nanoTime();
+            for (Subscriber subscriber : new ArrayList<>(stream.subscribers)) {
+                deliver(subscriber, event);
+            }
+        });
+    }
+
+    void subscribe(Subscriber subscriber) {
+        execute(() -> {
+            try {
+                subscriber.open(selector);
+            } catch (IOException e) {
+                subscriber.close();
+                return;
+            }
+            subscriber.stream.subscribers.add(subscriber);
+            subscriber.stream.count.incrementAndGet();
+            SUBSCRIBERS.incrementAndGet();
+            streams.add(subscriber.stream);
+        });
+    }
+
+    void close(EventStream stream) {
+        execute(() -> {
+            for (Subscriber subscriber : new ArrayList<>(stream.subscribers)) {
+                remove(subscriber);
+            }
+        });
+    }
+
+    /**
+     * Ends every subscription, e.g. when the server stops. Returns without waiting if
+     * no event stream was ever used.
+     */
+    static void closeAll() {
+        EventBroadcaster broadcaster = shared;
+        if (broadcaster != null) {
+            broadcaster.execute(() -> {
+                for (EventStream stream : new ArrayList<>(broadcaster.streams)) {
+                    for (Subscriber subscriber : new ArrayList<>(stream.subscribers)) {
+                        broadcaster.remove(subscriber);
+                    }
+                }
+            });
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                long waitMillis = HEARTBEAT_MILLIS - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSent);
+                if (waitMillis > 0) {
+                    selector.select(waitMillis);
+                } else {
+                    selector.selectNow();
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ChannelSubscriber subscriber = (ChannelSubscriber) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            subscriber.readIgnored(discard);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            subscriber.flush();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        remove(subscriber);
+                    }
+                }
+                selector.selectedKeys().clear();
+                if (System.nanoTime() - lastSent >= TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS)) {
+                    lastSent = System.nanoTime();
+                    for (EventStream stream : new ArrayList<>(streams)) {
+                        for (Subscriber subscriber : new ArrayList<>(stream.subscribers)) {
+                            deliver(subscriber, HEARTBEAT);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Event broadcaster failed", e);
+            }
+        }
+    }
+
+    private void deliver(Subscriber subscriber, ByteBuffer event) {
+        boolean kept;
+        try {
+            kept = subscriber.offer(event.duplicate());
+        } catch (IOException e) {
+            kept = false;
+        }
+        if (!kept) {
+            if (subscriber.overflowed) {
+                DROPPED.increment();
+            }
+            remove(subscriber);
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        EventStream stream = subscriber.stream;
+        if (stream.subscribers.remove(subscriber)) {
+            stream.count.decrementAndGet();
+            SUBSCRIBERS.decrementAndGet();
+            if (stream.subscribers.isEmpty()) {
+                streams.remove(stream);
+            }
+        }
+        subscriber.close();
+    }
+
+    /** Drops one subscriber, e.g. after its writer failed */
+    private void close(Subscriber subscriber) {
+        execute(() -> remove(subscriber));
+    }
+
+    /**
+     * Appends the event stream metrics in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_sse_subscribers Open Server-Sent Events subscriptions\n");
+        out.append("# TYPE microspringboot_sse_subscribers gauge\n");
+        out.append("microspringboot_sse_subscribers ").append(SUBSCRIBERS.get()).append('\n');
+        out.append("# HELP microspringboot_sse_events_total Events published\n");
+        out.append("# TYPE microspringboot_sse_events_total counter\n");
+        out.append("microspringboot_sse_events_total ").append(EVENTS.sum()).append('\n');
+        out.append("# HELP microspringboot_sse_dropped_total Subscribers disconnected for falling behind\n");
+        out.append("# TYPE microspringboot_sse_dropped_total counter\n");
+        out.append("microspringboot_sse_dropped_total ").append(DROPPED.sum()).append('\n');
+    }
+
+    /** One client of an event stream; all methods run on the broadcaster thread */
+    abstract static class Subscriber {
+        final EventStream stream;
+        boolean overflowed;
+
+        Subscriber(EventStream stream) {
+            this.stream = stream;
+        }
+
+        void open(Selector selector) throws IOException {
+        }
+
+        /**
+         * Sends or queues an event.
+         * @param event a buffer of its own positioned at the event
+         * @return false if the subscriber has to be dropped
+         */
+        abstract boolean offer(ByteBuffer event) throws IOException;
+
+        abstract void close();
+    }
+
+    /** A subscriber on a plain TCP connection, written without blocking */
+    static final class ChannelSubscriber extends Subscriber {
+        private final Connection connection;
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> backlog = new ArrayDeque<>();
+        private long backlogBytes;
+        private SelectionKey key;
+
+        ChannelSubscriber(EventStream stream, Connection connection) {
+            super(stream);
+            this.connection = connection;
+            this.channel = connection.socketChannel();
+        }
+
+        @Override
+        void open(Selector selector) throws IOException {
+            channel.configureBlocking(false);
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        @Override
+        boolean offer(ByteBuffer event) throws IOException {
+            if (backlog.isEmpty()) {
+                channel.write(event);
+                if (!event.hasRemaining()) {
+                    return true;
+                }
+            }
+            backlog.add(event);
+            backlogBytes += event.remaining();
+            if (backlogBytes > MAX_BACKLOG_BYTES) {
+                overflowed = true;
+                return false;
+            }
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return true;
+        }
+
+        void flush() throws IOException {
+            ByteBuffer next;
+            while ((next = backlog.peek()) != null) {
+                int written = channel.write(next);
+                backlogBytes -= written;
+                if (next.hasRemaining()) {
+                    return;
+                }
+                backlog.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /** Drains anything the client sends; end of stream means it went away */
+        void readIgnored(ByteBuffer scratch) throws IOException {
+            int n;
+            do {
+                scratch.clear();
+                n = channel.read(scratch);
+            } while (n > 0);
+            if (n < 0) {
+                throw new IOException("Subscriber disconnected");
+            }
+        }
+
+        @Override
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            backlog.clear();
+            connection.closeQuietly();
+        }
+    }
+
+    /** A subscriber whose events are written by the thread serving its response */
+    static final class QueueSubscriber extends Subscriber {
+        private static final ByteBuffer END = ByteBuffer.allocate(0);
+        private final LinkedBlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private volatile boolean closed;
+
+        QueueSubscriber(EventStream stream) {
+            super(stream);
+        }
+
+        @Override
+        boolean offer(ByteBuffer event) {
+            if (closed) {
+                return false;
+            }
+            if (queuedBytes.addAndGet(event.remaining()) > MAX_BACKLOG_BYTES) {
+                overflowed = true;
+                return false;
+            }
+            queue.add(event);
+            return true;
+        }
+
+        @Override
+        void close() {
+            closed = true;
+            queue.clear();
+            queue.add(END);
+        }
+
+        /**
+         * Writes events until the subscription ends or the client goes away.
+         * @param out the response body
+         */
+        void writeTo(OutputStream out) {
+            byte[] copy = new byte[0];
+            try {
+                while (true) {
+                    ByteBuffer event = queue.take();
+                    if (event == END) {
+                        return;
+                    }
+                    int size = event.remaining();
+                    if (copy.length < size) {
+                        copy = new byte[Math.max(size, 1024)];
+                    }
+                    event.get(copy, 0, size);
+                    out.write(copy, 0, size);
+                    out.flush();
+                    queuedBytes.addAndGet(-size);
+                }
+            } catch (IOException e) {
+                // The client went away
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closed = true;
+                shared().close(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stream of Server-Sent Events shared by every client subscribed to it. A
+ * {@code @GetMapping} method returning an {@code EventStream} answers with
+ * {@code text/event-stream} and keeps the connection open; each call to
+ * {@link #publish(String, String)} then reaches all current subscribers.
+ *
+ * <pre>
+ * private static final EventStream NEWS = new EventStream();
+ *
+ * &#64;GetMapping("/news")
+ * public static EventStream news() {
+ *     return NEWS;
+ * }
+ * ...
+ * NEWS.publish("headline", "Hello subscribers");
+ * </pre>
+ *
+ * An event is serialized once, and the same bytes are written to every subscriber by the
+ * {@link EventBroadcaster} thread, so publishing neither blocks the caller nor costs a
+ * thread per subscriber. Subscribers that fall more than
+ * {@code microspringboot.sse.maxBacklogBytes} behind are disconnected; browsers reconnect
+ * on their own.
+ *
+ * @author daniel.aldana-b
+ */
+public final class EventStream {
+    private static final byte[] RESPONSE_HEAD = ("HTTP/1.1 200 OK\r\n"
+            + "content-type: text/event-stream; charset=utf-8\r\n"
+            + "cache-control: no-cache\r\n"
+            + "connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    // Writes the events of HTTP/1.1 subscribers over TLS, whose channel cannot be selected
+    private static final ExecutorService TLS_WRITERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "sse-tls");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched by the broadcaster thread
+    final Set<EventBroadcaster.Subscriber> subscribers = new HashSet<>();
+    final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Sends an unnamed event, delivered to the {@code onmessage} handler of an
+     * {@code EventSource}.
+     * @param data the event data; line breaks are sent as several data lines
+     */
+    public void publish(String data) {
+        publish(null, data);
+    }
+
+    /**
+     * Sends an event to every subscriber.
+     * @param event the event name, for {@code addEventListener} in the browser, or null
+     * @param data  the event data; line breaks are sent as several data lines
+     */
+    public void publish(String event, String data) {
+        EventBroadcaster.shared().publish(this, serialize(event, data));
+    }
+
+    /**
+     * Ends the stream for every current subscriber. The stream can still be subscribed
+     * to and published on afterwards.
+     */
+    public void close() {
+        EventBroadcaster.shared().close(this);
+    }
+
+    /**
+     * Returns how many clients are subscribed.
+     * @return the number of open subscriptions
+     */
+    public int subscribers() {
+        return count.get();
+    }
+
+    /**
+     * Encodes an event in the {@code text/event-stream} format.
+     * @return a read-only buffer shared by every subscriber
+     */
+    static ByteBuffer serialize(String event, String data) {
+        ResponseBuffer out = new ResponseBuffer(data.length() + 32);
+        if (event != null) {
+            out.writeAscii("event: ");
+            out.writeUtf8(event.replace('\r', ' ').replace('\n', ' '));
+            out.write('\n');
+        }
+        for (String line : data.split("\r\n|\r|\n", -1)) {
+            out.writeAscii("data: ");
+            out.writeUtf8(line);
+            out.write('\n');
+        }
+        out.write('\n');
+        return ByteBuffer.wrap(out.array(), 0, out.size()).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Answers a request with this stream and subscribes its client. Plain HTTP/1.1
+     * connections are handed over to the broadcaster and the calling worker returns at
+     * once. HTTP/2 streams are written by the calling thread until the subscription ends.
+     *
+     * @param request the request, carrying its connection if it came over HTTP/1.1
+     * @param out     where the response is written
+     * @throws IOException if the response head cannot be written
+     */
+    void subscribe(HttpRequest request, OutputStream out) throws IOException {
+        out.write(RESPONSE_HEAD);
+        out.flush();
+        Connection connection = request.getConnection();
+        if (connection == null) {
+            EventBroadcaster.QueueSubscriber subscriber = new EventBroadcaster.QueueSubscriber(this);
+            EventBroadcaster.shared().subscribe(subscriber);
+            subscriber.writeTo(out);
+            return;
+        }
+        // The response ends when the connection closes; the worker must neither close nor park it
+        connection.markUpgraded();
+        if (connection.isSecure() || connection.socketChannel() == null) {
+            EventBroadcaster.QueueSubscriber subscriber = new EventBroadcaster.QueueSubscriber(this);
+            EventBroadcaster.shared().subscribe(subscriber);
+            TLS_WRITERS.execute(() -> {
+                try {
+                    subscriber.writeTo(out);
+                } finally {
+                    connection.closeQuietly();
+                }
+            });
+        } else {
+            EventBroadcaster.shared().subscribe(new EventBroadcaster.ChannelSubscriber(this, connection));
+        }
+    }
+}
@@ -1,21 +1,72 @@
 package co.edu.escuelaing.microspringboot;
 
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 public class ExampleController {
-    private static final Map<String, String> users = new HashMap<>();
+    private static final Map<String, String> users = new ConcurrentHashMap<>();
+    // Pushes the user list to the browser whenever it changes
+    private static final EventStream userEvents = new EventStream();
+
+    @GetMapping("/users/events")
+    public static EventStream userEvents() {
+        return userEvents;
+    }
+
+    private static void usersChanged() {
+        userEvents.publish("users", new String(JsonWriter.toBytes(new TreeMap<>(users)), StandardCharsets.UTF_8));
+    }
+
     @GetMapping("/user")
     public static String info(@RequestParam("name") String name,
                              @RequestParam(value = "age", defaultValue = "0") String age) {
         users.put(name, age);
+        usersChanged();
         return "Hello " + name  + ", you are " + age + " years old";
     }
     @GetMapping("/userInfo")
+    @SingleFlight
     public static String getUser(@RequestParam("name") String name) {
         String age = users.get(name);
         return (age != null) ? "User " + name + " retrieved value: age is " + age : "User data not found for " + name;
     }
+    @GetMapping("/users")
+    public static Map<String, String> getUsers() {
+        return new TreeMap<>(users);
+    }
+
+    public record User(String name, int age) {}
+
+    @PostMapping("/users")
+    public static User addUser(@RequestBody User user) {
+        users.put(user.name(), String.valueOf(user.age()));
+        usersChanged();
+        return user;
+    }
+
+    @DeleteMapping("/users")
+    public static String deleteUser(@RequestParam("name") String name) {
+        if (users.remove(name) == null) {
+            return "User data not found for " + name;
+        }
+        usersChanged();
+        return "Deleted " + name;
+    }
+
+    @PutMapping("/upload")
+    public static Map<String, Long> upload(@RequestBody(maxBytes = 1L << 30) InputStream body) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = body.read(buffer)) >= 0) {
+            total += n;
+        }
+        return Map.of("bytes", total);
+    }
 }
@@ -13,6 +13,7 @@ public class GreetingController {
     private static final String template = "Hello, %s!";
     
     @GetMapping("/greeting")
+    @Cacheable(ttlMillis = 60_000, maxEntries = 10_000)
     public static String greeting(@RequestParam(value="name", defaultValue="World") String name){
         return "Hola " + name;
     }
@@ -12,6 +12,7 @@ package co.edu.escuelaing.microspringboot;
 public class HelloController {
 
 	@GetMapping("/hello")
+	@Cacheable(ttlMillis = 300_000, maxEntries = 1)
 	public static String index() {
 		return "Greetings from Spring Boot!";
 	}
@@ -0,0 +1,465 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * HPACK header compression for HTTP/2 (RFC 7541).
+ * A {@link Decoder} reads the header blocks of one connection and an {@link Encoder}
+ * writes the blocks sent back; each keeps the dynamic table the peer mirrors, so names and
+ * values repeated across requests on a connection (content-type, server, cookies...) cost
+ * a single byte after their first use. Header strings are Huffman coded when that is shorter.
+ *
+ * @author daniel.aldana-b
+ */
+final class Hpack {
+    /** Table size both ends start with */
+    static final int DEFAULT_TABLE_SIZE = 4096;
+    // Per-entry overhead counted against the table size
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[][] STATIC_TABLE = {
+            {":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"},
+            {":path", "/index.html"}, {":scheme", "http"}, {":scheme", "https"}, {":status", "200"},
+            {":status", "204"}, {":status", "206"}, {":status", "304"}, {":status", "400"},
+            {":status", "404"}, {":status", "500"}, {"accept-charset", ""}, {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""}, {"accept-ranges", ""}, {"accept", ""}, {"access-control-allow-origin", ""},
+            {"age", ""}, {"allow", ""}, {"authorization", ""}, {"cache-control", ""},
+            {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""}, {"content-length", ""},
+            {"content-location", ""}, {"content-range", ""}, {"content-type", ""}, {"cookie", ""},
+            {"date", ""}, {"etag", ""}, {"expect", ""}, {"expires", ""},
+            {"from", ""}, {"host", ""}, {"if-match", ""}, {"if-modified-since", ""},
+            {"if-none-match", ""}, {"if-range", ""}, {"if-unmodified-since", ""}, {"last-modified", ""},
+            {"link", ""}, {"location", ""}, {"max-forwards", ""}, {"proxy-authenticate", ""},
+            {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""},
+            {"retry-after", ""}, {"server", ""}, {"set-cookie", ""}, {"strict-transport-security", ""},
+            {"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""},
+            {"www-authenticate", ""}
+    };
+    // Static indexes by "name\0value" and by name (lowest index wins)
+    private static final Map<String, Integer> STATIC_FIELDS = new HashMap<>();
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+
+    // Huffman code of each octet, right-aligned, and its length in bits (RFC 7541 Appendix B)
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+            0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+            0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+            0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+            0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+            0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+            0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+            0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+            0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+            0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+            0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+            0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+            0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+            0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+            0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+            0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+            0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+            0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+            0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+            0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+            0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee
+    };
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26
+    };
+    private static final int EOS = 256;
+    // Decoding tree: node i has children TREE[2i] (bit 0) and TREE[2i + 1] (bit 1);
+    // a negative child is a leaf holding ~symbol, 0 means no child yet
+    private static final int[] TREE = new int[2 * 256];
+
+    static {
+        for (int i = 0; i < STATIC_TABLE.length; i++) {
+            STATIC_FIELDS.putIfAbsent(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i + 1);
+            STATIC_NAMES.putIfAbsent(STATIC_TABLE[i][0], i + 1);
+        }
+        int nodes = 1;
+        for (int symbol = 0; symbol <= EOS; symbol++) {
+            int code = symbol == EOS ? 0x3fffffff : HUFFMAN_CODES[symbol];
+            int length = symbol == EOS ? 30 : HUFFMAN_LENGTHS[symbol];
+            int node = 0;
+            for (int bit = length - 1; bit > 0; bit--) {
+                int slot = 2 * node + ((code >>> bit) & 1);
+                if (TREE[slot] == 0) {
+                    TREE[slot] = nodes++;
+                }
+                node = TREE[slot];
+            }
+            TREE[2 * node + (code & 1)] = ~symbol;
+        }
+    }
+
+    private Hpack() {
+    }
+
+    /**
+     * Decodes the header blocks received on one connection.
+     */
+    static final class Decoder {
+        private final DynamicTable table;
+        // The limit announced in our SETTINGS_HEADER_TABLE_SIZE
+        private final int maxTableSize;
+
+        Decoder(int maxTableSize) {
+            this.maxTableSize = maxTableSize;
+            this.table = new DynamicTable(maxTableSize);
+        }
+
+        /**
+         * Decodes a complete header block.
+         *
+         * @param block the block, after any CONTINUATION frames were appended
+         * @param sink  receives each field, in order
+         * @throws IOException if the block is malformed (a compression error)
+         */
+        void decode(byte[] block, int length, BiConsumer<String, String> sink) throws IOException {
+            int[] pos = {0};
+            boolean fieldSeen = false;
+            while (pos[0] < length) {
+                int b = block[pos[0]] & 0xFF;
+                if ((b & 0x80) != 0) {
+                    String[] field = field(readInt(block, length, pos, 7));
+                    sink.accept(field[0], field[1]);
+                    fieldSeen = true;
+                } else if ((b & 0xC0) == 0x40) {
+                    String[] field = literal(block, length, pos, 6);
+                    table.add(field[0], field[1]);
+                    sink.accept(field[0], field[1]);
+                    fieldSeen = true;
+                } else if ((b & 0xE0) == 0x20) {
+                    if (fieldSeen) {
+                        throw new IOException("Table size update after a header field");
+                    }
+                    int size = readInt(block, length, pos, 5);
+                    if (size > maxTableSize) {
+                        throw new IOException("Table size update above the announced limit: " + size);
+                    }
+                    table.resize(size);
+                } else {
+                    // Literal without indexing or never indexed
+                    String[] field = literal(block, length, pos, 4);
+                    sink.accept(field[0], field[1]);
+                    fieldSeen = true;
+                }
+            }
+        }
+
+        private String[] literal(byte[] block, int length, int[] pos, int prefix) throws IOException {
+            int index = readInt(block, length, pos, prefix);
+            String name = index == 0 ? readString(block, length, pos) : field(index)[0];
+            return new String[] {name, readString(block, length, pos)};
+        }
+
+        private String[] field(int index) throws IOException {
+            if (index >= 1 && index <= STATIC_TABLE.length) {
+                return STATIC_TABLE[index - 1];
+            }
+            String[] entry = index > STATIC_TABLE.length ? table.get(index - STATIC_TABLE.length - 1) : null;
+            if (entry == null) {
+                throw new IOException("Invalid header table index: " + index);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Encodes the header blocks sent on one connection. Blocks must be written to the
+     * connection in the order they were encoded, since each one updates the table.
+     */
+    static final class Encoder {
+        private final DynamicTable table = new DynamicTable(DEFAULT_TABLE_SIZE);
+        // Smallest size the table went through since the last block, or -1
+        private int pendingMinSize = -1;
+
+        /**
+         * Applies the peer's SETTINGS_HEADER_TABLE_SIZE. The table never grows past the
+         * default size, which is plenty for response headers.
+         * @param size the size the peer allows
+         */
+        void setMaxTableSize(int size) {
+            int target = Math.min(size, DEFAULT_TABLE_SIZE);
+            if (target != table.maxSize) {
+                pendingMinSize = pendingMinSize < 0 ? target : Math.min(pendingMinSize, target);
+                table.resize(target);
+            }
+        }
+
+        /**
+         * Starts a header block, announcing any pending table size change.
+         * @param out receives the encoded block
+         */
+        void beginBlock(ResponseBuffer out) {
+            if (pendingMinSize >= 0) {
+                writeInt(out, 0x20, 5, pendingMinSize);
+                if (pendingMinSize != table.maxSize) {
+                    writeInt(out, 0x20, 5, table.maxSize);
+                }
+                pendingMinSize = -1;
+            }
+        }
+
+        /**
+         * Encodes one field.
+         * @param name      the lower-case name
+         * @param value     the value
+         * @param indexable false for values that should not enter the table, such as lengths
+         *                  or secrets
+         * @param out       receives the encoded field
+         */
+        void encode(String name, String value, boolean indexable, ResponseBuffer out) {
+            Integer exact = STATIC_FIELDS.get(name + '\0' + value);
+            if (exact != null) {
+                writeInt(out, 0x80, 7, exact);
+                return;
+            }
+            int dynamic = table.indexOf(name, value);
+            if (dynamic >= 0) {
+                writeInt(out, 0x80, 7, STATIC_TABLE.length + 1 + dynamic);
+                return;
+            }
+            Integer nameIndex = STATIC_NAMES.get(name);
+            if (nameIndex == null) {
+                int dynamicName = table.indexOfName(name);
+                nameIndex = dynamicName >= 0 ? STATIC_TABLE.length + 1 + dynamicName : 0;
+            }
+            if (indexable) {
+                writeInt(out, 0x40, 6, nameIndex);
+            } else {
+                writeInt(out, 0x10, 4, nameIndex);
+            }
+            if (nameIndex == 0) {
+                writeString(out, name);
+            }
+            writeString(out, value);
+            if (indexable) {
+                table.add(name, value);
+            }
+        }
+    }
+
+    /** The dynamic table, newest entry first */
+    private static final class DynamicTable {
+        private String[][] entries = new String[16][];
+        private int head;
+        private int count;
+        private int size;
+        private int maxSize;
+
+        DynamicTable(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        String[] get(int index) {
+            return index < count ? entries[(head + index) % entries.length] : null;
+        }
+
+        int indexOf(String name, String value) {
+            for (int i = 0; i < count; i++) {
+                String[] entry = get(i);
+                if (entry[0].equals(name) && entry[1].equals(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int indexOfName(String name) {
+            for (int i = 0; i < count; i++) {
+                if (get(i)[0].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void add(String name, String value) {
+            int entrySize = sizeOf(name, value);
+            evict(maxSize - entrySize);
+            if (entrySize > maxSize) {
+                // An entry larger than the table empties it and is not added
+                return;
+            }
+            if (count == entries.length) {
+                String[][] grown = new String[entries.length * 2][];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = get(i);
+                }
+                entries = grown;
+                head = 0;
+            }
+            head = (head - 1 + entries.length) % entries.length;
+            entries[head] = new String[] {name, value};
+            count++;
+            size += entrySize;
+        }
+
+        void resize(int newMaxSize) {
+            maxSize = newMaxSize;
+            evict(newMaxSize);
+        }
+
+        private void evict(int target) {
+            while (count > 0 && size > target) {
+                String[] oldest = get(count - 1);
+                size -= sizeOf(oldest[0], oldest[1]);
+                entries[(head + count - 1) % entries.length] = null;
+                count--;
+            }
+        }
+
+        private static int sizeOf(String name, String value) {
+            return name.length() + value.length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Reads an integer with an N-bit prefix (RFC 7541 section 5.1).
+     */
+    static int readInt(byte[] block, int length, int[] pos, int prefix) throws IOException {
+        int max = (1 << prefix) - 1;
+        int value = block[pos[0]++] & max;
+        if (value < max) {
+            return value;
+        }
+        for (int shift = 0; ; shift += 7) {
+            if (pos[0] >= length || shift > 21) {
+                throw new IOException("Truncated or oversized integer");
+            }
+            int b = block[pos[0]++] & 0xFF;
+            value += (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    static void writeInt(ResponseBuffer out, int flags, int prefix, int value) {
+        int max = (1 << prefix) - 1;
+        if (value < max) {
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static String readString(byte[] block, int length, int[] pos) throws IOException {
+        if (pos[0] >= length) {
+            throw new IOException("Truncated header block");
+        }
+        boolean huffman = (block[pos[0]] & 0x80) != 0;
+        int size = readInt(block, length, pos, 7);
+        if (size > length - pos[0]) {
+            throw new IOException("Truncated header string");
+        }
+        int start = pos[0];
+        pos[0] += size;
+        return huffman ? huffmanDecode(block, start, size)
+                : new String(block, start, size, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeString(ResponseBuffer out, String value) {
+        int huffmanBits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            huffmanBits += HUFFMAN_LENGTHS[value.charAt(i) & 0xFF];
+        }
+        int huffmanLength = (huffmanBits + 7) / 8;
+        if (huffmanLength >= value.length()) {
+            writeInt(out, 0, 7, value.length());
+            out.writeAscii(value);
+            return;
+        }
+        writeInt(out, 0x80, 7, huffmanLength);
+        long bits = 0;
+        int pending = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int symbol = value.charAt(i) & 0xFF;
+            bits = (bits << HUFFMAN_LENGTHS[symbol]) | HUFFMAN_CODES[symbol];
+            pending += HUFFMAN_LENGTHS[symbol];
+            while (pending >= 8) {
+                pending -= 8;
+                out.write((int) (bits >>> pending));
+            }
+        }
+        if (pending > 0) {
+            // Pad with the most significant bits of EOS, all ones
+            out.write((int) ((bits << (8 - pending)) | (0xFF >>> pending)));
+        }
+    }
+
+    /**
+     * Decodes a Huffman coded string.
+     * @throws IOException if the string contains EOS or is badly padded
+     */
+    static String huffmanDecode(byte[] data, int offset, int length) throws IOException {
+        StringBuilder out = new StringBuilder(length * 8 / 5);
+        int node = 0;
+        int depth = 0;
+        boolean allOnes = true;
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xFF;
+            for (int bit = 7; bit >= 0; bit--) {
+                int one = (b >>> bit) & 1;
+                int next = TREE[2 * node + one];
+                allOnes &= one == 1;
+                depth++;
+                if (next < 0) {
+                    int symbol = ~next;
+                    if (symbol == EOS) {
+                        throw new IOException("EOS in Huffman string");
+                    }
+                    out.append((char) symbol);
+                    node = 0;
+                    depth = 0;
+                    allOnes = true;
+                } else if (next == 0) {
+                    throw new IOException("Invalid Huffman code");
+                } else {
+                    node = next;
+                }
+            }
+        }
+        if (depth > 7 || !allOnes) {
+            throw new IOException("Invalid Huffman padding");
+        }
+        return out.toString();
+    }
+}
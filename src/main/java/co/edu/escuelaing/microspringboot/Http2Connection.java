@@ -0,0 +1,1263 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves a connection that switched to cleartext HTTP/2 (h2c, RFC 9113).
+ * A client gets there either with prior knowledge, opening the connection with the HTTP/2
+ * preface, or through {@code Upgrade: h2c} on an HTTP/1.1 request, which then becomes
+ * stream 1. One reader thread per connection parses the frames; every stream is answered
+ * on a shared pool through {@link HttpServer#respond}, the same path HTTP/1.1 requests take,
+ * and the HTTP/1.1 response it writes is translated into HEADERS and DATA frames. Header
+ * blocks are compressed with {@link Hpack}, and both directions are flow controlled, so a
+ * slow stream never holds back the others sharing the connection.
+ *
+ * @author daniel.aldana-b
+ */
+final class Http2Connection {
+    private static final Logger LOGGER = Logger.getLogger(Http2Connection.class.getName());
+
+    /** The connection preface a client sends first */
+    static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+    /** Streams a client may have open at once; more are refused */
+    static final int MAX_CONCURRENT_STREAMS = 100;
+
+    // Frame types
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+    // Frame flags
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int PRIORITY_FLAG = 0x20;
+    // Error codes
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int INTERNAL_ERROR = 0x2;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int STREAM_CLOSED = 0x5;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int REFUSED_STREAM = 0x7;
+    private static final int CANCEL = 0x8;
+    private static final int COMPRESSION_ERROR = 0x9;
+    private static final int ENHANCE_YOUR_CALM = 0xb;
+    // Settings
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int DEFAULT_WINDOW = 65_535;
+    private static final int DEFAULT_FRAME_SIZE = 16_384;
+    private static final int MAX_FRAME_SIZE = 16_777_215;
+    // Receive window of each stream, which bounds the request body buffered per stream
+    private static final int STREAM_WINDOW = 256 * 1024;
+    // Receive window of the whole connection
+    private static final int CONNECTION_WINDOW = 1024 * 1024;
+    // Largest header block accepted across HEADERS and CONTINUATION frames, before decoding
+    private static final int MAX_HEADER_BLOCK = 4 * HttpRequest.MAX_HEADER_BYTES;
+    // Largest response head a handler may write
+    private static final int MAX_RESPONSE_HEAD = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    // Headers that only mean something to an HTTP/1.1 connection
+    private static final Set<String> CONNECTION_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+    private static final Set<Http2Connection> OPEN = ConcurrentHashMap.newKeySet();
+    private static final LongAdder STREAMS_TOTAL = new LongAdder();
+    private static final LongAdder STREAMS_REFUSED = new LongAdder();
+    private static final ExecutorService READERS = daemonPool("h2-reader");
+    private static final ExecutorService HANDLERS = daemonPool("h2-stream");
+
+    private final Connection connection;
+    private final InputStream in;
+    private final OutputStream out;
+    private final long idleTimeoutNanos;
+    private final long transferTimeoutMillis;
+    private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    // Serializes frames on the socket; the encoder must see header blocks in the order they are sent
+    private final Object writeLock = new Object();
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    // Send flow control, guarded by this
+    private long sendWindow = DEFAULT_WINDOW;
+    private int initialSendWindow = DEFAULT_WINDOW;
+    private volatile int maxFrameSize = DEFAULT_FRAME_SIZE;
+    private volatile int lastStreamId;
+    private volatile boolean goingAway;
+    private volatile boolean closed;
+    private volatile long lastActive = System.nanoTime();
+    private volatile TimerWheel.Timeout idleCheck;
+    // Reader thread state
+    private int receiveWindow = CONNECTION_WINDOW;
+    private boolean settingsReceived;
+    private ResponseBuffer headerBlock;
+    private int headerStream;
+    private int headerFlags;
+
+    private Http2Connection(Connection connection) {
+        this.connection = connection;
+        this.in = connection.getInputStream();
+        this.out = connection.getOutputStream();
+        ServerConfig config = connection.getConfig();
+        this.idleTimeoutNanos = config != null ? TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis()) : 0;
+        this.transferTimeoutMillis = config != null ? config.getTransferTimeoutMillis() : 0;
+    }
+
+    private static ExecutorService daemonPool(String name) {
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Tells whether a request line is the start of the HTTP/2 connection preface, which a
+     * client with prior knowledge sends instead of an HTTP/1.1 request.
+     * @param request the request read from the connection
+     * @return true if the connection speaks HTTP/2 from here on
+     */
+    static boolean isPreface(HttpRequest request) {
+        return "PRI".equals(request.getMethod()) && "HTTP/2.0".equals(request.getVersion())
+                && "*".equals(request.getUri().toString());
+    }
+
+    /**
+     * Tells whether a request asks to upgrade to h2c. Requests with a body are served as
+     * HTTP/1.1 instead, which the client must accept.
+     * @param request the request read from the connection
+     * @return true if the connection should switch protocols after this request
+     */
+    static boolean isUpgrade(HttpRequest request) {
+        String upgrade = request.getHeader("upgrade");
+        String settings = request.getHeader("http2-settings");
+        if (upgrade == null || settings == null || !"HTTP/1.1".equals(request.getVersion()) || request.isChunked()) {
+            return false;
+        }
+        try {
+            if (request.getContentLength() > 0) {
+                return false;
+            }
+        } catch (ResponseStatusException e) {
+            return false;
+        }
+        for (String token : upgrade.split(",")) {
+            if ("h2c".equalsIgnoreCase(token.trim())) {
+                return decodeSettings(settings) != null;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] decodeSettings(String value) {
+        try {
+            byte[] settings = Base64.getUrlDecoder().decode(value.trim());
+            return settings.length % 6 == 0 ? settings : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Switches a connection to HTTP/2. After an upgrade request the client is sent
+     * {@code 101 Switching Protocols} and the request is answered as stream 1. From here on
+     * the connection belongs to its own reader thread.
+     *
+     * @param connection the connection
+     * @param request    the preface or upgrade request that was just read
+     * @throws IOException if the switch cannot be announced
+     */
+    static void open(Connection connection, HttpRequest request) throws IOException {
+        Http2Connection h2 = new Http2Connection(connection);
+        HttpRequest first = null;
+        if (!isPreface(request)) {
+            h2.applySettings(decodeSettings(request.getHeader("http2-settings")));
+            OutputStream out = connection.getOutputStream();
+            out.write("HTTP/1.1 101 Switching Protocols\r\nconnection: Upgrade\r\nupgrade: h2c\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            Map<String, String> headers = new LinkedHashMap<>(request.getHeaders());
+            headers.keySet().removeAll(List.of("connection", "upgrade", "http2-settings"));
+            first = new HttpRequest(request.getMethod(), request.getUri(), "HTTP/2.0", headers,
+                    InputStream.nullInputStream(), null);
+        }
+        connection.markUpgraded();
+        h2.writeSettings();
+        OPEN.add(h2);
+        h2.scheduleIdleCheck(h2.idleTimeoutNanos);
+        HttpRequest upgraded = first;
+        READERS.execute(() -> h2.run(upgraded));
+    }
+
+    private void run(HttpRequest upgraded) {
+        int error = NO_ERROR;
+        String reason = "";
+        try {
+            readPreface(upgraded != null);
+            if (upgraded != null) {
+                lastStreamId = 1;
+                Stream stream = openStream(1, true);
+                serve(stream, upgraded, null);
+            }
+            while (readFrame()) {
+                // Frames are handled as they are read
+            }
+        } catch (ConnectionError e) {
+            error = e.code;
+            reason = e.getMessage();
+            LOGGER.log(Level.FINE, "HTTP/2 connection error", e);
+        } catch (IOException e) {
+            // The client went away or the connection was closed here
+            error = -1;
+        } finally {
+            if (error >= 0 && !closed) {
+                try {
+                    goAway(error, reason);
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+            close();
+        }
+    }
+
+    private void readPreface(boolean full) throws IOException {
+        // With prior knowledge the request line and blank line were already read as HTTP/1.1
+        String expected = full ? PREFACE : PREFACE.substring(PREFACE.indexOf("SM"));
+        byte[] preface = in.readNBytes(expected.length());
+        if (!expected.equals(new String(preface, StandardCharsets.ISO_8859_1))) {
+            throw new ConnectionError(PROTOCOL_ERROR, "Invalid connection preface");
+        }
+    }
+
+    /**
+     * Reads and handles one frame.
+     * @return false at the end of the stream
+     */
+    private boolean readFrame() throws IOException {
+        byte[] header = in.readNBytes(9);
+        if (header.length == 0) {
+            return false;
+        }
+        if (header.length < 9) {
+            throw new EOFException("Connection closed inside a frame header");
+        }
+        int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+        int type = header[3] & 0xFF;
+        int flags = header[4] & 0xFF;
+        int streamId = readInt(header, 5) & 0x7FFFFFFF;
+        // We never raise SETTINGS_MAX_FRAME_SIZE above its default
+        if (length > DEFAULT_FRAME_SIZE) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "Frame of " + length + " bytes");
+        }
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length) {
+            throw new EOFException("Connection closed inside a frame");
+        }
+        lastActive = System.nanoTime();
+        if (headerBlock != null && (type != CONTINUATION || streamId != headerStream)) {
+            throw new ConnectionError(PROTOCOL_ERROR, "Expected CONTINUATION of stream " + headerStream);
+        }
+        if (!settingsReceived && type != SETTINGS) {
+            throw new ConnectionError(PROTOCOL_ERROR, "Connection must start with SETTINGS");
+        }
+        switch (type) {
+            case DATA -> onData(streamId, flags, payload);
+            case HEADERS -> onHeaders(streamId, flags, payload);
+            case PRIORITY -> onPriority(streamId, payload);
+            case RST_STREAM -> onReset(streamId, payload);
+            case SETTINGS -> onSettings(streamId, flags, payload);
+            case PUSH_PROMISE -> throw new ConnectionError(PROTOCOL_ERROR, "Clients cannot push");
+            case PING -> onPing(streamId, flags, payload);
+            case GOAWAY -> onGoAway(streamId);
+            case WINDOW_UPDATE -> onWindowUpdate(streamId, payload);
+            case CONTINUATION -> onContinuation(streamId, flags, payload);
+            default -> {
+                // Unknown frame types are ignored
+            }
+        }
+        return true;
+    }
+
+    private void onData(int streamId, int flags, byte[] payload) throws IOException {
+        if (streamId == 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        receiveWindow -= payload.length;
+        if (receiveWindow < 0) {
+            throw new ConnectionError(FLOW_CONTROL_ERROR, "Connection window exceeded");
+        }
+        // Streams have windows of their own, so the connection window is replenished at once
+        if (receiveWindow <= CONNECTION_WINDOW / 2) {
+            writeWindowUpdate(0, CONNECTION_WINDOW - receiveWindow);
+            receiveWindow = CONNECTION_WINDOW;
+        }
+        int start = 0;
+        int end = payload.length;
+        if ((flags & PADDED) != 0) {
+            if (payload.length == 0 || (payload[0] & 0xFF) >= payload.length) {
+                throw new ConnectionError(PROTOCOL_ERROR, "Invalid padding");
+            }
+            start = 1;
+            end -= payload[0] & 0xFF;
+        }
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) {
+                throw new ConnectionError(PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            }
+            // Already closed or reset here; the client may not have noticed yet
+            return;
+        }
+        if (stream.remoteClosed) {
+            resetStream(stream, STREAM_CLOSED);
+            return;
+        }
+        if (!stream.body.offer(payload, start, end - start, payload.length)) {
+            resetStream(stream, FLOW_CONTROL_ERROR);
+            return;
+        }
+        if ((flags & END_STREAM) != 0) {
+            stream.remoteClosed = true;
+            stream.body.finish();
+        }
+    }
+
+    private void onHeaders(int streamId, int flags, byte[] payload) throws IOException {
+        if (streamId == 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "HEADERS on stream 0");
+        }
+        int start = 0;
+        int padding = 0;
+        if ((flags & PADDED) != 0) {
+            if (payload.length == 0) {
+                throw new ConnectionError(PROTOCOL_ERROR, "Invalid padding");
+            }
+            padding = payload[0] & 0xFF;
+            start = 1;
+        }
+        if ((flags & PRIORITY_FLAG) != 0) {
+            // Priorities are not used: streams are served as they arrive
+            start += 5;
+        }
+        if (start + padding > payload.length) {
+            throw new ConnectionError(PROTOCOL_ERROR, "Invalid padding");
+        }
+        headerStream = streamId;
+        headerFlags = flags;
+        headerBlock = new ResponseBuffer(payload.length);
+        headerBlock.write(payload, start, payload.length - padding - start);
+        if ((flags & END_HEADERS) != 0) {
+            endHeaders();
+        }
+    }
+
+    private void onContinuation(int streamId, int flags, byte[] payload) throws IOException {
+        if (headerBlock == null) {
+            throw new ConnectionError(PROTOCOL_ERROR, "Unexpected CONTINUATION");
+        }
+        if (headerBlock.size() + payload.length > MAX_HEADER_BLOCK) {
+            throw new ConnectionError(ENHANCE_YOUR_CALM, "Header block too large");
+        }
+        headerBlock.write(payload, 0, payload.length);
+        if ((flags & END_HEADERS) != 0) {
+            endHeaders();
+        }
+    }
+
+    /**
+     * Decodes a complete header block and starts its stream, or ends the request body when
+     * the block carries trailers.
+     */
+    private void endHeaders() throws IOException {
+        int streamId = headerStream;
+        boolean endStream = (headerFlags & END_STREAM) != 0;
+        ResponseBuffer block = headerBlock;
+        headerBlock = null;
+        RequestHead head = new RequestHead();
+        try {
+            // Always decoded, even for refused streams or past the size limit, to keep the
+            // header table in step
+            decoder.decode(block.array(), block.size(), head::add);
+        } catch (IOException e) {
+            throw new ConnectionError(COMPRESSION_ERROR, e.getMessage());
+        }
+        if (streamId <= lastStreamId) {
+            Stream stream = streams.get(streamId);
+            if (stream != null && !stream.remoteClosed && endStream) {
+                // Trailers are not exposed; they just end the body
+                stream.remoteClosed = true;
+                stream.body.finish();
+            } else if (stream != null) {
+                resetStream(stream, PROTOCOL_ERROR);
+            }
+            return;
+        }
+        if (streamId % 2 == 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "Client stream with even id " + streamId);
+        }
+        lastStreamId = streamId;
+        if (goingAway) {
+            // Above the id announced in GOAWAY; the client may retry it on a new connection
+            return;
+        }
+        if (streams.size() >= MAX_CONCURRENT_STREAMS) {
+            STREAMS_REFUSED.increment();
+            writeReset(streamId, REFUSED_STREAM);
+            return;
+        }
+        Stream stream = openStream(streamId, endStream);
+        HttpRequest request = head.toRequest(stream.body);
+        if (request == null) {
+            // A head cut off at the size limit before its pseudo-headers cannot be answered
+            resetStream(stream, head.tooLarge ? ENHANCE_YOUR_CALM : PROTOCOL_ERROR);
+            finishStream(stream);
+            return;
+        }
+        byte[] rejection = head.tooLarge
+                ? HttpServer.errorResponse(new ResponseStatusException(431, "Request header fields too large"))
+                : null;
+        serve(stream, request, rejection);
+    }
+
+    private void onPriority(int streamId, byte[] payload) throws IOException {
+        if (streamId == 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "PRIORITY on stream 0");
+        }
+        if (payload.length != 5) {
+            writeReset(streamId, FRAME_SIZE_ERROR);
+        }
+    }
+
+    private void onReset(int streamId, byte[] payload) throws IOException {
+        if (payload.length != 4) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "RST_STREAM of " + payload.length + " bytes");
+        }
+        if (streamId == 0 || streamId > lastStreamId) {
+            throw new ConnectionError(PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        }
+        Stream stream = streams.get(streamId);
+        if (stream != null) {
+            // The handler is interrupted; it has nobody left to answer
+            stream.cancel(new IOException("Stream " + streamId + " reset by the client"), true);
+        }
+    }
+
+    private void onSettings(int streamId, int flags, byte[] payload) throws IOException {
+        if (streamId != 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+        }
+        if ((flags & ACK) != 0) {
+            if (payload.length != 0) {
+                throw new ConnectionError(FRAME_SIZE_ERROR, "SETTINGS acknowledgement with a payload");
+            }
+            return;
+        }
+        if (payload.length % 6 != 0) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "SETTINGS of " + payload.length + " bytes");
+        }
+        applySettings(payload);
+        settingsReceived = true;
+        writeFrame(SETTINGS, ACK, 0, EMPTY, 0, 0);
+    }
+
+    private void applySettings(byte[] payload) throws ConnectionError {
+        for (int i = 0; i + 6 <= payload.length; i += 6) {
+            int id = ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+            int value = readInt(payload, i + 2);
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE -> {
+                    synchronized (writeLock) {
+                        encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    }
+                }
+                case SETTINGS_ENABLE_PUSH -> {
+                    if (value != 0 && value != 1) {
+                        throw new ConnectionError(PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH");
+                    }
+                }
+                case SETTINGS_INITIAL_WINDOW_SIZE -> {
+                    if (value < 0) {
+                        throw new ConnectionError(FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                    }
+                    synchronized (this) {
+                        int delta = value - initialSendWindow;
+                        initialSendWindow = value;
+                        for (Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                            if (stream.sendWindow > Integer.MAX_VALUE) {
+                                throw new ConnectionError(FLOW_CONTROL_ERROR, "Stream window overflow");
+                            }
+                        }
+                        notifyAll();
+                    }
+                }
+                case SETTINGS_MAX_FRAME_SIZE -> {
+                    if (value < DEFAULT_FRAME_SIZE || value > MAX_FRAME_SIZE) {
+                        throw new ConnectionError(PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                    }
+                    maxFrameSize = value;
+                }
+                default -> {
+                    // The client's stream and header list limits do not constrain a server that never pushes
+                }
+            }
+        }
+    }
+
+    private void onPing(int streamId, int flags, byte[] payload) throws IOException {
+        if (streamId != 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "PING on stream " + streamId);
+        }
+        if (payload.length != 8) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "PING of " + payload.length + " bytes");
+        }
+        if ((flags & ACK) == 0) {
+            writeFrame(PING, ACK, 0, payload, 0, 8);
+        }
+    }
+
+    private void onGoAway(int streamId) throws IOException {
+        if (streamId != 0) {
+            throw new ConnectionError(PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+        }
+        goingAway = true;
+        if (streams.isEmpty()) {
+            close();
+        }
+    }
+
+    private void onWindowUpdate(int streamId, byte[] payload) throws IOException {
+        if (payload.length != 4) {
+            throw new ConnectionError(FRAME_SIZE_ERROR, "WINDOW_UPDATE of " + payload.length + " bytes");
+        }
+        int increment = readInt(payload, 0) & 0x7FFFFFFF;
+        if (streamId == 0) {
+            if (increment == 0) {
+                throw new ConnectionError(PROTOCOL_ERROR, "Zero connection window increment");
+            }
+            synchronized (this) {
+                if (sendWindow + increment > Integer.MAX_VALUE) {
+                    throw new ConnectionError(FLOW_CONTROL_ERROR, "Connection window overflow");
+                }
+                sendWindow += increment;
+                notifyAll();
+            }
+            return;
+        }
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            return;
+        }
+        boolean overflow;
+        synchronized (this) {
+            overflow = increment == 0 || stream.sendWindow + increment > Integer.MAX_VALUE;
+            if (!overflow) {
+                stream.sendWindow += increment;
+                notifyAll();
+            }
+        }
+        if (overflow) {
+            resetStream(stream, increment == 0 ? PROTOCOL_ERROR : FLOW_CONTROL_ERROR);
+        }
+    }
+
+    private Stream openStream(int streamId, boolean remoteClosed) {
+        Stream stream = new Stream(streamId);
+        synchronized (this) {
+            stream.sendWindow = initialSendWindow;
+        }
+        if (remoteClosed) {
+            stream.remoteClosed = true;
+            stream.body.finish();
+        }
+        streams.put(streamId, stream);
+        STREAMS_TOTAL.increment();
+        return stream;
+    }
+
+    /**
+     * Answers a stream on the handler pool.
+     * @param rejection a response decided while reading the headers, or null
+     */
+    private void serve(Stream stream, HttpRequest request, byte[] rejection) {
+        HANDLERS.execute(() -> {
+            long startNanos = System.nanoTime();
+            synchronized (stream) {
+                stream.handler = Thread.currentThread();
+            }
+            StreamOutput response = new StreamOutput(stream);
+            try {
+                RequestTrace.begin(startNanos);
+                HttpServer.Admission admitted = rejection != null ? HttpServer.Admission.rejected(rejection)
+                        : HttpServer.admit(connection.getClientAddress(), request);
+                int status = HttpServer.respond(request, response, admitted, startNanos, response::count);
+                response.finish(status);
+            } catch (Exception e) {
+                if (!stream.reset && !closed) {
+                    LOGGER.log(Level.SEVERE, "Stream " + stream.id + " failed", e);
+                    resetQuietly(stream, INTERNAL_ERROR);
+                }
+            } finally {
+                synchronized (stream) {
+                    stream.handler = null;
+                    // Clear an interrupt from a reset that came in as the handler finished
+                    Thread.interrupted();
+                }
+                finishStream(stream);
+            }
+        });
+    }
+
+    /**
+     * Forgets a stream whose response is complete. A client still sending the request body
+     * is told to stop.
+     */
+    private void finishStream(Stream stream) {
+        if (!stream.remoteClosed && !stream.reset) {
+            resetQuietly(stream, NO_ERROR);
+        }
+        stream.body.fail(new IOException("Stream " + stream.id + " closed"));
+        streams.remove(stream.id);
+        lastActive = System.nanoTime();
+        if (goingAway && streams.isEmpty()) {
+            close();
+        }
+    }
+
+    private void resetStream(Stream stream, int code) throws IOException {
+        stream.cancel(new IOException("Stream " + stream.id + " reset"), false);
+        writeReset(stream.id, code);
+    }
+
+    private void resetQuietly(Stream stream, int code) {
+        try {
+            resetStream(stream, code);
+        } catch (IOException e) {
+            // The connection is failing; its reader will close it
+        }
+    }
+
+    /**
+     * Takes as much of the send windows as can go in one DATA frame, waiting for the client
+     * to open them if they are exhausted.
+     */
+    private int reserve(Stream stream, int wanted) throws IOException {
+        long waitUntil = transferTimeoutMillis > 0 ? System.currentTimeMillis() + transferTimeoutMillis : 0;
+        synchronized (this) {
+            while ((sendWindow <= 0 || stream.sendWindow <= 0) && !stream.reset && !closed) {
+                long wait = waitUntil == 0 ? 0 : waitUntil - System.currentTimeMillis();
+                if (waitUntil != 0 && wait <= 0) {
+                    break;
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the flow control window");
+                }
+            }
+            if (closed || stream.reset) {
+                throw new IOException("Stream " + stream.id + " was reset");
+            }
+            if (sendWindow > 0 && stream.sendWindow > 0) {
+                int n = (int) Math.min(Math.min(wanted, maxFrameSize), Math.min(sendWindow, stream.sendWindow));
+                sendWindow -= n;
+                stream.sendWindow -= n;
+                return n;
+            }
+        }
+        ConnectionWatchdog.record(ConnectionWatchdog.Kind.TRANSFER);
+        resetStream(stream, CANCEL);
+        throw new IOException("Flow control window of stream " + stream.id + " stayed closed");
+    }
+
+    private void writeSettings() throws IOException {
+        byte[] payload = new byte[18];
+        putSetting(payload, 0, SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+        putSetting(payload, 6, SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW);
+        putSetting(payload, 12, SETTINGS_MAX_HEADER_LIST_SIZE, HttpRequest.MAX_HEADER_BYTES);
+        writeFrame(SETTINGS, 0, 0, payload, 0, payload.length);
+        writeWindowUpdate(0, CONNECTION_WINDOW - DEFAULT_WINDOW);
+    }
+
+    private static void putSetting(byte[] payload, int at, int id, int value) {
+        payload[at] = (byte) (id >>> 8);
+        payload[at + 1] = (byte) id;
+        putInt(payload, at + 2, value);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+    }
+
+    private void writeReset(int streamId, int code) throws IOException {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, code);
+        writeFrame(RST_STREAM, 0, streamId, payload, 0, 4);
+    }
+
+    private void goAway(int code, String reason) throws IOException {
+        byte[] debug = reason == null ? EMPTY : reason.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[8 + debug.length];
+        putInt(payload, 0, lastStreamId);
+        putInt(payload, 4, code);
+        System.arraycopy(debug, 0, payload, 8, debug.length);
+        writeFrame(GOAWAY, 0, 0, payload, 0, payload.length);
+    }
+
+    private void writeHeaders(Stream stream, int status, List<String[]> fields, boolean endStream) throws IOException {
+        synchronized (writeLock) {
+            if (stream.reset) {
+                throw new IOException("Stream " + stream.id + " was reset");
+            }
+            ResponseBuffer block = new ResponseBuffer(256);
+            encoder.beginBlock(block);
+            encoder.encode(":status", Integer.toString(status), true, block);
+            for (String[] field : fields) {
+                encoder.encode(field[0], field[1], !"content-length".equals(field[0]), block);
+            }
+            int type = HEADERS;
+            int offset = 0;
+            do {
+                int n = Math.min(maxFrameSize, block.size() - offset);
+                int flags = offset + n == block.size() ? END_HEADERS : 0;
+                if (type == HEADERS && endStream) {
+                    flags |= END_STREAM;
+                }
+                writeFrameLocked(type, flags, stream.id, block.array(), offset, n);
+                offset += n;
+                type = CONTINUATION;
+            } while (offset < block.size());
+        }
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length)
+            throws IOException {
+        synchronized (writeLock) {
+            writeFrameLocked(type, flags, streamId, payload, offset, length);
+        }
+    }
+
+    private void writeFrameLocked(int type, int flags, int streamId, byte[] payload, int offset, int length)
+            throws IOException {
+        byte[] frame = new byte[9 + length];
+        frame[0] = (byte) (length >>> 16);
+        frame[1] = (byte) (length >>> 8);
+        frame[2] = (byte) length;
+        frame[3] = (byte) type;
+        frame[4] = (byte) flags;
+        putInt(frame, 5, streamId);
+        System.arraycopy(payload, offset, frame, 9, length);
+        out.write(frame);
+    }
+
+    private static int readInt(byte[] bytes, int at) {
+        return ((bytes[at] & 0xFF) << 24) | ((bytes[at + 1] & 0xFF) << 16)
+                | ((bytes[at + 2] & 0xFF) << 8) | (bytes[at + 3] & 0xFF);
+    }
+
+    private static void putInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    }
+
+    private void scheduleIdleCheck(long delayNanos) {
+        if (idleTimeoutNanos > 0 && !closed) {
+            idleCheck = TimerWheel.shared().schedule(this::checkIdle, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void checkIdle() {
+        if (closed) {
+            return;
+        }
+        long idleFor = System.nanoTime() - lastActive;
+        if (streams.isEmpty() && idleFor >= idleTimeoutNanos) {
+            ConnectionWatchdog.record(ConnectionWatchdog.Kind.IDLE);
+            shutdown();
+        } else {
+            scheduleIdleCheck(streams.isEmpty() ? idleTimeoutNanos - idleFor : idleTimeoutNanos);
+        }
+    }
+
+    /**
+     * Sends GOAWAY and closes the connection once the streams already started are answered.
+     */
+    private void shutdown() {
+        goingAway = true;
+        try {
+            goAway(NO_ERROR, "");
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (streams.isEmpty()) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection, failing every stream still open and interrupting its handler.
+     */
+    private void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        OPEN.remove(this);
+        TimerWheel.Timeout check = idleCheck;
+        if (check != null) {
+            check.cancel();
+        }
+        for (Stream stream : streams.values()) {
+            stream.cancel(new IOException("Connection closed"), true);
+        }
+        connection.closeQuietly();
+    }
+
+    /**
+     * Asks every HTTP/2 connection to finish: GOAWAY tells clients that no new stream will be
+     * served, and each connection closes once the streams it already started are answered.
+     */
+    static void goAwayAll() {
+        for (Http2Connection h2 : OPEN) {
+            h2.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the connections told to go away, then closes those left, interrupting
+     * their handlers.
+     * @param deadlineNanos the {@link System#nanoTime()} to give up at
+     * @return true if every connection finished by itself
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    static boolean awaitClosed(long deadlineNanos) throws InterruptedException {
+        while (!OPEN.isEmpty() && deadlineNanos - System.nanoTime() > 0) {
+            Thread.sleep(10);
+        }
+        boolean drained = OPEN.isEmpty();
+        for (Http2Connection h2 : OPEN) {
+            h2.close();
+        }
+        return drained;
+    }
+
+    /**
+     * Returns how many connections are speaking HTTP/2.
+     * @return the number of open connections
+     */
+    static int openConnections() {
+        return OPEN.size();
+    }
+
+    /**
+     * Appends the HTTP/2 gauges and counters in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_http2_connections Connections speaking HTTP/2\n");
+        out.append("# TYPE microspringboot_http2_connections gauge\n");
+        out.append("microspringboot_http2_connections ").append(OPEN.size()).append('\n');
+        out.append("# HELP microspringboot_http2_streams_total HTTP/2 streams opened by clients\n");
+        out.append("# TYPE microspringboot_http2_streams_total counter\n");
+        out.append("microspringboot_http2_streams_total ").append(STREAMS_TOTAL.sum()).append('\n');
+        out.append("# HELP microspringboot_http2_streams_refused_total Streams refused over the concurrency limit\n");
+        out.append("# TYPE microspringboot_http2_streams_refused_total counter\n");
+        out.append("microspringboot_http2_streams_refused_total ").append(STREAMS_REFUSED.sum()).append('\n');
+    }
+
+    /** One request and its response */
+    private final class Stream {
+        final int id;
+        final StreamBody body = new StreamBody(this);
+        // Guarded by Http2Connection.this
+        long sendWindow;
+        // END_STREAM received from the client
+        volatile boolean remoteClosed;
+        volatile boolean reset;
+        // Guarded by this
+        Thread handler;
+
+        Stream(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Marks the stream reset and wakes whatever waits on it.
+         * @param interrupt whether to interrupt the handler as well
+         */
+        void cancel(IOException cause, boolean interrupt) {
+            reset = true;
+            body.fail(cause);
+            synchronized (Http2Connection.this) {
+                Http2Connection.this.notifyAll();
+            }
+            if (interrupt) {
+                synchronized (this) {
+                    if (handler != null) {
+                        handler.interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The request body of a stream, filled by the reader thread and read by the handler.
+     * The client is granted more window as the handler consumes the body, so a handler that
+     * reads slowly holds back only its own stream.
+     */
+    private final class StreamBody extends InputStream {
+        private final Stream stream;
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        // Read position in the first chunk
+        private int position;
+        // Bytes the client may still send
+        private int window = STREAM_WINDOW;
+        // Bytes consumed since the last WINDOW_UPDATE
+        private int consumed;
+        private boolean finished;
+        private IOException failure;
+
+        StreamBody(Stream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Queues the data of a DATA frame.
+         * @param flowLength the frame length charged to the window, padding included
+         * @return false if the frame exceeds the stream window
+         */
+        synchronized boolean offer(byte[] data, int offset, int length, int flowLength) {
+            if (finished) {
+                return true;
+            }
+            window -= flowLength;
+            if (window < 0) {
+                return false;
+            }
+            // Padding counts as consumed right away
+            consumed += flowLength - length;
+            if (length > 0) {
+                chunks.add(Arrays.copyOfRange(data, offset, offset + length));
+            }
+            notifyAll();
+            return true;
+        }
+
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        synchronized void fail(IOException cause) {
+            if (!finished) {
+                failure = cause;
+            }
+            finished = true;
+            chunks.clear();
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            int update = 0;
+            synchronized (this) {
+                while (chunks.isEmpty() && !finished) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted reading the request body");
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (chunks.isEmpty()) {
+                    return -1;
+                }
+                byte[] chunk = chunks.peek();
+                n = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, b, off, n);
+                position += n;
+                if (position == chunk.length) {
+                    chunks.poll();
+                    position = 0;
+                }
+                consumed += n;
+                if (consumed >= STREAM_WINDOW / 2 && !stream.remoteClosed) {
+                    update = consumed;
+                    window += consumed;
+                    consumed = 0;
+                }
+            }
+            if (update > 0) {
+                try {
+                    writeWindowUpdate(stream.id, update);
+                } catch (IOException e) {
+                    // The connection is failing; its reader will close it
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return chunks.isEmpty() ? 0 : chunks.peek().length - position;
+        }
+    }
+
+    /**
+     * Receives the HTTP/1.1 response a handler writes and sends it on the stream: the
+     * status line and headers as a HEADERS frame, the body as DATA frames.
+     */
+    private final class StreamOutput extends OutputStream {
+        private final Stream stream;
+        // The response head until it is complete, then null
+        private ResponseBuffer head = new ResponseBuffer(256);
+        private long contentLength = -1;
+        private long sent;
+        private long count;
+        private boolean ended;
+
+        StreamOutput(Stream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Counts the bytes written by the handler, head included, for the access log.
+         * @return the bytes of the HTTP/1.1 response
+         */
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+            while (head != null && len > 0) {
+                head.write(b[off++]);
+                len--;
+                if (endsWithBlankLine(head)) {
+                    sendHead();
+                } else if (head.size() > MAX_RESPONSE_HEAD) {
+                    throw new IOException("Response head too large");
+                }
+            }
+            while (len > 0) {
+                if (ended) {
+                    throw new IOException("Response body longer than its content-length");
+                }
+                int n = reserve(stream, len);
+                boolean last = contentLength >= 0 && sent + n == contentLength;
+                writeFrame(DATA, last ? END_STREAM : 0, stream.id, b, off, n);
+                sent += n;
+                off += n;
+                len -= n;
+                ended = last;
+            }
+        }
+
+        private boolean endsWithBlankLine(ResponseBuffer buffer) {
+            int size = buffer.size();
+            byte[] bytes = buffer.array();
+            return size >= 4 && bytes[size - 4] == '\r' && bytes[size - 3] == '\n'
+                    && bytes[size - 2] == '\r' && bytes[size - 1] == '\n';
+        }
+
+        private void sendHead() throws IOException {
+            String[] lines = new String(head.array(), 0, head.size() - 4, StandardCharsets.ISO_8859_1).split("\r\n");
+            head = null;
+            String[] statusLine = lines[0].split(" ", 3);
+            int status;
+            try {
+                status = Integer.parseInt(statusLine[1]);
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                throw new IOException("Malformed status line: " + lines[0]);
+            }
+            List<String[]> fields = new ArrayList<>(lines.length);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim();
+                if (CONNECTION_HEADERS.contains(name)) {
+                    continue;
+                }
+                if ("content-length".equals(name)) {
+                    contentLength = Long.parseLong(value);
+                }
+                fields.add(new String[] {name, value});
+            }
+            ended = contentLength == 0 || status == 204 || status == 304;
+            writeHeaders(stream, status, fields, ended);
+        }
+
+        /**
+         * Ends the stream once the handler returns.
+         * @param status the status sent, 0 if the handler sent nothing
+         */
+        void finish(int status) throws IOException {
+            if (stream.reset || ended) {
+                return;
+            }
+            if (head != null || (contentLength >= 0 && sent < contentLength)) {
+                // No complete response, or a truncated one
+                resetStream(stream, INTERNAL_ERROR);
+                return;
+            }
+            writeFrame(DATA, END_STREAM, stream.id, EMPTY, 0, 0);
+            ended = true;
+        }
+    }
+
+    /** Pseudo-headers and fields of a request, checked as they are decoded */
+    private static final class RequestHead {
+        // Repeated fields are collected and joined once the block is decoded
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+        private String method;
+        private String path;
+        private String scheme;
+        private String authority;
+        private boolean malformed;
+        // Header list size as counted by SETTINGS_MAX_HEADER_LIST_SIZE
+        private long size;
+        // Past HttpRequest.MAX_HEADER_BYTES; later fields are decoded but not kept
+        boolean tooLarge;
+
+        void add(String name, String value) {
+            if (tooLarge) {
+                return;
+            }
+            size += name.length() + value.length() + 32;
+            if (size > HttpRequest.MAX_HEADER_BYTES) {
+                tooLarge = true;
+                return;
+            }
+            if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+                malformed = true;
+            } else if (name.startsWith(":")) {
+                if (!headers.isEmpty()) {
+                    malformed = true;
+                }
+                switch (name) {
+                    case ":method" -> method = pseudo(method, value);
+                    case ":path" -> path = pseudo(path, value);
+                    case ":scheme" -> scheme = pseudo(scheme, value);
+                    case ":authority" -> authority = pseudo(authority, value);
+                    default -> malformed = true;
+                }
+            } else if (CONNECTION_HEADERS.contains(name) || ("te".equals(name) && !"trailers".equals(value))) {
+                malformed = true;
+            } else {
+                headers.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+            }
+        }
+
+        private String pseudo(String previous, String value) {
+            if (previous != null) {
+                malformed = true;
+            }
+            return value;
+        }
+
+        /**
+         * Builds the request.
+         * @param body the stream the body will be read from
+         * @return the request, or null if it is malformed
+         */
+        HttpRequest toRequest(InputStream body) {
+            if (malformed || method == null || scheme == null || path == null || path.isEmpty()) {
+                return null;
+            }
+            URI uri;
+            try {
+                uri = new URI(path);
+            } catch (URISyntaxException e) {
+                return null;
+            }
+            Map<String, String> joined = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> field : headers.entrySet()) {
+                List<String> values = field.getValue();
+                joined.put(field.getKey(), values.size() == 1 ? values.get(0)
+                        : String.join("cookie".equals(field.getKey()) ? "; " : ", ", values));
+            }
+            if (authority != null) {
+                joined.putIfAbsent("host", authority);
+            }
+            return new HttpRequest(method, uri, "HTTP/2.0", joined, body, null);
+        }
+    }
+
+    /** A connection error: the connection is closed after a GOAWAY with this code */
+    private static final class ConnectionError extends IOException {
+        final int code;
+
+        ConnectionError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
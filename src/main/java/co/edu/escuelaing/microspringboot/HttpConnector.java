@@ -0,0 +1,454 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Accepts TCP connections and hands them to worker loops that run {@link HttpServer#serveConnection}.
+ * Several acceptor threads can be configured. When the platform supports SO_REUSEPORT each
+ * acceptor listens on its own socket bound to the same port and the kernel balances new
+ * connections between them; otherwise the acceptors share a single listening socket.
+ * Accepted connections are spread round-robin over single-threaded worker loops, by
+ * default one per available processor. A connection only reaches a worker once the head
+ * of its next request has arrived: new connections and keep-alive connections between
+ * requests wait on an {@link IdleConnectionParker}, so slow or silent clients cannot hold
+ * the worker loops. With a
+ * keystore configured every connection is wrapped in a {@link TlsChannel}. A Unix domain
+ * socket can be served alongside the TCP port or instead of it, for a proxy or sidecar on
+ * the same host; its connections always speak plain HTTP.
+ *
+ * <p>{@link #stop(Duration)} shuts the connector down gracefully: it stops accepting, closes
+ * idle connections, lets the workers finish the requests they already have until a deadline,
+ * and only then interrupts whatever is still running.
+ *
+ * @author daniel.aldana-b
+ */
+public class HttpConnector {
+    private static final Logger LOGGER = Logger.getLogger(HttpConnector.class.getName());
+    // Pause after an accept failure such as running out of file descriptors
+    private static final long ACCEPT_BACKOFF_MILLIS = 50;
+
+    private final ServerConfig config;
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    // Listener on the Unix domain socket, if configured
+    private ServerSocketChannel unixListener;
+    private Path unixSocket;
+    private final List<Thread> acceptors = new ArrayList<>();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    // Connections queued on or being served by a worker loop
+    private final AtomicInteger busy = new AtomicInteger();
+    private ExecutorService[] workers;
+    private IdleConnectionParker parker;
+    private TlsContext tls;
+    private volatile boolean running;
+    private int localPort = -1;
+    private CompletableFuture<Void> stopped;
+
+    public HttpConnector(ServerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Tells whether listening sockets can share a port through SO_REUSEPORT.
+     * @return true if the option is available on this platform
+     */
+    static boolean supportsReusePort() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts the connector without throwing.
+     * @return a future completed with this connector once it listens, or failed with the
+     *         reason it could not start
+     * @see #start()
+     */
+    public CompletableFuture<HttpConnector> startAsync() {
+        try {
+            start();
+            return CompletableFuture.completedFuture(this);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Binds the listening sockets and starts the worker loops and acceptor threads.
+     * A connector can only be started once.
+     * @throws IOException if the port cannot be bound or the TLS keystore cannot be loaded
+     */
+    public synchronized void start() throws IOException {
+        if (running || stopped != null) {
+            throw new IllegalStateException("Connector already started");
+        }
+        if (!config.isTcpEnabled() && config.getUnixSocket() == null) {
+            throw new IllegalStateException("Neither a TCP port nor a Unix domain socket to listen on");
+        }
+        tls = TlsContext.load(config);
+        // Index the static files now rather than on the first request
+        HttpServer.staticAssets();
+        boolean reusePort = config.isReusePort() && config.getAcceptors() > 1 && supportsReusePort();
+        int sockets = !config.isTcpEnabled() ? 0 : reusePort ? config.getAcceptors() : 1;
+        int port = config.getPort();
+        try {
+            for (int i = 0; i < sockets; i++) {
+                ServerSocketChannel listener = ServerSocketChannel.open();
+                listeners.add(listener);
+                listener.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                if (reusePort) {
+                    listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                listener.bind(new InetSocketAddress(port), config.getBacklog());
+                // With port 0 the first socket picks the port and the others join it
+                port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            }
+        } catch (IOException e) {
+            closeListeners();
+            throw new IOException("Could not listen on port: " + config.getPort(), e);
+        }
+        if (config.getUnixSocket() != null) {
+            Path path = Path.of(config.getUnixSocket());
+            try {
+                unixListener = bindUnix(path, config.getBacklog());
+                unixSocket = path;
+            } catch (IOException e) {
+                closeListeners();
+                throw new IOException("Could not listen on Unix domain socket: " + path, e);
+            }
+        }
+        localPort = config.isTcpEnabled() ? port : -1;
+        try {
+            parker = new IdleConnectionParker(this::dispatch, config.getIdleTimeoutMillis(),
+                    config.getHeaderTimeoutMillis(), TimerWheel.shared());
+        } catch (IOException e) {
+            closeListeners();
+            throw e;
+        }
+
+        workers = new ExecutorService[config.getWorkers()];
+        for (int i = 0; i < workers.length; i++) {
+            String name = "http-worker-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, name));
+        }
+        running = true;
+        for (int i = 0; i < config.getAcceptors() && !listeners.isEmpty(); i++) {
+            ServerSocketChannel listener = listeners.get(i % listeners.size());
+            Thread acceptor = new Thread(() -> acceptLoop(listener), "http-acceptor-" + i);
+            acceptors.add(acceptor);
+            acceptor.start();
+        }
+        if (unixListener != null) {
+            Thread acceptor = new Thread(() -> acceptLoop(unixListener), "http-acceptor-unix");
+            acceptors.add(acceptor);
+            acceptor.start();
+        }
+        AccessLog.info("server.listening", "port=" + localPort + " unixSocket=" + unixSocket
+                + " acceptors=" + config.getAcceptors() + " workers=" + workers.length + " reusePort=" + reusePort
+                + " tls=" + (tls != null));
+    }
+
+    private void acceptLoop(ServerSocketChannel listener) {
+        while (running) {
+            SocketChannel client;
+            try {
+                client = listener.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "Accept failed", e);
+                try {
+                    Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            boolean local = listener == unixListener;
+            try {
+                if (!local) {
+                    client.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+                }
+            } catch (IOException e) {
+                closeQuietly(client);
+                continue;
+            }
+            if (!running) {
+                closeQuietly(client);
+                return;
+            }
+            // The Unix domain socket never leaves the host, so it skips TLS
+            Connection connection = new Connection(tls != null && !local ? new TlsChannel(client, tls.newEngine()) : client,
+                    config);
+            connection.onHandBack(this::resume);
+            // The header timeout counts from the accept
+            connection.markQueued();
+            parker.admit(connection);
+        }
+    }
+
+    /**
+     * Takes back a connection whose last request was answered on a bulkhead, which counted
+     * as busy until now. If it stays open it is parked until its next head is complete.
+     */
+    private void resume(Connection connection, boolean keepAlive) {
+        try {
+            if (keepAlive) {
+                parker.park(connection);
+            }
+        } finally {
+            busy.decrementAndGet();
+        }
+    }
+
+    /**
+     * Binds a Unix domain socket, first removing the socket file a previous run may have
+     * left behind. Any other kind of file at the path is left alone and fails the bind.
+     */
+    private static ServerSocketChannel bindUnix(Path path, int backlog) throws IOException {
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)
+                && Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+            Files.delete(path);
+        }
+        ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            listener.bind(UnixDomainSocketAddress.of(path), backlog);
+        } catch (IOException e) {
+            listener.close();
+            throw e;
+        }
+        return listener;
+    }
+
+    /**
+     * Queues a connection whose request head has arrived on the next worker loop. Once its
+     * buffered requests are answered the connection is parked until the client sends
+     * another one.
+     */
+    private void dispatch(Connection connection) {
+        try {
+            ExecutorService worker = workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+            busy.incrementAndGet();
+            worker.execute(new ServeTask(connection));
+        } catch (RejectedExecutionException e) {
+            busy.decrementAndGet();
+            connection.closeQuietly();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException ignored) {
+            // Nothing left to do with this connection
+        }
+    }
+
+    /**
+     * Returns the port the connector listens on.
+     * @return the bound port, or -1 before {@link #start()} or without a TCP listener
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    /**
+     * Waits until every acceptor thread has finished, i.e. until the connector is closed.
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void join() throws InterruptedException {
+        for (Thread acceptor : acceptors) {
+            acceptor.join();
+        }
+    }
+
+    /**
+     * Returns how many connections are queued on or being served by the worker loops.
+     * @return the number of busy connections
+     */
+    public int getBusyConnections() {
+        return busy.get();
+    }
+
+    /**
+     * Shuts the connector down gracefully, on a separate thread. The listening sockets are
+     * closed at once, so new connections are refused, and idle keep-alive connections are
+     * closed. Requests already accepted are answered and their connections closed
+     * afterwards; HTTP/2 clients get a GOAWAY and their streams in progress are answered,
+     * event stream subscriptions end and WebSocket sessions are closed with 1001. When the drain timeout runs out the workers are
+     * interrupted, which also closes the connections they are blocked on. The access log is flushed last.
+     * Calling this again returns the same future.
+     *
+     * @param drainTimeout how long in-flight requests may take to finish
+     * @return a future completed once every worker has exited
+     */
+    public synchronized CompletableFuture<Void> stop(Duration drainTimeout) {
+        if (stopped != null) {
+            return stopped;
+        }
+        running = false;
+        closeListeners();
+        // A thread blocked in accept() keeps its socket listening until it wakes up
+        for (Thread acceptor : acceptors) {
+            try {
+                acceptor.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (parker != null) {
+            parker.close();
+        }
+        EventBroadcaster.closeAll();
+        WebSocketSession.closeAll();
+        Http2Connection.goAwayAll();
+        stopped = new CompletableFuture<>();
+        if (workers == null) {
+            stopped.complete(null);
+            return stopped;
+        }
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        int inFlight = busy.get();
+        Thread drainer = new Thread(() -> drain(drainTimeout, inFlight), "http-shutdown");
+        drainer.setDaemon(true);
+        drainer.start();
+        return stopped;
+    }
+
+    private void drain(Duration drainTimeout, int inFlight) {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        boolean drained = true;
+        try {
+            for (ExecutorService worker : workers) {
+                if (!worker.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    drained = false;
+                }
+            }
+            if (!drained) {
+                for (ExecutorService worker : workers) {
+                    // Connections still queued were never started; just close them
+                    for (Runnable queued : worker.shutdownNow()) {
+                        ((ServeTask) queued).abandon();
+                    }
+                }
+                for (ExecutorService worker : workers) {
+                    worker.awaitTermination(1, TimeUnit.SECONDS);
+                }
+            }
+            if (!BulkheadPool.awaitIdle(deadline)) {
+                drained = false;
+                // Requests running on a bulkhead are interrupted like those on the workers
+                BulkheadPool.interruptRunning();
+                BulkheadPool.awaitIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+            }
+            if (!Http2Connection.awaitClosed(deadline)) {
+                drained = false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        AccessLog.info("server.stopped", "port=" + localPort + " inFlight=" + inFlight + " drained=" + drained
+                + " abandoned=" + busy.get());
+        AccessLog.flush(1, TimeUnit.SECONDS);
+        TrafficRecorder capture = HttpServer.recorder;
+        if (capture != null) {
+            capture.flush(1, TimeUnit.SECONDS);
+        }
+        if (BufferPool.LEAK_DETECTION) {
+            // Connections of other connectors in this JVM may still hold theirs
+            List<Throwable> leaks = BufferPool.leaks();
+            if (!leaks.isEmpty()) {
+                LOGGER.log(Level.WARNING, leaks.size() + " pooled buffers not released, the first acquired here",
+                        leaks.get(0));
+            }
+        }
+        stopped.complete(null);
+    }
+
+    /**
+     * Stops the connector without waiting for in-flight requests: they are interrupted
+     * right away. Returns once every worker has exited.
+     */
+    public void close() {
+        stop(Duration.ZERO).join();
+    }
+
+    private void closeListeners() {
+        for (ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close listening socket", e);
+            }
+        }
+        if (unixListener != null) {
+            try {
+                unixListener.close();
+                Files.deleteIfExists(unixSocket);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close Unix domain socket " + unixSocket, e);
+            }
+        }
+    }
+
+    /** Serves a connection on a worker loop, then parks it if it stays open */
+    private final class ServeTask implements Runnable {
+        private final Connection connection;
+
+        ServeTask(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void run() {
+            HttpServer.Outcome outcome = HttpServer.Outcome.CLOSE;
+            try {
+                outcome = HttpServer.serveConnection(connection);
+                if (outcome == HttpServer.Outcome.KEEP_ALIVE) {
+                    parker.park(connection);
+                }
+            } finally {
+                // A connection handed to a bulkhead stays busy until it is handed back
+                if (outcome != HttpServer.Outcome.HANDED_OFF) {
+                    busy.decrementAndGet();
+                }
+            }
+        }
+
+        void abandon() {
+            connection.closeQuietly();
+            busy.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Intercepts every request before it is routed. Filters registered with
+ * {@link HttpServer#filter(HttpFilter)} are chained in registration order when they
+ * are registered, so a request only walks the precomposed pipeline.
+ * <p>
+ * A filter may answer the request itself without calling {@code next} (authentication,
+ * CORS preflight, cached responses), hand {@code next} a wrapping stream, or observe the
+ * status returned by the rest of the chain (metrics). Filters run on the worker thread,
+ * for HTTP/1.1 requests and HTTP/2 streams alike, and must be thread-safe.
+ *
+ * @author daniel.aldana-b
+ */
+@FunctionalInterface
+public interface HttpFilter {
+
+    /**
+     * Handles a request, usually by delegating to the rest of the chain.
+     * @param request the parsed request
+     * @param out     the client output stream
+     * @param next    the following filters and the router
+     * @return the status code sent, or 0 if nothing was sent
+     * @throws IOException if the response cannot be written
+     */
+    int filter(HttpRequest request, OutputStream out, HttpHandler next) throws IOException;
+}
@@ -0,0 +1,23 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Answers a request by writing a complete HTTP/1.1 response. Built-in routes are
+ * handlers, and so is the rest of the pipeline handed to each {@link HttpFilter}.
+ *
+ * @author daniel.aldana-b
+ */
+@FunctionalInterface
+public interface HttpHandler {
+
+    /**
+     * Answers a request.
+     * @param request the parsed request
+     * @param out     the client output stream
+     * @return the status code sent, or 0 if nothing was sent
+     * @throws IOException if the response cannot be written
+     */
+    int handle(HttpRequest request, OutputStream out) throws IOException;
+}
@@ -4,14 +4,23 @@
  */
 package co.edu.escuelaing.microspringboot;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * Represents an HTTP request with parsed query parameters.
  * This class wraps a URI and provides convenient access to query parameters
- * extracted from the request URL.
+ * extracted from the request URL. Requests read from a connection also carry their
+ * method, headers and a body that is streamed from the socket on demand.
  * 
  * @author daniel.aldana-b
  */
@@ -20,6 +29,24 @@ public class HttpRequest {
     private URI requri = null;
     /** Map containing parsed query parameters (key-value pairs) */
     private Map<String, String> queryParams = new HashMap<>();
+    /** Largest body accepted when a parameter does not set its own limit */
+    static final long DEFAULT_MAX_BODY = Long.getLong("microspringboot.body.maxBytes", 10L * 1024 * 1024);
+    /** Largest request line plus headers accepted, in bytes */
+    static final int MAX_HEADER_BYTES = Integer.getInteger("microspringboot.header.maxBytes", 16 * 1024);
+    private static final InputStream NO_BODY = InputStream.nullInputStream();
+    /** The request method (GET, POST...) */
+    private final String method;
+    /** The protocol version from the request line, e.g. HTTP/1.1 */
+    private final String version;
+    /** Header fields keyed by lower-case name */
+    private final Map<String, String> headers;
+    /** The connection stream positioned at the start of the body */
+    private final InputStream connection;
+    /** Where to send "100 Continue" when the client asked for it, or null */
+    private final OutputStream continueTo;
+    private RequestBodyInputStream body;
+    /** The HTTP/1.1 connection the request was read from, or null */
+    private Connection client;
     
     /**
      * Constructs a new HttpRequest with the specified URI.
@@ -28,9 +55,100 @@ public class HttpRequest {
      * @param uri the URI containing the request path and query parameters
      */
     public HttpRequest(URI uri) {
+        this("GET", uri, "HTTP/1.1", Collections.emptyMap(), NO_BODY, null);
+    }
+
+    /**
+     * Constructs a request read from a connection.
+     *
+     * @param method     the request method
+     * @param uri        the request target
+     * @param version    the protocol version
+     * @param headers    header fields keyed by lower-case name
+     * @param connection the stream the body will be read from
+     * @param continueTo where to answer {@code Expect: 100-continue}, or null
+     */
+    HttpRequest(String method, URI uri, String version, Map<String, String> headers, InputStream connection,
+            OutputStream continueTo) {
+        this.method = method;
+        this.version = version;
         this.requri = uri;
+        this.headers = headers;
+        this.connection = connection;
+        this.continueTo = continueTo;
         parseQueryParams();
     }
+
+    /**
+     * Reads the request line and headers of the next request on a connection.
+     * The body is left unread on the stream; it is consumed through {@link #getBody(long)}.
+     *
+     * @param in  the connection input, buffered
+     * @param out the connection output, used for {@code 100 Continue}
+     * @return the request, or null if the client closed the connection before sending one
+     * @throws IOException if the connection fails
+     * @throws ResponseStatusException if the request line or headers are malformed (400)
+     *         or too large (431)
+     */
+    static HttpRequest read(InputStream in, OutputStream out) throws IOException {
+        int[] budget = {MAX_HEADER_BYTES};
+        String requestLine = readLine(in, budget);
+        while (requestLine != null && requestLine.isEmpty()) {
+            requestLine = readLine(in, budget);
+        }
+        if (requestLine == null) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3 || !parts[2].startsWith("HTTP/")) {
+            throw new ResponseStatusException(400, "Malformed request line");
+        }
+        URI uri;
+        try {
+            uri = new URI(parts[1]);
+        } catch (URISyntaxException e) {
+            throw new ResponseStatusException(400, "Malformed request target", e);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while ((line = readLine(in, budget)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new ResponseStatusException(400, "Malformed header field");
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            headers.merge(name, value, (a, b) -> a + ", " + b);
+        }
+        if (line == null) {
+            throw new ResponseStatusException(400, "Connection closed inside the request headers");
+        }
+        return new HttpRequest(parts[0], uri, parts[2], headers, in, out);
+    }
+
+    /**
+     * Reads one CRLF (or LF) terminated ISO-8859-1 line, charging it to the header budget,
+     * terminator included, the same way {@link Connection#readHead()} counts a head.
+     * @return the line without its terminator, or null at end of stream before any byte
+     */
+    private static String readLine(InputStream in, int[] budget) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            int c = in.read();
+            if (c < 0) {
+                return line.length() == 0 ? null : line.toString();
+            }
+            if (--budget[0] < 0) {
+                throw new ResponseStatusException(431, "Request header fields too large");
+            }
+            if (c == '\n') {
+                return line.toString();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+    }
     
     /**
      * Parses query parameters from the URI's query string.
@@ -78,4 +196,174 @@ public class HttpRequest {
     public String getPath() {
         return requri != null ? requri.getPath() : "";
     }
+
+    /**
+     * Gets the request method.
+     * @return the method, such as GET or POST
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the protocol version.
+     * @return the version from the request line, e.g. HTTP/1.1
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Tells whether the client is willing to send another request on the same connection.
+     * HTTP/1.1 connections persist unless the client sends {@code Connection: close};
+     * HTTP/1.0 ones are always closed, since the server never announces keep-alive.
+     * @return true if the connection may be kept open after the response
+     */
+    public boolean isKeepAlive() {
+        String connectionHeader = headers.get("connection");
+        return "HTTP/1.1".equals(version)
+                && (connectionHeader == null || !connectionHeader.toLowerCase(Locale.ROOT).contains("close"));
+    }
+
+    /**
+     * Gets the HTTP/1.1 connection the request arrived on, for responses such as an
+     * {@link EventStream} that take the connection over.
+     * @return the connection, or null for HTTP/2 streams and requests built from a URI
+     */
+    Connection getConnection() {
+        return client;
+    }
+
+    void setConnection(Connection client) {
+        this.client = client;
+    }
+
+    /**
+     * Gets the request URI.
+     * @return the request target
+     */
+    public URI getUri() {
+        return requri;
+    }
+
+    /**
+     * Retrieves a header field.
+     * @param name the header name, in any case
+     * @return the value, or null if the header is absent
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets every header field of the request.
+     * @return the headers keyed by lower-case name
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Gets the declared length of the body.
+     * @return the Content-Length, or -1 if the body is chunked or the header is absent
+     * @throws ResponseStatusException if the header is not a valid length (400)
+     */
+    public long getContentLength() {
+        String length = headers.get("content-length");
+        if (length == null || isChunked()) {
+            return -1;
+        }
+        try {
+            long value = Long.parseLong(length.trim());
+            if (value < 0) {
+                throw new NumberFormatException(length);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(400, "Invalid Content-Length", e);
+        }
+    }
+
+    /**
+     * Tells whether the body uses chunked transfer coding.
+     * @return true if Transfer-Encoding ends with "chunked"
+     */
+    public boolean isChunked() {
+        String encoding = headers.get("transfer-encoding");
+        return encoding != null && encoding.toLowerCase(Locale.ROOT).endsWith("chunked");
+    }
+
+    /**
+     * Opens the body with the server's default size limit.
+     * @return the body stream
+     * @throws IOException if the body is larger than the limit
+     * @see #getBody(long)
+     */
+    public InputStream getBody() throws IOException {
+        return getBody(DEFAULT_MAX_BODY);
+    }
+
+    /**
+     * Opens the body of the request as a stream read directly from the connection.
+     * HTTP/1.1 requests without Content-Length or chunked coding have an empty body;
+     * HTTP/2 ones run to the end of their stream. A client
+     * waiting on {@code Expect: 100-continue} is told to send the body only once the
+     * declared length is known to fit the limit. The body can only be opened once;
+     * later calls return the same stream.
+     *
+     * @param maxBytes the largest body accepted
+     * @return the body stream; reading past {@code maxBytes} throws {@link BodyTooLargeException}
+     * @throws BodyTooLargeException if the declared Content-Length is above the limit
+     * @throws IOException if the 100 Continue response cannot be sent
+     */
+    public InputStream getBody(long maxBytes) throws IOException {
+        if (body != null) {
+            return body;
+        }
+        long length = getContentLength();
+        if (isChunked()) {
+            body = RequestBodyInputStream.chunked(connection, maxBytes);
+        } else if (length < 0 && "HTTP/2.0".equals(version)) {
+            body = RequestBodyInputStream.toEnd(connection, maxBytes);
+        } else {
+            body = RequestBodyInputStream.fixed(connection, Math.max(length, 0), maxBytes);
+        }
+        if (continueTo != null && (isChunked() || length > 0)
+                && "100-continue".equalsIgnoreCase(headers.get("expect"))) {
+            continueTo.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            continueTo.flush();
+        }
+        return body;
+    }
+
+    /**
+     * Reads and discards what the handler left unread of the body, up to a limit, so that
+     * the connection is positioned at the next request, or at least so that closing it
+     * does not reset it while the response is still in flight. A body the client is
+     * holding back for {@code 100 Continue} is never requested.
+     *
+     * @param maxBytes the most bytes worth reading before giving up
+     * @return true if the whole body was consumed and the connection can be reused
+     */
+    boolean discardBody(long maxBytes) {
+        if (body == null && connection == NO_BODY) {
+            return true;
+        }
+        try {
+            if (body == null && "100-continue".equalsIgnoreCase(headers.get("expect"))
+                    && (isChunked() || getContentLength() > 0)) {
+                return false;
+            }
+            InputStream rest = body != null ? body : getBody(Long.MAX_VALUE);
+            byte[] skip = new byte[8192];
+            long discarded = 0;
+            int n;
+            while (discarded < maxBytes && (n = rest.read(skip)) >= 0) {
+                discarded += n;
+            }
+            return rest.read() < 0;
+        } catch (IOException | ResponseStatusException e) {
+            return false;
+        }
+    }
 }
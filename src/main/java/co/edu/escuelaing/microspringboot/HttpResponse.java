@@ -4,6 +4,10 @@
  */
 package co.edu.escuelaing.microspringboot;
 
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Represents an HTTP response with configurable status code, status message, and content type.
  * This class provides a way to configure HTTP response properties before sending the response
@@ -18,6 +22,10 @@ public class HttpResponse {
     private int statusCode = 200;
     // The HTTP status message (e.g., "OK", "Not Found", "Internal Server Error")
     private String statusMessage = "OK";
+    // Additional headers, written after content-type and content-length
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    // The serialized response body
+    private byte[] body = new byte[0];
     
     /**
      * Sets the content type of the HTTP response.
@@ -70,4 +78,124 @@ public class HttpResponse {
     public String getStatusMessage() {
         return statusMessage;
     }
+
+    /**
+     * Sets a response header, replacing any previous value.
+     * @param name  the header name, written in lower case like the server's own headers
+     * @param value the header value
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name.toLowerCase(Locale.ROOT), value);
+    }
+
+    /**
+     * Gets the additional headers of the response.
+     * @return the headers in insertion order
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Sets the body of the response.
+     * @param body the serialized body
+     */
+    public void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    /**
+     * Gets the body of the response.
+     * @return the serialized body
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the standard reason phrase of a status code.
+     * @param statusCode the HTTP status code
+     * @return the reason phrase, or "Unknown" for codes the server does not send
+     */
+    static String reasonPhrase(int statusCode) {
+        return switch (statusCode) {
+            case 100 -> "Continue";
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 408 -> "Request Timeout";
+            case 409 -> "Conflict";
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 415 -> "Unsupported Media Type";
+            case 426 -> "Upgrade Required";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Unknown";
+        };
+    }
+
+    /**
+     * Serializes the response, with its content-length, ready to be written to the socket.
+     * @return the status line, headers and body
+     */
+    public byte[] toBytes() {
+        ResponseBuffer out = new ResponseBuffer(body.length + 128);
+        out.write(body);
+        return serialize(statusCode, statusMessage, contentType, headers, out);
+    }
+
+    /**
+     * Serializes a response whose body was built in a buffer.
+     * The head and body are copied into one array sized exactly for both. Informational,
+     * 204 and 304 responses carry no content-length (RFC 9110 section 8.6).
+     *
+     * @param statusCode    the HTTP status code
+     * @param statusMessage the HTTP status message
+     * @param contentType   the content type, or null to omit it
+     * @param headers       additional headers
+     * @param body          the body
+     * @return the status line, headers and body
+     */
+    static byte[] serialize(int statusCode, String statusMessage, String contentType,
+            Map<String, String> headers, ResponseBuffer body) {
+        ResponseBuffer head = new ResponseBuffer(128);
+        head.writeAscii("HTTP/1.1 ");
+        head.writeLong(statusCode);
+        head.write(' ');
+        head.writeAscii(statusMessage);
+        head.writeAscii("\r\n");
+        if (contentType != null) {
+            head.writeAscii("content-type: ");
+            head.writeAscii(contentType);
+            head.writeAscii("\r\n");
+        }
+        if (statusCode >= 200 && statusCode != 204 && statusCode != 304) {
+            head.writeAscii("content-length: ");
+            head.writeLong(body.size());
+            head.writeAscii("\r\n");
+        }
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            head.writeAscii(h.getKey());
+            head.writeAscii(": ");
+            head.writeUtf8(h.getValue());
+            head.writeAscii("\r\n");
+        }
+        head.writeAscii("\r\n");
+        byte[] response = new byte[head.size() + body.size()];
+        System.arraycopy(head.array(), 0, response, 0, head.size());
+        System.arraycopy(body.array(), 0, response, head.size(), body.size());
+        return response;
+    }
 }
@@ -6,13 +6,21 @@ package co.edu.escuelaing.microspringboot;
 
 import java.net.*;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,115 +34,774 @@ public class HttpServer {
     //Map containing registered REST services mapped by their paths
     public static Map<String, Method> services = new HashMap();
     public static Map<String, List<Parameter>> requests = new HashMap();
-    // Root directory for serving static files
+    // Routes by HTTP method; GET routes are the services map
+    static final Map<String, Map<String, Method>> routes = Map.of(
+            "GET", services, "POST", new HashMap<>(), "PUT", new HashMap<>(), "DELETE", new HashMap<>());
+    // WebSocket handlers by path
+    static final Map<String, WebSocketHandler> webSockets = new HashMap<>();
+    // Root directory for serving static files; inside a jar, its path below target/classes
     public static String ROOT_DIRECTORY = "target/classes/webroot";
+    // Index of the static files, built from ROOT_DIRECTORY
+    private static volatile StaticAssets staticAssets;
+    // Path of the Prometheus metrics endpoint
+    public static final String METRICS_PATH = "/metrics";
+    // Path of the endpoint answering several GET route calls at once
+    public static final String BATCH_PATH = "/app/batch";
+    // Routes answered by the server itself, by HTTP method
+    static final Map<String, Map<String, HttpHandler>> endpoints = Map.of(
+            "GET", Map.of(
+                    "/app/helloget", (request, rawOut) -> send(rawOut, greetingResponse(request.getUri(), false)),
+                    METRICS_PATH, HttpServer::serveMetrics),
+            "POST", Map.of(
+                    "/app/hellopost", (request, rawOut) -> send(rawOut, greetingResponse(request.getUri(), true)),
+                    BATCH_PATH, BatchEndpoint::handle),
+            "PUT", Map.of(), "DELETE", Map.of());
+    // Allow header value of every routed path, refreshed when a route is registered so
+    // requests never rebuild it
+    private static final Map<String, String> allowed = new HashMap<>();
+
+    static {
+        registerEndpoints();
+    }
+    // Registered filters, in order, and the pipeline composed from them
+    private static final List<HttpFilter> filters = new ArrayList<>();
+    private static volatile HttpHandler pipeline = HttpServer::route;
+    // Per-client request rate limit; null when not configured
+    static volatile RateLimiter rateLimiter = RateLimiter.fromSystemProperties();
+    // Adaptive cap on concurrent requests; null when disabled
+    static volatile AdmissionController admission = AdmissionController.fromSystemProperties();
+    // Capture of the answered requests for replay; null when not configured
+    static volatile TrafficRecorder recorder = TrafficRecorder.fromSystemProperties();
+    // Unread body bytes drained before closing a connection
+    private static final long DISCARD_LIMIT = 256 * 1024;
+    static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+    static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
 
     /**
      * Starts the HTTP server and begins listening for incoming connections.
-     * The server runs continuously, accepting client connections and handling
-     * HTTP requests until manually stopped.
+     * The port, backlog, number of acceptor threads and worker loops are read from
+     * {@link ServerConfig#fromSystemProperties()}. With {@code microspringboot.warmup}
+     * the routes are {@link WarmUp warmed up} before the server listens. The call blocks
+     * while the server runs; on JVM shutdown the server stops gracefully, draining
+     * in-flight requests. A training run ({@code microspringboot.warmup.exit}) stops the
+     * server and exits as soon as it listens.
      * 
      * @param args command line arguments (not used)
-     * @throws IOException if an I/O error occurs during server operation
+     * @throws IOException if the server cannot listen on the configured port
      * @throws URISyntaxException if there's an error parsing request URIs
      */
     public static void runServer(String[] args) throws IOException, URISyntaxException {
+        loadComponents(args);
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        if (WarmUp.ENABLED || WarmUp.EXIT) {
+            WarmUp.run(WarmUp.ITERATIONS, WarmUp.MAX_NANOS);
+            ServerMetrics.reset();
+        }
+        HttpConnector connector = new HttpConnector(config);
+        connector.start();
+        long startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        ServerMetrics.started(startupMillis);
+        AccessLog.info("server.started", "startupMillis=" + startupMillis);
+        if (WarmUp.EXIT) {
+            connector.stop(Duration.ofMillis(config.getShutdownTimeoutMillis())).join();
+            AccessLog.flush(5, TimeUnit.SECONDS);
+            // Exiting is what writes the archive of -XX:ArchiveClassesAtExit
+            System.exit(0);
+        }
+        // On SIGTERM, let in-flight requests finish before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> connector
+                .stop(Duration.ofMillis(config.getShutdownTimeoutMillis())).join(), "http-shutdown-hook"));
+        try {
+            connector.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connector.close();
+        }
+    }
 
-        ServerSocket serverSocket = null;
+    /**
+     * What the rate limit and admission control decided for a request.
+     *
+     * @param rejection the response sent instead of routing the request, or null
+     * @param limit     the controller holding an admission slot for the request, or null
+     */
+    record Admission(byte[] rejection, AdmissionController limit) {
+        static final Admission NONE = new Admission(null, null);
+
+        static Admission rejected(byte[] response) {
+            return new Admission(response, null);
+        }
+    }
+
+    /** What a request leaves the connection it came on to */
+    enum Outcome {
+        // Closed, or closing
+        CLOSE,
+        // Open for the next request
+        KEEP_ALIVE,
+        // Owned by a bulkhead thread answering the request
+        HANDED_OFF
+    }
+
+    /**
+     * Serves requests from a connection until it has to wait for the client again.
+     * Pipelined requests already buffered are answered in a row. Runs on a worker loop
+     * thread; every failure is logged and contained here. A request that runs on a
+     * {@link BulkheadPool} takes the connection with it, and the bulkhead gives it back
+     * through {@link Connection#handBack(boolean)}.
+     *
+     * @param connection the accepted connection
+     * @return {@link Outcome#KEEP_ALIVE} if the connection is idle and should be kept open
+     *         for another request
+     */
+    static Outcome serveConnection(Connection connection) {
+        Outcome outcome = Outcome.CLOSE;
         try {
-            serverSocket = new ServerSocket(35000);
-        } catch (IOException e) {
-            System.err.println("Could not listen on port: 35000.");
-            System.exit(1);
+            do {
+                outcome = serveRequest(connection);
+            } while (outcome == Outcome.KEEP_ALIVE && connection.hasBufferedHead());
+        } catch (Exception ex) {
+            outcome = Outcome.CLOSE;
+            logFailure(connection, ex);
+        } finally {
+            if (outcome != Outcome.HANDED_OFF) {
+                finishConnection(connection, outcome == Outcome.KEEP_ALIVE);
+            }
         }
-        Socket clientSocket = null;
-        boolean running = true;
-        loadComponents(args);
-        while (running) {
+        return outcome;
+    }
+
+    private static void logFailure(Connection connection, Exception ex) {
+        ConnectionWatchdog.Kind timeout = connection.getWatchdog().expired();
+        Logger.getLogger(HttpServer.class.getName()).log(timeout != null ? Level.FINE : Level.SEVERE,
+                timeout != null ? "Connection timed out: " + timeout : null, ex);
+    }
+
+    /**
+     * Ends the last request of a connection and closes it unless it stays open.
+     */
+    private static void finishConnection(Connection connection, boolean keepAlive) {
+        ConnectionWatchdog watchdog = connection.getWatchdog();
+        watchdog.endRequest();
+        connection.releaseIdleBuffers();
+        // After a timeout the watchdog owns the connection and closes it once its error response is out;
+        // after an upgrade it belongs to the HTTP/2 reader
+        if (!keepAlive && watchdog.expired() == null && !connection.isUpgraded()) {
+            connection.closeQuietly();
+        }
+    }
+
+    /**
+     * Reads one request from a connection and answers it, or hands it to its bulkhead.
+     *
+     * @param connection the connection
+     * @return what the request left the connection to
+     * @throws IOException if the connection fails
+     */
+    private static Outcome serveRequest(Connection connection) throws IOException {
+        long startNanos = System.nanoTime();
+        long queuedAt = connection.takeQueuedAt();
+        long deadlineBase = queuedAt != 0 ? queuedAt : startNanos;
+        ConnectionWatchdog watchdog = connection.getWatchdog();
+        // ACCEPT covers the wait between the hand-off to this worker and its pickup
+        RequestTrace.begin(deadlineBase);
+        watchdog.beginRequest(deadlineBase);
+        RequestTrace.mark(RequestTrace.Phase.ACCEPT);
+        HttpRequest request = readRequest(connection.getInputStream(), connection.getOutputStream(), startNanos);
+        RequestTrace.mark(RequestTrace.Phase.HEADER_PARSE);
+        if (request == null) {
+            return Outcome.CLOSE;
+        }
+        // h2c upgrades are for cleartext only; over TLS, HTTP/2 is chosen through ALPN
+        if (Http2Connection.isPreface(request) || (!connection.isSecure() && Http2Connection.isUpgrade(request))) {
+            watchdog.endRequest();
+            Http2Connection.open(connection, request);
+            return Outcome.CLOSE;
+        }
+        request.setConnection(connection);
+        if (!watchdog.beginHandler(deadlineBase)) {
+            // Waited in the worker queue past its deadline
+            return answer(connection, request, Admission.rejected(
+                    textResponse(503, "Service Unavailable", "Request timed out in queue")), startNanos);
+        }
+        // Limited and shed requests are answered here, so they never take a bulkhead slot
+        Admission admitted = admit(connection.getClientAddress(), request);
+        BulkheadPool bulkhead = BulkheadPool.enabled && admitted.rejection() == null ? bulkhead(request) : null;
+        if (bulkhead == null) {
+            return answer(connection, request, admitted, startNanos);
+        }
+        // The handler deadline keeps running while the request waits for a bulkhead thread
+        watchdog.moveTo(null);
+        RequestTrace trace = RequestTrace.detach();
+        if (bulkhead.execute(() -> serveHandedOff(connection, request, admitted, trace, startNanos))) {
+            return Outcome.HANDED_OFF;
+        }
+        RequestTrace.attach(trace);
+        watchdog.moveTo(Thread.currentThread());
+        if (admitted.limit() != null) {
+            admitted.limit().cancel();
+        }
+        return answer(connection, request, Admission.rejected(HttpResponse.serialize(503, "Service Unavailable",
+                TEXT_CONTENT_TYPE, Map.of("retry-after", "1"), body("Bulkhead " + bulkhead.name + " full"))),
+                startNanos);
+    }
+
+    /**
+     * Answers a request on the bulkhead thread it was handed to, then gives the connection
+     * back to its connector or closes it.
+     */
+    private static void serveHandedOff(Connection connection, HttpRequest request, Admission admitted,
+            RequestTrace trace, long startNanos) {
+        RequestTrace.attach(trace);
+        connection.getWatchdog().moveTo(Thread.currentThread());
+        Outcome outcome = Outcome.CLOSE;
+        try {
+            outcome = answer(connection, request, admitted, startNanos);
+        } catch (Exception ex) {
+            logFailure(connection, ex);
+        } finally {
+            finishConnection(connection, outcome == Outcome.KEEP_ALIVE);
+        }
+        connection.handBack(outcome == Outcome.KEEP_ALIVE);
+    }
+
+    /**
+     * Responds to a request whose handler phase has begun and ends it.
+     * @param admitted what the rate limit and admission control decided for it
+     */
+    private static Outcome answer(Connection connection, HttpRequest request, Admission admitted, long startNanos)
+            throws IOException {
+        ConnectionWatchdog watchdog = connection.getWatchdog();
+        int status = respond(request, connection.getOutputStream(), admitted,
+                startNanos, connection::bytesWritten);
+        boolean consumed = request.discardBody(DISCARD_LIMIT);
+        watchdog.endRequest();
+        return consumed && status != 0 && request.isKeepAlive() && watchdog.expired() == null
+                && !connection.isUpgraded() ? Outcome.KEEP_ALIVE : Outcome.CLOSE;
+    }
+
+    /**
+     * Picks the bulkhead a request runs on: its controller route's or the static files'.
+     * Built-in endpoints, WebSocket handshakes, event streams and errors are answered on
+     * the worker loop, since they are quick or hand the connection over anyway; batches,
+     * which wait for their calls, run on the shared routes pool.
+     *
+     * @param request the parsed request
+     * @return the bulkhead, or null to answer on the current thread
+     */
+    static BulkheadPool bulkhead(HttpRequest request) {
+        String path = request.getPath();
+        String method = request.getMethod();
+        if (BATCH_PATH.equals(path) && "POST".equals(method)) {
+            return BulkheadPool.forRoutes();
+        }
+        Map<String, HttpHandler> builtIn = endpoints.get(method);
+        if ((builtIn != null && builtIn.containsKey(path)) || webSockets.containsKey(path)) {
+            return null;
+        }
+        Map<String, Method> table = routes.get(method);
+        Method s = table == null ? null : table.get(path);
+        if (s != null) {
+            return s.getReturnType() == EventStream.class ? null : BulkheadPool.forRoute(s);
+        }
+        if ("GET".equals(method) && staticAssets().get(path) != null) {
+            return BulkheadPool.forStatic();
+        }
+        return null;
+    }
+
+    /**
+     * Answers a request that went through {@link #admit}: routes it, or sends its rejection,
+     * and records its metrics, trace and access log entry. Shared by HTTP/1.1 connections
+     * and HTTP/2 streams.
+     *
+     * @param request      the request
+     * @param rawOut       where the HTTP/1.1 response is written
+     * @param admitted     what the rate limit and admission control decided; its slot is released here
+     * @param startNanos   when work on the request started
+     * @param bytesWritten counts the bytes written to {@code rawOut}, for the access log
+     * @return the status sent, or 0 if nothing was sent
+     * @throws IOException if the response cannot be written
+     */
+    static int respond(HttpRequest request, OutputStream rawOut, Admission admitted, long startNanos,
+            LongSupplier bytesWritten) throws IOException {
+        long sentBefore = bytesWritten.getAsLong();
+        PrintWriter out = new PrintWriter(rawOut, true);
+        int status;
+        byte[] rejection = admitted.rejection();
+        AdmissionController limit = admitted.limit();
+        if (rejection != null) {
+            rawOut.write(rejection);
+            rawOut.flush();
+            status = statusCode(rejection);
+        } else {
+            long admittedAt = System.nanoTime();
             try {
-                System.out.println("Listo para recibir ...");
-                clientSocket = serverSocket.accept();
-            } catch (IOException e) {
-                System.err.println("Accept failed.");
-                System.exit(1);
-            }
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-            BufferedReader in = new BufferedReader(
-                    new InputStreamReader(
-                            clientSocket.getInputStream()));
-            String inputLine, outputLine;
-            String path = null;
-            boolean firstLine = true;
-            URI requri = null;
-            while ((inputLine = in.readLine()) != null) {
-                if (firstLine) {
-                    requri = new URI(inputLine.split(" ")[1]);
-                    System.out.println("Path: " + requri.getPath());
-                    firstLine = false;
-                }
-                System.out.println("Received: " + inputLine);
-                if (!in.ready()) {
-                    break;
+                status = handleRequest(request, out, rawOut);
+            } finally {
+                if (limit != null) {
+                    limit.release(System.nanoTime() - admittedAt);
                 }
             }
-            try{
-                handleRequest(requri, out, clientSocket);
-            }catch(Exception ex){
-                Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            //out.println(outputLine);
-            out.close();
-            in.close();
-            clientSocket.close();
         }
-        serverSocket.close();
+        out.flush();
+        RequestTrace.mark(RequestTrace.Phase.SOCKET_WRITE);
+        long elapsed = System.nanoTime() - startNanos;
+        URI requri = request.getUri();
+        String route = routeLabel(requri, status);
+        ServerMetrics.recordRequest(route, status, elapsed);
+        RequestTrace.end(route, status);
+        long sent = bytesWritten.getAsLong() - sentBefore;
+        AccessLog.access(request.getMethod(), requri.getPath(), status, sent, elapsed);
+        TrafficRecorder capture = recorder;
+        if (capture != null) {
+            capture.record(request, status, sent, elapsed);
+        }
+        return status;
     }
     
     /**
-     * Handles an incoming HTTP request and generates the appropriate response.
-     * This method routes requests to the appropriate handler based on the URI path:
+     * Applies the rate limit and then admission control to a request, before any routing,
+     * bulkhead or file I/O.
+     *
+     * @param client  the client address
+     * @param request the parsed request
+     * @return the rejection to send, or the admission slot taken for the request
+     */
+    static Admission admit(String client, HttpRequest request) {
+        byte[] rejection = rateLimit(client, request);
+        if (rejection != null) {
+            return Admission.rejected(rejection);
+        }
+        // /metrics stays reachable while the server sheds load; event streams are long-lived, not in flight
+        AdmissionController limit = METRICS_PATH.equals(request.getPath()) || isEventRoute(request)
+                ? null : admission;
+        if (limit == null) {
+            return Admission.NONE;
+        }
+        if (!limit.tryAcquire()) {
+            return Admission.rejected(HttpResponse.serialize(503, "Service Unavailable", TEXT_CONTENT_TYPE,
+                    Map.of("retry-after", "1"), body("Server overloaded")));
+        }
+        return new Admission(null, limit);
+    }
+
+    /**
+     * Applies the configured rate limit to a request, before any routing or file I/O.
+     *
+     * @param client  the client address
+     * @param request the parsed request
+     * @return a 429 response with Retry-After if the bucket is empty, otherwise null
+     */
+    static byte[] rateLimit(String client, HttpRequest request) {
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null) {
+            return null;
+        }
+        long wait = limiter.tryAcquire(limiter.key(client, routeLabel(request.getUri(), 0)));
+        if (wait == 0) {
+            return null;
+        }
+        long seconds = Math.max(1, (wait + 999_999_999L) / 1_000_000_000L);
+        return HttpResponse.serialize(429, "Too Many Requests", TEXT_CONTENT_TYPE,
+                Map.of("retry-after", Long.toString(seconds)), body("Too many requests"));
+    }
+
+    /**
+     * Reads the request line and headers of the next request on a connection.
+     * Malformed or oversized requests are answered here with their error status.
+     *
+     * @param in         the buffered connection input
+     * @param rawOut     the connection output
+     * @param startNanos when the worker started on the request
+     * @return the request, or null if there is nothing left to handle
+     * @throws IOException if the connection fails
+     */
+    private static HttpRequest readRequest(InputStream in, OutputStream rawOut, long startNanos) throws IOException {
+        try {
+            HttpRequest request = HttpRequest.read(in, rawOut);
+            if (request != null && AccessLog.isEnabled(AccessLog.Level.DEBUG)) {
+                AccessLog.debug("request.path", request.getPath());
+                request.getHeaders().forEach((name, value) -> AccessLog.debug("request.header", name + ": " + value));
+            }
+            return request;
+        } catch (ResponseStatusException e) {
+            byte[] output = errorResponse(e);
+            rawOut.write(output);
+            rawOut.flush();
+            AccessLog.access("-", "-", e.getStatus(), output.length, System.nanoTime() - startNanos);
+            return null;
+        }
+    }
+
+    /**
+     * Handles an incoming GET request and generates the appropriate response.
      * @param uri    the request URI containing the path and query parameters
      * @param out    the writer to send responses to the client
-     * @param socket the client socket used for file streaming
+     * @param rawOut the client output stream used for file streaming
+     * @return the HTTP status code sent to the client, or 0 if nothing was sent
      * @throws IOException if an I/O error occurs when handling the request
+     * @see #handleRequest(HttpRequest, PrintWriter, OutputStream)
      */
-    public static void handleRequest(URI uri, PrintWriter out, Socket socket) throws IOException {
-        
-        if(uri != null && uri.getPath().startsWith("/app/helloget")){
-            String output = greetingService(uri, false);
-            invokeService(uri);
-            out.println(output);
-        }else if(uri != null && uri.getPath().startsWith("/app/hellopost")) {
-            String output = greetingService(uri, true);
-            out.println(output);
-        }
-        // Check for registered REST services
-        else if(uri != null && services.containsKey(uri.getPath())) {
-            String output = invokeService(uri);
-            out.println(output);
-        }
-        else if (uri != null){
-            // Handle static files
-            Path directory = Path.of(ROOT_DIRECTORY, uri.getPath());
-            if(Files.isDirectory(directory)){
-                directory = directory.resolve("index.html");
+    public static int handleRequest(URI uri, PrintWriter out, OutputStream rawOut) throws IOException {
+        return uri == null ? 0 : handleRequest(new HttpRequest(uri), out, rawOut);
+    }
+
+    /**
+     * Handles an incoming HTTP request and generates the appropriate response.
+     * The request walks the registered {@link HttpFilter filters} and is then routed by
+     * its method and exact path.
+     *
+     * @param request the parsed request
+     * @param out     the writer to send responses to the client
+     * @param rawOut  the client output stream used for file streaming
+     * @return the HTTP status code sent to the client, or 0 if nothing was sent
+     * @throws IOException if an I/O error occurs when handling the request
+     */
+    public static int handleRequest(HttpRequest request, PrintWriter out, OutputStream rawOut) throws IOException {
+        out.flush();
+        return pipeline.handle(request, rawOut);
+    }
+
+    /**
+     * Adds a filter to the end of the chain every request walks before it is routed.
+     * The chain is composed here, once, so requests never look filters up.
+     *
+     * @param filter the filter
+     */
+    public static synchronized void filter(HttpFilter filter) {
+        filters.add(filter);
+        pipeline = compose(filters.toArray(new HttpFilter[0]));
+    }
+
+    /** Removes every registered filter. */
+    static synchronized void clearFilters() {
+        filters.clear();
+        pipeline = HttpServer::route;
+    }
+
+    /**
+     * Nests the filters around the router, the first filter outermost.
+     * @param chain the filters in order
+     * @return the handler that runs the whole chain
+     */
+    private static HttpHandler compose(HttpFilter[] chain) {
+        HttpHandler next = HttpServer::route;
+        for (int i = chain.length - 1; i >= 0; i--) {
+            HttpFilter filter = chain[i];
+            HttpHandler rest = next;
+            next = (request, rawOut) -> filter.filter(request, rawOut, rest);
+        }
+        return next;
+    }
+
+    /**
+     * Sends a request to its route: a built-in endpoint, a WebSocket handler, an event
+     * stream, a controller method or a static file. Each step is a single map lookup on
+     * the exact path, static files included. Paths mapped only for other methods are answered with
+     * {@code 405 Method Not Allowed}.
+     *
+     * @param request the parsed request
+     * @param rawOut  the client output stream
+     * @return the HTTP status code sent to the client, or 0 if nothing was sent
+     * @throws IOException if an I/O error occurs when handling the request
+     */
+    private static int route(HttpRequest request, OutputStream rawOut) throws IOException {
+        String path = request.getPath();
+        String method = request.getMethod();
+        Map<String, HttpHandler> builtIn = endpoints.get(method);
+        HttpHandler endpoint = builtIn == null ? null : builtIn.get(path);
+        if (endpoint != null) {
+            return endpoint.handle(request, rawOut);
+        }
+        WebSocketHandler socket = webSockets.get(path);
+        if (socket != null) {
+            return WebSocketSession.accept(request, socket, rawOut);
+        }
+        Map<String, Method> table = routes.get(method);
+        Method s = table == null ? null : table.get(path);
+        if (s != null) {
+            if (!"GET".equals(method)) {
+                return send(rawOut, invokeServiceBytes(request));
             }
-            if(Files.exists(directory)){
-                String output = "HTTP/1.1 200 OK\r\n" + "content-type: " + getType(directory) + "\r\n"
-                        +"content-length: " + Files.size(directory) + "\r\n\r\n";
-                try (OutputStream outputStream = socket.getOutputStream()) {
-                    outputStream.write(output.getBytes());
-                    Files.copy(directory, outputStream);
+            if (s.getReturnType() == EventStream.class) {
+                return serveEvents(request, s, rawOut);
+            }
+            return send(rawOut, serviceResponse(request));
+        }
+        String allowed = allowedMethods(path);
+        if (allowed != null) {
+            return send(rawOut, HttpResponse.serialize(405, "Method Not Allowed", TEXT_CONTENT_TYPE,
+                    Map.of("allow", allowed), body("Method not allowed")));
+        }
+        if (!"GET".equals(method)) {
+            return send(rawOut, textResponse(404, "Not Found", "Service not found"));
+        }
+        StaticAssets.Asset asset = staticAssets().get(path);
+        RequestTrace.mark(RequestTrace.Phase.ROUTE_LOOKUP);
+        if (asset != null) {
+            return asset.send(request, rawOut);
+        }
+        return send(rawOut, textResponse(404, "Not Found", "File not found"));
+    }
+
+    /**
+     * Gets the index of the static files under {@link #ROOT_DIRECTORY}. It is built when
+     * the server starts and again only if the directory is changed.
+     *
+     * @return the static file index
+     */
+    static StaticAssets staticAssets() {
+        StaticAssets assets = staticAssets;
+        String root = ROOT_DIRECTORY;
+        if (assets == null || !assets.root.equals(root)) {
+            synchronized (HttpServer.class) {
+                assets = staticAssets;
+                if (assets == null || !assets.root.equals(root)) {
+                    assets = StaticAssets.load(root);
+                    staticAssets = assets;
                 }
+            }
+        }
+        return assets;
+    }
+
+    /**
+     * Answers {@link #METRICS_PATH} with the Prometheus text format.
+     */
+    private static int serveMetrics(HttpRequest request, OutputStream rawOut) throws IOException {
+        RequestTrace.mark(RequestTrace.Phase.ROUTE_LOOKUP);
+        byte[] body = ServerMetrics.render().getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 200 OK\r\n" + "content-type: text/plain; version=0.0.4; charset=utf-8\r\n"
+                + "content-length: " + body.length + "\r\n\r\n";
+        RequestTrace.mark(RequestTrace.Phase.SERIALIZATION);
+        rawOut.write(head.getBytes(StandardCharsets.US_ASCII));
+        rawOut.write(body);
+        rawOut.flush();
+        return 200;
+    }
+
+    private static int send(OutputStream rawOut, byte[] response) throws IOException {
+        rawOut.write(response);
+        rawOut.flush();
+        return statusCode(response);
+    }
+
+    /**
+     * Tells whether a request subscribes to an {@link EventStream}.
+     * @param request the request
+     * @return true for GET routes whose method returns an event stream
+     */
+    static boolean isEventRoute(HttpRequest request) {
+        if (!"GET".equals(request.getMethod())) {
+            return false;
+        }
+        Method s = services.get(request.getPath());
+        return s != null && s.getReturnType() == EventStream.class;
+    }
+
+    /**
+     * Invokes an event stream route and subscribes the client to the stream it returns.
+     * Errors before the subscription are answered like any other route.
+     *
+     * @param request the request
+     * @param s       the controller method
+     * @param rawOut  the client output stream
+     * @return the status sent
+     * @throws IOException if the response cannot be written
+     */
+    private static int serveEvents(HttpRequest request, Method s, OutputStream rawOut) throws IOException {
+        RequestTrace.mark(RequestTrace.Phase.ROUTE_LOOKUP);
+        byte[] failure;
+        try {
+            EventStream events = (EventStream) s.invoke(null, bindArguments(s, request));
+            RequestTrace.mark(RequestTrace.Phase.HANDLER);
+            if (events != null) {
+                request.discardBody(DISCARD_LIMIT);
+                events.subscribe(request, rawOut);
+                return 200;
+            }
+            failure = textResponse(404, "Not Found", "No event stream");
+        } catch (ResponseStatusException ex) {
+            failure = errorResponse(ex);
+        } catch (InvocationTargetException ex) {
+            if (ex.getTargetException() instanceof ResponseStatusException rse) {
+                failure = errorResponse(rse);
             } else {
-                String outputLine = "HTTP/1.1 404 Not Found\r\n"  + "content-type: text/plain; charset=utf-8\r\n"
-                        + "\r\n" + "File not found";
-                out.println(outputLine);
+                Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
+                failure = textResponse(500, "Internal Server Error",
+                        "Internal Server Error: " + ex.getTargetException().getMessage());
             }
+        } catch (IllegalAccessException | RuntimeException ex) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
+            failure = textResponse(500, "Internal Server Error", "Internal Server Error: " + ex.getMessage());
         }
+        rawOut.write(failure);
+        rawOut.flush();
+        return statusCode(failure);
+    }
 
+    /**
+     * Chooses the metrics label of a finished request.
+     * Registered routes are labelled with their path; everything else is folded
+     * into a fixed label so unknown paths cannot blow up the number of series.
+     *
+     * @param uri    the request URI
+     * @param status the status code that was sent
+     * @return the route label
+     */
+    static String routeLabel(URI uri, int status) {
+        String path = uri.getPath();
+        if (allowedMethods(path) != null || webSockets.containsKey(path)) {
+            return path;
+        }
+        return status == 404 ? ServerMetrics.NOT_FOUND_ROUTE : ServerMetrics.STATIC_ROUTE;
     }
-    
+
+    /**
+     * Lists the methods a path is mapped for.
+     * @param path the request path
+     * @return the methods as an Allow header value, or null if the path is not a route
+     */
+    static String allowedMethods(String path) {
+        return allowed.get(path);
+    }
+
+    /**
+     * Recomputes the Allow header value of a path after its routes changed.
+     * @param path the mapped path
+     */
+    private static void refreshAllowed(String path) {
+        StringJoiner methods = new StringJoiner(", ");
+        for (String method : new String[]{"GET", "POST", "PUT", "DELETE"}) {
+            if (routes.get(method).containsKey(path) || endpoints.get(method).containsKey(path)) {
+                methods.add(method);
+            }
+        }
+        if (methods.length() == 0) {
+            allowed.remove(path);
+        } else {
+            allowed.put(path, methods.toString());
+        }
+    }
+
+    private static void registerEndpoints() {
+        for (Map<String, HttpHandler> table : endpoints.values()) {
+            table.keySet().forEach(HttpServer::refreshAllowed);
+        }
+    }
+
+    /**
+     * Removes every controller route, keeping the built-in endpoints. Routes must be
+     * dropped here rather than from the tables, so the Allow values stay in step.
+     */
+    static void clearRoutes() {
+        routes.values().forEach(Map::clear);
+        allowed.clear();
+        registerEndpoints();
+    }
+
+    /**
+     * Produces the serialized response of a registered REST service.
+     * Routes annotated with {@link Cacheable} are answered from their {@link ResponseCache},
+     * routes annotated with {@link SingleFlight} share concurrent identical invocations,
+     * and every other route invokes the controller method.
+     *
+     * The controller always receives the parsed request; its URI only keys the cache and
+     * the shared invocations.
+     *
+     * @param request the parsed GET request
+     * @return the complete HTTP response as UTF-8 bytes
+     */
+    static byte[] serviceResponse(HttpRequest request) {
+        String path = request.getPath();
+        ResponseCache cache = ResponseCache.forRoute(path);
+        if (cache != null) {
+            return cache.get(requestKey(request.getUri()), () -> invokeServiceBytes(request));
+        }
+        RequestCoalescer<byte[]> flight = RequestCoalescer.forRoute(path);
+        if (flight != null) {
+            return flight.execute(requestKey(request.getUri()), () -> invokeServiceBytes(request));
+        }
+        return invokeServiceBytes(request);
+    }
+
+    /**
+     * Produces the serialized response of a service for a caller that only has a URI,
+     * such as a {@link BatchEndpoint} call.
+     *
+     * @param uri the request URI containing the path and query parameters
+     * @return the complete HTTP response as UTF-8 bytes
+     * @see #serviceResponse(HttpRequest)
+     */
+    static byte[] serviceResponse(URI uri) {
+        return serviceResponse(new HttpRequest(uri));
+    }
+
+    /**
+     * Builds the normalized identity of a service request: the route plus the values of
+     * the parameters bound by the controller method, in declaration order and with their
+     * default values applied. Query parameters the method ignores and the order in
+     * which the client sent them do not change the key.
+     *
+     * @param uri the request URI
+     * @return the key shared by every request that binds the same arguments
+     */
+    static String requestKey(URI uri) {
+        String path = uri.getPath();
+        List<Parameter> params = requests.get(path);
+        if (params == null || params.isEmpty()) {
+            return path;
+        }
+        HttpRequest request = new HttpRequest(uri);
+        StringBuilder key = new StringBuilder(path.length() + 32).append(path).append('?');
+        for (Parameter p : params) {
+            RequestParam param = p.getAnnotation(RequestParam.class);
+            String value = request.getValue(param.value());
+            if (value == null || value.isEmpty()) {
+                value = param.defaultValue();
+            }
+            key.append(param.value()).append('=').append(value).append('&');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Extracts the status code from a raw HTTP response string.
+     * @param response a response starting with the status line (e.g. "HTTP/1.1 200 OK")
+     * @return the status code, or 0 if the status line cannot be parsed
+     */
+    static int statusOf(String response) {
+        if (response == null || response.length() < 12) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(response.substring(9, 12));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Extracts the status code from a serialized HTTP response.
+     * @param response a response starting with the status line (e.g. "HTTP/1.1 200 OK")
+     * @return the status code, or 0 if the status line cannot be parsed
+     */
+    static int statusCode(byte[] response) {
+        if (response == null || response.length < 12) {
+            return 0;
+        }
+        int status = 0;
+        for (int i = 9; i < 12; i++) {
+            int digit = response[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return 0;
+            }
+            status = status * 10 + digit;
+        }
+        return status;
+    }
+
     /**
      * Determines the MIME type of a given file based on its extension.
      * Supports common web file types including HTML, CSS, JavaScript, images, and JSON.
@@ -179,18 +846,30 @@ public class HttpServer {
      * @return an HTTP response string with status, headers, and JSON body
      */
     public static String greetingService(URI uri, boolean time){
+        return new String(greetingResponse(uri, time), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the legacy greeting response; the name is escaped by {@link JsonWriter}.
+     * @param uri  the request URI containing the query parameter (?name=value)
+     * @param time if true, includes the current date in the response
+     * @return the serialized HTTP response
+     */
+    static byte[] greetingResponse(URI uri, boolean time){
         String user;
+        ResponseBuffer body = ResponseBuffer.threadLocal();
         try{
             user = uri.getQuery().split("=")[1];
         } catch (Exception e) {
-            return "HTTP/1.1 400 Bad Request\r\n" + "content-type: text/plain; charset=utf-8\r\n"
-                    + "\r\n" + "{\"msg\": \"Name not found\"}";
-        }
-        String response = "HTTP/1.1 200 OK \r\n" + "content-type: application/json; charset=utf-8\r\n"
-                + "\r\n";
-        response = response + "{\"msg\": \"Hello " + user;
-        response = time? response + "today's date is" + LocalDate.now() + "\"}":response+ "\"}";
-        System.out.println(response);
+            JsonWriter.write(Map.of("msg", "Name not found"), body);
+            return HttpResponse.serialize(400, "Bad Request", JSON_CONTENT_TYPE, Map.of(), body);
+        }
+        String msg = time ? "Hello " + user + "today's date is" + LocalDate.now() : "Hello " + user;
+        JsonWriter.write(Map.of("msg", msg), body);
+        byte[] response = HttpResponse.serialize(200, "OK", JSON_CONTENT_TYPE, Map.of(), body);
+        if (AccessLog.isEnabled(AccessLog.Level.DEBUG)) {
+            AccessLog.debug("greeting.response", new String(response, StandardCharsets.UTF_8));
+        }
         return response;
     }
     
@@ -203,17 +882,33 @@ public class HttpServer {
      */
     public static void get(String path, Method s){
         services.put(path,s);
+        refreshAllowed(path);
     }
     
     /**
      * Sets the root directory for serving static files.
-     * The directory path is relative to the target/classes directory.
+     * The directory path is relative to the target/classes directory, or to the root
+     * of the jar once the application is packaged.
      * 
      * @param localFilesPath the path to the static files directory
      */
     public static void staticfiles(String localFilesPath){
         ROOT_DIRECTORY = "target/classes" + localFilesPath;
     }
+
+    /**
+     * Gets the fingerprinted URL of a static file, for pages built by controllers.
+     * The file is served under it with an immutable, year-long cache lifetime, and the
+     * URL changes whenever the content does. HTML files in the static directory have
+     * their references rewritten already.
+     *
+     * @param path the plain path of the file (e.g. "/style.css")
+     * @return the fingerprinted path (e.g. "/style.3f9a1c0b2e.css"), or {@code path} if
+     *         there is no such file
+     */
+    public static String assetUrl(String path){
+        return staticAssets().fingerprinted(path);
+    }
     
     /**
      * Starts the HTTP server.
@@ -236,58 +931,167 @@ public class HttpServer {
      * @return a complete HTTP response string with headers and body, or a 404 error if service not found
      */
     public static String invokeService(URI uri){
-        String key = uri.getPath();
-        System.out.println("Invoking service for path: " + key);
-        Method s = services.get(key);
+        return new String(invokeServiceBytes(new HttpRequest(uri)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Invokes the service mapped for the method and path of a request and serializes its
+     * result. Strings are sent as {@code text/plain}; any other value (records, beans, maps,
+     * collections, numbers...) is written by {@link JsonWriter} as {@code application/json}.
+     * A null result produces an empty {@code 204 No Content} response.
+     *
+     * @param request the request, whose body may be bound with {@link RequestBody}
+     * @return the complete HTTP response as UTF-8 bytes
+     */
+    static byte[] invokeServiceBytes(HttpRequest request){
+        String key = request.getPath();
+        AccessLog.debug("service.invoke", key);
+        Map<String, Method> table = routes.get(request.getMethod());
+        Method s = table == null ? null : table.get(key);
+        RequestTrace.mark(RequestTrace.Phase.ROUTE_LOOKUP);
         
         if (s != null) {
             try {
-                // Get parameters for this method
-                Parameter[] parameters = s.getParameters();
-                Object[] args = new Object[parameters.length];
-                
-                // Parse query parameters
-                HttpRequest httpRequest = new HttpRequest(uri);
-                
-                for (int i = 0; i < parameters.length; i++) {
-                    Parameter p = parameters[i];
-                    if (p.isAnnotationPresent(RequestParam.class)) {
-                        RequestParam param = p.getAnnotation(RequestParam.class);
-                        String value = httpRequest.getValue(param.value());
-                        // Use defaultValue if parameter is not provided
-                        if (value == null || value.isEmpty()) {
-                            value = param.defaultValue();
-                        }
-                        args[i] = value;
-                    } else {
-                        // For non-annotated parameters, pass null
-                        args[i] = null;
-                    }
-                }
+                Object[] args = bindArguments(s, request);
                 
+                RequestTrace.mark(RequestTrace.Phase.ARG_BINDING);
                 // Invoke the method
-                Object result = s.invoke(null, args);
+                long handlerStart = System.nanoTime();
+                Object result;
+                try {
+                    result = s.invoke(null, args);
+                } finally {
+                    ServerMetrics.recordHandler(key, System.nanoTime() - handlerStart);
+                    RequestTrace.mark(RequestTrace.Phase.HANDLER);
+                }
                 
                 // Return HTTP response
-                return "HTTP/1.1 200 OK\r\n"
-                        + "content-type: text/plain; charset=utf-8\r\n"
-                        + "\r\n" + result.toString();
+                byte[] response = serializeResult(result);
+                RequestTrace.mark(RequestTrace.Phase.SERIALIZATION);
+                return response;
                         
-            } catch (IllegalAccessException ex) {
+            } catch (ResponseStatusException ex) {
+                return errorResponse(ex);
+            } catch (IllegalAccessException | RuntimeException ex) {
                 Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
-                return "HTTP/1.1 500 Internal Server Error\r\n"
-                        + "content-type: text/plain; charset=utf-8\r\n"
-                        + "\r\n" + "Internal Server Error: " + ex.getMessage();
+                return textResponse(500, "Internal Server Error", "Internal Server Error: " + ex.getMessage());
             } catch (InvocationTargetException ex) {
+                if (ex.getTargetException() instanceof ResponseStatusException rse) {
+                    return errorResponse(rse);
+                }
+                if (ex.getTargetException() instanceof BodyTooLargeException tooLarge) {
+                    return textResponse(413, "Payload Too Large", tooLarge.getMessage());
+                }
                 Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
-                return "HTTP/1.1 500 Internal Server Error\r\n"
-                        + "content-type: text/plain; charset=utf-8\r\n"
-                        + "\r\n" + "Internal Server Error: " + ex.getTargetException().getMessage();
+                return textResponse(500, "Internal Server Error",
+                        "Internal Server Error: " + ex.getTargetException().getMessage());
             }
         }
         
-        return "HTTP/1.1 404 Not Found\r\n" + "content-type: text/plain; charset=utf-8\r\n"
-               + "\r\n" + "Service not found";
+        return textResponse(404, "Not Found", "Service not found");
+    }
+
+    /**
+     * Serializes the value returned by a controller method into a complete response.
+     * @param result the returned value, possibly null
+     * @return the serialized HTTP response
+     */
+    static byte[] serializeResult(Object result) {
+        ResponseBuffer body = ResponseBuffer.threadLocal();
+        if (result == null) {
+            return HttpResponse.serialize(204, "No Content", null, Map.of(), body);
+        }
+        if (result instanceof CharSequence text) {
+            body.writeUtf8(text);
+            return HttpResponse.serialize(200, "OK", TEXT_CONTENT_TYPE, Map.of(), body);
+        }
+        JsonWriter.write(result, body);
+        return HttpResponse.serialize(200, "OK", JSON_CONTENT_TYPE, Map.of(), body);
+    }
+
+    private static byte[] textResponse(int status, String message, String text) {
+        return HttpResponse.serialize(status, message, TEXT_CONTENT_TYPE, Map.of(), body(text));
+    }
+
+    private static ResponseBuffer body(String text) {
+        ResponseBuffer body = ResponseBuffer.threadLocal();
+        body.writeUtf8(text);
+        return body;
+    }
+
+    static byte[] errorResponse(ResponseStatusException e) {
+        return textResponse(e.getStatus(), HttpResponse.reasonPhrase(e.getStatus()), e.getMessage());
+    }
+
+    /**
+     * Resolves the arguments of a controller method from a request.
+     * {@code @RequestParam} values come from the query string, a {@code @RequestBody}
+     * parameter from the body, and an {@link HttpRequest} parameter receives the request.
+     *
+     * @param s       the controller method
+     * @param request the request
+     * @return the arguments, null for parameters that cannot be bound
+     * @throws ResponseStatusException if the body is too large (413) or cannot be decoded (400)
+     */
+    private static Object[] bindArguments(Method s, HttpRequest request) {
+        Parameter[] parameters = s.getParameters();
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter p = parameters[i];
+            if (p.isAnnotationPresent(RequestParam.class)) {
+                RequestParam param = p.getAnnotation(RequestParam.class);
+                String value = request.getValue(param.value());
+                // Use defaultValue if parameter is not provided
+                if (value == null || value.isEmpty()) {
+                    value = param.defaultValue();
+                }
+                args[i] = value;
+            } else if (p.isAnnotationPresent(RequestBody.class)) {
+                args[i] = readBody(request, p);
+            } else if (p.getType() == HttpRequest.class) {
+                args[i] = request;
+            } else {
+                // For non-annotated parameters, pass null
+                args[i] = null;
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Reads the body of a request as the type of a {@code @RequestBody} parameter.
+     * Streams and channels are handed over unread; byte arrays, buffers and Strings are
+     * read fully; anything else is decoded from JSON.
+     */
+    private static Object readBody(HttpRequest request, Parameter p) {
+        RequestBody annotation = p.getAnnotation(RequestBody.class);
+        long maxBytes = annotation.maxBytes() < 0 ? HttpRequest.DEFAULT_MAX_BODY : annotation.maxBytes();
+        Class<?> type = p.getType();
+        try {
+            InputStream body = request.getBody(maxBytes);
+            if (type == InputStream.class) {
+                return body;
+            }
+            if (type == ReadableByteChannel.class) {
+                return Channels.newChannel(body);
+            }
+            if (type == byte[].class) {
+                return body.readAllBytes();
+            }
+            if (type == ByteBuffer.class) {
+                return ByteBuffer.wrap(body.readAllBytes());
+            }
+            if (type == String.class) {
+                return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            return JsonReader.read(body, p.getParameterizedType());
+        } catch (BodyTooLargeException e) {
+            throw new ResponseStatusException(413, e.getMessage(), e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(400, "Could not read request body: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(400, "Invalid request body: " + e.getMessage(), e);
+        }
     }
 
     public static void loadComponents(String[] args) {
@@ -302,20 +1106,75 @@ public class HttpServer {
     }
 
     static void loadComponent(Class<?> c){
+        if (c.isAnnotationPresent(WebSocketMapping.class)) {
+            loadWebSocket(c);
+        }
         if(!c.isAnnotationPresent(RestController.class)) {
             return;
         }
         Method[] methods = c.getDeclaredMethods();
         for(Method m : methods){
+            if (m.isAnnotationPresent(PostMapping.class)) {
+                loadRoute("POST", m.getAnnotation(PostMapping.class).value(), m);
+            } else if (m.isAnnotationPresent(PutMapping.class)) {
+                loadRoute("PUT", m.getAnnotation(PutMapping.class).value(), m);
+            } else if (m.isAnnotationPresent(DeleteMapping.class)) {
+                loadRoute("DELETE", m.getAnnotation(DeleteMapping.class).value(), m);
+            }
             if(!m.isAnnotationPresent(GetMapping.class)){
                 continue;
             }
             String mapping = m.getAnnotation(GetMapping.class).value();
-            System.out.println(mapping);
+            AccessLog.info("route.registered", mapping);
             services.put(mapping, m);
+            refreshAllowed(mapping);
+            BulkheadPool.register(m);
             checkMethodParameters(m, mapping);
+            if (m.isAnnotationPresent(Cacheable.class)) {
+                ResponseCache.register(mapping, m.getAnnotation(Cacheable.class));
+            } else {
+                ResponseCache.unregister(mapping);
+            }
+            if (m.isAnnotationPresent(SingleFlight.class)) {
+                RequestCoalescer.register(mapping);
+            } else {
+                RequestCoalescer.unregister(mapping);
+            }
+        }
+    }
+
+    /**
+     * Registers a route for a method other than GET. Caching and single-flight only
+     * apply to GET routes, so these are simply added to the method's route table.
+     */
+    private static void loadRoute(String httpMethod, String mapping, Method m) {
+        AccessLog.info("route.registered", httpMethod + " " + mapping);
+        routes.get(httpMethod).put(mapping, m);
+        refreshAllowed(mapping);
+        BulkheadPool.register(m);
+    }
+
+    /**
+     * Registers the handler of a {@link WebSocketMapping} class, created once through its
+     * no-argument constructor.
+     */
+    private static void loadWebSocket(Class<?> c) {
+        String mapping = c.getAnnotation(WebSocketMapping.class).value();
+        if (!WebSocketHandler.class.isAssignableFrom(c)) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE,
+                    "{0} is mapped to {1} but does not implement WebSocketHandler", new Object[]{c.getName(), mapping});
+            return;
+        }
+        try {
+            Constructor<?> constructor = c.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            webSockets.put(mapping, (WebSocketHandler) constructor.newInstance());
+            AccessLog.info("route.registered", "WS " + mapping);
+        } catch (ReflectiveOperationException ex) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
+
     private static void checkMethodParameters(Method method, String mapping) {
         Parameter[] params = method.getParameters();
         for (Parameter p : params) {
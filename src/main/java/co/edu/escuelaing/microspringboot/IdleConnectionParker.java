@@ -0,0 +1,332 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds connections that are waiting for a request head without tying up a worker loop:
+ * new connections and keep-alive connections between requests. They are switched to
+ * non-blocking mode and registered with one selector, which reads what arrives into the
+ * connection's buffer (finishing the TLS handshake on the way) until the whole head is
+ * there; only then is the connection switched back to blocking mode and handed to a
+ * worker. A client that trickles its head, or never sends one, thus holds a selector key
+ * instead of a worker. The shared {@link TimerWheel} answers heads that take longer than
+ * the header timeout with 408, and closes connections idle past the idle timeout. The 408
+ * is only written once the selector has let go of the connection and it blocks again, so
+ * the response is never cut short by a partial non-blocking write.
+ *
+ * @author daniel.aldana-b
+ */
+final class IdleConnectionParker implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(IdleConnectionParker.class.getName());
+
+    private final Selector selector;
+    private final Consumer<Connection> onReadable;
+    private final long idleTimeoutMillis;
+    private final long headerTimeoutMillis;
+    private final TimerWheel wheel;
+    private final ConcurrentLinkedQueue<Parked> pending = new ConcurrentLinkedQueue<>();
+    // Heads that timed out, to be taken off the selector before their 408 is written
+    private final ConcurrentLinkedQueue<Parked> timedOut = new ConcurrentLinkedQueue<>();
+    private final Set<Parked> parked = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param onReadable          receives connections whose next request head has arrived
+     * @param idleTimeoutMillis   how long a connection may stay idle
+     * @param headerTimeoutMillis how long a request head may take to arrive, 0 for no limit
+     * @param wheel               the timer closing idle connections
+     * @throws IOException if the selector cannot be opened
+     */
+    IdleConnectionParker(Consumer<Connection> onReadable, long idleTimeoutMillis, long headerTimeoutMillis,
+            TimerWheel wheel) throws IOException {
+        this.selector = Selector.open();
+        this.onReadable = onReadable;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.headerTimeoutMillis = headerTimeoutMillis;
+        this.wheel = wheel;
+        this.thread = new Thread(this::run, "http-idle");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for the first request head of a newly accepted connection, whose header
+     * clock starts now. A connection that cannot be watched by a selector goes straight
+     * to a worker; once the parker is closed it is closed instead.
+     * @param connection a connection marked queued at its accept
+     */
+    void admit(Connection connection) {
+        if (!running) {
+            connection.closeQuietly();
+            return;
+        }
+        if (connection.socketChannel() == null) {
+            onReadable.accept(connection);
+            return;
+        }
+        watch(new Parked(connection), true);
+    }
+
+    /**
+     * Waits for the next request of a connection. A pipelined head that is already
+     * buffered in part runs on the header clock, an idle connection on the idle clock.
+     * Connections that cannot be watched by a selector, idle connections with keep-alive
+     * disabled, or any connection once the parker is closed, are closed instead.
+     * @param connection a connection with no request in progress
+     */
+    void park(Connection connection) {
+        boolean receiving = connection.hasBufferedInput();
+        if (!running || (idleTimeoutMillis == 0 && !receiving) || connection.socketChannel() == null) {
+            connection.closeQuietly();
+            return;
+        }
+        if (receiving) {
+            connection.markQueued();
+        }
+        watch(new Parked(connection), receiving);
+    }
+
+    private void watch(Parked entry, boolean receiving) {
+        parked.add(entry);
+        startClock(entry, receiving);
+        pending.add(entry);
+        selector.wakeup();
+    }
+
+    /**
+     * Starts the header clock once a head starts arriving, or the idle clock before.
+     */
+    private void startClock(Parked entry, boolean receiving) {
+        entry.receiving = receiving;
+        long millis = receiving ? headerTimeoutMillis : idleTimeoutMillis;
+        ConnectionWatchdog.Kind kind = receiving ? ConnectionWatchdog.Kind.HEADER : ConnectionWatchdog.Kind.IDLE;
+        entry.timeout = millis > 0 ? wheel.schedule(() -> expire(entry, kind), millis, TimeUnit.MILLISECONDS) : null;
+    }
+
+    private static void cancelClock(Parked entry) {
+        TimerWheel.Timeout timeout = entry.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Returns how many connections are waiting for their next request.
+     * @return the number of idle connections
+     */
+    int size() {
+        return parked.size();
+    }
+
+    private void expire(Parked entry, ConnectionWatchdog.Kind kind) {
+        if (entry.claim()) {
+            parked.remove(entry);
+            if (kind == ConnectionWatchdog.Kind.HEADER) {
+                timedOut.add(entry);
+                selector.wakeup();
+            } else {
+                ConnectionWatchdog.record(kind);
+                entry.connection.closeQuietly();
+            }
+        }
+    }
+
+    private void run() {
+        List<Parked> ready = new ArrayList<>();
+        while (running) {
+            try {
+                selector.select();
+                register();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Parked entry = (Parked) key.attachment();
+                    if (advance(entry)) {
+                        key.cancel();
+                        if (entry.claim()) {
+                            cancelClock(entry);
+                            ready.add(entry);
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+                if (!ready.isEmpty()) {
+                    // Cancelled keys are only deregistered by the next selection
+                    selector.selectNow();
+                    selector.selectedKeys().clear();
+                    for (Parked entry : ready) {
+                        resume(entry);
+                    }
+                    ready.clear();
+                }
+                answerTimedOut();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Idle connection selector failed", e);
+            }
+        }
+    }
+
+    private void register() {
+        Parked entry;
+        while ((entry = pending.poll()) != null) {
+            SelectableChannel channel = entry.connection.socketChannel();
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, entry);
+                // Pipelined bytes or a TLS record read ahead may already hold a head
+                if (advance(entry)) {
+                    key.cancel();
+                    if (entry.claim()) {
+                        cancelClock(entry);
+                        selector.selectNow();
+                        resume(entry);
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                parked.remove(entry);
+            } catch (IOException e) {
+                parked.remove(entry);
+                entry.connection.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Takes the connections whose head timed out off the selector, switches them back to
+     * blocking mode and has their watchdog answer them with 408.
+     */
+    private void answerTimedOut() throws IOException {
+        if (timedOut.isEmpty()) {
+            return;
+        }
+        List<Parked> expired = new ArrayList<>();
+        Parked entry;
+        while ((entry = timedOut.poll()) != null) {
+            SelectionKey key = entry.connection.socketChannel().keyFor(selector);
+            if (key != null) {
+                key.cancel();
+            }
+            expired.add(entry);
+        }
+        // Cancelled keys are only deregistered by the next selection
+        selector.selectNow();
+        selector.selectedKeys().clear();
+        for (Parked timed : expired) {
+            try {
+                timed.connection.socketChannel().configureBlocking(true);
+                timed.connection.getWatchdog().headerTimedOut();
+            } catch (IOException e) {
+                timed.connection.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Reads what has arrived for a connection. The first bytes of a head switch it from
+     * the idle clock to the header clock.
+     * @return true once the head is complete or the client is gone, so the connection
+     *         leaves the selector
+     */
+    private boolean advance(Parked entry) {
+        if (entry.claimed.get()) {
+            // Timed out; answered or closed by its expiry
+            return true;
+        }
+        Connection.HeadState state;
+        try {
+            state = entry.connection.readHead();
+        } catch (IOException e) {
+            state = Connection.HeadState.CLOSED;
+        }
+        if (state == Connection.HeadState.NONE) {
+            return false;
+        }
+        if (!entry.receiving && state != Connection.HeadState.CLOSED) {
+            cancelClock(entry);
+            entry.connection.markQueued();
+            startClock(entry, true);
+        }
+        if (state == Connection.HeadState.PARTIAL) {
+            return false;
+        }
+        entry.complete = state == Connection.HeadState.COMPLETE;
+        return true;
+    }
+
+    private void resume(Parked entry) {
+        parked.remove(entry);
+        if (!entry.complete) {
+            entry.connection.closeQuietly();
+            return;
+        }
+        try {
+            entry.connection.socketChannel().configureBlocking(true);
+            onReadable.accept(entry.connection);
+        } catch (IOException e) {
+            entry.connection.closeQuietly();
+        }
+    }
+
+    /**
+     * Stops watching and closes every idle connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Parked entry : parked) {
+            if (entry.claim()) {
+                cancelClock(entry);
+                entry.connection.closeQuietly();
+            }
+        }
+        parked.clear();
+        Parked entry;
+        while ((entry = timedOut.poll()) != null) {
+            entry.connection.closeQuietly();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not close selector", e);
+        }
+    }
+
+    /** A parked connection; whoever claims it first, the selector or the timer, owns it */
+    private static final class Parked {
+        final Connection connection;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        // Null when the clock that applies has no limit
+        volatile TimerWheel.Timeout timeout;
+        // Whether a head has started arriving, i.e. the header clock runs; selector thread only
+        boolean receiving;
+        // Whether the head arrived, rather than the end of the stream; selector thread only
+        boolean complete;
+
+        Parked(Connection connection) {
+            this.connection = connection;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Decodes JSON request bodies into Java values, the counterpart of {@link JsonWriter}.
+ * The input is tokenized incrementally from the stream; the resulting tree of maps, lists,
+ * strings, numbers and booleans is then bound to the requested type. Records are built
+ * through their canonical constructor and beans through their no-argument constructor and
+ * setters or public fields; like the writer, those handles are resolved once per class.
+ * Unknown properties are ignored and missing ones keep their default value.
+ *
+ * @author daniel.aldana-b
+ */
+public final class JsonReader {
+    private static final int MAX_DEPTH = JsonWriter.MAX_DEPTH;
+
+    private static final ClassValue<Binder> binders = new ClassValue<>() {
+        @Override
+        protected Binder computeValue(Class<?> type) {
+            return type.isRecord() ? recordBinder(type) : beanBinder(type);
+        }
+    };
+
+    private final Reader in;
+    private final char[] buffer = new char[4096];
+    private int pos;
+    private int limit;
+    private long offset;
+
+    private JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads one JSON document from a UTF-8 stream and binds it to a type.
+     *
+     * @param in   the stream; it is read up to the end of the document plus trailing whitespace
+     * @param type the target type, possibly generic such as {@code List<Point>}
+     * @param <T>  the result type
+     * @return the decoded value
+     * @throws IOException if the stream fails
+     * @throws IllegalArgumentException if the input is not valid JSON or does not fit the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(InputStream in, Type type) throws IOException {
+        return (T) convert(parse(new InputStreamReader(in, StandardCharsets.UTF_8)), type);
+    }
+
+    /**
+     * Parses one JSON document into maps, lists, strings, numbers, booleans and nulls.
+     * Integral numbers become {@link Long} (or {@link BigInteger} if too large), others {@link Double}.
+     *
+     * @param in the characters to parse
+     * @return the parsed value
+     * @throws IOException if the reader fails
+     * @throws IllegalArgumentException if the input is not a single valid JSON value
+     */
+    public static Object parse(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        Object value = reader.readValue(0);
+        if (reader.skipWhitespace() >= 0) {
+            throw reader.error("Unexpected data after the JSON value");
+        }
+        return value;
+    }
+
+    // ========== Tokenizer ==========
+
+    private int peek() throws IOException {
+        if (pos == limit) {
+            offset += limit;
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos];
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            pos++;
+        }
+        return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            pos++;
+        }
+        return c;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + (offset + pos));
+    }
+
+    private void expect(char expected) throws IOException {
+        if (next() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private Object readValue(int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw error("JSON nesting deeper than " + MAX_DEPTH + " levels");
+        }
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                return readObject(depth);
+            case '[':
+                return readArray(depth);
+            case '"':
+                return readString();
+            case 't':
+                readKeyword("true");
+                return Boolean.TRUE;
+            case 'f':
+                readKeyword("false");
+                return Boolean.FALSE;
+            case 'n':
+                readKeyword("null");
+                return null;
+            case -1:
+                throw error("Unexpected end of JSON input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject(int depth) throws IOException {
+        expect('{');
+        Map<String, Object> object = new LinkedHashMap<>();
+        if (skipWhitespace() == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            if (skipWhitespace() != '"') {
+                throw error("Expected a property name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue(depth + 1));
+            int c = skipWhitespace();
+            pos++;
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray(int depth) throws IOException {
+        expect('[');
+        List<Object> array = new ArrayList<>();
+        if (skipWhitespace() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue(depth + 1));
+            int c = skipWhitespace();
+            pos++;
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder s = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return s.toString();
+            }
+            if (c < 0) {
+                throw error("Unterminated string");
+            }
+            if (c < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+            if (c != '\\') {
+                s.append((char) c);
+                continue;
+            }
+            int e = next();
+            switch (e) {
+                case '"', '\\', '/' -> s.append((char) e);
+                case 'b' -> s.append('\b');
+                case 'f' -> s.append('\f');
+                case 'n' -> s.append('\n');
+                case 'r' -> s.append('\r');
+                case 't' -> s.append('\t');
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    s.append((char) code);
+                }
+                default -> throw error("Invalid escape sequence");
+            }
+        }
+    }
+
+    private Object readNumber() throws IOException {
+        StringBuilder s = new StringBuilder();
+        boolean integral = true;
+        int c;
+        while ((c = peek()) >= 0 && (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9'))) {
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            }
+            s.append((char) c);
+            pos++;
+        }
+        String text = s.toString();
+        try {
+            if (integral) {
+                BigInteger big = new BigInteger(text);
+                return big.bitLength() < 64 ? (Object) big.longValue() : big;
+            }
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + text);
+        }
+    }
+
+    private void readKeyword(String keyword) throws IOException {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (next() != keyword.charAt(i)) {
+                throw error("Invalid literal, expected " + keyword);
+            }
+        }
+    }
+
+    // ========== Binding ==========
+
+    /**
+     * Converts a parsed JSON value to a Java type.
+     *
+     * @param value the parsed value
+     * @param type  the target type
+     * @return the converted value
+     * @throws IllegalArgumentException if the value does not fit the type
+     */
+    static Object convert(Object value, Type type) {
+        if (type instanceof WildcardType w) {
+            return convert(value, w.getUpperBounds()[0]);
+        }
+        Class<?> raw = rawType(type);
+        if (value == null) {
+            if (raw == Optional.class) {
+                return Optional.empty();
+            }
+            if (raw.isPrimitive()) {
+                throw new IllegalArgumentException("null is not a valid " + raw.getName());
+            }
+            return null;
+        }
+        if (raw == Object.class) {
+            return value;
+        }
+        if (raw == String.class || raw == CharSequence.class) {
+            if (value instanceof Map || value instanceof List) {
+                throw mismatch(value, raw);
+            }
+            return value.toString();
+        }
+        if (raw == boolean.class || raw == Boolean.class) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+            throw mismatch(value, raw);
+        }
+        // Before the number branch, which would take char as just another primitive
+        if (raw == char.class || raw == Character.class) {
+            if (value instanceof String s && s.length() == 1) {
+                return s.charAt(0);
+            }
+            throw mismatch(value, raw);
+        }
+        if (raw.isPrimitive() || Number.class.isAssignableFrom(raw)) {
+            return number(value, raw);
+        }
+        if (raw.isEnum()) {
+            return enumConstant(raw, value);
+        }
+        if (raw == Optional.class) {
+            return Optional.ofNullable(convert(value, typeArgument(type, 0)));
+        }
+        if (value instanceof String s) {
+            return fromString(s, raw);
+        }
+        if (raw.isArray()) {
+            Type component = type instanceof GenericArrayType g ? g.getGenericComponentType() : raw.getComponentType();
+            List<?> list = asList(value, raw);
+            Object array = Array.newInstance(rawType(component), list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Array.set(array, i, convert(list.get(i), component));
+            }
+            return array;
+        }
+        if (Collection.class.isAssignableFrom(raw) || raw == Iterable.class) {
+            Type element = typeArgument(type, 0);
+            Collection<Object> collection = Set.class.isAssignableFrom(raw) ? new LinkedHashSet<>() : new ArrayList<>();
+            for (Object item : asList(value, raw)) {
+                collection.add(convert(item, element));
+            }
+            return collection;
+        }
+        if (!(value instanceof Map<?, ?> object)) {
+            throw mismatch(value, raw);
+        }
+        if (Map.class.isAssignableFrom(raw)) {
+            Type keyType = typeArgument(type, 0);
+            Type valueType = typeArgument(type, 1);
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> e : object.entrySet()) {
+                map.put(convert(e.getKey(), keyType), convert(e.getValue(), valueType));
+            }
+            return map;
+        }
+        return binders.get(raw).bind(object);
+    }
+
+    private static IllegalArgumentException mismatch(Object value, Class<?> type) {
+        String kind = value instanceof Map ? "object" : value instanceof List ? "array"
+                : value instanceof String ? "string" : value instanceof Boolean ? "boolean" : "number";
+        return new IllegalArgumentException("Cannot convert a JSON " + kind + " to " + type.getSimpleName());
+    }
+
+    private static List<?> asList(Object value, Class<?> type) {
+        if (value instanceof List<?> list) {
+            return list;
+        }
+        throw mismatch(value, type);
+    }
+
+    private static Object number(Object value, Class<?> type) {
+        if (!(value instanceof Number n)) {
+            throw mismatch(value, type);
+        }
+        if (type == double.class || type == Double.class) {
+            return n.doubleValue();
+        }
+        if (type == float.class || type == Float.class) {
+            return n.floatValue();
+        }
+        if (type == BigDecimal.class || type == Number.class) {
+            return new BigDecimal(n.toString());
+        }
+        if (type == BigInteger.class) {
+            return new BigDecimal(n.toString()).toBigIntegerExact();
+        }
+        if (!(n instanceof Long)) {
+            throw new IllegalArgumentException(n + " is not a valid " + type.getSimpleName());
+        }
+        long l = n.longValue();
+        if (type == long.class || type == Long.class) {
+            return l;
+        }
+        if ((type == int.class || type == Integer.class) && l == (int) l) {
+            return (int) l;
+        }
+        if ((type == short.class || type == Short.class) && l == (short) l) {
+            return (short) l;
+        }
+        if ((type == byte.class || type == Byte.class) && l == (byte) l) {
+            return (byte) l;
+        }
+        throw new IllegalArgumentException(n + " is out of range for " + type.getSimpleName());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> type, Object value) {
+        if (!(value instanceof String s)) {
+            throw mismatch(value, type);
+        }
+        return Enum.valueOf((Class) type, s);
+    }
+
+    /**
+     * Parses the value types {@link JsonWriter} writes as strings.
+     */
+    private static Object fromString(String s, Class<?> type) {
+        try {
+            if (type == LocalDate.class) {
+                return LocalDate.parse(s);
+            }
+            if (type == LocalDateTime.class) {
+                return LocalDateTime.parse(s);
+            }
+            if (type == LocalTime.class) {
+                return LocalTime.parse(s);
+            }
+            if (type == Instant.class) {
+                return Instant.parse(s);
+            }
+            if (type == OffsetDateTime.class) {
+                return OffsetDateTime.parse(s);
+            }
+            if (type == ZonedDateTime.class) {
+                return ZonedDateTime.parse(s);
+            }
+            if (type == Duration.class) {
+                return Duration.parse(s);
+            }
+            if (type == UUID.class) {
+                return UUID.fromString(s);
+            }
+            if (type == URI.class) {
+                return URI.create(s);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid " + type.getSimpleName() + ": " + s, e);
+        }
+        throw mismatch(s, type);
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class<?> c) {
+            return c;
+        }
+        if (type instanceof ParameterizedType p) {
+            return (Class<?>) p.getRawType();
+        }
+        if (type instanceof GenericArrayType g) {
+            return Array.newInstance(rawType(g.getGenericComponentType()), 0).getClass();
+        }
+        if (type instanceof WildcardType w) {
+            return rawType(w.getUpperBounds()[0]);
+        }
+        // Type variables bind to whatever the JSON contains
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType p && p.getActualTypeArguments().length > index) {
+            return p.getActualTypeArguments()[index];
+        }
+        return Object.class;
+    }
+
+    /**
+     * Builds instances of one record or bean class from parsed JSON objects.
+     */
+    private interface Binder {
+        Object bind(Map<?, ?> object);
+    }
+
+    private static Binder recordBinder(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        Class<?>[] rawTypes = new Class<?>[components.length];
+        Type[] types = new Type[components.length];
+        String[] names = new String[components.length];
+        for (int i = 0; i < components.length; i++) {
+            rawTypes[i] = components[i].getType();
+            types[i] = components[i].getGenericType();
+            names[i] = components[i].getName();
+        }
+        MethodHandle constructor;
+        try {
+            constructor = JsonWriter.lookupFor(type).findConstructor(type, MethodType.methodType(void.class, rawTypes))
+                    .asSpreader(Object[].class, components.length);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot construct " + type.getName(), e);
+        }
+        return object -> {
+            Object[] args = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Object value = object.get(names[i]);
+                args[i] = value == null && rawTypes[i].isPrimitive() ? defaultValue(rawTypes[i]) : convert(value, types[i]);
+            }
+            return construct(constructor, args, type);
+        };
+    }
+
+    private static Binder beanBinder(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return object -> {
+                throw new IllegalArgumentException("Cannot construct " + type.getName());
+            };
+        }
+        MethodHandles.Lookup lookup = JsonWriter.lookupFor(type);
+        MethodHandle constructor;
+        try {
+            Constructor<?> c = type.getDeclaredConstructor();
+            constructor = lookup.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            return object -> {
+                throw new IllegalArgumentException(type.getName() + " has no no-argument constructor");
+            };
+        }
+        Map<String, MethodHandle> setters = new HashMap<>();
+        Map<String, Type> types = new HashMap<>();
+        try {
+            for (Field f : type.getFields()) {
+                if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isFinal(f.getModifiers())) {
+                    setters.put(f.getName(), lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                    types.put(f.getName(), f.getGenericType());
+                }
+            }
+            for (Method m : type.getMethods()) {
+                String name = m.getName();
+                if (!Modifier.isStatic(m.getModifiers()) && m.getParameterCount() == 1
+                        && name.startsWith("set") && name.length() > 3) {
+                    String property = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+                    setters.put(property, lookup.unreflect(m).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                    types.put(property, m.getGenericParameterTypes()[0]);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot bind " + type.getName(), e);
+        }
+        return object -> {
+            Object bean = construct(constructor, null, type);
+            for (Map.Entry<?, ?> e : object.entrySet()) {
+                MethodHandle setter = setters.get(e.getKey());
+                if (setter == null) {
+                    continue;
+                }
+                Type propertyType = types.get(e.getKey());
+                Object value = e.getValue();
+                if (value == null && rawType(propertyType).isPrimitive()) {
+                    continue;
+                }
+                try {
+                    setter.invokeExact(bean, convert(value, propertyType));
+                } catch (RuntimeException | Error ex) {
+                    throw ex;
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException("Cannot set " + e.getKey() + " of " + type.getName(), t);
+                }
+            }
+            return bean;
+        };
+    }
+
+    private static Object construct(MethodHandle constructor, Object[] args, Class<?> type) {
+        try {
+            return args == null ? (Object) constructor.invokeExact() : constructor.invoke(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot construct " + type.getName(), t);
+        }
+    }
+
+    private static Object defaultValue(Class<?> primitive) {
+        return Array.get(Array.newInstance(primitive, 1), 0);
+    }
+}
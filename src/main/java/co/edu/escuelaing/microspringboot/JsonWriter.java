@@ -0,0 +1,438 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Serializes controller return values to JSON, streaming straight into a {@link ResponseBuffer}.
+ * The way to write each class is worked out once, the first time an instance of it is
+ * serialized, and kept in a {@link ClassValue}: records expose their components, other
+ * classes their public fields and getters, each resolved to a {@link MethodHandle} with the
+ * quoted property name pre-encoded to bytes. Later writes of the same type only run
+ * those handles, without reflective lookups or intermediate Strings.
+ *
+ * <p>Supported values are null, strings and characters, numbers, booleans, enums (by name),
+ * dates and times, UUIDs and URIs (as strings), {@link Optional}, maps (keys converted with
+ * {@code String.valueOf}), iterables, arrays, records and JavaBeans. Bean properties are
+ * written in alphabetical order; record components in declaration order.
+ *
+ * @author daniel.aldana-b
+ */
+public final class JsonWriter {
+    // Deeper nesting is almost always a cyclic object graph
+    static final int MAX_DEPTH = 64;
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    // For each ASCII character: 0 if written as is, otherwise the letter after the backslash
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+    }
+
+    private static final ClassValue<ValueWriter> writers = new ClassValue<>() {
+        @Override
+        protected ValueWriter computeValue(Class<?> type) {
+            return writerFor(type);
+        }
+    };
+
+    private JsonWriter() {
+    }
+
+    /**
+     * Writes a value of one particular class.
+     */
+    @FunctionalInterface
+    interface ValueWriter {
+        void write(Object value, ResponseBuffer out, int depth) throws Throwable;
+    }
+
+    /**
+     * Serializes a value as JSON.
+     *
+     * @param value the value, possibly null
+     * @param out   the buffer receiving the UTF-8 encoded JSON
+     * @throws IllegalArgumentException if the value nests deeper than {@value #MAX_DEPTH} levels
+     */
+    public static void write(Object value, ResponseBuffer out) {
+        try {
+            writeValue(value, out, 0);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not serialize " + value.getClass().getName(), t);
+        }
+    }
+
+    /**
+     * Serializes a value as JSON into a new array.
+     * @param value the value, possibly null
+     * @return the UTF-8 encoded JSON
+     */
+    public static byte[] toBytes(Object value) {
+        ResponseBuffer out = new ResponseBuffer(256);
+        write(value, out);
+        return out.toByteArray();
+    }
+
+    private static void writeValue(Object value, ResponseBuffer out, int depth) throws Throwable {
+        if (value == null) {
+            out.write(NULL);
+            return;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("JSON nesting deeper than " + MAX_DEPTH + " levels, is the object graph cyclic?");
+        }
+        writers.get(value.getClass()).write(value, out, depth);
+    }
+
+    /**
+     * Writes a quoted JSON string. Quotes, backslashes and control characters are escaped;
+     * every other character, including non-ASCII text, is written as UTF-8.
+     *
+     * @param s   the text
+     * @param out the destination buffer
+     */
+    public static void writeString(CharSequence s, ResponseBuffer out) {
+        out.write('"');
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                out.writeUtf8Char(s, i, c);
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i++;
+                }
+                continue;
+            }
+            byte escape = ESCAPES[c];
+            if (escape == 0) {
+                out.write(c);
+            } else {
+                out.write('\\');
+                out.write(escape);
+                if (escape == 'u') {
+                    out.write('0');
+                    out.write('0');
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+                }
+            }
+        }
+        out.write('"');
+    }
+
+    private static void writeDouble(double d, ResponseBuffer out) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            out.write(NULL);
+        } else if (d == (long) d && Math.abs(d) < 1e15) {
+            out.writeLong((long) d);
+        } else {
+            out.writeAscii(Double.toString(d));
+        }
+    }
+
+    private static ValueWriter writerFor(Class<?> type) {
+        if (CharSequence.class.isAssignableFrom(type)) {
+            return (v, out, d) -> writeString((CharSequence) v, out);
+        }
+        if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            return (v, out, d) -> out.writeLong(((Number) v).longValue());
+        }
+        if (type == Double.class) {
+            return (v, out, d) -> writeDouble((Double) v, out);
+        }
+        if (type == Float.class) {
+            return (v, out, d) -> {
+                float f = (Float) v;
+                if (Float.isNaN(f) || Float.isInfinite(f)) {
+                    out.write(NULL);
+                } else {
+                    out.writeAscii(Float.toString(f));
+                }
+            };
+        }
+        if (type == BigDecimal.class || type == BigInteger.class || Number.class.isAssignableFrom(type)) {
+            return (v, out, d) -> out.writeAscii(v.toString());
+        }
+        if (type == Boolean.class) {
+            return (v, out, d) -> out.write((Boolean) v ? TRUE : FALSE);
+        }
+        if (type == Character.class) {
+            return (v, out, d) -> writeString(String.valueOf((char) (Character) v), out);
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return (v, out, d) -> writeString(((Enum<?>) v).name(), out);
+        }
+        if (TemporalAccessor.class.isAssignableFrom(type) || type == UUID.class || type == URI.class) {
+            return (v, out, d) -> writeString(v.toString(), out);
+        }
+        if (type == Optional.class) {
+            return (v, out, d) -> writeValue(((Optional<?>) v).orElse(null), out, d);
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return JsonWriter::writeMap;
+        }
+        if (Iterable.class.isAssignableFrom(type)) {
+            return JsonWriter::writeIterable;
+        }
+        if (type.isArray()) {
+            return arrayWriter(type.getComponentType());
+        }
+        if (type.isRecord()) {
+            return new ObjectWriter(recordProperties(type));
+        }
+        return new ObjectWriter(beanProperties(type));
+    }
+
+    private static void writeMap(Object value, ResponseBuffer out, int depth) throws Throwable {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(String.valueOf(e.getKey()), out);
+            out.write(':');
+            writeValue(e.getValue(), out, depth + 1);
+        }
+        out.write('}');
+    }
+
+    private static void writeIterable(Object value, ResponseBuffer out, int depth) throws Throwable {
+        out.write('[');
+        boolean first = true;
+        for (Object item : (Iterable<?>) value) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeValue(item, out, depth + 1);
+        }
+        out.write(']');
+    }
+
+    private static ValueWriter arrayWriter(Class<?> component) {
+        if (component == int.class) {
+            return (v, out, d) -> {
+                int[] a = (int[]) v;
+                out.write('[');
+                for (int i = 0; i < a.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    out.writeLong(a[i]);
+                }
+                out.write(']');
+            };
+        }
+        if (component == long.class) {
+            return (v, out, d) -> {
+                long[] a = (long[]) v;
+                out.write('[');
+                for (int i = 0; i < a.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    out.writeLong(a[i]);
+                }
+                out.write(']');
+            };
+        }
+        if (component == double.class) {
+            return (v, out, d) -> {
+                double[] a = (double[]) v;
+                out.write('[');
+                for (int i = 0; i < a.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeDouble(a[i], out);
+                }
+                out.write(']');
+            };
+        }
+        if (component == char.class) {
+            return (v, out, d) -> writeString(new String((char[]) v), out);
+        }
+        if (component.isPrimitive()) {
+            // boolean, byte, short and float arrays are rare enough to go through boxing
+            return (v, out, d) -> {
+                int length = java.lang.reflect.Array.getLength(v);
+                out.write('[');
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeValue(java.lang.reflect.Array.get(v, i), out, d + 1);
+                }
+                out.write(']');
+            };
+        }
+        return (v, out, d) -> {
+            Object[] a = (Object[]) v;
+            out.write('[');
+            for (int i = 0; i < a.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                writeValue(a[i], out, d + 1);
+            }
+            out.write(']');
+        };
+    }
+
+    /**
+     * One serialized property: its pre-encoded {@code "name":} prefix and how to read it.
+     * Getters returning int, long or boolean are read without boxing.
+     */
+    private record Property(byte[] prefix, MethodHandle getter, char kind) {
+        static final char OBJECT = 'L';
+        static final char LONG = 'J';
+        static final char BOOLEAN = 'Z';
+    }
+
+    /**
+     * Writes an object as the list of properties computed for its class.
+     */
+    private static final class ObjectWriter implements ValueWriter {
+        private final Property[] properties;
+
+        ObjectWriter(Property[] properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public void write(Object value, ResponseBuffer out, int depth) throws Throwable {
+            out.write('{');
+            for (Property p : properties) {
+                out.write(p.prefix());
+                switch (p.kind()) {
+                    case Property.LONG -> out.writeLong((long) p.getter().invokeExact(value));
+                    case Property.BOOLEAN -> out.write((boolean) p.getter().invokeExact(value) ? TRUE : FALSE);
+                    default -> writeValue((Object) p.getter().invokeExact(value), out, depth + 1);
+                }
+            }
+            out.write('}');
+        }
+    }
+
+    private static Property[] recordProperties(Class<?> type) {
+        MethodHandles.Lookup lookup = lookupFor(type);
+        RecordComponent[] components = type.getRecordComponents();
+        Property[] properties = new Property[components.length];
+        for (int i = 0; i < components.length; i++) {
+            properties[i] = property(lookup, i == 0, components[i].getName(), components[i].getAccessor());
+        }
+        return properties;
+    }
+
+    private static Property[] beanProperties(Class<?> type) {
+        MethodHandles.Lookup lookup = lookupFor(type);
+        // TreeMap keeps the output order stable; getMethods() order is unspecified
+        Map<String, Object> members = new TreeMap<>();
+        for (Field f : type.getFields()) {
+            if (!Modifier.isStatic(f.getModifiers())) {
+                members.put(f.getName(), f);
+            }
+        }
+        for (Method m : type.getMethods()) {
+            String name = propertyName(m);
+            if (name != null) {
+                members.put(name, m);
+            }
+        }
+        List<Property> properties = new ArrayList<>(members.size());
+        for (Map.Entry<String, Object> e : members.entrySet()) {
+            properties.add(property(lookup, properties.isEmpty(), e.getKey(), e.getValue()));
+        }
+        return properties.toArray(new Property[0]);
+    }
+
+    /**
+     * Returns the property read by a getter, or null if the method is not a getter.
+     */
+    private static String propertyName(Method m) {
+        if (Modifier.isStatic(m.getModifiers()) || m.getParameterCount() != 0
+                || m.getReturnType() == void.class || m.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        String name = m.getName();
+        int prefix;
+        if (name.startsWith("get") && name.length() > 3) {
+            prefix = 3;
+        } else if (name.startsWith("is") && name.length() > 2 && m.getReturnType() == boolean.class) {
+            prefix = 2;
+        } else {
+            return null;
+        }
+        return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+    }
+
+    private static Property property(MethodHandles.Lookup lookup, boolean first, String name, Object member) {
+        ResponseBuffer prefix = new ResponseBuffer(name.length() + 4);
+        if (!first) {
+            prefix.write(',');
+        }
+        writeString(name, prefix);
+        prefix.write(':');
+        try {
+            MethodHandle getter = member instanceof Field f ? lookup.unreflectGetter(f) : lookup.unreflect((Method) member);
+            Class<?> returned = getter.type().returnType();
+            if (returned == int.class || returned == long.class || returned == short.class || returned == byte.class) {
+                return new Property(prefix.toByteArray(),
+                        getter.asType(MethodType.methodType(long.class, Object.class)), Property.LONG);
+            }
+            if (returned == boolean.class) {
+                return new Property(prefix.toByteArray(),
+                        getter.asType(MethodType.methodType(boolean.class, Object.class)), Property.BOOLEAN);
+            }
+            return new Property(prefix.toByteArray(),
+                    getter.asType(MethodType.methodType(Object.class, Object.class)), Property.OBJECT);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot read property " + name + " of " + lookup.lookupClass().getName(), e);
+        }
+    }
+
+    /**
+     * Returns a lookup able to read the members of a class, including records and beans
+     * declared as nested or package-private classes of the application. Shared with
+     * {@link JsonReader}, which binds to the same kinds of classes.
+     */
+    static MethodHandles.Lookup lookupFor(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            return MethodHandles.publicLookup().in(type);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with fixed, exponentially spaced buckets.
+ * Every bucket is a striped {@link LongAdder}, so concurrent request threads
+ * never contend on a shared counter while recording samples. Buckets follow
+ * the Prometheus convention: each bound is inclusive ("le") and the last
+ * bucket collects everything above the largest bound.
+ *
+ * @author daniel.aldana-b
+ */
+public class LatencyHistogram {
+    // Upper bounds of the buckets in nanoseconds (50us .. 10s)
+    static final long[] BOUNDS_NANOS = {
+        50_000L, 100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L,
+        25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L,
+        500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+        10_000_000_000L
+    };
+    // The same bounds rendered once as Prometheus "le" labels (in seconds)
+    private static final String[] BOUND_LABELS = new String[BOUNDS_NANOS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            BOUND_LABELS[i] = Double.toString(BOUNDS_NANOS[i] / 1e9);
+        }
+    }
+
+    // One counter per bucket plus the overflow (+Inf) bucket
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    // Sum of every recorded sample, in nanoseconds
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a single latency sample.
+     * Negative samples (clock anomalies) are recorded as zero.
+     *
+     * @param nanos the measured latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucketIndex(nanos)].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Finds the bucket for a sample with a binary search over the bounds.
+     *
+     * @param nanos the sample in nanoseconds
+     * @return the index of the first bucket whose bound is greater or equal to the sample
+     */
+    static int bucketIndex(long nanos) {
+        int low = 0;
+        int high = BOUNDS_NANOS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BOUNDS_NANOS[mid] < nanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of samples recorded so far.
+     * @return the total sample count
+     */
+    public long count() {
+        long total = 0;
+        for (LongAdder bucket : buckets) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of all recorded samples.
+     * @return the accumulated latency in nanoseconds
+     */
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Estimates a percentile from the bucket counts.
+     * The result is the upper bound of the bucket that contains the requested rank,
+     * which is the usual precision/overhead trade-off of bucketed histograms.
+     *
+     * @param percentile a value between 0 and 100
+     * @return the estimated latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentileNanos(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * (percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return i < BOUNDS_NANOS.length ? BOUNDS_NANOS[i] : BOUNDS_NANOS[BOUNDS_NANOS.length - 1];
+            }
+        }
+        return BOUNDS_NANOS[BOUNDS_NANOS.length - 1];
+    }
+
+    /**
+     * Clears every bucket. Only intended for tests and explicit resets.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sumNanos.reset();
+    }
+
+    /**
+     * Appends this histogram in Prometheus text exposition format.
+     *
+     * @param out    the builder receiving the samples
+     * @param name   the metric family name (without the _bucket/_sum/_count suffix)
+     * @param labels extra labels already formatted as {@code key="value"}, or an empty string
+     */
+    public void writePrometheus(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"")
+               .append(BOUND_LABELS[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDS_NANOS.length].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ")
+           .append(cumulative).append('\n');
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ')
+           .append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braces).append(' ')
+           .append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,185 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket rate limiter keyed by client, by route or by both.
+ * Each bucket is stored as a single {@link AtomicLong} holding its "theoretical arrival
+ * time" (the GCRA formulation of a token bucket): a request is allowed when pushing that
+ * time forward by one token interval keeps it within the burst window of now. Updates are
+ * one compare-and-set, with no locks.
+ *
+ * <p>Buckets live in a fixed number of map stripes. A bucket whose arrival time has passed
+ * is full again and carries no information, so it can be dropped; request threads sweep
+ * one stripe at a time, a few times per second, which keeps memory proportional to the
+ * number of clients active in the last second or so even with millions of distinct keys.
+ *
+ * @author daniel.aldana-b
+ */
+public class RateLimiter {
+    /** What identifies a bucket */
+    public enum KeyMode { IP, ROUTE, IP_ROUTE }
+
+    private static final int STRIPES = 64;
+    // A full pass over the stripes takes about one second
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / STRIPES;
+
+    private final double ratePerSecond;
+    private final int burst;
+    private final KeyMode keyMode;
+    private final long intervalNanos;
+    private final long burstNanos;
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<String, AtomicLong>[] stripes = new ConcurrentHashMap[STRIPES];
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private final AtomicInteger sweepIndex = new AtomicInteger();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param ratePerSecond tokens added to each bucket per second
+     * @param burst         bucket capacity, i.e. requests allowed back to back
+     * @param keyMode       what identifies a bucket
+     */
+    public RateLimiter(double ratePerSecond, int burst, KeyMode keyMode) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.keyMode = keyMode;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = intervalNanos * burst;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Builds the limiter configured with {@code microspringboot.ratelimit.rate} (requests per
+     * second), {@code .burst} (defaults to the rate) and {@code .key} ({@code ip}, {@code route}
+     * or {@code ip-route}).
+     *
+     * @return the limiter, or null if no rate is configured
+     */
+    public static RateLimiter fromSystemProperties() {
+        double rate = Double.parseDouble(System.getProperty("microspringboot.ratelimit.rate", "0"));
+        if (rate <= 0) {
+            return null;
+        }
+        int burst = Integer.getInteger("microspringboot.ratelimit.burst", (int) Math.max(1, Math.ceil(rate)));
+        String key = System.getProperty("microspringboot.ratelimit.key", "ip");
+        return new RateLimiter(rate, burst, KeyMode.valueOf(key.toUpperCase(Locale.ROOT).replace('-', '_')));
+    }
+
+    /**
+     * Builds the bucket key of a request according to the key mode.
+     * @param client the client address
+     * @param route  the route label of the request
+     * @return the key
+     */
+    public String key(String client, String route) {
+        return switch (keyMode) {
+            case IP -> client;
+            case ROUTE -> route;
+            case IP_ROUTE -> client + ' ' + route;
+        };
+    }
+
+    /**
+     * Takes one token from a bucket.
+     * @param key the bucket key
+     * @return 0 if the request is allowed, otherwise the nanoseconds until it would be
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    long tryAcquire(String key, long now) {
+        sweepIfDue(now);
+        ConcurrentHashMap<String, AtomicLong> stripe = stripes[stripeOf(key)];
+        AtomicLong tat = stripe.get(key);
+        if (tat == null) {
+            tat = stripe.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long current = tat.get();
+            long newTat = (current - now > 0 ? current : now) + intervalNanos;
+            long wait = newTat - now - burstNanos;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (tat.compareAndSet(current, newTat)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    private static int stripeOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Drops the full buckets of the next stripe if its turn has come. Only the thread that
+     * wins the CAS on the schedule sweeps. A bucket removed while another thread updates
+     * it only loses that update, which errs on the side of letting the request through.
+     */
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        int index = Math.floorMod(sweepIndex.getAndIncrement(), STRIPES);
+        stripes[index].values().removeIf(tat -> tat.get() - now <= 0);
+    }
+
+    /**
+     * Returns how many buckets are currently tracked.
+     * @return the number of keys
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, AtomicLong> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long allowed() {
+        return allowed.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Appends the limiter statistics in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_ratelimit_requests_total Requests checked by the rate limiter\n");
+        out.append("# TYPE microspringboot_ratelimit_requests_total counter\n");
+        out.append("microspringboot_ratelimit_requests_total{result=\"allowed\"} ").append(allowed()).append('\n');
+        out.append("microspringboot_ratelimit_requests_total{result=\"rejected\"} ").append(rejected()).append('\n');
+        out.append("# HELP microspringboot_ratelimit_keys Buckets currently tracked\n");
+        out.append("# TYPE microspringboot_ratelimit_keys gauge\n");
+        out.append("microspringboot_ratelimit_keys ").append(size()).append('\n');
+    }
+}
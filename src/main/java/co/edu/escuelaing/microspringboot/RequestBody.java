@@ -0,0 +1,29 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds the body of the request to a controller method parameter.
+ * The parameter type decides how the body is read:
+ * <ul>
+ *   <li>{@link java.io.InputStream} or {@link java.nio.channels.ReadableByteChannel}: streamed
+ *       as it arrives, without buffering the payload;</li>
+ *   <li>{@code byte[]}, {@link java.nio.ByteBuffer} or {@link String}: read fully;</li>
+ *   <li>any other type: decoded from JSON by {@link JsonReader}.</li>
+ * </ul>
+ * Bodies larger than {@link #maxBytes()} are rejected with {@code 413 Payload Too Large}.
+ *
+ * @author daniel.aldana-b
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface RequestBody {
+    /**
+     * Largest accepted body in bytes, or -1 to use the server default
+     * ({@code microspringboot.body.maxBytes}, 10 MB unless configured).
+     */
+    long maxBytes() default -1;
+}
@@ -0,0 +1,184 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body of one request from the connection stream, stopping exactly at its end.
+ * The body is delimited either by {@code Content-Length} or by chunked transfer coding,
+ * which is decoded on the fly, or, for HTTP/2 streams, by the end of the stream. Bytes are handed to the caller as they arrive, so the
+ * payload is never held in memory as a whole; once more than {@code maxBytes} bytes have
+ * been read a {@link BodyTooLargeException} is thrown.
+ *
+ * @author daniel.aldana-b
+ */
+class RequestBodyInputStream extends InputStream {
+    // Longest chunk-size line accepted, extensions included
+    private static final int MAX_CHUNK_LINE = 1024;
+
+    private final InputStream in;
+    private final boolean chunked;
+    // The body runs to the end of the underlying stream
+    private final boolean toEnd;
+    private final long maxBytes;
+    // Bytes left in the body (fixed length) or in the current chunk (chunked)
+    private long remaining;
+    private long total;
+    private boolean eof;
+
+    private RequestBodyInputStream(InputStream in, boolean chunked, long remaining, long maxBytes) {
+        this.in = in;
+        this.chunked = chunked;
+        this.toEnd = remaining == Long.MAX_VALUE;
+        this.remaining = remaining;
+        this.maxBytes = maxBytes;
+        this.eof = !chunked && remaining == 0;
+    }
+
+    /**
+     * Creates a stream over a body of known length.
+     * @throws BodyTooLargeException if the length is above the limit
+     */
+    static RequestBodyInputStream fixed(InputStream in, long length, long maxBytes) throws BodyTooLargeException {
+        if (length > maxBytes) {
+            throw new BodyTooLargeException(maxBytes);
+        }
+        return new RequestBodyInputStream(in, false, length, maxBytes);
+    }
+
+    /**
+     * Creates a stream that decodes a chunked body.
+     */
+    static RequestBodyInputStream chunked(InputStream in, long maxBytes) {
+        return new RequestBodyInputStream(in, true, 0, maxBytes);
+    }
+
+    /**
+     * Creates a stream over a body that ends with the underlying stream, as the body of an
+     * HTTP/2 stream without Content-Length does.
+     */
+    static RequestBodyInputStream toEnd(InputStream in, long maxBytes) {
+        return new RequestBodyInputStream(in, false, Long.MAX_VALUE, maxBytes);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (eof) {
+            return -1;
+        }
+        if (chunked && remaining == 0) {
+            nextChunk();
+            if (eof) {
+                return -1;
+            }
+        }
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0 && toEnd) {
+            eof = true;
+            return -1;
+        }
+        if (n < 0) {
+            throw new EOFException("Connection closed before the end of the request body");
+        }
+        remaining -= n;
+        total += n;
+        if (total > maxBytes) {
+            throw new BodyTooLargeException(maxBytes);
+        }
+        if (chunked && remaining == 0) {
+            expectCrlf();
+        } else if (!chunked && remaining == 0) {
+            eof = true;
+        }
+        return n;
+    }
+
+    /**
+     * Reads the next chunk-size line; a zero size ends the body and its trailers are skipped.
+     */
+    private void nextChunk() throws IOException {
+        String line = readLine();
+        int semicolon = line.indexOf(';');
+        String hex = (semicolon >= 0 ? line.substring(0, semicolon) : line).trim();
+        long size;
+        try {
+            size = Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + hex);
+        }
+        if (size < 0) {
+            throw new IOException("Invalid chunk size: " + hex);
+        }
+        if (size == 0) {
+            while (!readLine().isEmpty()) {
+                // Trailer fields are not exposed
+            }
+            eof = true;
+            return;
+        }
+        // Written as a difference: total + size can overflow for a huge chunk size
+        if (size > maxBytes - total) {
+            throw new BodyTooLargeException(maxBytes);
+        }
+        remaining = size;
+    }
+
+    private void expectCrlf() throws IOException {
+        if (!readLine().isEmpty()) {
+            throw new IOException("Missing CRLF after chunk data");
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Connection closed inside a chunked body");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+            if (line.length() > MAX_CHUNK_LINE) {
+                throw new IOException("Chunk size line too long");
+            }
+        }
+        return line.toString();
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : (int) Math.min(remaining, in.available());
+    }
+
+    /**
+     * Returns how many body bytes have been read so far.
+     * @return the number of bytes
+     */
+    long bytesRead() {
+        return total;
+    }
+
+    /**
+     * Reads and discards whatever is left of the body. The connection stream itself is
+     * not closed, it belongs to the server.
+     */
+    @Override
+    public void close() throws IOException {
+        byte[] skip = new byte[8192];
+        while (!eof && read(skip, 0, skip.length) >= 0) {
+            // Drain so the connection is positioned after this request
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one computation per key at a time and shares its outcome with every
+ * caller that asks for the same key while it is running (the "single-flight" pattern).
+ * The first caller computes on its own thread; the others block on the same future.
+ * The key is forgotten as soon as the computation finishes.
+ *
+ * @param <V> the type of the shared result
+ * @author daniel.aldana-b
+ */
+public class RequestCoalescer<V> {
+    // One coalescer per @SingleFlight route, keyed by the mapped path
+    private static final Map<String, RequestCoalescer<byte[]>> routes = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    public RequestCoalescer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Enables single-flight execution for a route.
+     * @param route the mapped path
+     */
+    public static void register(String route) {
+        routes.put(route, new RequestCoalescer<>(route));
+    }
+
+    /**
+     * Disables single-flight execution for a route, if it was enabled.
+     * @param route the mapped path
+     */
+    public static void unregister(String route) {
+        routes.remove(route);
+    }
+
+    /**
+     * Returns the coalescer of a route.
+     * @param route the mapped path
+     * @return the coalescer, or null if the route is not single-flight
+     */
+    public static RequestCoalescer<byte[]> forRoute(String route) {
+        return routes.get(route);
+    }
+
+    /**
+     * Drops every route coalescer. Used when the route table is reloaded.
+     */
+    public static void clearAll() {
+        routes.clear();
+    }
+
+    /**
+     * Returns the result of the computation running for the key, or runs it.
+     * Exceptions thrown by the computation are rethrown to every waiting caller.
+     *
+     * @param key  identifies identical requests
+     * @param work the computation, run on the calling thread if nothing is in flight
+     * @return the shared result
+     */
+    public V execute(String key, Supplier<V> work) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.increment();
+            return join(running);
+        }
+        executions.increment();
+        try {
+            V result = work.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns how many computations actually ran.
+     * @return the number of executions
+     */
+    public long executions() {
+        return executions.sum();
+    }
+
+    /**
+     * Returns how many callers reused a computation started by another caller.
+     * @return the number of shared results
+     */
+    public long shared() {
+        return shared.sum();
+    }
+
+    /**
+     * Appends the statistics of every single-flight route in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        if (routes.isEmpty()) {
+            return;
+        }
+        out.append("# HELP microspringboot_singleflight_requests_total Single-flight requests per route and outcome\n");
+        out.append("# TYPE microspringboot_singleflight_requests_total counter\n");
+        for (RequestCoalescer<byte[]> coalescer : routes.values()) {
+            String route = ServerMetrics.escape(coalescer.name);
+            out.append("microspringboot_singleflight_requests_total{route=\"").append(route)
+               .append("\",result=\"executed\"} ").append(coalescer.executions()).append('\n');
+            out.append("microspringboot_singleflight_requests_total{route=\"").append(route)
+               .append("\",result=\"shared\"} ").append(coalescer.shared()).append('\n');
+        }
+    }
+}
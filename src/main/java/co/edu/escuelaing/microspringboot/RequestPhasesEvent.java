@@ -0,0 +1,58 @@
+package co.edu.escuelaing.microspringboot;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event with the per-phase timing of one request.
+ * Emitted by {@link RequestTrace} when {@code microspringboot.trace.jfr} is enabled,
+ * so a recording started with {@code jcmd <pid> JFR.start} shows where each request
+ * spent its time without attaching a profiler.
+ *
+ * @author daniel.aldana-b
+ */
+@Name("co.edu.escuelaing.microspringboot.Request")
+@Label("HTTP Request Phases")
+@Category({"MicroSpringBoot", "HTTP"})
+@Description("Time spent in each phase of the request pipeline")
+@StackTrace(false)
+public class RequestPhasesEvent extends Event {
+    @Label("Route")
+    String route;
+
+    @Label("Status")
+    int status;
+
+    @Label("Accept")
+    @Timespan(Timespan.NANOSECONDS)
+    long accept;
+
+    @Label("Header Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long headerParse;
+
+    @Label("Route Lookup")
+    @Timespan(Timespan.NANOSECONDS)
+    long routeLookup;
+
+    @Label("Argument Binding")
+    @Timespan(Timespan.NANOSECONDS)
+    long argBinding;
+
+    @Label("Handler")
+    @Timespan(Timespan.NANOSECONDS)
+    long handler;
+
+    @Label("Serialization")
+    @Timespan(Timespan.NANOSECONDS)
+    long serialization;
+
+    @Label("Socket Write")
+    @Timespan(Timespan.NANOSECONDS)
+    long socketWrite;
+}
@@ -0,0 +1,189 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Optional per-phase timing of the request pipeline.
+ * When enabled, every request thread keeps a reusable trace that records how many
+ * nanoseconds each phase took. Phases are marked in pipeline order: each call to
+ * {@link #mark(Phase)} charges the time elapsed since the previous mark to the given
+ * phase. Finished traces are aggregated into one {@link LatencyHistogram} per phase
+ * (exported on {@code /metrics}) and, if requested, emitted as {@link RequestPhasesEvent}
+ * JFR events so a running recording shows the breakdown of every request.
+ *
+ * <p>Enabled with {@code -Dmicrospringboot.trace=true}; JFR events additionally need
+ * {@code -Dmicrospringboot.trace.jfr=true}. When disabled every call returns after a
+ * single volatile field read.</p>
+ *
+ * @author daniel.aldana-b
+ */
+public class RequestTrace {
+
+    /**
+     * Pipeline phases, in the order they happen for one request.
+     */
+    public enum Phase {
+        ACCEPT, HEADER_PARSE, ROUTE_LOOKUP, ARG_BINDING, HANDLER, SERIALIZATION, SOCKET_WRITE;
+
+        // Label used in the exported metrics
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private static final ThreadLocal<RequestTrace> current = ThreadLocal.withInitial(RequestTrace::new);
+
+    private static volatile boolean enabled = Boolean.getBoolean("microspringboot.trace");
+    private static volatile boolean jfrEnabled = Boolean.getBoolean("microspringboot.trace.jfr");
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private final long[] phaseNanos = new long[PHASES.length];
+    private long last;
+    private boolean active;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns tracing on or off. Requests already in flight finish with the old setting.
+     * @param on     whether phase timing is recorded
+     * @param withJfr whether finished traces are also emitted as JFR events
+     */
+    public static void setEnabled(boolean on, boolean withJfr) {
+        enabled = on;
+        jfrEnabled = withJfr;
+    }
+
+    /**
+     * Starts the trace of the current thread.
+     * @param acceptedAtNanos the {@link System#nanoTime()} at which the connection was accepted
+     */
+    public static void begin(long acceptedAtNanos) {
+        if (!enabled) {
+            return;
+        }
+        RequestTrace trace = current.get();
+        Arrays.fill(trace.phaseNanos, 0);
+        trace.last = acceptedAtNanos;
+        trace.active = true;
+    }
+
+    /**
+     * Charges the time elapsed since the previous mark to the given phase.
+     * @param phase the phase that just finished
+     */
+    public static void mark(Phase phase) {
+        if (!enabled) {
+            return;
+        }
+        RequestTrace trace = current.get();
+        if (!trace.active) {
+            return;
+        }
+        long now = System.nanoTime();
+        trace.phaseNanos[phase.ordinal()] += now - trace.last;
+        trace.last = now;
+    }
+
+    /**
+     * Takes the trace in progress off the current thread, when the request moves to another.
+     * @return the trace, to pass to {@link #attach}, or null if none is in progress
+     */
+    static RequestTrace detach() {
+        if (!enabled) {
+            return null;
+        }
+        RequestTrace trace = current.get();
+        if (!trace.active) {
+            return null;
+        }
+        current.remove();
+        return trace;
+    }
+
+    /**
+     * Continues a trace taken off another thread on the current one.
+     * @param trace the value returned by {@link #detach}, or null
+     */
+    static void attach(RequestTrace trace) {
+        if (trace != null) {
+            current.set(trace);
+        }
+    }
+
+    /**
+     * Finishes the trace of the current thread and aggregates it.
+     * @param route  the route label of the request
+     * @param status the status code sent to the client
+     */
+    public static void end(String route, int status) {
+        if (!enabled) {
+            return;
+        }
+        RequestTrace trace = current.get();
+        if (!trace.active) {
+            return;
+        }
+        trace.active = false;
+        long[] nanos = trace.phaseNanos;
+        for (int i = 0; i < nanos.length; i++) {
+            histograms[i].record(nanos[i]);
+        }
+        if (jfrEnabled) {
+            RequestPhasesEvent event = new RequestPhasesEvent();
+            if (event.isEnabled()) {
+                event.route = route;
+                event.status = status;
+                event.accept = nanos[Phase.ACCEPT.ordinal()];
+                event.headerParse = nanos[Phase.HEADER_PARSE.ordinal()];
+                event.routeLookup = nanos[Phase.ROUTE_LOOKUP.ordinal()];
+                event.argBinding = nanos[Phase.ARG_BINDING.ordinal()];
+                event.handler = nanos[Phase.HANDLER.ordinal()];
+                event.serialization = nanos[Phase.SERIALIZATION.ordinal()];
+                event.socketWrite = nanos[Phase.SOCKET_WRITE.ordinal()];
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns the aggregated histogram of a phase.
+     * @param phase the phase
+     * @return the histogram of that phase across all finished traces
+     */
+    public static LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Clears the aggregated histograms. Only intended for tests.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Appends the phase histograms in Prometheus text format, if any trace was recorded.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        if (histograms[0].count() == 0) {
+            return;
+        }
+        out.append("# HELP microspringboot_request_phase_seconds Time spent in each phase of the request pipeline\n");
+        out.append("# TYPE microspringboot_request_phase_seconds histogram\n");
+        for (Phase phase : PHASES) {
+            histograms[phase.ordinal()].writePrometheus(out, "microspringboot_request_phase_seconds",
+                    "phase=\"" + phase.label + "\"");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer used to build response bodies without intermediate Strings.
+ * Text is encoded to UTF-8 directly into the backing array and numbers are written
+ * digit by digit. Each request thread reuses its own buffer through
+ * {@link #threadLocal()}, so steady-state serialization does not allocate.
+ *
+ * @author daniel.aldana-b
+ */
+public class ResponseBuffer extends OutputStream {
+    // Buffers that grew past this size are not kept by the thread-local cache
+    private static final int MAX_RETAINED = 256 * 1024;
+    private static final ThreadLocal<ResponseBuffer> local = ThreadLocal.withInitial(() -> new ResponseBuffer(1024));
+
+    private byte[] bytes;
+    private int size;
+
+    public ResponseBuffer(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Returns the calling thread's reusable buffer, emptied.
+     * The buffer must not be kept after the request that obtained it finishes.
+     *
+     * @return an empty buffer owned by the current thread
+     */
+    public static ResponseBuffer threadLocal() {
+        ResponseBuffer buffer = local.get();
+        if (buffer.bytes.length > MAX_RETAINED) {
+            buffer = new ResponseBuffer(1024);
+            local.set(buffer);
+        }
+        buffer.size = 0;
+        return buffer;
+    }
+
+    private void ensure(int extra) {
+        int needed = size + extra;
+        if (needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length << 1));
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensure(1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, bytes, size, len);
+        size += len;
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Writes a string whose characters are all ASCII (headers, numbers, keywords).
+     * @param s the text to write
+     */
+    public void writeAscii(String s) {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            bytes[size++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Encodes text as UTF-8 straight into the buffer.
+     * Unpaired surrogates are replaced with '?'.
+     *
+     * @param s the text to write
+     */
+    public void writeUtf8(CharSequence s) {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (size == bytes.length) {
+                    ensure(len - i);
+                }
+                bytes[size++] = (byte) c;
+            } else {
+                writeUtf8Char(s, i, c);
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one non-ASCII character (or surrogate pair starting at {@code index}) as UTF-8.
+     */
+    void writeUtf8Char(CharSequence s, int index, char c) {
+        ensure(4);
+        if (c < 0x800) {
+            bytes[size++] = (byte) (0xC0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && index + 1 < s.length() && Character.isLowSurrogate(s.charAt(index + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(index + 1));
+                bytes[size++] = (byte) (0xF0 | (cp >> 18));
+                bytes[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                bytes[size++] = '?';
+            }
+        } else {
+            bytes[size++] = (byte) (0xE0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Writes the decimal representation of a number without creating a String.
+     * @param value the number to write
+     */
+    public void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int start = size;
+        do {
+            bytes[size++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // Digits were produced least significant first
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the backing array. Only the first {@link #size()} bytes are valid.
+     * @return the internal array, not a copy
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Copies the written bytes into a new array.
+     * @return the content of the buffer
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Writes the content of the buffer to a stream.
+     * @param out the destination
+     * @throws IOException if the destination fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+}
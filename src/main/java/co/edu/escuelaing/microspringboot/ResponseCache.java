@@ -0,0 +1,226 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of fully serialized responses for a {@link Cacheable} route.
+ * Hits only read a {@link ConcurrentHashMap} and set a "recently used" flag, so
+ * they never take a lock. When the cache grows past its limit, entries are
+ * evicted in insertion order giving a second chance to the ones that were used
+ * since the last pass (the CLOCK approximation of LRU). Expired entries stay in
+ * place until a reload replaces them or the clock hand reaches them, so every key
+ * in the clock queue has exactly one entry in the map. Concurrent misses for the
+ * same key are coalesced so the controller method runs only once.
+ *
+ * @author daniel.aldana-b
+ */
+public class ResponseCache {
+    // One cache per @Cacheable route, keyed by the mapped path
+    private static final Map<String, ResponseCache> regions = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final byte[] response;
+        final long expiresAtNanos;
+        volatile boolean referenced;
+
+        Entry(byte[] response, long expiresAtNanos) {
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final String route;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Keys in insertion order, scanned by the eviction clock hand; one per entry
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    // Coalesces concurrent misses so the controller method runs once per key
+    private final RequestCoalescer<byte[]> loads;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ResponseCache(String route, long ttlMillis, int maxEntries) {
+        this.route = route;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.loads = new RequestCoalescer<>(route);
+    }
+
+    /**
+     * Creates (or replaces) the cache of a route.
+     *
+     * @param route     the mapped path
+     * @param cacheable the annotation with the cache settings
+     */
+    public static void register(String route, Cacheable cacheable) {
+        regions.put(route, new ResponseCache(route, cacheable.ttlMillis(), cacheable.maxEntries()));
+    }
+
+    /**
+     * Removes the cache of a route, if any.
+     * @param route the mapped path
+     */
+    public static void unregister(String route) {
+        regions.remove(route);
+    }
+
+    /**
+     * Returns the cache of a route.
+     * @param route the mapped path
+     * @return the cache, or null if the route is not cacheable
+     */
+    public static ResponseCache forRoute(String route) {
+        return regions.get(route);
+    }
+
+    /**
+     * Drops every cache. Used when the route table is reloaded.
+     */
+    public static void clearAll() {
+        regions.clear();
+    }
+
+    /**
+     * Returns the cached response for the key, or loads it.
+     * Only successful (200) responses are stored; errors are returned but not cached.
+     *
+     * @param key    the normalized key, see {@link HttpServer#requestKey(URI)}
+     * @param loader produces the serialized response on a miss
+     * @return the serialized HTTP response
+     */
+    public byte[] get(String key, Supplier<byte[]> loader) {
+        Entry entry = lookup(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.response;
+        }
+        return loads.execute(key, () -> {
+            // Another load may have stored the value between our lookup and this one
+            Entry stored = lookup(key);
+            if (stored != null) {
+                hits.increment();
+                return stored.response;
+            }
+            misses.increment();
+            byte[] response = loader.get();
+            if (HttpServer.statusCode(response) == 200) {
+                store(key, response);
+            }
+            return response;
+        });
+    }
+
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (expired(entry)) {
+            // Left for store() to replace or for the clock hand to sweep
+            return null;
+        }
+        entry.referenced = true;
+        return entry;
+    }
+
+    private static boolean expired(Entry entry) {
+        return System.nanoTime() - entry.expiresAtNanos >= 0;
+    }
+
+    private void store(String key, byte[] response) {
+        Entry previous = entries.put(key, new Entry(response, System.nanoTime() + ttlNanos));
+        if (previous == null) {
+            order.offer(key);
+            if (size.incrementAndGet() > maxEntries) {
+                evict();
+            }
+        }
+    }
+
+    // Advances the clock hand until the cache is back under its limit
+    private void evict() {
+        int budget = 2 * maxEntries + 16;
+        while (size.get() > maxEntries && budget-- > 0) {
+            String candidate = order.poll();
+            if (candidate == null) {
+                return;
+            }
+            Entry entry = entries.get(candidate);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced && !expired(entry)) {
+                entry.referenced = false;
+                order.offer(candidate);
+            } else if (entries.remove(candidate, entry)) {
+                size.decrementAndGet();
+                evictions.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns how many keys the eviction clock is tracking.
+     * @return the length of the clock queue
+     */
+    int queued() {
+        return order.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long coalesced() {
+        return loads.shared();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Appends the statistics of every cache in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        if (regions.isEmpty()) {
+            return;
+        }
+        out.append("# HELP microspringboot_cache_requests_total Response cache lookups per route and result\n");
+        out.append("# TYPE microspringboot_cache_requests_total counter\n");
+        for (ResponseCache cache : regions.values()) {
+            String route = ServerMetrics.escape(cache.route);
+            out.append("microspringboot_cache_requests_total{route=\"").append(route).append("\",result=\"hit\"} ")
+               .append(cache.hits()).append('\n');
+            out.append("microspringboot_cache_requests_total{route=\"").append(route).append("\",result=\"miss\"} ")
+               .append(cache.misses()).append('\n');
+            out.append("microspringboot_cache_requests_total{route=\"").append(route).append("\",result=\"coalesced\"} ")
+               .append(cache.coalesced()).append('\n');
+        }
+        out.append("# HELP microspringboot_cache_evictions_total Responses evicted to keep the cache bounded\n");
+        out.append("# TYPE microspringboot_cache_evictions_total counter\n");
+        for (ResponseCache cache : regions.values()) {
+            out.append("microspringboot_cache_evictions_total{route=\"").append(ServerMetrics.escape(cache.route))
+               .append("\"} ").append(cache.evictions()).append('\n');
+        }
+    }
+}
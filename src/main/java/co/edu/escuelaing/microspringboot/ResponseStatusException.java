@@ -0,0 +1,39 @@
+package co.edu.escuelaing.microspringboot;
+
+/**
+ * Ends the processing of a request with a specific HTTP status.
+ * Thrown by the server when a request cannot be parsed or bound, and may also be thrown by
+ * controller methods; the message is sent to the client as a {@code text/plain} body.
+ *
+ * @author daniel.aldana-b
+ */
+public class ResponseStatusException extends RuntimeException {
+    private final int status;
+
+    /**
+     * @param status  the HTTP status code to send
+     * @param message the response body
+     */
+    public ResponseStatusException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * @param status  the HTTP status code to send
+     * @param message the response body
+     * @param cause   the underlying failure
+     */
+    public ResponseStatusException(int status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    /**
+     * Gets the HTTP status code of the response.
+     * @return the status code
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,322 @@
+package co.edu.escuelaing.microspringboot;
+
+/**
+ * Listening and threading options of the server.
+ * Defaults can be overridden with system properties, e.g.
+ * {@code -Dmicrospringboot.port=8080 -Dmicrospringboot.acceptors=4}.
+ *
+ * @author daniel.aldana-b
+ */
+public class ServerConfig {
+    // TCP port to listen on; 0 picks a free port
+    private int port = 35000;
+    // Listen on the TCP port at all
+    private boolean tcpEnabled = true;
+    // Unix domain socket to listen on as well; null for none
+    private String unixSocket;
+    // Pending connections the kernel queues per listening socket
+    private int backlog = 1024;
+    // Threads calling accept()
+    private int acceptors = 1;
+    // Single-threaded loops that serve accepted connections
+    private int workers = Runtime.getRuntime().availableProcessors();
+    // Disable Nagle's algorithm on accepted sockets
+    private boolean tcpNoDelay = true;
+    // Give each acceptor its own listening socket with SO_REUSEPORT, where supported
+    private boolean reusePort = true;
+    // Time allowed to receive the request line and headers
+    private long headerTimeoutMillis = 10_000;
+    // Time a body read or response write may block without any progress
+    private long transferTimeoutMillis = 30_000;
+    // Time a keep-alive connection may wait for its next request
+    private long idleTimeoutMillis = 30_000;
+    // Time allowed from accepting a request to sending its response
+    private long handlerTimeoutMillis = 60_000;
+    // Slowest body upload or response download tolerated, in bytes per second
+    private long minBytesPerSecond = 240;
+    // Time in-flight requests get to finish when the server stops
+    private long shutdownTimeoutMillis = 30_000;
+    // Keystore holding the server key and certificate; null serves plain HTTP
+    private String tlsKeyStore;
+    private String tlsKeyStorePassword = "";
+    private String tlsKeyStoreType = "PKCS12";
+    // TLS sessions remembered for resumption
+    private int tlsSessionCacheSize = 10_000;
+    // How long a client can resume its TLS session
+    private int tlsSessionTimeoutSeconds = 3600;
+
+    /**
+     * Reads the configuration from {@code microspringboot.*} system properties.
+     * @return the configuration, with defaults for properties that are not set
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.setPort(Integer.getInteger("microspringboot.port", config.port));
+        config.setTcpEnabled(Boolean.parseBoolean(
+                System.getProperty("microspringboot.tcp", String.valueOf(config.tcpEnabled))));
+        config.setUnixSocket(System.getProperty("microspringboot.unixSocket"));
+        config.setBacklog(Integer.getInteger("microspringboot.backlog", config.backlog));
+        config.setAcceptors(Integer.getInteger("microspringboot.acceptors", config.acceptors));
+        config.setWorkers(Integer.getInteger("microspringboot.workers", config.workers));
+        config.setTcpNoDelay(Boolean.parseBoolean(
+                System.getProperty("microspringboot.tcpNoDelay", String.valueOf(config.tcpNoDelay))));
+        config.setReusePort(Boolean.parseBoolean(
+                System.getProperty("microspringboot.reusePort", String.valueOf(config.reusePort))));
+        config.setHeaderTimeoutMillis(Long.getLong("microspringboot.timeout.headerMillis", config.headerTimeoutMillis));
+        config.setTransferTimeoutMillis(Long.getLong("microspringboot.timeout.transferMillis", config.transferTimeoutMillis));
+        config.setIdleTimeoutMillis(Long.getLong("microspringboot.timeout.idleMillis", config.idleTimeoutMillis));
+        config.setHandlerTimeoutMillis(Long.getLong("microspringboot.timeout.handlerMillis", config.handlerTimeoutMillis));
+        config.setMinBytesPerSecond(Long.getLong("microspringboot.minBytesPerSecond", config.minBytesPerSecond));
+        config.setShutdownTimeoutMillis(Long.getLong("microspringboot.shutdownTimeoutMillis", config.shutdownTimeoutMillis));
+        config.setTlsKeyStore(System.getProperty("microspringboot.tls.keyStore"));
+        config.setTlsKeyStorePassword(System.getProperty("microspringboot.tls.keyStorePassword", config.tlsKeyStorePassword));
+        config.setTlsKeyStoreType(System.getProperty("microspringboot.tls.keyStoreType", config.tlsKeyStoreType));
+        config.setTlsSessionCacheSize(Integer.getInteger("microspringboot.tls.sessionCacheSize", config.tlsSessionCacheSize));
+        config.setTlsSessionTimeoutSeconds(Integer.getInteger("microspringboot.tls.sessionTimeoutSeconds",
+                config.tlsSessionTimeoutSeconds));
+        return config;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets the TCP port to listen on.
+     * @param port the port, or 0 to pick a free one
+     */
+    public void setPort(int port) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        this.port = port;
+    }
+
+    public boolean isTcpEnabled() {
+        return tcpEnabled;
+    }
+
+    /**
+     * Turns the TCP listener on or off. Without it the server only listens on its
+     * {@linkplain #setUnixSocket Unix domain socket}.
+     * @param tcpEnabled false to skip binding the TCP port
+     */
+    public void setTcpEnabled(boolean tcpEnabled) {
+        this.tcpEnabled = tcpEnabled;
+    }
+
+    public String getUnixSocket() {
+        return unixSocket;
+    }
+
+    /**
+     * Also listens on a Unix domain socket, e.g. for a reverse proxy on the same host.
+     * Connections on it are served like TCP ones, in plain HTTP even when TLS is on.
+     * @param unixSocket the socket file path, or null for none
+     */
+    public void setUnixSocket(String unixSocket) {
+        this.unixSocket = unixSocket == null || unixSocket.isBlank() ? null : unixSocket;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Sets the length of the queue of connections waiting to be accepted.
+     * @param backlog the queue length, at least 1
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = Math.max(1, backlog);
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * Sets how many threads accept connections.
+     * @param acceptors the number of acceptor threads, at least 1
+     */
+    public void setAcceptors(int acceptors) {
+        this.acceptors = Math.max(1, acceptors);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Sets how many worker loops serve connections. Each loop is one thread.
+     * @param workers the number of worker loops, at least 1
+     */
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Sets TCP_NODELAY on accepted connections.
+     * @param tcpNoDelay true to send small responses without waiting for more data
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Chooses whether each acceptor gets its own SO_REUSEPORT socket, so the kernel spreads
+     * incoming connections across them. When the platform does not support the option all
+     * acceptors share one listening socket instead.
+     *
+     * @param reusePort true to use SO_REUSEPORT when available
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public long getHeaderTimeoutMillis() {
+        return headerTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a client may take to send the request line and headers. Clients that
+     * trickle headers to hold a connection open get {@code 408 Request Timeout}.
+     * @param headerTimeoutMillis the timeout, or 0 for none
+     */
+    public void setHeaderTimeoutMillis(long headerTimeoutMillis) {
+        this.headerTimeoutMillis = Math.max(0, headerTimeoutMillis);
+    }
+
+    public long getTransferTimeoutMillis() {
+        return transferTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a single read of the request body or write of the response may block
+     * without the client sending or accepting a byte.
+     * @param transferTimeoutMillis the timeout, or 0 for none
+     */
+    public void setTransferTimeoutMillis(long transferTimeoutMillis) {
+        this.transferTimeoutMillis = Math.max(0, transferTimeoutMillis);
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a keep-alive connection is kept open waiting for its next request.
+     * @param idleTimeoutMillis the timeout; 0 closes connections after each response
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = Math.max(0, idleTimeoutMillis);
+    }
+
+    public long getHandlerTimeoutMillis() {
+        return handlerTimeoutMillis;
+    }
+
+    /**
+     * Sets the deadline of a request, counted from the moment it was handed to a worker loop.
+     * A request still queued at the deadline gets {@code 503 Service Unavailable}; one whose
+     * handler is still running gets {@code 504 Gateway Timeout} and its thread is interrupted.
+     * @param handlerTimeoutMillis the deadline, or 0 for none
+     */
+    public void setHandlerTimeoutMillis(long handlerTimeoutMillis) {
+        this.handlerTimeoutMillis = Math.max(0, handlerTimeoutMillis);
+    }
+
+    public long getMinBytesPerSecond() {
+        return minBytesPerSecond;
+    }
+
+    /**
+     * Sets the minimum transfer rate of request bodies and responses. The rate is measured
+     * only over the time the server is waiting on the client, after a short grace period,
+     * so slow handlers do not count against it.
+     * @param minBytesPerSecond the rate, or 0 to disable the check
+     */
+    public void setMinBytesPerSecond(long minBytesPerSecond) {
+        this.minBytesPerSecond = Math.max(0, minBytesPerSecond);
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a stopping server waits for in-flight requests before interrupting them.
+     * @param shutdownTimeoutMillis the drain timeout, or 0 to interrupt them at once
+     */
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = Math.max(0, shutdownTimeoutMillis);
+    }
+
+    public String getTlsKeyStore() {
+        return tlsKeyStore;
+    }
+
+    /**
+     * Enables TLS with the key and certificate in a keystore. Clients may then negotiate
+     * HTTP/2 through ALPN.
+     * @param tlsKeyStore the keystore path, or null to serve plain HTTP
+     */
+    public void setTlsKeyStore(String tlsKeyStore) {
+        this.tlsKeyStore = tlsKeyStore == null || tlsKeyStore.isBlank() ? null : tlsKeyStore;
+    }
+
+    public String getTlsKeyStorePassword() {
+        return tlsKeyStorePassword;
+    }
+
+    /**
+     * Sets the password of the keystore and of the key inside it.
+     * @param tlsKeyStorePassword the password
+     */
+    public void setTlsKeyStorePassword(String tlsKeyStorePassword) {
+        this.tlsKeyStorePassword = tlsKeyStorePassword == null ? "" : tlsKeyStorePassword;
+    }
+
+    public String getTlsKeyStoreType() {
+        return tlsKeyStoreType;
+    }
+
+    /**
+     * Sets the keystore format.
+     * @param tlsKeyStoreType the type, such as PKCS12 or JKS
+     */
+    public void setTlsKeyStoreType(String tlsKeyStoreType) {
+        this.tlsKeyStoreType = tlsKeyStoreType;
+    }
+
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * Sets how many TLS sessions are kept for resumption.
+     * @param tlsSessionCacheSize the cache size, or 0 for no limit
+     */
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = Math.max(0, tlsSessionCacheSize);
+    }
+
+    public int getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+
+    /**
+     * Sets how long a TLS session can be resumed after it was negotiated.
+     * @param tlsSessionTimeoutSeconds the lifetime, or 0 for no limit
+     */
+    public void setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = Math.max(0, tlsSessionTimeoutSeconds);
+    }
+}
@@ -0,0 +1,262 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide server instrumentation exposed on the {@code /metrics} endpoint.
+ * All counters are striped {@link LongAdder}s and all histograms are
+ * {@link LatencyHistogram}s, so recording from request threads is lock-free.
+ * Only the per-route map is touched with {@code computeIfAbsent}, and only the
+ * first time a route is seen.
+ *
+ * @author daniel.aldana-b
+ */
+public class ServerMetrics {
+    // Route label used for requests served from the static files directory
+    public static final String STATIC_ROUTE = "static";
+    // Route label used for requests that did not match anything
+    public static final String NOT_FOUND_ROUTE = "not_found";
+
+    private static final LongAdder connectionsAccepted = new LongAdder();
+    private static final LongAdder activeConnections = new LongAdder();
+    private static final LongAdder bytesIn = new LongAdder();
+    private static final LongAdder bytesOut = new LongAdder();
+    // Responses per HTTP status code, indexed directly by the code (100..599)
+    private static final LongAdder[] statusCounts = new LongAdder[600];
+    private static final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    // Time from JVM start until the server listened, -1 until then
+    private static volatile long startupMillis = -1;
+    // Time to serve the first request, -1 until it is served
+    private static final AtomicLong firstRequestNanos = new AtomicLong(-1);
+
+    static {
+        for (int i = 100; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counters and histograms for a single route.
+     */
+    public static class RouteMetrics {
+        final LongAdder requests = new LongAdder();
+        final LatencyHistogram requestLatency = new LatencyHistogram();
+        final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+        public long requests() {
+            return requests.sum();
+        }
+
+        public LatencyHistogram requestLatency() {
+            return requestLatency;
+        }
+
+        public LatencyHistogram handlerLatency() {
+            return handlerLatency;
+        }
+    }
+
+    /**
+     * Returns the metrics of a route, creating them the first time the route is seen.
+     * @param route the route label (the mapped path, or one of the fixed labels)
+     * @return the metrics holder for the route
+     */
+    public static RouteMetrics route(String route) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(route, r -> new RouteMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Records a finished request.
+     *
+     * @param route  the route label
+     * @param status the HTTP status code sent to the client
+     * @param nanos  the total time spent serving the request
+     */
+    public static void recordRequest(String route, int status, long nanos) {
+        if (firstRequestNanos.get() < 0 && firstRequestNanos.compareAndSet(-1, nanos)) {
+            AccessLog.info("server.firstRequest", "route=" + route + " status=" + status + " micros=" + nanos / 1000);
+        }
+        RouteMetrics metrics = route(route);
+        metrics.requests.increment();
+        metrics.requestLatency.record(nanos);
+        if (status >= 100 && status < statusCounts.length) {
+            statusCounts[status].increment();
+        }
+    }
+
+    /**
+     * Records the time spent inside a controller method.
+     *
+     * @param route the mapped path of the controller method
+     * @param nanos the invocation time in nanoseconds
+     */
+    public static void recordHandler(String route, long nanos) {
+        route(route).handlerLatency.record(nanos);
+    }
+
+    /**
+     * Records that the server is listening.
+     * @param millis time since the JVM started
+     */
+    static void started(long millis) {
+        startupMillis = millis;
+    }
+
+    public static void connectionOpened() {
+        connectionsAccepted.increment();
+        activeConnections.increment();
+    }
+
+    public static void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public static void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public static void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public static long activeConnections() {
+        return activeConnections.sum();
+    }
+
+    public static long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    public static long bytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Returns how many responses were sent with the given status code.
+     * @param status the HTTP status code
+     * @return the number of responses, or 0 for codes outside 100..599
+     */
+    public static long statusCount(int status) {
+        return status >= 100 && status < statusCounts.length ? statusCounts[status].sum() : 0;
+    }
+
+    /**
+     * Clears every counter and route, and forgets the first request. Used by tests and
+     * to drop what the warm-up recorded. The active connections gauge tracks live state,
+     * so it is left alone: the open connections still close and decrement it.
+     */
+    public static void reset() {
+        connectionsAccepted.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        for (int i = 100; i < statusCounts.length; i++) {
+            statusCounts[i].reset();
+        }
+        routes.clear();
+        firstRequestNanos.set(-1);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format (version 0.0.4).
+     * @return the metrics document
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        gauge(out, "microspringboot_connections_active", "Connections currently open", activeConnections.sum());
+        counter(out, "microspringboot_connections_total", "Connections accepted", connectionsAccepted.sum());
+        counter(out, "microspringboot_bytes_received_total", "Bytes read from clients", bytesIn.sum());
+        counter(out, "microspringboot_bytes_sent_total", "Bytes written to clients", bytesOut.sum());
+        if (startupMillis >= 0) {
+            out.append("# HELP microspringboot_startup_seconds Time from JVM start until the server listened\n");
+            out.append("# TYPE microspringboot_startup_seconds gauge\n");
+            out.append("microspringboot_startup_seconds ").append(startupMillis / 1e3).append('\n');
+        }
+        long first = firstRequestNanos.get();
+        if (first >= 0) {
+            out.append("# HELP microspringboot_first_request_seconds Time to serve the first request\n");
+            out.append("# TYPE microspringboot_first_request_seconds gauge\n");
+            out.append("microspringboot_first_request_seconds ").append(first / 1e9).append('\n');
+        }
+        counter(out, "microspringboot_log_dropped_total", "Log entries dropped because the log buffer was full",
+                AccessLog.droppedCount());
+
+        out.append("# HELP microspringboot_responses_total Responses sent by status code\n");
+        out.append("# TYPE microspringboot_responses_total counter\n");
+        for (int i = 100; i < statusCounts.length; i++) {
+            long value = statusCounts[i].sum();
+            if (value > 0) {
+                out.append("microspringboot_responses_total{status=\"").append(i).append("\"} ")
+                   .append(value).append('\n');
+            }
+        }
+
+        // Sorted so consecutive scrapes list the routes in a stable order
+        Map<String, RouteMetrics> sorted = new TreeMap<>(routes);
+        out.append("# HELP microspringboot_requests_total Requests served per route\n");
+        out.append("# TYPE microspringboot_requests_total counter\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            out.append("microspringboot_requests_total{route=\"").append(escape(e.getKey())).append("\"} ")
+               .append(e.getValue().requests.sum()).append('\n');
+        }
+        out.append("# HELP microspringboot_request_duration_seconds Time to serve a request per route\n");
+        out.append("# TYPE microspringboot_request_duration_seconds histogram\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            e.getValue().requestLatency.writePrometheus(out, "microspringboot_request_duration_seconds",
+                    "route=\"" + escape(e.getKey()) + "\"");
+        }
+        out.append("# HELP microspringboot_handler_duration_seconds Time spent inside controller methods\n");
+        out.append("# TYPE microspringboot_handler_duration_seconds histogram\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            if (e.getValue().handlerLatency.count() > 0) {
+                e.getValue().handlerLatency.writePrometheus(out, "microspringboot_handler_duration_seconds",
+                        "route=\"" + escape(e.getKey()) + "\"");
+            }
+        }
+        RequestTrace.writePrometheus(out);
+        ResponseCache.writePrometheus(out);
+        RequestCoalescer.writePrometheus(out);
+        ConnectionWatchdog.writePrometheus(out);
+        Http2Connection.writePrometheus(out);
+        TlsContext.writePrometheus(out);
+        EventBroadcaster.writePrometheus(out);
+        WebSocketSession.writePrometheus(out);
+        BufferPool.writePrometheus(out);
+        BulkheadPool.writePrometheus(out);
+        RateLimiter limiter = HttpServer.rateLimiter;
+        if (limiter != null) {
+            limiter.writePrometheus(out);
+        }
+        AdmissionController admission = HttpServer.admission;
+        if (admission != null) {
+            admission.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Escapes a label value as required by the exposition format.
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
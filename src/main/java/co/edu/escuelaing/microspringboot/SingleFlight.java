@@ -0,0 +1,21 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code @GetMapping} method whose concurrent identical requests should share
+ * one execution. While an invocation for a given set of {@code @RequestParam} values
+ * is running, further requests with the same values wait for it and receive the same
+ * response instead of invoking the method again. Nothing is kept once the invocation
+ * finishes, so unlike {@link Cacheable} the next request always sees fresh data.
+ *
+ * @author daniel.aldana-b
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SingleFlight {
+
+}
@@ -0,0 +1,524 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Immutable index of the static files, built once from a directory or, when the
+ * directory does not exist, from the same location inside the application jar.
+ * Each file is keyed by its request path, with directories also mapped to their
+ * {@code index.html}, so a lookup is a single hash probe. Files up to
+ * {@link #PRELOAD_BYTES} are kept as a complete response; larger ones keep only their
+ * head and stream the body from disk or from the jar. On a connection, a preloaded
+ * response is written from a direct buffer of its own and a streamed body through a
+ * pooled one, so neither is copied again on its way to the socket.
+ * <p>
+ * Every file except HTML pages is also served under a name carrying a fingerprint of
+ * its content, such as {@code /style.3f9a1c0b2e.css}, with a year-long
+ * {@code immutable} cache lifetime: a new version gets a new name, so clients never
+ * need to revalidate it. {@code href} and {@code src} attributes of the preloaded pages
+ * are rewritten to the fingerprinted names when the index is built.
+ *
+ * @author daniel.aldana-b
+ */
+final class StaticAssets {
+    private static final Logger LOGGER = Logger.getLogger(StaticAssets.class.getName());
+    // Files up to this size are held in memory with their response head
+    static final long PRELOAD_BYTES = Long.getLong("microspringboot.static.preloadBytes", 64 * 1024);
+    private static final String CLASSES_DIRECTORY = "target/classes";
+    // Hex digits of the content hash put in fingerprinted names
+    private static final int FINGERPRINT_LENGTH = 10;
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final Pattern REFERENCE = Pattern.compile(
+            "(\\b(?:href|src)\\s*=\\s*)([\"'])([^\"']*)\\2", Pattern.CASE_INSENSITIVE);
+
+    /** One static file and its precomputed responses. */
+    static final class Asset {
+        final String path;
+        final String contentType;
+        final long size;
+        // Hex SHA-256 of the content
+        final String hash;
+        final String etag;
+        final String cacheControl;
+        private final byte[] head;
+        private final byte[] body;
+        // Read-only direct copy of the head, followed by the body unless it is shared;
+        // null unless preloaded
+        private final ByteBuffer response;
+        // Read-only direct body when preloaded: the tail of response, or the one of the
+        // plain-named file when this is its fingerprinted alias
+        private final ByteBuffer directBody;
+        private final boolean sharesBody;
+        private final byte[] notModified;
+        private final boolean preloaded;
+        private final Path file;
+        private final JarFile jar;
+        private final JarEntry entry;
+
+        /**
+         * @param sharedBody the direct body of another asset with the same content, or null
+         *                   to copy {@code body} off-heap
+         */
+        private Asset(String path, long size, String hash, byte[] body, Path file, JarFile jar, JarEntry entry,
+                String cacheControl, ByteBuffer sharedBody) {
+            this.path = path;
+            this.contentType = HttpServer.getType(Path.of(path.substring(path.lastIndexOf('/') + 1)));
+            this.size = size;
+            this.hash = hash;
+            this.etag = '"' + hash.substring(0, 16) + '"';
+            this.cacheControl = cacheControl;
+            this.body = body;
+            this.preloaded = body != null;
+            this.file = file;
+            this.jar = jar;
+            this.entry = entry;
+            this.head = ("HTTP/1.1 200 OK\r\ncontent-type: " + contentType + "\r\ncontent-length: " + size
+                    + "\r\netag: " + etag + (cacheControl == null ? "" : "\r\ncache-control: " + cacheControl)
+                    + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            this.sharesBody = sharedBody != null;
+            if (body == null) {
+                this.response = null;
+                this.directBody = null;
+            } else if (sharesBody) {
+                this.response = ByteBuffer.allocateDirect(head.length).put(head).flip().asReadOnlyBuffer();
+                this.directBody = sharedBody;
+            } else {
+                ByteBuffer direct = ByteBuffer.allocateDirect(head.length + body.length);
+                this.response = direct.put(head).put(body).flip().asReadOnlyBuffer();
+                this.directBody = response.slice(head.length, body.length);
+            }
+            this.notModified = ("HTTP/1.1 304 Not Modified\r\netag: " + etag
+                    + (cacheControl == null ? "" : "\r\ncache-control: " + cacheControl) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * Creates the same file under its fingerprinted name, cacheable forever. A preloaded
+         * body is shared, so only the new head takes more memory.
+         */
+        private Asset fingerprinted() {
+            return new Asset(fingerprint(path, hash), size, hash, body, file, jar, entry, IMMUTABLE, directBody);
+        }
+
+        /**
+         * Gets the native memory taken by this asset's own preloaded copy.
+         * @return the bytes allocated off-heap, 0 if not preloaded
+         */
+        long offHeapBytes() {
+            return response == null ? 0 : response.capacity();
+        }
+
+        /**
+         * Writes the file, or a {@code 304} if the client already holds this version.
+         * @param request the request, for its {@code If-None-Match} header
+         * @param out     the client output stream
+         * @return the status sent
+         * @throws IOException if the response cannot be written
+         */
+        int send(HttpRequest request, OutputStream out) throws IOException {
+            String cached = request.getHeader("If-None-Match");
+            if (cached != null && (cached.contains(etag) || "*".equals(cached.trim()))) {
+                out.write(notModified);
+                out.flush();
+                return 304;
+            }
+            RequestTrace.mark(RequestTrace.Phase.SERIALIZATION);
+            if (out instanceof Connection.ChannelOutput channel) {
+                if (sharesBody) {
+                    channel.write(response.duplicate(), directBody.duplicate());
+                } else if (preloaded) {
+                    channel.write(response.duplicate());
+                } else {
+                    stream(channel);
+                }
+            } else {
+                out.write(head);
+                if (preloaded) {
+                    out.write(body);
+                } else if (file != null) {
+                    Files.copy(file, out);
+                } else {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        in.transferTo(out);
+                    }
+                }
+            }
+            out.flush();
+            return 200;
+        }
+
+        /**
+         * Writes the head and the body of a file that is not preloaded through one pooled
+         * direct buffer, filled up before every write.
+         */
+        private void stream(Connection.ChannelOutput channel) throws IOException {
+            ByteBuffer buffer = BufferPool.acquire(BufferPool.MAX_CLASS);
+            try (ReadableByteChannel source = file != null ? FileChannel.open(file)
+                    : Channels.newChannel(jar.getInputStream(entry))) {
+                buffer.put(head);
+                boolean end = false;
+                while (!end) {
+                    end = source.read(buffer) < 0;
+                    if (end || !buffer.hasRemaining()) {
+                        channel.write(buffer.flip());
+                        buffer.clear();
+                    }
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+    }
+
+    final String root;
+    private final Map<String, Asset> assets;
+    // Plain path of each fingerprinted file to its fingerprinted path
+    private final Map<String, String> manifest;
+    private final int files;
+    // Native memory taken by the preloaded responses, heads included
+    private final long preloadedBytes;
+
+    private StaticAssets(String root, Map<String, Asset> assets, Map<String, String> manifest, int files,
+            long preloadedBytes) {
+        this.root = root;
+        this.assets = assets;
+        this.manifest = manifest;
+        this.files = files;
+        this.preloadedBytes = preloadedBytes;
+    }
+
+    /**
+     * Finds the file answering a request path.
+     * @param path the request path
+     * @return the file, or null if there is none
+     */
+    Asset get(String path) {
+        return assets.get(path);
+    }
+
+    /**
+     * Gets the native memory taken by the preloaded responses.
+     * @return the bytes allocated off-heap for heads and bodies
+     */
+    long preloadedBytes() {
+        return preloadedBytes;
+    }
+
+    /**
+     * Gets every indexed file once, without the directory aliases and fingerprinted names.
+     * @return the files
+     */
+    List<Asset> files() {
+        return assets.entrySet().stream()
+                .filter(e -> e.getKey().equals(e.getValue().path) && e.getValue().cacheControl == null)
+                .map(Map.Entry::getValue)
+                .toList();
+    }
+
+    /**
+     * Gets the fingerprinted path of a static file.
+     * @param path the plain request path, such as {@code /style.css}
+     * @return the fingerprinted path, or {@code path} itself if it is not a fingerprinted file
+     */
+    String fingerprinted(String path) {
+        return manifest.getOrDefault(path, path);
+    }
+
+    /**
+     * Gets the fingerprinted path of every file.
+     * @return the manifest, keyed by plain path
+     */
+    Map<String, String> manifest() {
+        return manifest;
+    }
+
+    /**
+     * Inserts the start of a content hash before the extension of a path.
+     * @param path the plain path
+     * @param hash the hex hash of the content
+     * @return the fingerprinted path, e.g. {@code /img/logo.3f9a1c0b2e.png}
+     */
+    static String fingerprint(String path, String hash) {
+        String print = hash.substring(0, FINGERPRINT_LENGTH);
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            return path + "." + print;
+        }
+        return path.substring(0, dot) + "." + print + path.substring(dot);
+    }
+
+    /**
+     * Replaces the {@code href} and {@code src} references of a page to fingerprinted
+     * files. Relative references stay relative; only their file name changes.
+     *
+     * @param page     the request path of the page, to resolve relative references
+     * @param html     the page
+     * @param manifest the fingerprinted path of each file
+     * @return the page with its references rewritten
+     */
+    static String rewrite(String page, String html, Map<String, String> manifest) {
+        URI base = URI.create(page);
+        Matcher m = REFERENCE.matcher(html);
+        StringBuilder out = new StringBuilder(html.length());
+        while (m.find()) {
+            String reference = m.group(3);
+            int end = reference.length();
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c == '?' || c == '#') {
+                    end = i;
+                    break;
+                }
+            }
+            String target = reference.substring(0, end);
+            String replacement = null;
+            if (!target.isEmpty() && !target.startsWith("//") && target.indexOf(':') < 0) {
+                try {
+                    String printed = manifest.get(base.resolve(target).normalize().getPath());
+                    if (printed != null) {
+                        replacement = target.substring(0, target.lastIndexOf('/') + 1)
+                                + printed.substring(printed.lastIndexOf('/') + 1) + reference.substring(end);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Not a valid URI; leave it as it is
+                }
+            }
+            m.appendReplacement(out, Matcher.quoteReplacement(m.group(1) + m.group(2)
+                    + (replacement == null ? reference : replacement) + m.group(2)));
+        }
+        m.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * Indexes the static files of a directory. When it does not exist, its path below
+     * {@code target/classes} is looked up in the application's code source, which is
+     * how the files are found once the application is packaged as a jar.
+     *
+     * @param root the directory, as in {@link HttpServer#ROOT_DIRECTORY}
+     * @return the index, empty if there are no static files
+     */
+    static StaticAssets load(String root) {
+        Builder builder = new Builder(root);
+        try {
+            Path directory = Path.of(root);
+            if (Files.isDirectory(directory)) {
+                builder.addDirectory(directory);
+            } else {
+                builder.addCodeSource(classpathLocation(root));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning(() -> "Could not index static files of " + root + ": " + e);
+        }
+        StaticAssets index = builder.build();
+        LOGGER.info(() -> "Indexed " + index.files + " static files from " + root + " ("
+                + index.preloadedBytes + " bytes preloaded)");
+        return index;
+    }
+
+    /**
+     * Indexes the static files below a location of a jar.
+     * @param root     the name of the index
+     * @param jar      the jar file
+     * @param location the directory inside the jar, without slashes around it
+     * @return the index
+     * @throws IOException if the jar cannot be read
+     */
+    static StaticAssets loadJar(String root, Path jar, String location) throws IOException {
+        Builder builder = new Builder(root);
+        builder.addJar(jar, location);
+        return builder.build();
+    }
+
+    /**
+     * Strips {@code target/classes} from a static directory, giving its location on the classpath.
+     */
+    static String classpathLocation(String root) {
+        String location = root.replace('\\', '/');
+        if (location.startsWith(CLASSES_DIRECTORY)) {
+            location = location.substring(CLASSES_DIRECTORY.length());
+        }
+        while (location.startsWith("/")) {
+            location = location.substring(1);
+        }
+        while (location.endsWith("/")) {
+            location = location.substring(0, location.length() - 1);
+        }
+        return location;
+    }
+
+    private static final class Builder {
+        private final String root;
+        private final Map<String, Asset> assets = new HashMap<>();
+        // Preloaded HTML pages, indexed last so their references can be rewritten
+        private final Map<String, byte[]> pages = new HashMap<>();
+        private final MessageDigest sha256;
+        private int files;
+        private long preloadedBytes;
+
+        Builder(String root) {
+            this.root = root;
+            try {
+                this.sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+            }
+        }
+
+        void addDirectory(Path directory) throws IOException {
+            try (Stream<Path> walk = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) walk.filter(Files::isRegularFile)::iterator) {
+                    String path = "/" + directory.relativize(file).toString().replace('\\', '/');
+                    long size = Files.size(file);
+                    try (InputStream in = Files.newInputStream(file)) {
+                        add(path, size, in, file, null, null);
+                    }
+                }
+            }
+        }
+
+        void addCodeSource(String location) throws IOException {
+            CodeSource codeSource = StaticAssets.class.getProtectionDomain().getCodeSource();
+            if (codeSource == null) {
+                return;
+            }
+            Path source;
+            try {
+                source = Path.of(codeSource.getLocation().toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Error resolving the code source", e);
+            }
+            if (Files.isDirectory(source)) {
+                Path directory = source.resolve(location);
+                if (Files.isDirectory(directory)) {
+                    addDirectory(directory);
+                }
+                return;
+            }
+            addJar(source, location);
+        }
+
+        /**
+         * Indexes the entries below a location of a jar. The jar stays open while files
+         * too large to preload are served from it.
+         */
+        void addJar(Path source, String location) throws IOException {
+            String prefix = location.isEmpty() ? "" : location + "/";
+            JarFile jar = new JarFile(source.toFile());
+            boolean streamed = false;
+            try {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory() || !name.startsWith(prefix) || name.endsWith(".class")) {
+                        continue;
+                    }
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        streamed |= !add("/" + name.substring(prefix.length()), entry.getSize(), in, null, jar, entry);
+                    }
+                }
+            } finally {
+                if (!streamed) {
+                    jar.close();
+                }
+            }
+        }
+
+        /**
+         * Hashes a file while reading it, keeping its bytes if it is small enough.
+         * @return true if the file was preloaded
+         */
+        private boolean add(String path, long size, InputStream in, Path file, JarFile jar, JarEntry entry)
+                throws IOException {
+            boolean preload = size >= 0 && size <= PRELOAD_BYTES;
+            byte[] body = null;
+            sha256.reset();
+            files++;
+            if (preload) {
+                body = in.readAllBytes();
+                if (isPage(path)) {
+                    pages.put(path, body);
+                    return true;
+                }
+                sha256.update(body);
+                size = body.length;
+            } else {
+                byte[] chunk = new byte[8192];
+                long read = 0;
+                int n;
+                while ((n = in.read(chunk)) >= 0) {
+                    sha256.update(chunk, 0, n);
+                    read += n;
+                }
+                size = read;
+            }
+            put(new Asset(path, size, HexFormat.of().formatHex(sha256.digest()), body, file, jar, entry, null, null));
+            return preload;
+        }
+
+        private static boolean isPage(String path) {
+            return HttpServer.getType(Path.of(path.substring(path.lastIndexOf('/') + 1))).startsWith("text/html");
+        }
+
+        private void put(Asset asset) {
+            String path = asset.path;
+            assets.put(path, asset);
+            preloadedBytes += asset.offHeapBytes();
+            if (path.endsWith("/index.html")) {
+                String directory = path.substring(0, path.length() - "index.html".length());
+                assets.putIfAbsent(directory, asset);
+                if (directory.length() > 1) {
+                    assets.putIfAbsent(directory.substring(0, directory.length() - 1), asset);
+                }
+            }
+        }
+
+        StaticAssets build() {
+            Map<String, String> manifest = new HashMap<>();
+            for (Asset asset : List.copyOf(assets.values())) {
+                if (!isPage(asset.path)) {
+                    Asset printed = asset.fingerprinted();
+                    if (assets.putIfAbsent(printed.path, printed) == null) {
+                        preloadedBytes += printed.offHeapBytes();
+                    }
+                    manifest.put(asset.path, printed.path);
+                }
+            }
+            for (Map.Entry<String, byte[]> page : pages.entrySet()) {
+                String path = page.getKey();
+                byte[] body = rewrite(path, new String(page.getValue(), StandardCharsets.UTF_8), manifest)
+                        .getBytes(StandardCharsets.UTF_8);
+                put(new Asset(path, body.length, HexFormat.of().formatHex(sha256.digest(body)), body, null, null, null,
+                        null, null));
+            }
+            return new StaticAssets(root, Map.copyOf(assets), Map.copyOf(manifest), files, preloadedBytes);
+        }
+    }
+}
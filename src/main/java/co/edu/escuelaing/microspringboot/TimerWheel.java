@@ -0,0 +1,186 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timer wheel: one thread serves every timeout of the server.
+ * The wheel is an array of slots, each covering one tick; a timeout is placed in the slot
+ * of its deadline together with the number of full turns left. Scheduling and cancelling
+ * are O(1) and lock-free for the caller: new timeouts go through a queue that the timer
+ * thread drains on each tick, and cancelled ones are dropped when their slot comes up.
+ * Deadlines are honoured with tick granularity, which is plenty for network timeouts.
+ *
+ * <p>Tasks run on the timer thread and must be short (close a channel, write a few bytes).
+ *
+ * @author daniel.aldana-b
+ */
+public final class TimerWheel implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(TimerWheel.class.getName());
+
+    private static final class Holder {
+        static final TimerWheel SHARED = new TimerWheel("timer-wheel", 50, TimeUnit.MILLISECONDS, 512);
+    }
+
+    private final long tickNanos;
+    private final List<Timeout>[] slots;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final long startNanos;
+    private volatile boolean running = true;
+    // Ticks processed so far, owned by the timer thread
+    private long tick;
+
+    /**
+     * Creates and starts a wheel.
+     *
+     * @param name      the name of the timer thread
+     * @param tick      the duration of one slot
+     * @param unit      the unit of {@code tick}
+     * @param slotCount the number of slots, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, long tick, TimeUnit unit, int slotCount) {
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.slots = new List[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the wheel shared by the whole server (50 ms ticks).
+     * @return the shared wheel
+     */
+    public static TimerWheel shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Runs a task once after a delay.
+     *
+     * @param task  the task, run on the timer thread
+     * @param delay how long to wait
+     * @param unit  the unit of {@code delay}
+     * @return a handle to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            transferPending();
+            expire(slots[(int) (tick & mask)], System.nanoTime());
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long ticks = (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+            // Already due timeouts go in the current slot
+            long target = Math.max(ticks, tick);
+            timeout.rounds = (target - tick) / slots.length;
+            slots[(int) (target & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> slot, long now) {
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            if (timeout.rounds > 0 || timeout.deadlineNanos - now > tickNanos) {
+                timeout.rounds--;
+                slot.set(kept++, timeout);
+                continue;
+            }
+            if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable t) {
+                    LOGGER.log(Level.WARNING, "Timer task failed", t);
+                }
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts never run.
+     */
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * A scheduled task that can be cancelled until it runs.
+     */
+    public static final class Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // Full turns of the wheel left, owned by the timer thread
+        private long rounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Prevents the task from running.
+         * @return true if the task had not run yet
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
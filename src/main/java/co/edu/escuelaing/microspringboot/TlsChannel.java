@@ -0,0 +1,377 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A TLS connection seen as a plain {@link ByteChannel}, so {@link Connection} and everything
+ * above it work unchanged. The handshake runs through {@link #readNow} while the connection
+ * waits off the worker loops for its first request head, where the header timeout covers
+ * it; a blocking read or write finishes it otherwise. Records are decrypted from and encrypted
+ * into direct buffers taken from the {@link BufferPool}, so the socket reads and writes them
+ * without an extra copy and accepting a connection allocates no native memory.
+ *
+ * <p>Reads and writes take separate locks: an HTTP/2 connection can send responses while
+ * its reader is blocked waiting for the next record. The underlying channel must be in
+ * blocking mode whenever it is read or written, except through {@link #readNow}.
+ *
+ * @author daniel.aldana-b
+ */
+final class TlsChannel implements ByteChannel {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    // Returned by unwrap() when a non-blocking socket has no more bytes yet
+    private static final SSLEngineResult WOULD_BLOCK = new SSLEngineResult(SSLEngineResult.Status.BUFFER_UNDERFLOW,
+            SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING, 0, 0);
+
+    private final SocketChannel socket;
+    private final SSLEngine engine;
+    private final ReentrantLock readLock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Ciphertext read from the socket, in write mode; guarded by readLock
+    private ByteBuffer netIn;
+    // Plaintext decrypted but not yet returned, in write mode; guarded by readLock
+    private ByteBuffer appIn;
+    // Ciphertext waiting to be written; guarded by writeLock
+    private ByteBuffer netOut;
+    private volatile boolean handshaken;
+    // When the handshake began, 0 before; guarded by both locks
+    private long handshakeStartedAt;
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private volatile boolean closed;
+    private boolean inboundDone;
+
+    /**
+     * @param socket a connected channel in blocking mode
+     * @param engine a server-mode engine that has not started its handshake
+     */
+    TlsChannel(SocketChannel socket, SSLEngine engine) {
+        this.socket = socket;
+        this.engine = engine;
+        int packetSize = engine.getSession().getPacketBufferSize();
+        int applicationSize = engine.getSession().getApplicationBufferSize();
+        this.netIn = BufferPool.acquire(packetSize);
+        this.appIn = BufferPool.acquire(applicationSize);
+        this.netOut = BufferPool.acquire(packetSize);
+    }
+
+    /**
+     * Gets the TCP channel carrying the records, e.g. to wait for input with a selector.
+     * @return the underlying socket channel
+     */
+    SocketChannel socket() {
+        return socket;
+    }
+
+    /**
+     * Gets the protocol chosen through ALPN.
+     * @return "h2", "http/1.1", or an empty string if the client did not use ALPN
+     */
+    String getApplicationProtocol() {
+        String protocol = engine.getApplicationProtocol();
+        return protocol == null ? "" : protocol;
+    }
+
+    /**
+     * Tells whether data already read from the socket is waiting to be decrypted or returned.
+     * @return true if the next read may not need the socket
+     */
+    boolean hasBufferedInput() {
+        readLock.lock();
+        try {
+            return !closed && (appIn.position() > 0 || netIn.position() > 0);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void handshake() throws IOException {
+        readLock.lock();
+        writeLock.lock();
+        try {
+            if (handshaken) {
+                return;
+            }
+            ensureOpen();
+            if (!advanceHandshake()) {
+                throw new IOException("TLS handshake not finished before the connection went idle");
+            }
+        } finally {
+            writeLock.unlock();
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Runs the handshake until it finishes or, on a non-blocking socket, until it needs
+     * bytes the client has not sent yet; the next call resumes it. Delegated tasks run on
+     * the calling thread. Must hold both locks.
+     * @return true once the handshake has finished
+     */
+    private boolean advanceHandshake() throws IOException {
+        try {
+            if (handshakeStartedAt == 0) {
+                handshakeStartedAt = System.currentTimeMillis();
+                engine.beginHandshake();
+            }
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            while (status != SSLEngineResult.HandshakeStatus.FINISHED
+                    && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                switch (status) {
+                    case NEED_WRAP -> status = wrap(EMPTY).getHandshakeStatus();
+                    case NEED_TASK -> {
+                        runTasks();
+                        status = engine.getHandshakeStatus();
+                    }
+                    default -> {
+                        SSLEngineResult result = unwrap();
+                        if (result == null) {
+                            throw new EOFException("Connection closed during the TLS handshake");
+                        }
+                        if (result == WOULD_BLOCK) {
+                            return false;
+                        }
+                        status = result.getHandshakeStatus();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            TlsContext.handshakeFailed();
+            throw e;
+        }
+        handshaken = true;
+        TlsContext.handshakeCompleted(engine.getSession(), handshakeStartedAt);
+        return true;
+    }
+
+    /**
+     * Reads without blocking, while the connection waits for a request head: advances the
+     * handshake as far as the bytes received allow, then decrypts the records that are
+     * complete. The socket must be in non-blocking mode.
+     * @param dst where the plaintext goes
+     * @return the bytes read, 0 if more input is needed, or -1 at the end of the stream
+     * @throws IOException if the socket fails or the client breaks the protocol
+     */
+    int readNow(ByteBuffer dst) throws IOException {
+        if (!handshaken) {
+            readLock.lock();
+            writeLock.lock();
+            try {
+                ensureOpen();
+                if (!handshaken && !advanceHandshake()) {
+                    return 0;
+                }
+            } finally {
+                writeLock.unlock();
+                readLock.unlock();
+            }
+        }
+        return read(dst);
+    }
+
+    /**
+     * Decrypts the next record into {@link #appIn}, reading from the socket as needed.
+     * Must hold readLock.
+     * @return the result, or null at the end of the stream
+     */
+    private SSLEngineResult unwrap() throws IOException {
+        while (true) {
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+            switch (result.getStatus()) {
+                case OK -> {
+                    return result;
+                }
+                case CLOSED -> {
+                    inboundDone = true;
+                    return result;
+                }
+                case BUFFER_OVERFLOW -> appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                case BUFFER_UNDERFLOW -> {
+                    if (!netIn.hasRemaining()) {
+                        netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                    }
+                    int n = socket.read(netIn);
+                    if (n < 0) {
+                        inboundDone = true;
+                        return null;
+                    }
+                    if (n == 0) {
+                        // Only a non-blocking socket returns nothing
+                        return WOULD_BLOCK;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encrypts bytes from {@code src} and writes the records. Must hold writeLock.
+     * @return the result of the last wrap
+     */
+    private SSLEngineResult wrap(ByteBuffer src) throws IOException {
+        while (true) {
+            SSLEngineResult result = engine.wrap(src, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+                continue;
+            }
+            netOut.flip();
+            while (netOut.hasRemaining()) {
+                // Non-blocking only during the handshake, whose few records fit the socket
+                // buffer unless the client stopped reading; waiting would hold up the parker
+                if (socket.write(netOut) == 0 && !socket.isBlocking()) {
+                    netOut.clear();
+                    throw new IOException("TLS client is not reading");
+                }
+            }
+            netOut.clear();
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED && src.hasRemaining()) {
+                throw new SSLException("TLS connection closed");
+            }
+            return result;
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int atLeast) {
+        ByteBuffer bigger = BufferPool.acquire(Math.max(atLeast, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        BufferPool.release(buffer);
+        return bigger;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!handshaken) {
+            handshake();
+        }
+        readLock.lock();
+        try {
+            while (true) {
+                ensureOpen();
+                if (appIn.position() > 0) {
+                    appIn.flip();
+                    int n = Math.min(appIn.remaining(), dst.remaining());
+                    ByteBuffer slice = appIn.slice(appIn.position(), n);
+                    dst.put(slice);
+                    appIn.position(appIn.position() + n);
+                    appIn.compact();
+                    return n;
+                }
+                if (inboundDone || !dst.hasRemaining()) {
+                    return inboundDone ? -1 : 0;
+                }
+                SSLEngineResult result = unwrap();
+                if (result == null) {
+                    return -1;
+                }
+                if (result == WOULD_BLOCK) {
+                    return 0;
+                }
+                // Post-handshake messages such as session tickets or key updates
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runTasks();
+                }
+                if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    writeLock.lock();
+                    try {
+                        wrap(EMPTY);
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!handshaken) {
+            handshake();
+        }
+        writeLock.lock();
+        try {
+            int written = 0;
+            while (src.hasRemaining()) {
+                ensureOpen();
+                SSLEngineResult result = wrap(src);
+                written += result.bytesConsumed();
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runTasks();
+                }
+            }
+            return written;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && socket.isOpen();
+    }
+
+    /**
+     * Sends close_notify when no write is in progress, then closes the socket. A writer
+     * blocked on a client that stopped reading is not waited for.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        if (handshaken && writeLock.tryLock()) {
+            try {
+                engine.closeOutbound();
+                wrap(EMPTY);
+            } catch (IOException e) {
+                // The client is gone; closing the socket is all that is left
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        closed = true;
+        socket.close();
+        // Blocked reads and writes fail once the socket is closed and let go of the buffers
+        readLock.lock();
+        writeLock.lock();
+        try {
+            BufferPool.release(netIn);
+            BufferPool.release(appIn);
+            BufferPool.release(netOut);
+            netIn = appIn = netOut = null;
+        } finally {
+            writeLock.unlock();
+            readLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * The server side of TLS: the key material loaded from a keystore and the session cache
+ * shared by every connection. Clients coming back within the session timeout resume their
+ * session, by session id or ticket, and skip the public key operations of a full
+ * handshake. Engines offer {@code h2} and {@code http/1.1} through ALPN.
+ *
+ * @author daniel.aldana-b
+ */
+final class TlsContext {
+    /** Protocols offered through ALPN, in order of preference */
+    static final String[] APPLICATION_PROTOCOLS = {"h2", "http/1.1"};
+
+    private static final LongAdder FULL_HANDSHAKES = new LongAdder();
+    private static final LongAdder RESUMED_HANDSHAKES = new LongAdder();
+    private static final LongAdder FAILED_HANDSHAKES = new LongAdder();
+
+    private final SSLContext context;
+
+    private TlsContext(SSLContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Loads the keystore named in the configuration.
+     * @param config the server configuration
+     * @return the context, or null if TLS is not configured
+     * @throws IOException if the keystore cannot be read or holds no usable key
+     */
+    static TlsContext load(ServerConfig config) throws IOException {
+        if (config.getTlsKeyStore() == null) {
+            return null;
+        }
+        char[] password = config.getTlsKeyStorePassword().toCharArray();
+        try (InputStream in = Files.newInputStream(Path.of(config.getTlsKeyStore()))) {
+            KeyStore keyStore = KeyStore.getInstance(config.getTlsKeyStoreType());
+            keyStore.load(in, password);
+            KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keys.init(keyStore, password);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keys.getKeyManagers(), null, null);
+            SSLSessionContext sessions = context.getServerSessionContext();
+            sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+            sessions.setSessionTimeout(config.getTlsSessionTimeoutSeconds());
+            return new TlsContext(context);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not load keystore " + config.getTlsKeyStore(), e);
+        }
+    }
+
+    /**
+     * Creates the engine of one accepted connection.
+     * @return a server-mode engine offering HTTP/2 and HTTP/1.1
+     */
+    SSLEngine newEngine() {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setApplicationProtocols(APPLICATION_PROTOCOLS);
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    /**
+     * Counts a completed handshake. A session created before the handshake started was
+     * taken from the cache or a ticket rather than negotiated from scratch.
+     * @param session       the negotiated session
+     * @param startedMillis when the handshake started
+     */
+    static void handshakeCompleted(SSLSession session, long startedMillis) {
+        if (session.getCreationTime() < startedMillis) {
+            RESUMED_HANDSHAKES.increment();
+        } else {
+            FULL_HANDSHAKES.increment();
+        }
+    }
+
+    static void handshakeFailed() {
+        FAILED_HANDSHAKES.increment();
+    }
+
+    /**
+     * Returns how many handshakes resumed an earlier session.
+     * @return the number of abbreviated handshakes
+     */
+    static long resumedHandshakes() {
+        return RESUMED_HANDSHAKES.sum();
+    }
+
+    /**
+     * Appends the handshake counters in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_tls_handshakes_total TLS handshakes by outcome\n");
+        out.append("# TYPE microspringboot_tls_handshakes_total counter\n");
+        out.append("microspringboot_tls_handshakes_total{result=\"full\"} ").append(FULL_HANDSHAKES.sum()).append('\n');
+        out.append("microspringboot_tls_handshakes_total{result=\"resumed\"} ").append(RESUMED_HANDSHAKES.sum()).append('\n');
+        out.append("microspringboot_tls_handshakes_total{result=\"failed\"} ").append(FAILED_HANDSHAKES.sum()).append('\n');
+    }
+}
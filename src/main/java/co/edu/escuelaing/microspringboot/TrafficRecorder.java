@@ -0,0 +1,329 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Captures the metadata of every request answered (start time, method, path, query,
+ * headers and sizes, status and duration) to a compact binary file that
+ * {@link TrafficReplay} drives back against a server. Bodies are not kept, and the
+ * values of {@code microspringboot.capture.redact} headers are blanked.
+ * <p>
+ * Request threads encode their entry and hand it to a bounded queue; a background
+ * thread appends the entries to the file. When the queue is full the entry is dropped
+ * and counted instead of waiting, like the {@link AccessLog}.
+ * <p>
+ * The file starts with {@link #MAGIC} and the epoch microsecond the capture started.
+ * Each entry follows as a varint length and its fields: the start in microseconds since
+ * the capture began, method, raw path, raw query, the header count and each name and
+ * value, request body bytes, status, response bytes and duration in microseconds.
+ * Numbers are unsigned varints and strings a varint length and UTF-8 bytes.
+ *
+ * @author daniel.aldana-b
+ */
+final class TrafficRecorder implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(TrafficRecorder.class.getName());
+    static final byte[] MAGIC = "MSBTRAF1".getBytes(StandardCharsets.US_ASCII);
+    private static final String DEFAULT_REDACT = "authorization,proxy-authorization,cookie";
+
+    private final Path file;
+    private final Set<String> redact;
+    private final BlockingQueue<byte[]> queue;
+    private final OutputStream out;
+    private final Thread writer;
+    private final long startMicros;
+    private final long startNanos;
+    // Entries queued and entries written, for flush()
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    /** One captured request */
+    record Entry(long startMicros, String method, String path, String query, Map<String, String> headers,
+            long requestBytes, int status, long responseBytes, long durationMicros) {
+    }
+
+    /**
+     * Starts a capture, replacing the file if it exists.
+     * @param file     where the entries are written
+     * @param redact   lower-case names of headers whose values are not kept
+     * @param capacity entries that may wait for the writer before new ones are dropped
+     * @throws IOException if the file cannot be created
+     */
+    TrafficRecorder(Path file, Set<String> redact, int capacity) throws IOException {
+        this.file = file;
+        this.redact = redact;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        this.startMicros = System.currentTimeMillis() * 1000;
+        this.startNanos = System.nanoTime();
+        out.write(MAGIC);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (startMicros >>> shift));
+        }
+        this.writer = new Thread(this::drainLoop, "traffic-capture-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Creates the recorder configured with {@code microspringboot.capture.*} system properties.
+     * @return the recorder, or null if {@code microspringboot.capture.file} is not set or
+     *         cannot be created
+     */
+    static TrafficRecorder fromSystemProperties() {
+        String file = System.getProperty("microspringboot.capture.file");
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        Set<String> redact = Set.of(Arrays.stream(System.getProperty("microspringboot.capture.redact", DEFAULT_REDACT)
+                .toLowerCase(Locale.ROOT).split(",")).map(String::trim).filter(s -> !s.isEmpty()).distinct()
+                .toArray(String[]::new));
+        try {
+            return new TrafficRecorder(Path.of(file), redact,
+                    Integer.getInteger("microspringboot.capture.bufferSize", 8192));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not start the traffic capture to " + file, e);
+            return null;
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Returns how many entries were discarded because the writer fell behind.
+     * @return the number of dropped entries
+     */
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Captures an answered request.
+     * @param request       the request
+     * @param status        the status sent
+     * @param responseBytes bytes written to the client
+     * @param durationNanos time spent serving the request
+     */
+    void record(HttpRequest request, int status, long responseBytes, long durationNanos) {
+        if (closed) {
+            return;
+        }
+        URI uri = request.getUri();
+        ResponseBuffer entry = new ResponseBuffer(256);
+        writeVarint(entry, Math.max(0, (System.nanoTime() - durationNanos - startNanos) / 1000));
+        writeString(entry, request.getMethod());
+        writeString(entry, uri.getRawPath());
+        writeString(entry, uri.getRawQuery());
+        Map<String, String> headers = request.getHeaders();
+        writeVarint(entry, headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            writeString(entry, header.getKey());
+            writeString(entry, redact.contains(header.getKey()) ? "" : header.getValue());
+        }
+        writeVarint(entry, Math.max(0, request.getContentLength()));
+        writeVarint(entry, status);
+        writeVarint(entry, responseBytes);
+        writeVarint(entry, durationNanos / 1000);
+        ResponseBuffer framed = new ResponseBuffer(entry.size() + 5);
+        writeVarint(framed, entry.size());
+        framed.write(entry.array(), 0, entry.size());
+        if (queue.offer(framed.toByteArray())) {
+            queued.incrementAndGet();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Waits until every entry queued before this call has reached the file.
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the capture caught up before the timeout
+     */
+    boolean flush(long timeout, TimeUnit unit) {
+        long target = queued.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.get() < target) {
+            if (System.nanoTime() - deadline > 0 || !writer.isAlive()) {
+                return false;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /** Stops capturing and closes the file once the queued entries are written. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        try (out) {
+            while (!closed || !queue.isEmpty()) {
+                byte[] entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                long count = 0;
+                while (entry != null) {
+                    out.write(entry);
+                    count++;
+                    entry = queue.poll();
+                }
+                if (count > 0) {
+                    out.flush();
+                    written.addAndGet(count);
+                }
+            }
+        } catch (IOException e) {
+            closed = true;
+            LOGGER.log(Level.WARNING, "Traffic capture to " + file + " stopped", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeVarint(ResponseBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(ResponseBuffer out, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads a capture file entry by entry. A last entry cut short, as left by a server
+     * that did not stop cleanly, ends the file.
+     */
+    static final class Reader implements Closeable {
+        private final InputStream in;
+        private final long startMicros;
+
+        /**
+         * Opens a capture file.
+         * @param file the capture
+         * @throws IOException if the file cannot be read or is not a capture
+         */
+        Reader(Path file) throws IOException {
+            in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+            byte[] magic = in.readNBytes(MAGIC.length);
+            byte[] start = in.readNBytes(8);
+            if (!Arrays.equals(magic, MAGIC) || start.length < 8) {
+                in.close();
+                throw new IOException("Not a traffic capture: " + file);
+            }
+            long micros = 0;
+            for (byte b : start) {
+                micros = (micros << 8) | (b & 0xFF);
+            }
+            startMicros = micros;
+        }
+
+        /**
+         * Gets when the capture started.
+         * @return microseconds since the epoch
+         */
+        long startMicros() {
+            return startMicros;
+        }
+
+        /**
+         * Reads the next entry.
+         * @return the entry, or null at the end of the capture
+         * @throws IOException if the file cannot be read or an entry is malformed
+         */
+        Entry next() throws IOException {
+            long length;
+            try {
+                length = readVarint(in);
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] bytes = in.readNBytes((int) length);
+            if (bytes.length < length) {
+                return null;
+            }
+            InputStream entry = new ByteArrayInputStream(bytes);
+            long start = readVarint(entry);
+            String method = readString(entry);
+            String path = readString(entry);
+            String query = readString(entry);
+            int count = (int) readVarint(entry);
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                headers.put(readString(entry), readString(entry));
+            }
+            return new Entry(start, method, path, query, headers, readVarint(entry), (int) readVarint(entry),
+                    readVarint(entry), readVarint(entry));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private static long readVarint(InputStream in) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private static String readString(InputStream in) throws IOException {
+            int length = (int) readVarint(in);
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException();
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a capture written by {@link TrafficRecorder} against a server, keeping the
+ * original spacing between requests or scaling it, and reports the latencies seen.
+ * Requests are sent when they are due whether or not earlier ones have been answered,
+ * and latency is measured from that due time, so a server falling behind shows up in the
+ * report instead of slowing the replay down. Only GET and HEAD requests are replayed
+ * unless {@code --all-methods} is given, since the capture has no bodies; other methods
+ * are then sent with a body of zeros of the captured size.
+ * <p>
+ * Usage: {@code TrafficReplay <capture> [--target=http://localhost:35000] [--rate=1.0]
+ * [--concurrency=256] [--all-methods]}. A rate of 2 replays twice as fast as captured.
+ *
+ * @author daniel.aldana-b
+ */
+public final class TrafficReplay {
+    // Headers the client sets itself or refuses to send, besides HTTP/2 pseudo-headers
+    private static final Set<String> SKIPPED_HEADERS = Set.of("host", "connection", "content-length", "expect",
+            "upgrade", "keep-alive", "transfer-encoding", "te", "trailer", "http2-settings", "proxy-connection");
+    // Largest placeholder body sent for a captured request
+    private static final int MAX_BODY = 16 * 1024 * 1024;
+
+    /** Outcome of a replay */
+    record Report(int requests, int skipped, long failed, Map<Integer, Long> statuses, long elapsedNanos,
+            long[] latencyNanos) {
+
+        /**
+         * Gets a latency percentile of the answered requests.
+         * @param percentile a value between 0 and 100
+         * @return the latency in nanoseconds, or 0 if nothing was answered
+         */
+        long percentileNanos(double percentile) {
+            if (latencyNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(latencyNanos.length * (percentile / 100.0));
+            return latencyNanos[Math.max(0, Math.min(latencyNanos.length, rank) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.ROOT, "requests=%d skipped=%d failed=%d seconds=%.3f rate=%.1f/s%n",
+                    requests, skipped, failed, seconds, seconds > 0 ? requests / seconds : 0));
+            out.append("statuses=").append(statuses).append(System.lineSeparator());
+            out.append(String.format(Locale.ROOT, "latency_ms p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f%n",
+                    percentileNanos(50) / 1e6, percentileNanos(90) / 1e6, percentileNanos(99) / 1e6,
+                    percentileNanos(99.9) / 1e6, percentileNanos(100) / 1e6));
+            return out.toString();
+        }
+    }
+
+    private TrafficReplay() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: TrafficReplay <capture> [--target=http://localhost:35000] [--rate=1.0]"
+                    + " [--concurrency=256] [--all-methods]");
+            System.exit(2);
+        }
+        URI target = URI.create("http://localhost:35000");
+        double rate = 1.0;
+        int concurrency = 256;
+        boolean allMethods = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--target=")) {
+                target = URI.create(arg.substring("--target=".length()));
+            } else if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(arg.substring("--rate=".length()));
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(arg.substring("--concurrency=".length()));
+            } else if ("--all-methods".equals(arg)) {
+                allMethods = true;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        System.out.print(replay(Path.of(args[0]), target, rate, concurrency, allMethods));
+    }
+
+    /**
+     * Reads a capture and replays it.
+     * @param capture     the capture file
+     * @param target      scheme, host and port of the server
+     * @param rate        speed-up over the captured spacing; 1 keeps it
+     * @param concurrency requests that may be in flight at once
+     * @param allMethods  whether requests other than GET and HEAD are replayed
+     * @return the report
+     * @throws IOException if the capture cannot be read
+     * @throws InterruptedException if interrupted while replaying
+     */
+    static Report replay(Path capture, URI target, double rate, int concurrency, boolean allMethods)
+            throws IOException, InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+        List<TrafficRecorder.Entry> entries = new ArrayList<>();
+        int skipped = 0;
+        try (TrafficRecorder.Reader reader = new TrafficRecorder.Reader(capture)) {
+            for (TrafficRecorder.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                if (allMethods || "GET".equals(entry.method()) || "HEAD".equals(entry.method())) {
+                    entries.add(entry);
+                } else {
+                    skipped++;
+                }
+            }
+        }
+        // Entries are written as requests finish; replay them in the order they started
+        entries.sort(Comparator.comparingLong(TrafficRecorder.Entry::startMicros));
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long[] latencies = new long[entries.size()];
+        Arrays.fill(latencies, -1);
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        LongAdder failed = new LongAdder();
+        long base = entries.isEmpty() ? 0 : entries.get(0).startMicros();
+        long begin = System.nanoTime();
+        for (int i = 0; i < entries.size(); i++) {
+            TrafficRecorder.Entry entry = entries.get(i);
+            long due = begin + (long) ((entry.startMicros() - base) * 1000 / rate);
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            inFlight.acquire();
+            int index = i;
+            client.sendAsync(request(target, entry), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        if (failure == null) {
+                            latencies[index] = System.nanoTime() - due;
+                            statuses.computeIfAbsent(response.statusCode(), s -> new LongAdder()).increment();
+                        } else {
+                            failed.increment();
+                        }
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(concurrency);
+        long elapsed = System.nanoTime() - begin;
+        Map<Integer, Long> counts = new TreeMap<>();
+        statuses.forEach((status, count) -> counts.put(status, count.sum()));
+        return new Report(entries.size(), skipped, failed.sum(), counts, elapsed,
+                Arrays.stream(latencies).filter(n -> n >= 0).sorted().toArray());
+    }
+
+    /**
+     * Rebuilds a captured request for the target server.
+     */
+    private static HttpRequest request(URI target, TrafficRecorder.Entry entry) {
+        String query = entry.query().isEmpty() ? "" : "?" + entry.query();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(target.resolve(entry.path() + query))
+                .timeout(Duration.ofSeconds(60));
+        for (Map.Entry<String, String> header : entry.headers().entrySet()) {
+            String name = header.getKey();
+            if (!SKIPPED_HEADERS.contains(name) && !name.startsWith(":") && !header.getValue().isEmpty()) {
+                builder.header(name, header.getValue());
+            }
+        }
+        HttpRequest.BodyPublisher body = entry.requestBytes() > 0
+                ? HttpRequest.BodyPublishers.ofByteArray(new byte[(int) Math.min(entry.requestBytes(), MAX_BODY)])
+                : HttpRequest.BodyPublishers.noBody();
+        return builder.method(entry.method(), body).build();
+    }
+}
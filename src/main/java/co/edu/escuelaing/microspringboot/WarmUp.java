@@ -0,0 +1,96 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exercises the server with synthetic requests before it starts accepting connections,
+ * so that the first clients after a scale-out do not pay for class loading, interpreted
+ * request parsing or the first reflective calls of the controllers, which only get a
+ * generated accessor after a few invocations. Each GET route and the static index page
+ * is parsed from raw bytes and sent down the filter chain to a buffer, the same way a
+ * connection would; the responses go nowhere and nothing reaches the access log.
+ * <p>
+ * Routes are skipped once they answer with a server error, and the whole phase stops
+ * at {@code microspringboot.warmup.maxMillis}. The first (cold) and the last (warm)
+ * latency of each path are logged, as a measure of what the warm-up saved.
+ *
+ * @author daniel.aldana-b
+ */
+final class WarmUp {
+    private static final Logger LOGGER = Logger.getLogger(WarmUp.class.getName());
+    static final boolean ENABLED = Boolean.getBoolean("microspringboot.warmup");
+    // Exit once warm, for the training run that records a class data sharing archive
+    static final boolean EXIT = Boolean.getBoolean("microspringboot.warmup.exit");
+    static final int ITERATIONS = Integer.getInteger("microspringboot.warmup.iterations", 500);
+    static final long MAX_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("microspringboot.warmup.maxMillis", 5000));
+
+    /** Latencies of one warmed path */
+    record Result(String path, int status, int requests, long firstNanos, long lastNanos) {
+    }
+
+    private WarmUp() {
+    }
+
+    /**
+     * Sends synthetic requests to every GET route and to the static index page.
+     * @param iterations requests per path
+     * @param maxNanos   time after which the remaining requests are skipped
+     * @return the latencies of each path warmed
+     */
+    static List<Result> run(int iterations, long maxNanos) {
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, Method> route : HttpServer.services.entrySet()) {
+            if (route.getValue().getReturnType() != EventStream.class) {
+                paths.add(route.getKey());
+            }
+        }
+        if (HttpServer.staticAssets().get("/") != null) {
+            paths.add("/");
+        }
+        long start = System.nanoTime();
+        long deadline = start + maxNanos;
+        ResponseBuffer sink = new ResponseBuffer(8192);
+        PrintWriter out = new PrintWriter(sink);
+        List<Result> results = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            byte[] raw = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nUser-Agent: microspringboot-warmup\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            int status = 0;
+            int requests = 0;
+            long first = 0;
+            long last = 0;
+            while (requests < iterations && (requests == 0 || System.nanoTime() - deadline < 0) && status < 500) {
+                long begin = System.nanoTime();
+                try {
+                    sink.reset();
+                    HttpRequest request = HttpRequest.read(new BufferedInputStream(new ByteArrayInputStream(raw)), sink);
+                    status = HttpServer.handleRequest(request, out, sink);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Warm-up request to " + path + " failed", e);
+                    status = 500;
+                }
+                last = System.nanoTime() - begin;
+                if (requests++ == 0) {
+                    first = last;
+                }
+            }
+            results.add(new Result(path, status, requests, first, last));
+            AccessLog.info("warmup.route", "path=" + path + " status=" + status + " requests=" + requests
+                    + " firstMicros=" + first / 1000 + " warmMicros=" + last / 1000);
+        }
+        AccessLog.info("warmup.done", "paths=" + results.size()
+                + " millis=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return results;
+    }
+}
@@ -0,0 +1,139 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Encoding of RFC 6455 frames. Server frames are never masked, so an encoded frame is
+ * the same for every session and can be shared when broadcasting. Client payloads are
+ * unmasked in place, a word at a time, in the buffer they were read into.
+ *
+ * @author daniel.aldana-b
+ */
+final class WebSocketFrames {
+    static final int CONTINUATION = 0x0;
+    static final int TEXT = 0x1;
+    static final int BINARY = 0x2;
+    static final int CLOSE = 0x8;
+    static final int PING = 0x9;
+    static final int PONG = 0xA;
+
+    static final int NORMAL_CLOSURE = 1000;
+    static final int GOING_AWAY = 1001;
+    static final int PROTOCOL_ERROR = 1002;
+    static final int NO_STATUS = 1005;
+    static final int ABNORMAL_CLOSURE = 1006;
+    static final int INVALID_PAYLOAD = 1007;
+    static final int MESSAGE_TOO_BIG = 1009;
+
+    /** Largest payload of a control frame */
+    static final int MAX_CONTROL_PAYLOAD = 125;
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private WebSocketFrames() {
+    }
+
+    /**
+     * Computes the {@code Sec-WebSocket-Accept} value answering a handshake key.
+     * @param key the {@code Sec-WebSocket-Key} sent by the client
+     * @return the base64 SHA-1 of the key and the protocol GUID
+     */
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(
+                    sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * Tells whether a handshake key is the base64 encoding of 16 bytes.
+     * @param key the {@code Sec-WebSocket-Key} header, possibly null
+     * @return true if the key is well formed
+     */
+    static boolean isValidKey(String key) {
+        if (key == null || key.length() != 24) {
+            return false;
+        }
+        try {
+            return Base64.getDecoder().decode(key).length == 16;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encodes a final, unmasked frame.
+     * @param opcode  the frame type
+     * @param payload the payload, from its position to its limit; not consumed
+     * @return a read-only buffer holding the whole frame
+     */
+    static ByteBuffer encode(int opcode, ByteBuffer payload) {
+        int length = payload.remaining();
+        int header = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(header + length);
+        frame.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            frame.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            frame.put((byte) 126).putShort((short) length);
+        } else {
+            frame.put((byte) 127).putLong(length);
+        }
+        frame.put(payload.duplicate());
+        return frame.flip().asReadOnlyBuffer();
+    }
+
+    static ByteBuffer encode(int opcode, byte[] payload) {
+        return encode(opcode, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Encodes a close frame. The reason is cut so the payload fits a control frame.
+     * @param code   the close code, or {@link #NO_STATUS} for an empty payload
+     * @param reason the reason, possibly empty
+     * @return the frame
+     */
+    static ByteBuffer closeFrame(int code, String reason) {
+        if (code == NO_STATUS) {
+            return encode(CLOSE, new byte[0]);
+        }
+        byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, MAX_CONTROL_PAYLOAD - 2);
+        // Do not cut a multi-byte character in half
+        while (length > 0 && length < text.length && (text[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(2 + length);
+        payload.putShort((short) code).put(text, 0, length).flip();
+        return encode(CLOSE, payload);
+    }
+
+    /**
+     * XORs a payload with the client's masking key, in place. Eight bytes are unmasked
+     * per step; only the tail is done byte by byte.
+     *
+     * @param buffer the buffer holding the payload, in big-endian order
+     * @param offset where the payload starts
+     * @param length the payload length
+     * @param mask   the masking key as a big-endian int
+     */
+    static void unmask(ByteBuffer buffer, int offset, int length, int mask) {
+        long wide = (mask & 0xFFFFFFFFL) << 32 | (mask & 0xFFFFFFFFL);
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            buffer.putLong(i, buffer.getLong(i) ^ wide);
+        }
+        for (; i < end; i++) {
+            int shift = 24 - 8 * ((i - offset) & 3);
+            buffer.put(i, (byte) (buffer.get(i) ^ (mask >>> shift)));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the events of the WebSocket sessions of a {@link WebSocketMapping} path.
+ * The calls for one session are made one at a time and in order, but calls for
+ * different sessions run concurrently, so shared state must be thread-safe.
+ *
+ * @author daniel.aldana-b
+ */
+public interface WebSocketHandler {
+
+    /**
+     * Called once the handshake is done, before any message of the session.
+     * @param session the new session
+     */
+    default void onOpen(WebSocketSession session) {
+    }
+
+    /**
+     * Called for each text message, after its fragments have been joined.
+     * @param session the session
+     * @param message the message
+     */
+    default void onText(WebSocketSession session, String message) {
+    }
+
+    /**
+     * Called for each binary message, after its fragments have been joined.
+     * @param session the session
+     * @param message a buffer owned by the handler
+     */
+    default void onBinary(WebSocketSession session, ByteBuffer message) {
+    }
+
+    /**
+     * Called once when the session ends, whoever closed it.
+     * @param session the session
+     * @param code    the close code, 1006 if the connection was lost without a close frame
+     * @param reason  the close reason, possibly empty
+     */
+    default void onClose(WebSocketSession session, int code, String reason) {
+    }
+}
@@ -0,0 +1,22 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a {@link WebSocketHandler} to a path. Clients open a WebSocket by sending a GET
+ * with {@code Upgrade: websocket} to that path, on the same port as every other route.
+ * The class is found by the {@link ComponentScanner} and instantiated once, through its
+ * no-argument constructor; that instance handles every session of the path.
+ *
+ * @author daniel.aldana-b
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface WebSocketMapping {
+    String value();
+    // Largest message accepted, after joining its fragments; larger ones close the session with 1009
+    int maxMessageBytes() default 1024 * 1024;
+}
@@ -0,0 +1,122 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads every plain-TCP {@link WebSocketSession} from one selector thread, writes their
+ * queued frames when the sockets become writable, and runs the keepalive checks of all
+ * sessions once a second. Sessions over TLS cannot be selected; each is read by a thread
+ * of its own.
+ *
+ * @author daniel.aldana-b
+ */
+final class WebSocketReactor implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(WebSocketReactor.class.getName());
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+    private static final ExecutorService TLS_READERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ws-tls");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile WebSocketReactor shared;
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private long lastCheck = System.nanoTime();
+
+    private WebSocketReactor() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Gets the reactor, starting its thread on first use.
+     * @return the reactor shared by all sessions
+     */
+    static WebSocketReactor shared() {
+        WebSocketReactor reactor = shared;
+        if (reactor == null) {
+            synchronized (WebSocketReactor.class) {
+                reactor = shared;
+                if (reactor == null) {
+                    try {
+                        reactor = new WebSocketReactor();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not open the WebSocket selector", e);
+                    }
+                    Thread thread = new Thread(reactor, "ws-reactor");
+                    thread.setDaemon(true);
+                    thread.start();
+                    shared = reactor;
+                }
+            }
+        }
+        return reactor;
+    }
+
+    /**
+     * Starts reading a session whose handshake has been sent.
+     * @param session the new session
+     */
+    void register(WebSocketSession session) {
+        if (session.selectable == null) {
+            TLS_READERS.execute(session::readBlocking);
+            return;
+        }
+        tasks.add(() -> {
+            try {
+                session.selectable.configureBlocking(false);
+                session.key = session.selectable.register(selector, SelectionKey.OP_READ, session);
+                session.opened();
+            } catch (IOException e) {
+                session.abort();
+            }
+        });
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select(CHECK_INTERVAL_MILLIS);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    WebSocketSession session = (WebSocketSession) key.attachment();
+                    try {
+                        if (key.isReadable() && !session.readAvailable()) {
+                            session.abort();
+                            continue;
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            session.flush();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        session.abort();
+                    }
+                }
+                selector.selectedKeys().clear();
+                long now = System.nanoTime();
+                if (now - lastCheck >= TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL_MILLIS)) {
+                    lastCheck = now;
+                    for (WebSocketSession session : WebSocketSession.OPEN) {
+                        session.keepAlive(now);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "WebSocket reactor failed", e);
+            }
+        }
+    }
+}
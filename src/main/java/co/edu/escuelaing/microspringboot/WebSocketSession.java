@@ -0,0 +1,736 @@
+package co.edu.escuelaing.microspringboot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One open WebSocket (RFC 6455), created when a request to a {@link WebSocketMapping}
+ * path is upgraded. Messages are sent with {@link #sendText(String)} and
+ * {@link #sendBinary(ByteBuffer)} from any thread, and {@link #broadcast(Collection, String)}
+ * encodes a message once for many sessions.
+ *
+ * <p>On plain TCP the connection is non-blocking and read by the {@link WebSocketReactor}
+ * selector thread: frames are parsed and unmasked in place in the read buffer, and the
+ * handler is called on a small shared pool, one call at a time per session. Sending never
+ * blocks; what the socket does not take waits in the session's backlog, and a session more
+ * than {@code microspringboot.ws.maxBacklogBytes} behind is dropped. Over TLS a thread
+ * reads the session and calls the handler itself, and sending blocks.
+ *
+ * <p>A session that sends nothing for {@code microspringboot.ws.pingMillis} is pinged, and
+ * closed if it stays silent for as long again.
+ *
+ * @author daniel.aldana-b
+ */
+public final class WebSocketSession {
+    private static final Logger LOGGER = Logger.getLogger(WebSocketSession.class.getName());
+    /** Silence after which a session is pinged; 0 disables keepalive */
+    static final long PING_MILLIS = Long.getLong("microspringboot.ws.pingMillis", 30_000);
+    /** Bytes a session may fall behind in sending before it is dropped */
+    static final long MAX_BACKLOG_BYTES = Long.getLong("microspringboot.ws.maxBacklogBytes", 4 * 1024 * 1024);
+    // How long to wait for the client's close frame after sending ours
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int INITIAL_BUFFER = 8 * 1024;
+    // Messages waiting for the handler before the session stops being read
+    private static final int MAX_PENDING_CALLS = 32;
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final LongAdder RECEIVED = new LongAdder();
+    private static final LongAdder SENT = new LongAdder();
+    static final Set<WebSocketSession> OPEN = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService HANDLERS = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "ws-handler");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final String id = Long.toString(IDS.incrementAndGet());
+    private final HttpRequest request;
+    private final WebSocketHandler handler;
+    private final int maxMessageBytes;
+    private final Connection connection;
+    private final ByteChannel channel;
+    // The channel when it can be selected; null over TLS
+    final SocketChannel selectable;
+    volatile SelectionKey key;
+
+    // Read side, only touched by the thread reading the session
+    private ByteBuffer in;
+    private int messageOpcode;
+    private ByteBuffer message;
+    volatile long lastReceived = System.nanoTime();
+    volatile boolean pingSent;
+
+    // Write side, guarded by outbox
+    private final ArrayDeque<ByteBuffer> outbox = new ArrayDeque<>();
+    private long outboxBytes;
+    private boolean closeAfterFlush;
+    private final AtomicBoolean closeSent = new AtomicBoolean();
+    private volatile long closeSentAt;
+
+    // Handler calls in order; pending counts those not finished yet
+    private final ConcurrentLinkedQueue<Runnable> calls = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean paused;
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private WebSocketSession(HttpRequest request, WebSocketHandler handler, int maxMessageBytes,
+            Connection connection, byte[] readAhead) {
+        this.request = request;
+        this.handler = handler;
+        this.maxMessageBytes = maxMessageBytes;
+        this.connection = connection;
+        this.channel = connection.getChannel();
+        this.selectable = connection.isSecure() ? null : connection.socketChannel();
+        this.in = ByteBuffer.allocate(Math.max(INITIAL_BUFFER, readAhead.length));
+        in.put(readAhead);
+    }
+
+    /**
+     * Answers a request to a WebSocket path: completes the handshake and starts the
+     * session, or refuses requests that are not valid upgrades.
+     *
+     * @param request the request
+     * @param handler the handler mapped to the path
+     * @param out     the connection output
+     * @return the status sent, 101 if the session was opened
+     * @throws IOException if the response cannot be written
+     */
+    static int accept(HttpRequest request, WebSocketHandler handler, OutputStream out) throws IOException {
+        Connection connection = request.getConnection();
+        String key = request.getHeader("sec-websocket-key");
+        byte[] refusal = null;
+        if (connection == null || !isUpgrade(request) || !"13".equals(request.getHeader("sec-websocket-version"))) {
+            refusal = HttpResponse.serialize(426, "Upgrade Required", HttpServer.TEXT_CONTENT_TYPE,
+                    Map.of("upgrade", "websocket", "sec-websocket-version", "13"), text("WebSocket endpoint"));
+        } else if (!WebSocketFrames.isValidKey(key)) {
+            refusal = HttpResponse.serialize(400, "Bad Request", HttpServer.TEXT_CONTENT_TYPE, Map.of(),
+                    text("Invalid Sec-WebSocket-Key"));
+        }
+        if (refusal != null) {
+            out.write(refusal);
+            out.flush();
+            return HttpServer.statusCode(refusal);
+        }
+        out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                + "upgrade: websocket\r\n"
+                + "connection: Upgrade\r\n"
+                + "sec-websocket-accept: " + WebSocketFrames.acceptKey(key) + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        connection.markUpgraded();
+        WebSocketMapping mapping = handler.getClass().getAnnotation(WebSocketMapping.class);
+        int maxMessageBytes = mapping != null ? mapping.maxMessageBytes() : 1024 * 1024;
+        WebSocketReactor.shared().register(
+                new WebSocketSession(request, handler, maxMessageBytes, connection, connection.takeBuffered()));
+        return 101;
+    }
+
+    private static ResponseBuffer text(String message) {
+        ResponseBuffer body = ResponseBuffer.threadLocal();
+        body.writeUtf8(message);
+        return body;
+    }
+
+    /**
+     * Tells whether a request asks to open a WebSocket.
+     * @param request the request
+     * @return true for an HTTP/1.1 GET with {@code Upgrade: websocket}
+     */
+    static boolean isUpgrade(HttpRequest request) {
+        return "GET".equals(request.getMethod()) && "HTTP/1.1".equals(request.getVersion())
+                && hasToken(request.getHeader("upgrade"), "websocket")
+                && hasToken(request.getHeader("connection"), "upgrade");
+    }
+
+    private static boolean hasToken(String header, String token) {
+        if (header == null) {
+            return false;
+        }
+        for (String part : header.split(",")) {
+            if (part.trim().toLowerCase(Locale.ROOT).equals(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the identifier of the session, unique within the process.
+     * @return the session id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the path the session was opened on.
+     * @return the request path
+     */
+    public String getPath() {
+        return request.getPath();
+    }
+
+    /**
+     * Gets the upgrade request, e.g. to read its query parameters.
+     * @return the request that opened the session
+     */
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Tells whether messages can still be sent.
+     * @return false once either side started closing the session
+     */
+    public boolean isOpen() {
+        return !closeSent.get() && !ended.get();
+    }
+
+    /**
+     * Sends a text message.
+     * @param text the message
+     * @throws IOException if the session is closed or has fallen too far behind
+     */
+    public void sendText(String text) throws IOException {
+        send(WebSocketFrames.encode(WebSocketFrames.TEXT, text.getBytes(StandardCharsets.UTF_8)));
+        SENT.increment();
+    }
+
+    /**
+     * Sends a binary message.
+     * @param data the message, from its position to its limit; not consumed
+     * @throws IOException if the session is closed or has fallen too far behind
+     */
+    public void sendBinary(ByteBuffer data) throws IOException {
+        send(WebSocketFrames.encode(WebSocketFrames.BINARY, data));
+        SENT.increment();
+    }
+
+    /**
+     * Sends a text message to many sessions. The frame is encoded once and the same bytes
+     * are written to every session; sessions that are closed or too far behind are skipped.
+     *
+     * @param sessions the recipients
+     * @param text     the message
+     * @return how many sessions the message was sent to
+     */
+    public static int broadcast(Collection<WebSocketSession> sessions, String text) {
+        ByteBuffer frame = WebSocketFrames.encode(WebSocketFrames.TEXT, text.getBytes(StandardCharsets.UTF_8));
+        int sent = 0;
+        for (WebSocketSession session : sessions) {
+            try {
+                session.send(frame);
+                sent++;
+            } catch (IOException e) {
+                // Closed or dropped; its handler hears about it through onClose
+            }
+        }
+        SENT.add(sent);
+        return sent;
+    }
+
+    /**
+     * Starts the closing handshake with a normal closure.
+     */
+    public void close() {
+        close(WebSocketFrames.NORMAL_CLOSURE, "");
+    }
+
+    /**
+     * Starts the closing handshake. The connection is closed once the client answers
+     * with its own close frame, or after a few seconds.
+     * @param code   1000, or an application code between 3000 and 4999
+     * @param reason a short reason, cut to fit a control frame
+     */
+    public void close(int code, String reason) {
+        if (code != WebSocketFrames.NORMAL_CLOSURE && code != WebSocketFrames.GOING_AWAY
+                && (code < 3000 || code > 4999)) {
+            throw new IllegalArgumentException("Invalid close code " + code);
+        }
+        sendClose(code, reason);
+    }
+
+    /**
+     * Closes every open session, e.g. when the server stops.
+     */
+    static void closeAll() {
+        for (WebSocketSession session : OPEN) {
+            session.sendClose(WebSocketFrames.GOING_AWAY, "Server shutting down");
+        }
+    }
+
+    private void sendClose(int code, String reason) {
+        if (!closeSent.compareAndSet(false, true)) {
+            return;
+        }
+        closeSentAt = System.nanoTime();
+        try {
+            write(WebSocketFrames.closeFrame(code, reason));
+        } catch (IOException e) {
+            abort();
+        }
+    }
+
+    private void send(ByteBuffer frame) throws IOException {
+        if (!isOpen()) {
+            throw new IOException("WebSocket session " + id + " is closed");
+        }
+        write(frame);
+    }
+
+    /**
+     * Writes a frame, or queues what the socket does not take at once.
+     * @param frame an encoded frame, possibly shared with other sessions
+     */
+    private void write(ByteBuffer frame) throws IOException {
+        ByteBuffer data = frame.duplicate();
+        boolean overflow;
+        synchronized (outbox) {
+            if (selectable == null) {
+                // TLS: a blocking write, one frame at a time
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                return;
+            }
+            if (outbox.isEmpty()) {
+                selectable.write(data);
+                if (!data.hasRemaining()) {
+                    return;
+                }
+            }
+            outbox.add(data);
+            outboxBytes += data.remaining();
+            overflow = outboxBytes > MAX_BACKLOG_BYTES;
+            if (!overflow) {
+                SelectionKey selection = key;
+                selection.interestOpsOr(SelectionKey.OP_WRITE);
+                selection.selector().wakeup();
+                return;
+            }
+            outbox.clear();
+        }
+        abort();
+        throw new IOException("WebSocket session " + id + " fell too far behind");
+    }
+
+    /**
+     * Writes queued frames when the selector reports the socket writable.
+     */
+    void flush() throws IOException {
+        synchronized (outbox) {
+            ByteBuffer next;
+            while ((next = outbox.peek()) != null) {
+                outboxBytes -= selectable.write(next);
+                if (next.hasRemaining()) {
+                    return;
+                }
+                outbox.poll();
+            }
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            if (closeAfterFlush) {
+                connection.closeQuietly();
+            }
+        }
+    }
+
+    /** Closes the connection once everything queued has been written */
+    private void closeAfterFlush() {
+        synchronized (outbox) {
+            if (!outbox.isEmpty()) {
+                closeAfterFlush = true;
+                return;
+            }
+        }
+        connection.closeQuietly();
+    }
+
+    /**
+     * Drops the connection without a closing handshake.
+     */
+    void abort() {
+        connection.closeQuietly();
+        // Over TLS the reading thread fails on the closed connection and ends the session itself
+        if (selectable != null) {
+            end(WebSocketFrames.ABNORMAL_CLOSURE, "");
+        }
+    }
+
+    private void end(int code, String reason) {
+        if (ended.compareAndSet(false, true)) {
+            OPEN.remove(this);
+            call(() -> handler.onClose(this, code, reason));
+        }
+    }
+
+    /**
+     * Starts the session on the thread that will read it: announces it to the handler and
+     * parses whatever arrived with the handshake.
+     */
+    void opened() throws IOException {
+        OPEN.add(this);
+        call(() -> handler.onOpen(this));
+        parse();
+    }
+
+    /**
+     * Reads what the non-blocking socket has and handles the complete frames.
+     * @return false if the client closed the connection
+     */
+    boolean readAvailable() throws IOException {
+        // A bounded number of reads, so one busy session cannot starve the others
+        for (int i = 0; i < 4; i++) {
+            int n = channel.read(in);
+            if (n < 0) {
+                return false;
+            }
+            if (n == 0) {
+                return true;
+            }
+            received();
+            if (!parse()) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a TLS session until it ends, on a thread of its own.
+     */
+    void readBlocking() {
+        try {
+            opened();
+            while (!ended.get() && channel.read(in) >= 0) {
+                received();
+                if (!parse()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The connection was lost or closed
+        } finally {
+            connection.closeQuietly();
+            end(WebSocketFrames.ABNORMAL_CLOSURE, "");
+        }
+    }
+
+    private void received() {
+        lastReceived = System.nanoTime();
+        pingSent = false;
+    }
+
+    /**
+     * Handles every complete frame in the read buffer, unmasking payloads where they are.
+     * @return false once the session stopped reading, after a close frame or an error
+     */
+    private boolean parse() throws IOException {
+        int needed = 0;
+        in.flip();
+        try {
+            while (!ended.get()) {
+                int start = in.position();
+                int available = in.remaining();
+                if (available < 2) {
+                    break;
+                }
+                int b0 = in.get(start) & 0xFF;
+                int b1 = in.get(start + 1) & 0xFF;
+                boolean fin = (b0 & 0x80) != 0;
+                int opcode = b0 & 0x0F;
+                if ((b0 & 0x70) != 0) {
+                    throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Reserved bits set");
+                }
+                if ((b1 & 0x80) == 0) {
+                    throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Client frames must be masked");
+                }
+                long length = b1 & 0x7F;
+                int header = 2;
+                if (length == 126) {
+                    if (available < 4) {
+                        break;
+                    }
+                    length = in.getShort(start + 2) & 0xFFFF;
+                    header = 4;
+                } else if (length == 127) {
+                    if (available < 10) {
+                        break;
+                    }
+                    length = in.getLong(start + 2);
+                    header = 10;
+                }
+                if (opcode >= WebSocketFrames.CLOSE) {
+                    if (!fin || length > WebSocketFrames.MAX_CONTROL_PAYLOAD) {
+                        throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Invalid control frame");
+                    }
+                } else {
+                    long total = length + (opcode == WebSocketFrames.CONTINUATION && message != null
+                            ? message.position() : 0);
+                    if (length < 0 || total > maxMessageBytes) {
+                        throw new ProtocolError(WebSocketFrames.MESSAGE_TOO_BIG, "Message too big");
+                    }
+                }
+                int frameSize = header + 4 + (int) length;
+                if (available < frameSize) {
+                    needed = frameSize;
+                    break;
+                }
+                int mask = in.getInt(start + header);
+                int payload = start + header + 4;
+                WebSocketFrames.unmask(in, payload, (int) length, mask);
+                in.position(start + frameSize);
+                if (!frame(fin, opcode, in.slice(payload, (int) length))) {
+                    return false;
+                }
+            }
+        } catch (ProtocolError e) {
+            sendClose(e.code, e.getMessage());
+            closeAfterFlush();
+            end(e.code, e.getMessage());
+            return false;
+        } finally {
+            in.compact();
+        }
+        if (needed > in.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+        return true;
+    }
+
+    /**
+     * Handles one frame.
+     * @param payload a view of the unmasked payload, valid until the read buffer is reused
+     * @return false if the session stopped reading
+     */
+    private boolean frame(boolean fin, int opcode, ByteBuffer payload) throws IOException {
+        switch (opcode) {
+            case WebSocketFrames.TEXT, WebSocketFrames.BINARY -> {
+                if (messageOpcode != 0) {
+                    throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Expected a continuation frame");
+                }
+                if (fin) {
+                    deliver(opcode, payload, false);
+                } else {
+                    messageOpcode = opcode;
+                    message = ByteBuffer.allocate(Math.min(maxMessageBytes, Math.max(INITIAL_BUFFER,
+                            payload.remaining() * 2)));
+                    message.put(payload);
+                }
+            }
+            case WebSocketFrames.CONTINUATION -> {
+                if (messageOpcode == 0) {
+                    throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Unexpected continuation frame");
+                }
+                if (message.remaining() < payload.remaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.min(maxMessageBytes,
+                            Math.max(message.capacity() * 2, message.position() + payload.remaining())));
+                    message.flip();
+                    message = bigger.put(message);
+                }
+                message.put(payload);
+                if (fin) {
+                    ByteBuffer complete = message.flip();
+                    int type = messageOpcode;
+                    message = null;
+                    messageOpcode = 0;
+                    deliver(type, complete, true);
+                }
+            }
+            case WebSocketFrames.PING -> {
+                if (!closeSent.get()) {
+                    write(WebSocketFrames.encode(WebSocketFrames.PONG, payload));
+                }
+            }
+            case WebSocketFrames.PONG -> pingSent = false;
+            case WebSocketFrames.CLOSE -> {
+                closeReceived(payload);
+                return false;
+            }
+            default -> throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Unknown opcode " + opcode);
+        }
+        return true;
+    }
+
+    /**
+     * Hands a complete message to the handler.
+     * @param assembled true if the data was joined from fragments into a buffer of its own,
+     *                  false if it is a view of the read buffer
+     */
+    private void deliver(int opcode, ByteBuffer data, boolean assembled) throws ProtocolError {
+        RECEIVED.increment();
+        if (opcode == WebSocketFrames.TEXT) {
+            String text = decode(data);
+            call(() -> handler.onText(this, text));
+        } else {
+            // The read buffer is reused, so the handler gets its own copy of a single frame
+            ByteBuffer owned = assembled ? data : ByteBuffer.allocate(data.remaining()).put(data).flip();
+            call(() -> handler.onBinary(this, owned));
+        }
+    }
+
+    private void closeReceived(ByteBuffer payload) throws ProtocolError {
+        int code = WebSocketFrames.NO_STATUS;
+        String reason = "";
+        if (payload.remaining() == 1) {
+            throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Invalid close frame");
+        }
+        if (payload.remaining() >= 2) {
+            code = payload.getShort() & 0xFFFF;
+            if (!isValidCloseCode(code)) {
+                throw new ProtocolError(WebSocketFrames.PROTOCOL_ERROR, "Invalid close code " + code);
+            }
+            reason = decode(payload);
+        }
+        // Echo the close unless this side started the handshake
+        sendClose(code, "");
+        closeAfterFlush();
+        end(code, reason);
+    }
+
+    private static boolean isValidCloseCode(int code) {
+        return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1011) || (code >= 3000 && code <= 4999);
+    }
+
+    private static String decode(ByteBuffer data) throws ProtocolError {
+        try {
+            CharBuffer text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(data);
+            return text.toString();
+        } catch (CharacterCodingException e) {
+            throw new ProtocolError(WebSocketFrames.INVALID_PAYLOAD, "Invalid UTF-8");
+        }
+    }
+
+    /**
+     * Runs a handler call after the previous ones of this session. Sessions read by the
+     * selector are handed to the handler pool; a TLS session's reader makes its calls itself.
+     */
+    private void call(Runnable call) {
+        if (selectable == null) {
+            run(call);
+            return;
+        }
+        calls.add(call);
+        if (pending.getAndIncrement() == 0) {
+            HANDLERS.execute(this::runCalls);
+        }
+        SelectionKey selection = key;
+        if (pending.get() > MAX_PENDING_CALLS && !paused && selection != null) {
+            // The handler is behind: stop reading until it catches up
+            paused = true;
+            selection.interestOpsAnd(~SelectionKey.OP_READ);
+        }
+    }
+
+    private void runCalls() {
+        do {
+            run(calls.poll());
+            if (paused && pending.get() <= MAX_PENDING_CALLS / 2) {
+                paused = false;
+                SelectionKey selection = key;
+                if (selection.isValid()) {
+                    selection.interestOpsOr(SelectionKey.OP_READ);
+                    selection.selector().wakeup();
+                }
+            }
+        } while (pending.decrementAndGet() > 0);
+    }
+
+    private void run(Runnable call) {
+        try {
+            call.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "WebSocket handler failed on " + getPath(), e);
+        }
+    }
+
+    /**
+     * Pings a silent session and drops one that did not answer, or that did not finish
+     * the closing handshake in time. Called periodically by the reactor.
+     * @param now the current {@link System#nanoTime()}
+     */
+    void keepAlive(long now) {
+        if (closeSent.get()) {
+            if (now - closeSentAt > CLOSE_TIMEOUT_NANOS) {
+                abort();
+            }
+            return;
+        }
+        if (PING_MILLIS <= 0) {
+            return;
+        }
+        long idle = now - lastReceived;
+        long ping = TimeUnit.MILLISECONDS.toNanos(PING_MILLIS);
+        if (idle > 2 * ping) {
+            abort();
+        } else if (idle > ping && !pingSent) {
+            pingSent = true;
+            Runnable sendPing = () -> {
+                try {
+                    write(WebSocketFrames.encode(WebSocketFrames.PING, new byte[0]));
+                } catch (IOException e) {
+                    abort();
+                }
+            };
+            if (selectable == null) {
+                // A blocking write must not stall the reactor
+                HANDLERS.execute(sendPing);
+            } else {
+                sendPing.run();
+            }
+        }
+    }
+
+    /**
+     * Appends the WebSocket metrics in Prometheus text format.
+     * @param out the builder receiving the samples
+     */
+    static void writePrometheus(StringBuilder out) {
+        out.append("# HELP microspringboot_websocket_sessions Open WebSocket sessions\n");
+        out.append("# TYPE microspringboot_websocket_sessions gauge\n");
+        out.append("microspringboot_websocket_sessions ").append(OPEN.size()).append('\n');
+        out.append("# HELP microspringboot_websocket_messages_total WebSocket messages by direction\n");
+        out.append("# TYPE microspringboot_websocket_messages_total counter\n");
+        out.append("microspringboot_websocket_messages_total{direction=\"in\"} ").append(RECEIVED.sum()).append('\n');
+        out.append("microspringboot_websocket_messages_total{direction=\"out\"} ").append(SENT.sum()).append('\n');
+    }
+
+    /** A violation of the protocol by the client, answered with a close frame */
+    private static final class ProtocolError extends IOException {
+        final int code;
+
+        ProtocolError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
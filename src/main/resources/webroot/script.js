@@ -31,4 +31,13 @@ function loadPostMsg(nameInput) {
         .catch(err => {
             document.getElementById("postrespmsg").innerHTML = "Error: " + err;
         });
-}
\ No newline at end of file
+}
+
+// The server pushes the user list whenever it changes, instead of the page polling for it
+const userEvents = new EventSource("/users/events");
+userEvents.addEventListener("users", event => {
+    const box = document.getElementById("usersmsg");
+    if (box) {
+        box.textContent = event.data;
+    }
+});
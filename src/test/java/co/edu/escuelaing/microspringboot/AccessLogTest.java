@@ -0,0 +1,115 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AccessLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path originalFile;
+    private AccessLog.Level originalLevel;
+
+    @BeforeEach
+    void setUp() {
+        originalLevel = AccessLog.getLevel();
+        AccessLog.setLevel(AccessLog.Level.INFO);
+        AccessLog.setFile(tempDir.resolve("server.log"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        AccessLog.setLevel(originalLevel);
+        AccessLog.setFile(Path.of(System.getProperty("microspringboot.log.file", "logs/microspringboot.log")));
+    }
+
+    private List<String> readLog() throws IOException {
+        assertTrue(AccessLog.flush(5, TimeUnit.SECONDS));
+        return Files.readAllLines(tempDir.resolve("server.log"));
+    }
+
+    @Test
+    void testAccessEntryIsStructured() throws IOException {
+        // Test que la entrada de acceso tiene los campos estructurados
+        AccessLog.access("GET", "/hello", 200, 128, 2_500_000);
+
+        List<String> lines = readLog();
+        assertEquals(1, lines.size());
+        String line = lines.get(0);
+        assertTrue(line.startsWith("ts="));
+        assertTrue(line.contains("level=INFO event=access method=GET path=/hello status=200 bytes=128 duration_us=2500"));
+    }
+
+    @Test
+    void testLevelFiltering() throws IOException {
+        // Test que las entradas por debajo del nivel configurado no se escriben
+        AccessLog.debug("request.header", "Host: localhost");
+        AccessLog.info("route.registered", "/hello");
+        AccessLog.log(AccessLog.Level.ERROR, "server.error", "boom");
+
+        List<String> lines = readLog();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("event=route.registered detail=/hello"));
+        assertTrue(lines.get(1).contains("level=ERROR"));
+    }
+
+    @Test
+    void testDetailIsQuotedAndEscaped() throws IOException {
+        // Test que los valores con espacios o saltos de línea se mantienen en una sola línea
+        AccessLog.info("greeting.response", "HTTP/1.1 200 OK\r\n{\"msg\": \"Hello\"}");
+
+        List<String> lines = readLog();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("detail=\"HTTP/1.1 200 OK\\r\\n{\\\"msg\\\": \\\"Hello\\\"}\""));
+    }
+
+    @Test
+    void testOffDisablesLogging() throws IOException {
+        // Test que el nivel OFF desactiva todas las entradas
+        AccessLog.setLevel(AccessLog.Level.OFF);
+        assertFalse(AccessLog.isEnabled(AccessLog.Level.ERROR));
+        AccessLog.log(AccessLog.Level.ERROR, "server.error", "ignored");
+
+        assertTrue(AccessLog.flush(5, TimeUnit.SECONDS));
+        assertFalse(Files.exists(tempDir.resolve("server.log")));
+    }
+
+    @Test
+    void testConcurrentProducersDoNotLoseEntries() throws Exception {
+        // Test que varios hilos pueden registrar sin bloquearse ni perder entradas
+        long droppedBefore = AccessLog.droppedCount();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    AccessLog.access("GET", "/load", 200, i, 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> lines = readLog();
+        assertEquals(2000 - (AccessLog.droppedCount() - droppedBefore), lines.size());
+    }
+
+    @Test
+    void testParseLevel() {
+        // Test que los niveles inválidos vuelven a INFO
+        assertEquals(AccessLog.Level.DEBUG, AccessLog.parseLevel("debug"));
+        assertEquals(AccessLog.Level.WARN, AccessLog.parseLevel(" WARN "));
+        assertEquals(AccessLog.Level.INFO, AccessLog.parseLevel("verbose"));
+    }
+}
@@ -0,0 +1,74 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdaptivePoolSizerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Simula ventanas de 500 ms en las que terminan {@code tasks} peticiones con la espera,
+     * duración y tiempo de CPU indicados.
+     */
+    private static long run(AdaptivePoolSizer sizer, long now, int windows, int tasks, long wait, long wall, long cpu) {
+        for (int w = 0; w < windows; w++) {
+            for (int i = 0; i < tasks; i++) {
+                sizer.record(wait, wall, cpu);
+            }
+            now += 501 * MS;
+            sizer.check(now, 0, tasks > 0 ? sizer.size() : 0);
+        }
+        return now;
+    }
+
+    @Test
+    void testGrowsWhileBlockingRequestsQueue() {
+        // Test que el pool crece mientras las peticiones que esperan E/S hacen cola
+        AtomicInteger applied = new AtomicInteger();
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(4, 1, 100, 4, applied::set, 0);
+        // 400 peticiones de 50 ms (10% de CPU) por ventana mantienen ocupados 40 hilos
+        run(sizer, 0, 10, 400, 20 * MS, 50 * MS, 5 * MS);
+
+        assertTrue(sizer.size() >= 40, "size=" + sizer.size());
+        assertEquals(sizer.size(), applied.get());
+        assertEquals(0.1, sizer.cpuRatio(), 0.001);
+        assertTrue(sizer.grown() > 0);
+    }
+
+    @Test
+    void testCpuBoundRequestsStopAtTheCores() {
+        // Test que con peticiones que solo usan CPU el pool no pasa del número de núcleos
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(2, 1, 100, 4, size -> { }, 0);
+        run(sizer, 0, 20, 400, 20 * MS, 10 * MS, 10 * MS);
+
+        assertEquals(4, sizer.size());
+    }
+
+    @Test
+    void testShrinksToTheLoadOnceQueueingStops() {
+        // Test que sin cola el pool se reduce hacia la estimación de la ley de Little y al mínimo en reposo
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(64, 2, 100, 4, size -> { }, 0);
+        // 100 peticiones de 10 ms por ventana ocupan 2 hilos
+        long now = run(sizer, 0, 10, 100, 0, 10 * MS, MS);
+        assertEquals(3, sizer.size());
+        assertTrue(sizer.shrunk() > 0);
+
+        run(sizer, now, 5, 0, 0, 0, 0);
+        assertEquals(2, sizer.size());
+    }
+
+    @Test
+    void testGrowsWhenLongRequestsStarveTheQueue() {
+        // Test que el pool crece si todas las hebras siguen ocupadas con peticiones largas y hay cola
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(4, 1, 10, 4, size -> { }, 0);
+        sizer.check(501 * MS, 5, 4);
+        assertEquals(6, sizer.size());
+        sizer.check(1002 * MS, 5, 6);
+        sizer.check(1503 * MS, 5, 9);
+        assertEquals(10, sizer.size());
+    }
+}
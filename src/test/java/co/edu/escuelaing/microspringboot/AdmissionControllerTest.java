@@ -0,0 +1,74 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControllerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Simula ventanas de 100 ms con la concurrencia y latencia indicadas.
+     */
+    private static long run(AdmissionController admission, long now, int windows, int concurrency, long latency) {
+        for (int w = 0; w < windows; w++) {
+            int admitted = 0;
+            for (int i = 0; i < concurrency; i++) {
+                if (admission.tryAcquire()) {
+                    admitted++;
+                }
+            }
+            now += 101 * MS;
+            for (int i = 0; i < admitted; i++) {
+                admission.release(latency, now);
+            }
+        }
+        return now;
+    }
+
+    @Test
+    void testRejectsOverLimit() {
+        // Test que no se admiten más peticiones simultáneas que el límite
+        AdmissionController admission = new AdmissionController(2, 1, 10);
+
+        assertTrue(admission.tryAcquire());
+        assertTrue(admission.tryAcquire());
+        assertFalse(admission.tryAcquire());
+        admission.release(MS);
+        assertTrue(admission.tryAcquire());
+        assertEquals(1, admission.rejected());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyIsStable() {
+        // Test que el límite crece si se usa y la latencia se mantiene
+        AdmissionController admission = new AdmissionController(20, 10, 200);
+        run(admission, System.nanoTime(), 20, 1000, 5 * MS);
+
+        assertTrue(admission.getLimit() > 20, "limit=" + admission.getLimit());
+        assertEquals(0, admission.getInFlight());
+    }
+
+    @Test
+    void testLimitShrinksWhenLatencyRises() {
+        // Test que el límite baja cuando la latencia sube respecto a la base
+        AdmissionController admission = new AdmissionController(100, 10, 200);
+        long now = run(admission, System.nanoTime(), 5, 100, 5 * MS);
+        int before = admission.getLimit();
+        run(admission, now, 10, 200, 50 * MS);
+
+        assertTrue(admission.getLimit() < before / 2, "before=" + before + " after=" + admission.getLimit());
+        assertTrue(admission.getLimit() >= 10);
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenUnused() {
+        // Test que el límite no crece si la carga está muy por debajo
+        AdmissionController admission = new AdmissionController(50, 10, 200);
+        run(admission, System.nanoTime(), 20, 5, MS);
+
+        assertEquals(50, admission.getLimit());
+    }
+}
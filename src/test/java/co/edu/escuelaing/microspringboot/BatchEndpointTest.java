@@ -0,0 +1,124 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class BatchEndpointTest {
+
+    @RestController
+    public static class JsonController {
+        static volatile CyclicBarrier barrier;
+
+        @GetMapping("/point")
+        public static Map<String, Integer> point(@RequestParam(value = "x", defaultValue = "0") String x) {
+            return Map.of("x", Integer.parseInt(x));
+        }
+
+        @GetMapping("/together")
+        public static String together() throws Exception {
+            barrier.await(5, TimeUnit.SECONDS);
+            return "together";
+        }
+    }
+
+    private HttpConnector connector;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(JsonController.class);
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connector.close();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private HttpResponse<String> batch(String body, String accept) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + connector.getLocalPort() + HttpServer.BATCH_PATH))
+                .timeout(Duration.ofSeconds(10)).POST(HttpRequest.BodyPublishers.ofString(body));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testAnswersEveryCallInOrder() throws Exception {
+        // Test que el batch responde cada llamada en el orden pedido, con JSON embebido y errores por llamada
+        HttpResponse<String> response = batch("[{\"path\":\"/hello\"},"
+                + "{\"path\":\"/greeting\",\"params\":{\"name\":\"Ana María\"}},"
+                + "{\"path\":\"/point?x=3\"},{\"path\":\"/missing\"}]", null);
+
+        assertEquals(200, response.statusCode());
+        assertEquals("[{\"index\":0,\"path\":\"/hello\",\"status\":200,\"body\":\"Hello World!\"},"
+                + "{\"index\":1,\"path\":\"/greeting\",\"status\":200,\"body\":\"Hello Ana María\"},"
+                + "{\"index\":2,\"path\":\"/point?x=3\",\"status\":200,\"body\":{\"x\":3}},"
+                + "{\"index\":3,\"path\":\"/missing\",\"status\":404,\"body\":\"Service not found\"}]",
+                response.body());
+        String metrics = client.send(HttpRequest.newBuilder(URI.create("http://localhost:"
+                + connector.getLocalPort() + HttpServer.METRICS_PATH)).build(), HttpResponse.BodyHandlers.ofString()).body();
+        assertTrue(metrics.contains("route=\"/greeting\""), metrics);
+    }
+
+    @Test
+    void testCallsRunConcurrently() throws Exception {
+        // Test que las llamadas de un batch se ejecutan a la vez: ambas esperan en la misma barrera
+        JsonController.barrier = new CyclicBarrier(2);
+        HttpResponse<String> response = batch("[{\"path\":\"/together\"},{\"path\":\"/together\"}]", null);
+
+        assertEquals(200, response.statusCode());
+        assertEquals(2, response.body().split("\"body\":\"together\"", -1).length - 1, response.body());
+    }
+
+    @Test
+    void testStreamsEntriesAsTheyComplete() throws Exception {
+        // Test que con Accept application/x-ndjson cada llamada llega en su propia línea
+        HttpResponse<String> response = batch("[{\"path\":\"/hello\"},{\"path\":\"/point\",\"params\":{\"x\":7}}]",
+                "application/x-ndjson");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("content-type").orElse("").startsWith("application/x-ndjson"));
+        List<String> lines = response.body().lines().toList();
+        assertEquals(2, lines.size(), response.body());
+        for (String line : lines) {
+            Map<?, ?> entry = (Map<?, ?>) JsonReader.parse(new StringReader(line));
+            assertEquals(200, ((Number) entry.get("status")).intValue());
+        }
+        assertTrue(response.body().contains("\"body\":{\"x\":7}"), response.body());
+    }
+
+    @Test
+    void testRejectsInvalidBatches() throws Exception {
+        // Test que un cuerpo que no es una lista de llamadas da 400 y uno demasiado grande 413
+        assertEquals(400, batch("{\"path\":\"/hello\"}", null).statusCode());
+        assertEquals(400, batch("[{\"params\":{}}]", null).statusCode());
+        assertEquals(400, batch("[{\"path\":", null).statusCode());
+        String tooMany = "[" + "{\"path\":\"/hello\"},".repeat(BatchEndpoint.MAX_CALLS) + "{\"path\":\"/hello\"}]";
+        assertEquals(413, batch(tooMany, null).statusCode());
+    }
+}
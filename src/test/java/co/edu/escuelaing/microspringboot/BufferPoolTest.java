@@ -0,0 +1,117 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class BufferPoolTest {
+
+    @TempDir
+    Path dir;
+
+    private final String originalRoot = HttpServer.ROOT_DIRECTORY;
+    private HttpConnector connector;
+
+    @AfterEach
+    void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.ROOT_DIRECTORY = originalRoot;
+    }
+
+    @Test
+    void testBuffersAreRoundedToSizeClassesAndReusedByTheThread() {
+        // Test que los buffers se redondean a su clase de tamaño y el mismo hilo los reutiliza
+        ByteBuffer small = BufferPool.acquire(100);
+        assertTrue(small.isDirect());
+        assertEquals(BufferPool.MIN_CLASS, small.capacity());
+        ByteBuffer middle = BufferPool.acquire(BufferPool.MIN_CLASS + 1);
+        assertEquals(2 * BufferPool.MIN_CLASS, middle.capacity());
+        ByteBuffer large = BufferPool.acquire(BufferPool.MAX_CLASS + 1);
+        assertEquals(BufferPool.MAX_CLASS + 1, large.capacity());
+
+        small.put((byte) 1);
+        BufferPool.release(small);
+        BufferPool.release(middle);
+        BufferPool.release(large);
+        ByteBuffer again = BufferPool.acquire(10);
+        assertSame(small, again);
+        assertEquals(0, again.position());
+        BufferPool.release(again);
+    }
+
+    @Test
+    void testLeaksAreReportedAndDoubleReleaseFails() {
+        // Test que un buffer sin liberar aparece como fuga y que liberarlo dos veces falla
+        assertTrue(BufferPool.LEAK_DETECTION, "Las pruebas corren con la detección de fugas activa");
+        ByteBuffer buffer = BufferPool.acquire(1000);
+        assertTrue(BufferPool.leaks().stream()
+                .anyMatch(leak -> leak.getStackTrace()[1].getMethodName().equals("testLeaksAreReportedAndDoubleReleaseFails")));
+        BufferPool.release(buffer);
+        assertThrows(IllegalStateException.class, () -> BufferPool.release(buffer));
+    }
+
+    @Test
+    void testConnectionGivesItsBuffersBack() throws Exception {
+        // Test que una conexión keep-alive devuelve sus buffers al quedar inactiva y al cerrarse
+        byte[] big = new byte[(int) StaticAssets.PRELOAD_BYTES * 3];
+        Arrays.fill(big, (byte) 'b');
+        Files.write(dir.resolve("big.bin"), big);
+        Files.writeString(dir.resolve("small.txt"), "small");
+        HttpServer.ROOT_DIRECTORY = dir.toString();
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+        long baseline = BufferPool.inUse();
+
+        try (Socket socket = new Socket("localhost", connector.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("GET /big.bin HTTP/1.1\r\nHost: x\r\n\r\nGET /small.txt HTTP/1.1\r\nHost: x\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            String first = readResponse(in);
+            assertTrue(first.startsWith("HTTP/1.1 200 OK"), first);
+            assertTrue(first.endsWith(new String(big, StandardCharsets.ISO_8859_1)));
+            assertTrue(readResponse(in).endsWith("small"));
+            // La conexión queda estacionada sin buffers
+            waitFor(() -> BufferPool.inUse() == baseline);
+        }
+        connector.close();
+        connector = null;
+        assertEquals(baseline, BufferPool.inUse());
+    }
+
+    private static String readResponse(InputStream in) throws Exception {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int c = in.read();
+            assertTrue(c >= 0);
+            head.append((char) c);
+        }
+        int start = head.indexOf("content-length: ") + "content-length: ".length();
+        int length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        return head + new String(in.readNBytes(length), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condición no alcanzada a tiempo");
+            Thread.sleep(10);
+        }
+    }
+}
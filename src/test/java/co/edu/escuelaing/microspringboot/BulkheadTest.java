@@ -0,0 +1,132 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BulkheadTest {
+
+    @RestController
+    @Bulkhead(value = "test-slow", threads = 1, queueSize = 0)
+    public static class SlowController {
+        static volatile CountDownLatch started;
+        static volatile CountDownLatch release;
+
+        @GetMapping("/slow")
+        public static String slow() throws InterruptedException {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return "slow";
+        }
+    }
+
+    private HttpConnector connector;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(SlowController.class);
+        SlowController.started = new CountDownLatch(1);
+        SlowController.release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SlowController.release.countDown();
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.rateLimiter = null;
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + connector.getLocalPort() + path))
+                .timeout(Duration.ofSeconds(5)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testSaturatedBulkheadDoesNotBlockOtherTraffic() throws Exception {
+        // Test que un bulkhead lleno rechaza sus peticiones sin frenar las demás rutas ni los archivos estáticos
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+
+        CompletableFuture<HttpResponse<String>> slow = client.sendAsync(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + connector.getLocalPort() + "/slow")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(SlowController.started.await(5, TimeUnit.SECONDS));
+
+        // El único hilo de atención sigue libre para el resto del tráfico
+        HttpResponse<String> refused = get("/slow");
+        assertEquals(503, refused.statusCode());
+        assertEquals("Bulkhead test-slow full", refused.body());
+        assertEquals("Hello World!", get("/hello").body());
+        assertEquals(200, get("/").statusCode());
+
+        SlowController.release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS).body());
+        String metrics = get(HttpServer.METRICS_PATH).body();
+        assertTrue(metrics.contains("microspringboot_bulkhead_rejected_total{pool=\"test-slow\"} 1"), metrics);
+        assertTrue(metrics.contains("microspringboot_bulkhead_threads{pool=\"test-slow\"} 1"), metrics);
+    }
+
+    @Test
+    void testRateLimitedRequestsDoNotReachTheBulkhead() throws Exception {
+        // Test que una petición limitada por tasa recibe 429 sin ocupar ni esperar el bulkhead de su ruta
+        HttpServer.rateLimiter = new RateLimiter(0.5, 1, RateLimiter.KeyMode.IP);
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+
+        CompletableFuture<HttpResponse<String>> slow = client.sendAsync(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + connector.getLocalPort() + "/slow")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(SlowController.started.await(5, TimeUnit.SECONDS));
+
+        HttpResponse<String> limited = get("/slow");
+        assertEquals(429, limited.statusCode());
+        assertEquals("Too many requests", limited.body());
+
+        SlowController.release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS).body());
+    }
+
+    @Test
+    void testRoutesPickTheirBulkhead() throws Exception {
+        // Test que cada petición se asigna al bulkhead de su ruta, al de estáticos o a ninguno
+        assertEquals("test-slow", HttpServer.bulkhead(request("/slow")).name);
+        assertEquals(BulkheadPool.ROUTES, HttpServer.bulkhead(request("/hello")).name);
+        assertEquals(BulkheadPool.STATIC, HttpServer.bulkhead(request("/")).name);
+        assertNull(HttpServer.bulkhead(request(HttpServer.METRICS_PATH)));
+        assertNull(HttpServer.bulkhead(request("/missing")));
+    }
+
+    private static co.edu.escuelaing.microspringboot.HttpRequest request(String path) throws Exception {
+        byte[] raw = ("GET " + path + " HTTP/1.1\r\nHost: x\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        return co.edu.escuelaing.microspringboot.HttpRequest.read(
+                new BufferedInputStream(new ByteArrayInputStream(raw)), new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,238 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConnectionTimeoutTest {
+
+    @RestController
+    public static class SlowController {
+        @GetMapping("/slow")
+        public static String slow() {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                return "interrupted";
+            }
+            return "done";
+        }
+
+        @PostMapping("/echo")
+        public static String echo(@RequestBody String body) {
+            return body;
+        }
+    }
+
+    private HttpConnector connector;
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(SlowController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private Socket start(ServerConfig config) throws IOException {
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+        Socket socket = new Socket("localhost", connector.getLocalPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static void send(Socket socket, String text) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String readToEnd(Socket socket) throws IOException {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            all.write(buffer, 0, n);
+        }
+        return all.toString(StandardCharsets.US_ASCII);
+    }
+
+    /** Lee una respuesta completa usando su content-length */
+    private static String readResponse(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int c = in.read();
+            assertTrue(c >= 0, "Connection closed inside the response headers");
+            head.append((char) c);
+        }
+        int start = head.indexOf("content-length: ") + "content-length: ".length();
+        int length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        return head + new String(in.readNBytes(length), StandardCharsets.US_ASCII);
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    void testTimerWheelRunsAndCancels() throws Exception {
+        // Test que la rueda de temporizadores ejecuta tareas vencidas y omite las canceladas
+        try (TimerWheel wheel = new TimerWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8)) {
+            CountDownLatch ran = new CountDownLatch(1);
+            AtomicBoolean cancelledRan = new AtomicBoolean();
+            long start = System.nanoTime();
+            // Mas de una vuelta completa de la rueda (8 x 10 ms)
+            wheel.schedule(ran::countDown, 200, TimeUnit.MILLISECONDS);
+            TimerWheel.Timeout cancelled = wheel.schedule(() -> cancelledRan.set(true), 50, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.cancel());
+
+            assertTrue(ran.await(2, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+            Thread.sleep(100);
+            assertFalse(cancelledRan.get());
+            assertTrue(cancelled.isCancelled());
+        }
+    }
+
+    @Test
+    void testKeepAliveServesPipelinedAndLaterRequests() throws Exception {
+        // Test que una conexion persistente atiende peticiones encadenadas y posteriores
+        try (Socket socket = start(new ServerConfig())) {
+            send(socket, "GET /hello HTTP/1.1\r\nHost: x\r\n\r\nGET /greeting?name=a HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertTrue(readResponse(socket).endsWith("Hello World!"));
+            assertTrue(readResponse(socket).endsWith("Hello a"));
+
+            // La conexion queda estacionada y vuelve a un worker con la siguiente peticion
+            Thread.sleep(100);
+            send(socket, "GET /greeting?name=b HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n");
+            String rest = readToEnd(socket);
+            assertEquals(1, count(rest, "HTTP/1.1 200"));
+            assertTrue(rest.endsWith("Hello b"));
+        }
+    }
+
+    @Test
+    void testHttp10ConnectionIsClosedAfterResponse() throws Exception {
+        // Test que HTTP/1.0 cierra la conexion despues de la respuesta
+        try (Socket socket = start(new ServerConfig())) {
+            send(socket, "GET /hello HTTP/1.0\r\n\r\n");
+            assertTrue(readToEnd(socket).endsWith("Hello World!"));
+        }
+    }
+
+    @Test
+    void testSlowHeadersGet408() throws Exception {
+        // Test que un cliente que no termina las cabeceras recibe 408 y se cierra la conexion
+        ServerConfig config = new ServerConfig();
+        config.setHeaderTimeoutMillis(200);
+        try (Socket socket = start(config)) {
+            send(socket, "GET /hello HTTP/1.1\r\nHost: x\r\n");
+            long start = System.nanoTime();
+            String response = readToEnd(socket);
+            assertTrue(response.startsWith("HTTP/1.1 408 Request Timeout"), response);
+            // La respuesta llega completa antes del cierre
+            assertTrue(response.contains("content-length: 0\r\n") && response.endsWith("\r\n\r\n"), response);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        }
+        assertTrue(ConnectionWatchdog.timeouts(ConnectionWatchdog.Kind.HEADER) > 0);
+    }
+
+    @Test
+    void testSilentConnectionsDoNotHoldTheWorkers() throws Exception {
+        // Test que tantas conexiones mudas como workers no retrasan a otro cliente
+        ServerConfig config = new ServerConfig();
+        config.setHeaderTimeoutMillis(10_000);
+        try (Socket silent = start(config);
+             Socket trickling = new Socket("localhost", connector.getLocalPort());
+             Socket client = new Socket("localhost", connector.getLocalPort())) {
+            // Un solo worker: una conexión no envía nada y otra deja las cabeceras a medias
+            send(trickling, "GET /hello HTTP/1.1\r\nHo");
+            Thread.sleep(100);
+
+            client.setSoTimeout(5000);
+            long start = System.nanoTime();
+            send(client, "GET /hello HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertTrue(readResponse(client).endsWith("Hello World!"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+            // La conexión a medias se atiende cuando termina su cabecera
+            send(trickling, "st: x\r\n\r\n");
+            assertTrue(readResponse(trickling).endsWith("Hello World!"));
+        }
+    }
+
+    @Test
+    void testIdleConnectionIsClosed() throws Exception {
+        // Test que una conexion persistente inactiva se cierra al vencer el tiempo de espera
+        ServerConfig config = new ServerConfig();
+        config.setIdleTimeoutMillis(200);
+        try (Socket socket = start(config)) {
+            send(socket, "GET /hello HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertTrue(readResponse(socket).endsWith("Hello World!"));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void testSlowHandlerGets504AndIsInterrupted() throws Exception {
+        // Test que un manejador que supera su plazo produce 504 sin bloquear el worker
+        ServerConfig config = new ServerConfig();
+        config.setHandlerTimeoutMillis(300);
+        try (Socket socket = start(config)) {
+            long start = System.nanoTime();
+            send(socket, "GET /slow HTTP/1.1\r\nHost: x\r\n\r\n");
+            String response = readToEnd(socket);
+            assertTrue(response.startsWith("HTTP/1.1 504 Gateway Timeout"), response);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        }
+        // El unico worker queda libre para la siguiente conexion
+        try (Socket next = new Socket("localhost", connector.getLocalPort())) {
+            next.setSoTimeout(5000);
+            send(next, "GET /hello HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n");
+            String response = readToEnd(next);
+            assertTrue(response.endsWith("Hello World!"), response);
+        }
+    }
+
+    @Test
+    void testStalledBodyGets408() throws Exception {
+        // Test que un cuerpo que deja de llegar se corta con 408
+        ServerConfig config = new ServerConfig();
+        config.setTransferTimeoutMillis(300);
+        try (Socket socket = start(config)) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 100\r\n\r\nonly ten b");
+            String response = readToEnd(socket);
+            assertTrue(response.startsWith("HTTP/1.1 408 Request Timeout"), response);
+        }
+        assertTrue(ConnectionWatchdog.timeouts(ConnectionWatchdog.Kind.TRANSFER) > 0);
+    }
+}
@@ -0,0 +1,162 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+public class EventStreamTest {
+
+    @RestController
+    public static class EventController {
+        static final EventStream NEWS = new EventStream();
+
+        @GetMapping("/news")
+        public static EventStream news() {
+            return NEWS;
+        }
+    }
+
+    private HttpConnector connector;
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(EventController.class);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        EventController.NEWS.close();
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        waitFor(() -> EventController.NEWS.subscribers() == 0);
+    }
+
+    private int start() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+        return connector.getLocalPort();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Socket subscribe(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write("GET /news HTTP/1.1\r\nHost: x\r\nAccept: text/event-stream\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    /** Lee hasta encontrar el texto esperado */
+    private static String readUntil(Socket socket, String expected) throws IOException {
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        InputStream in = socket.getInputStream();
+        while (!seen.toString(StandardCharsets.UTF_8).contains(expected)) {
+            int c = in.read();
+            assertTrue(c >= 0, "Stream ended before " + expected + ": " + seen);
+            seen.write(c);
+        }
+        return seen.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testEventsAreSerializedInEventStreamFormat() {
+        // Test que los eventos se codifican con nombre y una linea data por cada linea del contenido
+        ByteBuffer event = EventStream.serialize("update", "one\ntwo");
+        assertTrue(event.isReadOnly());
+        byte[] bytes = new byte[event.remaining()];
+        event.get(bytes);
+        assertEquals("event: update\ndata: one\ndata: two\n\n", new String(bytes, StandardCharsets.UTF_8));
+        ByteBuffer unnamed = EventStream.serialize(null, "");
+        assertEquals("data: \n\n", StandardCharsets.UTF_8.decode(unnamed).toString());
+    }
+
+    @Test
+    void testEventsReachAllSubscribersWithoutHoldingWorkers() throws Exception {
+        // Test que un evento llega a todos los suscriptores y el unico worker sigue libre
+        int port = start();
+        try (Socket first = subscribe(port); Socket second = subscribe(port)) {
+            assertTrue(readUntil(first, "\r\n\r\n").contains("content-type: text/event-stream"));
+            readUntil(second, "\r\n\r\n");
+            waitFor(() -> EventController.NEWS.subscribers() == 2);
+
+            try (Socket other = new Socket("localhost", port)) {
+                other.setSoTimeout(5000);
+                other.getOutputStream().write("GET /hello HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+                assertTrue(new String(other.getInputStream().readAllBytes(), StandardCharsets.US_ASCII)
+                        .endsWith("Hello World!"));
+            }
+
+            EventController.NEWS.publish("headline", "Hola");
+            assertTrue(readUntil(first, "\n\n").endsWith("event: headline\ndata: Hola\n\n"));
+            assertTrue(readUntil(second, "\n\n").endsWith("event: headline\ndata: Hola\n\n"));
+        }
+        waitFor(() -> EventController.NEWS.subscribers() == 0);
+    }
+
+    @Test
+    void testCloseEndsSubscriptions() throws Exception {
+        // Test que cerrar el stream termina la respuesta de cada suscriptor
+        int port = start();
+        try (Socket socket = subscribe(port)) {
+            readUntil(socket, "\r\n\r\n");
+            waitFor(() -> EventController.NEWS.subscribers() == 1);
+            EventController.NEWS.close();
+            assertEquals(-1, socket.getInputStream().read());
+            waitFor(() -> EventController.NEWS.subscribers() == 0);
+        }
+    }
+
+    @Test
+    void testHttp2StreamSubscribes() throws Exception {
+        // Test que un cliente HTTP/2 recibe los eventos como datos de su stream
+        int port = start();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/hello")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<Stream<String>> response = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/news")).build(), HttpResponse.BodyHandlers.ofLines());
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals("text/event-stream; charset=utf-8", response.headers().firstValue("content-type").orElse(""));
+        waitFor(() -> EventController.NEWS.subscribers() == 1);
+
+        EventController.NEWS.publish("over h2");
+        Iterator<String> lines = response.body().iterator();
+        assertEquals("data: over h2", lines.next());
+        EventController.NEWS.close();
+        waitFor(() -> EventController.NEWS.subscribers() == 0);
+    }
+}
@@ -0,0 +1,260 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class Http2Test {
+
+    @RestController
+    public static class Http2Controller {
+        @PostMapping("/h2/echo")
+        public static String echo(@RequestBody String body) {
+            return body;
+        }
+    }
+
+    private HttpConnector connector;
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(Http2Controller.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private int start() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+        return connector.getLocalPort();
+    }
+
+    private static byte[] hex(String text) {
+        String digits = text.replace(" ", "");
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static Map<String, String> decode(Hpack.Decoder decoder, byte[] block) throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        decoder.decode(block, block.length, fields::put);
+        return fields;
+    }
+
+    @Test
+    void testHpackDecodesRfcExamples() throws Exception {
+        // Test que el decodificador HPACK reproduce los ejemplos C.4 del RFC 7541 con la tabla dinamica
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        assertEquals(Map.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decode(decoder, hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff")));
+        assertEquals(Map.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache"), decode(decoder, hex("8286 84be 5886 a8eb 1064 9cbf")));
+        assertEquals(Map.of(":method", "GET", ":scheme", "https", ":path", "/index.html",
+                ":authority", "www.example.com", "custom-key", "custom-value"),
+                decode(decoder, hex("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf")));
+
+        assertThrows(IOException.class, () -> decoder.decode(hex("ff"), 1, (name, value) -> { }));
+    }
+
+    @Test
+    void testHpackEncoderMatchesRfcAndRoundTrips() throws Exception {
+        // Test que el codificador HPACK produce los bloques del RFC y que el decodificador los recupera
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        ResponseBuffer first = new ResponseBuffer(64);
+        encoder.beginBlock(first);
+        encoder.encode(":method", "GET", true, first);
+        encoder.encode(":scheme", "http", true, first);
+        encoder.encode(":path", "/", true, first);
+        encoder.encode(":authority", "www.example.com", true, first);
+        assertArrayEquals(hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"),
+                java.util.Arrays.copyOf(first.array(), first.size()));
+
+        ResponseBuffer second = new ResponseBuffer(64);
+        encoder.setMaxTableSize(0);
+        encoder.beginBlock(second);
+        encoder.encode("content-type", "text/plain; charset=utf-8", true, second);
+        encoder.encode("x-trace", "été", false, second);
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        decode(decoder, java.util.Arrays.copyOf(first.array(), first.size()));
+        assertEquals(Map.of("content-type", "text/plain; charset=utf-8", "x-trace", "été"),
+                decode(decoder, java.util.Arrays.copyOf(second.array(), second.size())));
+    }
+
+    @Test
+    void testClientUpgradesAndMultiplexesRequests() throws Exception {
+        // Test que un cliente HTTP/2 se actualiza con h2c y comparte una conexion entre peticiones concurrentes
+        int port = start();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        HttpResponse<String> first = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/hello")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, first.version());
+        assertEquals("Hello World!", first.body());
+
+        List<CompletableFuture<HttpResponse<String>>> pending = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            pending.add(client.sendAsync(HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/greeting?name=s" + i)).build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            HttpResponse<String> response = pending.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+            assertEquals("Hello s" + i, response.body());
+        }
+        assertEquals(1, Http2Connection.openConnections());
+    }
+
+    @Test
+    void testLargeBodiesRespectFlowControl() throws Exception {
+        // Test que cuerpos mayores que las ventanas de control de flujo llegan completos en ambos sentidos
+        int port = start();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/hello")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        String body = "0123456789abcdef".repeat(40_000);
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/h2/echo"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals(200, response.statusCode());
+        assertEquals(body, response.body());
+    }
+
+    @Test
+    void testPriorKnowledgeStreamsAreAnswered() throws Exception {
+        // Test que un cliente con conocimiento previo envia el prefacio y recibe respuestas por stream
+        int port = start();
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(Http2Connection.PREFACE.getBytes(StandardCharsets.US_ASCII));
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            Hpack.Encoder encoder = new Hpack.Encoder();
+            writeFrame(out, 0x1, 0x5, 1, request(encoder, "/hello"));
+            writeFrame(out, 0x1, 0x5, 3, request(encoder, "/greeting?name=pk"));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+            Map<Integer, String> statuses = new HashMap<>();
+            Map<Integer, StringBuilder> bodies = new HashMap<>();
+            int ended = 0;
+            while (ended < 2) {
+                int length = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int stream = in.readInt() & 0x7FFFFFFF;
+                byte[] payload = in.readNBytes(length);
+                if (type == 0x1) {
+                    statuses.put(stream, decode(decoder, payload).get(":status"));
+                } else if (type == 0x0) {
+                    bodies.computeIfAbsent(stream, s -> new StringBuilder())
+                            .append(new String(payload, StandardCharsets.UTF_8));
+                }
+                if ((type == 0x0 || type == 0x1) && (flags & 0x1) != 0) {
+                    ended++;
+                }
+            }
+            assertEquals("200", statuses.get(1));
+            assertEquals("200", statuses.get(3));
+            assertEquals("Hello World!", bodies.get(1).toString());
+            assertEquals("Hello pk", bodies.get(3).toString());
+        }
+    }
+
+    @Test
+    void testRepeatedIndexedHeadersGet431() throws Exception {
+        // Test que un bloque con miles de referencias a una cabecera grande de la tabla recibe 431 sin acumularlas
+        int port = start();
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(Http2Connection.PREFACE.getBytes(StandardCharsets.US_ASCII));
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            Hpack.Encoder encoder = new Hpack.Encoder();
+            ResponseBuffer block = new ResponseBuffer(16384);
+            byte[] pseudo = request(encoder, "/hello");
+            block.write(pseudo, 0, pseudo.length);
+            ResponseBuffer big = new ResponseBuffer(4096);
+            encoder.encode("x-big", "a".repeat(3000), true, big);
+            block.write(big.array(), 0, big.size());
+            // 0xBE es la entrada 62, la más reciente de la tabla dinámica
+            for (int i = 0; i < 12_000; i++) {
+                block.write(0xBE);
+            }
+            writeFrame(out, 0x1, 0x5, 1, java.util.Arrays.copyOf(block.array(), block.size()));
+            // La tabla sigue sincronizada para el siguiente stream
+            writeFrame(out, 0x1, 0x5, 3, request(encoder, "/hello"));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+            Map<Integer, String> statuses = new HashMap<>();
+            while (statuses.size() < 2) {
+                int length = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                in.readUnsignedByte();
+                int stream = in.readInt() & 0x7FFFFFFF;
+                byte[] payload = in.readNBytes(length);
+                if (type == 0x1) {
+                    statuses.put(stream, decode(decoder, payload).get(":status"));
+                }
+            }
+            assertEquals("431", statuses.get(1));
+            assertEquals("200", statuses.get(3));
+        }
+    }
+
+    private static byte[] request(Hpack.Encoder encoder, String path) {
+        ResponseBuffer block = new ResponseBuffer(64);
+        encoder.beginBlock(block);
+        encoder.encode(":method", "GET", true, block);
+        encoder.encode(":scheme", "http", true, block);
+        encoder.encode(":path", path, true, block);
+        encoder.encode(":authority", "localhost", true, block);
+        return java.util.Arrays.copyOf(block.array(), block.size());
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload)
+            throws IOException {
+        out.write(new byte[] {(byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                (byte) type, (byte) flags, (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8),
+                (byte) stream});
+        out.write(payload);
+    }
+}
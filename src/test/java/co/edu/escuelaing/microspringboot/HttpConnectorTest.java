@@ -0,0 +1,283 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class HttpConnectorTest {
+
+    @RestController
+    public static class DrainController {
+        @GetMapping("/drain")
+        public static String drain(@RequestParam(value = "millis", defaultValue = "500") String millis) {
+            try {
+                Thread.sleep(Long.parseLong(millis));
+            } catch (InterruptedException e) {
+                return "interrupted";
+            }
+            return "drained";
+        }
+    }
+
+    private HttpConnector connector;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(DrainController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private static ServerConfig config(int acceptors, int workers) {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setAcceptors(acceptors);
+        config.setWorkers(workers);
+        return config;
+    }
+
+    private String get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + connector.getLocalPort() + path)).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        return response.body();
+    }
+
+    @Test
+    void testServesRequestsOnEphemeralPort() throws Exception {
+        // Test que el conector escucha en un puerto libre y atiende peticiones
+        connector = new HttpConnector(config(1, 1));
+        connector.start();
+
+        assertTrue(connector.getLocalPort() > 0);
+        assertEquals("Hello World!", get("/hello"));
+    }
+
+    @Test
+    void testSeveralAcceptorsShareOnePort() throws Exception {
+        // Test que varios aceptadores (con SO_REUSEPORT si existe) atienden peticiones concurrentes
+        connector = new HttpConnector(config(4, 3));
+        connector.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int n = i;
+                results.add(pool.submit(() -> get("/greeting?name=c" + n)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("Hello c" + i, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testBusyPortFailsWithoutExiting() throws Exception {
+        // Test que un puerto ocupado produce IOException en lugar de terminar la JVM
+        try (ServerSocket busy = new ServerSocket(0)) {
+            ServerConfig config = config(1, 1);
+            config.setPort(busy.getLocalPort());
+            config.setReusePort(false);
+            connector = new HttpConnector(config);
+            assertThrows(IOException.class, connector::start);
+        }
+    }
+
+    @Test
+    void testCloseStopsAccepting() throws Exception {
+        // Test que close() libera el puerto y termina los aceptadores
+        connector = new HttpConnector(config(2, 1));
+        connector.start();
+        int port = connector.getLocalPort();
+        connector.close();
+        connector.join();
+
+        try (ServerSocket again = new ServerSocket(port)) {
+            assertEquals(port, again.getLocalPort());
+        }
+    }
+
+    private void awaitBusy(int connections) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connector.getBusyConnections() < connections && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(connections, connector.getBusyConnections());
+    }
+
+    @Test
+    void testStopDrainsInFlightRequests() throws Exception {
+        // Test que stop() deja terminar las peticiones en curso y rechaza conexiones nuevas
+        connector = new HttpConnector(config(1, 1));
+        connector.start();
+        int port = connector.getLocalPort();
+        CompletableFuture<HttpResponse<String>> pending = client.sendAsync(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/drain")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        awaitBusy(1);
+
+        CompletableFuture<Void> stopped = connector.stop(Duration.ofSeconds(5));
+        assertThrows(ConnectException.class, () -> new Socket("localhost", port).close());
+
+        HttpResponse<String> response = pending.get(5, TimeUnit.SECONDS);
+        assertEquals(200, response.statusCode());
+        assertEquals("drained", response.body());
+        stopped.get(5, TimeUnit.SECONDS);
+        assertEquals(0, connector.getBusyConnections());
+        assertSame(stopped, connector.stop(Duration.ZERO));
+    }
+
+    @Test
+    void testStopInterruptsRequestsPastTheDeadline() throws Exception {
+        // Test que al vencer el plazo de drenado se interrumpen las peticiones pendientes
+        connector = new HttpConnector(config(1, 1));
+        connector.start();
+        CompletableFuture<HttpResponse<String>> pending = client.sendAsync(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + connector.getLocalPort() + "/drain?millis=10000")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        awaitBusy(1);
+
+        long start = System.nanoTime();
+        connector.stop(Duration.ofMillis(100)).get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        // El controlador ve la interrupcion y termina antes de tiempo
+        assertEquals("interrupted", pending.get(5, TimeUnit.SECONDS).body());
+    }
+
+    @Test
+    void testStopClosesIdleKeepAliveConnections() throws Exception {
+        // Test que stop() cierra las conexiones keep-alive inactivas
+        connector = new HttpConnector(config(1, 1));
+        connector.start();
+        try (Socket socket = new Socket("localhost", connector.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET /hello HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[1024];
+            StringBuilder response = new StringBuilder();
+            while (!response.toString().endsWith("Hello World!")) {
+                int n = in.read(buffer);
+                assertTrue(n > 0);
+                response.append(new String(buffer, 0, n, StandardCharsets.US_ASCII));
+            }
+
+            connector.stop(Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testStartAsyncReportsBindFailure() throws Exception {
+        // Test que startAsync() completa el futuro con error si el puerto esta ocupado
+        try (ServerSocket busy = new ServerSocket(0)) {
+            ServerConfig config = config(1, 1);
+            config.setPort(busy.getLocalPort());
+            config.setReusePort(false);
+            connector = new HttpConnector(config);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> connector.startAsync().get());
+            assertInstanceOf(IOException.class, failure.getCause());
+        }
+        ServerConfig config = config(1, 1);
+        HttpConnector other = new HttpConnector(config);
+        try {
+            assertSame(other, other.startAsync().get());
+            assertTrue(other.getLocalPort() > 0);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void testServesUnixDomainSocketWithoutTcp() throws Exception {
+        // Test que el conector atiende peticiones por un socket Unix sin abrir puerto TCP
+        Path dir = Files.createTempDirectory("microspringboot");
+        Path socket = dir.resolve("http.sock");
+        try {
+            ServerConfig config = config(1, 1);
+            config.setTcpEnabled(false);
+            config.setUnixSocket(socket.toString());
+            connector = new HttpConnector(config);
+            connector.start();
+
+            assertEquals(-1, connector.getLocalPort());
+            try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+                // Dos peticiones por la misma conexión para pasar también por el aparcamiento keep-alive
+                for (int i = 0; i < 2; i++) {
+                    channel.write(ByteBuffer.wrap("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                            .getBytes(StandardCharsets.US_ASCII)));
+                    String response = readResponse(channel, "Hello World!");
+                    assertTrue(response.startsWith("HTTP/1.1 200"), response);
+                }
+            }
+            connector.close();
+            connector.join();
+            assertFalse(Files.exists(socket));
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void testNoListenerConfiguredFails() {
+        // Test que sin TCP ni socket Unix el conector no arranca
+        ServerConfig config = config(1, 1);
+        config.setTcpEnabled(false);
+        connector = new HttpConnector(config);
+        assertThrows(IllegalStateException.class, connector::start);
+    }
+
+    private static String readResponse(SocketChannel channel, String end) throws IOException {
+        StringBuilder response = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (!response.toString().endsWith(end)) {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+            buffer.flip();
+            response.append(StandardCharsets.US_ASCII.decode(buffer));
+        }
+        return response.toString();
+    }
+}
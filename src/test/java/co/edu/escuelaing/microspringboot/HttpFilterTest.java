@@ -0,0 +1,102 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class HttpFilterTest {
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.clearFilters();
+        HttpServer.loadComponent(IntegrationController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.clearFilters();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private static String send(String method, String target, String... headers) throws IOException {
+        StringBuilder raw = new StringBuilder(method + " " + target + " HTTP/1.1\r\nHost: localhost\r\n");
+        for (String header : headers) {
+            raw.append(header).append("\r\n");
+        }
+        raw.append("\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(raw.toString().getBytes(StandardCharsets.UTF_8)));
+        HttpRequest request = HttpRequest.read(in, out);
+        HttpServer.handleRequest(request, new PrintWriter(out, true), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testFiltersRunInRegistrationOrder() throws IOException {
+        // Test que los filtros se ejecutan en el orden en que se registraron y ven el estado final
+        HttpServer.filter((request, out, next) -> {
+            calls.add("outer>");
+            int status = next.handle(request, out);
+            calls.add("<outer " + status);
+            return status;
+        });
+        HttpServer.filter((request, out, next) -> {
+            calls.add("inner>");
+            int status = next.handle(request, out);
+            calls.add("<inner " + status);
+            return status;
+        });
+
+        assertTrue(send("GET", "/hello").endsWith("Hello World!"));
+        assertEquals(List.of("outer>", "inner>", "<inner 200", "<outer 200"), calls);
+    }
+
+    @Test
+    void testFilterCanAnswerWithoutRouting() throws IOException {
+        // Test que un filtro de autenticación responde 401 sin llegar al controlador
+        HttpServer.filter((request, out, next) -> {
+            if ("secret".equals(request.getHeader("X-Api-Key"))) {
+                return next.handle(request, out);
+            }
+            byte[] response = HttpResponse.serialize(401, "Unauthorized", HttpServer.TEXT_CONTENT_TYPE, Map.of(),
+                    ResponseBuffer.threadLocal());
+            out.write(response);
+            return 401;
+        });
+
+        assertTrue(send("GET", "/hello").startsWith("HTTP/1.1 401 Unauthorized"));
+        assertTrue(send("GET", "/hello", "X-Api-Key: secret").endsWith("Hello World!"));
+    }
+
+    @Test
+    void testLegacyGreetingsAreExactRoutes() throws IOException {
+        // Test que los saludos heredados son rutas normales: por método y ruta exacta
+        assertTrue(send("GET", "/app/helloget?name=ana").endsWith("{\"msg\":\"Hello ana\"}"));
+        assertTrue(send("POST", "/app/hellopost?name=ana").contains("Hello anatoday's date is"));
+
+        String wrongMethod = send("GET", "/app/hellopost?name=ana");
+        assertTrue(wrongMethod.startsWith("HTTP/1.1 405"), wrongMethod);
+        assertTrue(wrongMethod.contains("allow: POST"), wrongMethod);
+        assertTrue(send("GET", "/app/hellogetter?name=ana").startsWith("HTTP/1.1 404"));
+        assertEquals(ServerMetrics.NOT_FOUND_ROUTE,
+                HttpServer.routeLabel(URI.create("/app/hellogetter"), 404));
+    }
+}
@@ -45,7 +45,7 @@ public class HttpServerTest {
     @BeforeEach
     void setUp() {
         // Limpiar servicios antes de cada test
-        HttpServer.services.clear();
+        HttpServer.clearRoutes();
         HttpServer.requests.clear();
         
         // Restaurar directorio por defecto
@@ -55,7 +55,7 @@ public class HttpServerTest {
     @AfterEach
     void tearDown() {
         // Limpiar después de cada test
-        HttpServer.services.clear();
+        HttpServer.clearRoutes();
         HttpServer.requests.clear();
     }
     
@@ -16,7 +16,7 @@ public class IntegrationControllerTest {
     @BeforeEach
     void setUp() {
         // Limpiar estado antes de cada test
-        HttpServer.services.clear();
+        HttpServer.clearRoutes();
         HttpServer.requests.clear();
         
         // Cargar el controlador de integración
@@ -26,7 +26,7 @@ public class IntegrationControllerTest {
     @AfterEach
     void tearDown() {
         // Limpiar después de cada test
-        HttpServer.services.clear();
+        HttpServer.clearRoutes();
         HttpServer.requests.clear();
     }
     
@@ -0,0 +1,167 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class JsonWriterTest {
+
+    public record Point(int x, long y, String label) {}
+
+    public record Line(Point from, Point to, List<String> tags) {}
+
+    enum Color { RED, GREEN }
+
+    public static class Bean {
+        public String publicField = "field";
+        private final boolean active = true;
+        private final double ratio = 0.5;
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public static String getIgnored() {
+            return "static";
+        }
+    }
+
+    public static class Node {
+        public Node next;
+    }
+
+    @RestController
+    public static class JsonController {
+        @GetMapping("/point")
+        public static Point point(@RequestParam(value = "label", defaultValue = "origin") String label) {
+            return new Point(1, 2, label);
+        }
+
+        @GetMapping("/nothing")
+        public static Object nothing() {
+            return null;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(JsonController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private static String json(Object value) {
+        return new String(JsonWriter.toBytes(value), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testScalars() {
+        // Test que los valores simples se escriben como literales JSON
+        assertEquals("null", json(null));
+        assertEquals("42", json(42));
+        assertEquals("-9223372036854775808", json(Long.MIN_VALUE));
+        assertEquals("0.25", json(0.25));
+        assertEquals("null", json(Double.NaN));
+        assertEquals("true", json(true));
+        assertEquals("\"RED\"", json(Color.RED));
+        assertEquals("\"2024-01-31\"", json(LocalDate.of(2024, 1, 31)));
+        assertEquals("\"x\"", json(Optional.of("x")));
+    }
+
+    @Test
+    void testStringsAreEscaped() {
+        // Test que comillas, barras y caracteres de control se escapan
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", json("a\"b\\c\nd\u0001"));
+    }
+
+    @Test
+    void testNonAsciiIsWrittenAsUtf8() {
+        // Test que el texto no ASCII se codifica en UTF-8 sin escapar
+        byte[] bytes = JsonWriter.toBytes("José 😀");
+        assertEquals("\"José 😀\"", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(1 + 5 + 1 + 4 + 1, bytes.length);
+    }
+
+    @Test
+    void testRecordsKeepComponentOrder() {
+        // Test que los records se serializan con sus componentes en orden
+        Line line = new Line(new Point(1, 2, "a"), new Point(3, 4, null), List.of("x", "y"));
+        assertEquals("{\"from\":{\"x\":1,\"y\":2,\"label\":\"a\"},\"to\":{\"x\":3,\"y\":4,\"label\":null},"
+                + "\"tags\":[\"x\",\"y\"]}", json(line));
+    }
+
+    @Test
+    void testBeansUseGettersAndPublicFields() {
+        // Test que los POJOs exponen getters y campos públicos, no los estáticos
+        assertEquals("{\"active\":true,\"publicField\":\"field\",\"ratio\":0.5}", json(new Bean()));
+    }
+
+    @Test
+    void testMapsCollectionsAndArrays() {
+        // Test que mapas, colecciones y arreglos se serializan anidados
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("ints", new int[]{1, 2});
+        map.put("list", new ArrayList<>(Arrays.asList("a", null)));
+        map.put("colors", new Color[]{Color.GREEN});
+        assertEquals("{\"ints\":[1,2],\"list\":[\"a\",null],\"colors\":[\"GREEN\"]}", json(map));
+    }
+
+    @Test
+    void testCyclesAreRejected() {
+        // Test que un grafo cíclico falla en lugar de desbordar la pila
+        Node node = new Node();
+        node.next = node;
+        assertThrows(IllegalArgumentException.class, () -> json(node));
+    }
+
+    @Test
+    void testControllerObjectsAreServedAsJson() throws Exception {
+        // Test que un controlador que retorna un record responde application/json
+        String response = HttpServer.invokeService(new URI("/point?label=a%22b"));
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response.contains("content-type: application/json; charset=utf-8"));
+        assertTrue(response.endsWith("{\"x\":1,\"y\":2,\"label\":\"a\\\"b\"}"));
+        assertTrue(response.contains("content-length: 28"));
+    }
+
+    @Test
+    void testNullResultHasNoContent() throws Exception {
+        // Test que un resultado null responde 204 sin cuerpo
+        String response = HttpServer.invokeService(new URI("/nothing"));
+
+        assertTrue(response.startsWith("HTTP/1.1 204 No Content"));
+        assertTrue(response.endsWith("\r\n\r\n"));
+        assertFalse(response.contains("content-length"), response);
+    }
+
+    @Test
+    void testGreetingEscapesTheName() throws Exception {
+        // Test que greetingService escapa el nombre dentro del JSON
+        String response = HttpServer.greetingService(new URI("/app/helloget?name=a%22b"), false);
+
+        assertTrue(response.contains("content-type: application/json"));
+        assertTrue(response.endsWith("{\"msg\":\"Hello a\\\"b\"}"));
+    }
+}
@@ -0,0 +1,100 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.rateLimiter = null;
+    }
+
+    @Test
+    void testBurstThenRefill() {
+        // Test que se permite la ráfaga completa y luego un token por intervalo
+        RateLimiter limiter = new RateLimiter(10, 3, RateLimiter.KeyMode.IP);
+        long now = 1_000 * SECOND;
+
+        assertEquals(0, limiter.tryAcquire("1.1.1.1", now));
+        assertEquals(0, limiter.tryAcquire("1.1.1.1", now));
+        assertEquals(0, limiter.tryAcquire("1.1.1.1", now));
+        long wait = limiter.tryAcquire("1.1.1.1", now);
+        assertEquals(SECOND / 10, wait);
+        assertEquals(0, limiter.tryAcquire("1.1.1.1", now + wait));
+        assertEquals(1, limiter.rejected());
+    }
+
+    @Test
+    void testKeysAreIndependent() {
+        // Test que cada cliente tiene su propio bucket
+        RateLimiter limiter = new RateLimiter(1, 1, RateLimiter.KeyMode.IP);
+        long now = 1_000 * SECOND;
+
+        assertEquals(0, limiter.tryAcquire("a", now));
+        assertTrue(limiter.tryAcquire("a", now) > 0);
+        assertEquals(0, limiter.tryAcquire("b", now));
+        assertEquals("a /x", new RateLimiter(1, 1, RateLimiter.KeyMode.IP_ROUTE).key("a", "/x"));
+        assertEquals("/x", new RateLimiter(1, 1, RateLimiter.KeyMode.ROUTE).key("a", "/x"));
+    }
+
+    @Test
+    void testIdleBucketsAreSwept() {
+        // Test que los buckets llenos se eliminan y la memoria no crece sin límite
+        RateLimiter limiter = new RateLimiter(100, 1, RateLimiter.KeyMode.IP);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire("client-" + i, now);
+        }
+        assertEquals(10_000, limiter.size());
+
+        // Cada barrido limpia una franja; dos segundos después todas quedan limpias
+        for (int i = 0; i < 200; i++) {
+            limiter.tryAcquire("late", now + 2 * SECOND + i * (SECOND / 50));
+        }
+        assertTrue(limiter.size() <= 1, "size=" + limiter.size());
+    }
+
+    @Test
+    void testConcurrentAcquireNeverOverAdmits() throws Exception {
+        // Test que con muchos hilos no se conceden más tokens que la ráfaga
+        RateLimiter limiter = new RateLimiter(0.001, 500, RateLimiter.KeyMode.IP);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("same") == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(500, granted.get());
+    }
+
+    @Test
+    void testRejectedRequestGets429WithRetryAfter() throws Exception {
+        // Test que al agotar el bucket se responde 429 con Retry-After
+        HttpServer.rateLimiter = new RateLimiter(0.5, 1, RateLimiter.KeyMode.IP);
+        HttpRequest request = new HttpRequest(new URI("/hello"));
+
+        assertNull(HttpServer.rateLimit("10.0.0.1", request));
+        String response = new String(HttpServer.rateLimit("10.0.0.1", request), StandardCharsets.UTF_8);
+        assertTrue(response.startsWith("HTTP/1.1 429 Too Many Requests"));
+        assertTrue(response.contains("retry-after: 2"));
+        assertTrue(ServerMetrics.render().contains("microspringboot_ratelimit_requests_total{result=\"rejected\"} 1"));
+    }
+}
@@ -0,0 +1,231 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+public class RequestBodyTest {
+
+    public record Item(String name, int quantity, List<String> tags) {}
+
+    public record Grade(char letter, Character mark) {}
+
+    public static class Order {
+        private String id;
+        public boolean paid;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+    @RestController
+    public static class BodyController {
+        @PostMapping("/items")
+        public static Item create(@RequestBody Item item) {
+            return item;
+        }
+
+        @PostMapping("/orders")
+        public static String order(@RequestBody Order order) {
+            return order.getId() + " paid=" + order.paid;
+        }
+
+        @PostMapping("/batch")
+        public static Integer batch(@RequestBody List<Item> items) {
+            return items.stream().mapToInt(Item::quantity).sum();
+        }
+
+        @PutMapping("/upload")
+        public static Long upload(@RequestBody(maxBytes = 64) InputStream body) throws IOException {
+            long total = 0;
+            byte[] buffer = new byte[7];
+            int n;
+            while ((n = body.read(buffer)) >= 0) {
+                total += n;
+            }
+            return total;
+        }
+
+        @PutMapping("/raw")
+        public static String raw(@RequestBody ByteBuffer body, HttpRequest request) {
+            return body.remaining() + " " + request.getHeader("Content-Type");
+        }
+
+        @DeleteMapping("/items")
+        public static String delete(@RequestParam("name") String name) {
+            return "Deleted " + name;
+        }
+
+        @GetMapping("/items")
+        public static String list() {
+            return "items";
+        }
+
+        @GetMapping("/agent")
+        public static String agent(HttpRequest request) {
+            return "agent=" + request.getHeader("User-Agent");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(BodyController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private static String send(String raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+        try {
+            HttpRequest request = HttpRequest.read(in, out);
+            HttpServer.handleRequest(request, new PrintWriter(out, true), out);
+        } catch (ResponseStatusException e) {
+            out.write(HttpServer.errorResponse(e));
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String post(String method, String path, String body) throws IOException {
+        return send(method + " " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + "Content-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body);
+    }
+
+    @Test
+    void testJsonBodyIsBoundToRecord() throws IOException {
+        // Test que un cuerpo JSON se convierte al record del parámetro
+        String response = post("POST", "/items", "{\"name\":\"Café\",\"quantity\":3,\"tags\":[\"a\"],\"extra\":true}");
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response.endsWith("{\"name\":\"Café\",\"quantity\":3,\"tags\":[\"a\"]}"));
+    }
+
+    @Test
+    void testJsonBodyIsBoundToBeanAndGenericList() throws IOException {
+        // Test que se llenan POJOs con setters/campos y listas genéricas
+        assertTrue(post("POST", "/orders", "{\"id\":\"A-1\",\"paid\":true}").endsWith("A-1 paid=true"));
+        assertTrue(post("POST", "/batch", "[{\"name\":\"x\",\"quantity\":2},{\"name\":\"y\",\"quantity\":5}]").endsWith("7"));
+    }
+
+    @Test
+    void testGetHandlerReceivesTheParsedRequest() throws IOException {
+        // Test que un controlador GET recibe la petición real, con sus cabeceras
+        String response = send("GET /agent HTTP/1.1\r\nHost: localhost\r\nUser-Agent: probe/1.0\r\n\r\n");
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"), response);
+        assertTrue(response.endsWith("agent=probe/1.0"), response);
+    }
+
+    @Test
+    void testCharactersAreBound() throws IOException {
+        // Test que los campos char y Character se llenan desde cadenas de un carácter
+        Object json = JsonReader.parse(new StringReader("{\"letter\":\"A\",\"mark\":\"+\"}"));
+
+        assertEquals(new Grade('A', '+'), JsonReader.convert(json, Grade.class));
+        assertThrows(IllegalArgumentException.class, () -> JsonReader.convert("AB", char.class));
+    }
+
+    @Test
+    void testChunkedBodyIsDecoded() throws IOException {
+        // Test que un cuerpo con transfer-encoding chunked se decodifica mientras llega
+        String response = send("PUT /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "a;ext=1\r\n0123456789\r\n5\r\nabcde\r\n0\r\nX-Trailer: 1\r\n\r\n");
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response.endsWith("15"));
+    }
+
+    @Test
+    void testBodyOverLimitIsRejected() throws IOException {
+        // Test que un cuerpo mayor a maxBytes responde 413, con o sin Content-Length
+        assertTrue(post("PUT", "/upload", "x".repeat(65)).startsWith("HTTP/1.1 413 Payload Too Large"));
+        String chunked = send("PUT /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "28\r\n" + "x".repeat(40) + "\r\n28\r\n" + "x".repeat(40) + "\r\n0\r\n\r\n");
+        assertTrue(chunked.startsWith("HTTP/1.1 413 Payload Too Large"));
+    }
+
+    @Test
+    void testHugeChunkSizeIsRejected() throws IOException {
+        // Test que un tamaño de chunk enorme tras un primer chunk no desborda la suma y responde 413
+        String response = send("PUT /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "a\r\n0123456789\r\n7fffffffffffffff\r\n" + "x".repeat(100));
+
+        assertTrue(response.startsWith("HTTP/1.1 413 Payload Too Large"), response);
+    }
+
+    @Test
+    void testContinueIsSentOnlyWhenBodyFits() throws IOException {
+        // Test que "Expect: 100-continue" solo se responde si el cuerpo cabe
+        String ok = send("PUT /upload HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 3\r\n\r\nabc");
+        assertTrue(ok.startsWith("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 200 OK"));
+
+        String tooLarge = send("PUT /upload HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 1000\r\n\r\n");
+        assertTrue(tooLarge.startsWith("HTTP/1.1 413"));
+    }
+
+    @Test
+    void testMalformedJsonIsBadRequest() throws IOException {
+        // Test que un JSON inválido responde 400 sin invocar el método
+        String response = post("POST", "/items", "{\"name\": }");
+
+        assertTrue(response.startsWith("HTTP/1.1 400 Bad Request"));
+        assertTrue(response.contains("Invalid request body"));
+    }
+
+    @Test
+    void testBinaryBodyAndRequestParameter() throws IOException {
+        // Test que se puede recibir un ByteBuffer y el HttpRequest con sus headers
+        String response = send("PUT /raw HTTP/1.1\r\ncontent-type: application/octet-stream\r\nContent-Length: 4\r\n\r\n\u0001\u0002\u0003\u0004");
+
+        assertTrue(response.endsWith("4 application/octet-stream"));
+    }
+
+    @Test
+    void testRoutesAreSelectedByMethod() throws IOException {
+        // Test que la misma ruta atiende GET y DELETE con métodos distintos
+        assertTrue(send("GET /items HTTP/1.1\r\n\r\n").endsWith("items"));
+        assertTrue(send("DELETE /items?name=x HTTP/1.1\r\n\r\n").endsWith("Deleted x"));
+    }
+
+    @Test
+    void testWrongMethodIsNotAllowed() throws IOException {
+        // Test que un método no mapeado en una ruta existente responde 405 con Allow
+        String response = send("GET /orders HTTP/1.1\r\n\r\n");
+
+        assertTrue(response.startsWith("HTTP/1.1 405 Method Not Allowed"));
+        assertTrue(response.contains("allow: POST"));
+        assertTrue(send("PUT /items HTTP/1.1\r\n\r\n").contains("allow: GET, POST, DELETE"));
+    }
+
+    @Test
+    void testMalformedRequestsAreRejected() throws IOException {
+        // Test que una línea de petición inválida o headers enormes se rechazan
+        assertTrue(send("garbage\r\n\r\n").startsWith("HTTP/1.1 400 Bad Request"));
+        assertTrue(send("GET /items HTTP/1.1\r\nX-Big: " + "a".repeat(HttpRequest.MAX_HEADER_BYTES) + "\r\n\r\n")
+                .startsWith("HTTP/1.1 431"));
+    }
+}
@@ -0,0 +1,143 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+
+    static final AtomicInteger invocations = new AtomicInteger();
+    static volatile CountDownLatch release = new CountDownLatch(0);
+
+    @RestController
+    public static class BurstController {
+        @GetMapping("/report")
+        @SingleFlight
+        public static String report(@RequestParam(value = "id", defaultValue = "0") String id) throws InterruptedException {
+            int n = invocations.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return "report " + id + " #" + n;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        invocations.set(0);
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        RequestCoalescer.clearAll();
+        HttpServer.loadComponent(BurstController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        RequestCoalescer.clearAll();
+    }
+
+    private static List<String> burst(String... uris) throws Exception {
+        release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(uris.length);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (String uri : uris) {
+                futures.add(pool.submit(() ->
+                        new String(HttpServer.serviceResponse(new URI(uri)), StandardCharsets.UTF_8)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentIdenticalRequestsShareOneExecution() throws Exception {
+        // Test que las peticiones idénticas simultáneas comparten una sola invocación
+        List<String> results = burst("/report?id=7", "/report?id=7", "/report?id=7&x=1", "/report?id=7");
+
+        assertEquals(1, invocations.get());
+        for (String result : results) {
+            assertTrue(result.contains("report 7 #1"));
+        }
+        assertEquals(3, RequestCoalescer.forRoute("/report").shared());
+    }
+
+    @Test
+    void testDifferentParametersRunSeparately() throws Exception {
+        // Test que parámetros distintos no se comparten
+        burst("/report?id=1", "/report?id=2");
+
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void testResultIsNotKeptAfterCompletion() throws Exception {
+        // Test que al terminar la invocación no queda nada guardado
+        release = new CountDownLatch(0);
+        HttpServer.serviceResponse(new URI("/report?id=1"));
+        HttpServer.serviceResponse(new URI("/report?id=1"));
+
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void testFailureIsSharedWithWaiters() throws Exception {
+        // Test que una excepción se propaga a todos los que esperaban
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>("test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = pool.submit(() -> coalescer.execute("k", () -> {
+                started.countDown();
+                try {
+                    fail.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("boom");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = pool.submit(() -> coalescer.execute("k", () -> "should not run"));
+            Thread.sleep(100);
+            fail.countDown();
+
+            Exception e1 = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+            Exception e2 = assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e1.getCause());
+            assertInstanceOf(IllegalStateException.class, e2.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, coalescer.executions());
+    }
+
+    @Test
+    void testSingleFlightStatsAreExported() throws Exception {
+        // Test que /metrics expone las ejecuciones compartidas
+        release = new CountDownLatch(0);
+        HttpServer.serviceResponse(new URI("/report"));
+
+        assertTrue(ServerMetrics.render()
+                .contains("microspringboot_singleflight_requests_total{route=\"/report\",result=\"executed\"} 1"));
+    }
+}
@@ -0,0 +1,144 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class RequestTraceTest {
+
+    @RestController
+    public static class SlowController {
+        @GetMapping("/sleep")
+        public static String sleep() throws InterruptedException {
+            Thread.sleep(300);
+            return "slept";
+        }
+    }
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        RequestTrace.reset();
+        ServerMetrics.reset();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestTrace.setEnabled(false, false);
+        RequestTrace.reset();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    @Test
+    void testDisabledTraceRecordsNothing() throws Exception {
+        // Test que sin activar el tracing no se registran fases
+        RequestTrace.setEnabled(false, false);
+        RequestTrace.begin(System.nanoTime());
+        HttpServer.invokeService(new URI("/hello"));
+        RequestTrace.end("/hello", 200);
+
+        assertEquals(0, RequestTrace.histogram(RequestTrace.Phase.HANDLER).count());
+    }
+
+    @Test
+    void testEnabledTraceRecordsEveryPhase() throws Exception {
+        // Test que con el tracing activo cada fase recibe una muestra por request
+        RequestTrace.setEnabled(true, false);
+        RequestTrace.begin(System.nanoTime());
+        RequestTrace.mark(RequestTrace.Phase.ACCEPT);
+        RequestTrace.mark(RequestTrace.Phase.HEADER_PARSE);
+        HttpServer.invokeService(new URI("/math?a=1&b=2"));
+        RequestTrace.mark(RequestTrace.Phase.SOCKET_WRITE);
+        RequestTrace.end("/math", 200);
+
+        for (RequestTrace.Phase phase : RequestTrace.Phase.values()) {
+            assertEquals(1, RequestTrace.histogram(phase).count(), phase.name());
+        }
+        assertTrue(ServerMetrics.render().contains("microspringboot_request_phase_seconds_count{phase=\"handler\"} 1"));
+    }
+
+    @Test
+    void testAcceptPhaseCoversTheWaitForAWorker() throws Exception {
+        // Test que la fase accept incluye la espera de una conexión hasta que su worker la atiende
+        HttpServer.loadComponent(SlowController.class);
+        RequestTrace.setEnabled(true, false);
+        BulkheadPool.enabled = false;
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        HttpConnector connector = new HttpConnector(config);
+        try {
+            connector.start();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://localhost:" + connector.getLocalPort();
+            CompletableFuture<HttpResponse<String>> slow = client.sendAsync(
+                    HttpRequest.newBuilder(URI.create(base + "/sleep")).build(), HttpResponse.BodyHandlers.ofString());
+            Thread.sleep(100);
+            // Otro cliente, para que la petición espere en la cola del único worker ocupado
+            HttpResponse<String> queued = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build().send(
+                    HttpRequest.newBuilder(URI.create(base + "/hello")).build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, queued.statusCode());
+            assertEquals(200, slow.get(5, TimeUnit.SECONDS).statusCode());
+            assertTrue(RequestTrace.histogram(RequestTrace.Phase.ACCEPT).sumNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            connector.close();
+            BulkheadPool.enabled = true;
+        }
+    }
+
+    @Test
+    void testMarkWithoutBeginIsIgnored() {
+        // Test que marcar una fase sin un trace iniciado no falla ni registra
+        RequestTrace.setEnabled(true, false);
+        RequestTrace.mark(RequestTrace.Phase.HANDLER);
+        RequestTrace.end("/hello", 200);
+
+        assertEquals(0, RequestTrace.histogram(RequestTrace.Phase.HANDLER).count());
+    }
+
+    @Test
+    void testJfrEventIsEmitted() throws Exception {
+        // Test que el evento JFR se emite con la duración de cada fase
+        RequestTrace.setEnabled(true, true);
+        Path dump = tempDir.resolve("trace.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(RequestPhasesEvent.class);
+            recording.start();
+            RequestTrace.begin(System.nanoTime());
+            HttpServer.invokeService(new URI("/hello"));
+            RequestTrace.end("/hello", 200);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent event = events.stream()
+                .filter(e -> e.getEventType().getName().equals("co.edu.escuelaing.microspringboot.Request"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("/hello", event.getString("route"));
+        assertEquals(200, event.getInt("status"));
+        assertTrue(event.getDuration("handler").toNanos() >= 0);
+    }
+}
@@ -0,0 +1,209 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResponseCacheTest {
+
+    static final AtomicInteger invocations = new AtomicInteger();
+    static volatile CountDownLatch release = new CountDownLatch(0);
+
+    @RestController
+    public static class CachedController {
+        @GetMapping("/cached")
+        @Cacheable(ttlMillis = 60_000, maxEntries = 2)
+        public static String cached(@RequestParam(value = "name", defaultValue = "World") String name) {
+            invocations.incrementAndGet();
+            return "Hello " + name + " #" + invocations.get();
+        }
+
+        @GetMapping("/short")
+        @Cacheable(ttlMillis = 30, maxEntries = 10)
+        public static String shortLived() {
+            invocations.incrementAndGet();
+            return "short #" + invocations.get();
+        }
+
+        @GetMapping("/slow")
+        @Cacheable
+        public static String slow() throws InterruptedException {
+            invocations.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return "slow";
+        }
+
+        @GetMapping("/failing")
+        @Cacheable
+        public static String failing() {
+            invocations.incrementAndGet();
+            throw new IllegalStateException("boom");
+        }
+
+        @GetMapping("/plain")
+        public static String plain() {
+            invocations.incrementAndGet();
+            return "plain";
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        invocations.set(0);
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        ResponseCache.clearAll();
+        HttpServer.loadComponent(CachedController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        ResponseCache.clearAll();
+    }
+
+    private static String call(String uri) throws Exception {
+        return new String(HttpServer.serviceResponse(new URI(uri)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testRepeatedRequestIsServedFromCache() throws Exception {
+        // Test que la segunda llamada con los mismos parámetros no invoca el método
+        String first = call("/cached?name=John");
+        String second = call("/cached?name=John");
+
+        assertEquals(first, second);
+        assertEquals(1, invocations.get());
+        assertEquals(1, ResponseCache.forRoute("/cached").hits());
+    }
+
+    @Test
+    void testKeyIsNormalized() throws Exception {
+        // Test que el orden y los parámetros ignorados no cambian la llave
+        assertEquals(HttpServer.requestKey(new URI("/cached?name=John&x=1")),
+                HttpServer.requestKey(new URI("/cached?x=2&name=John")));
+        assertEquals(HttpServer.requestKey(new URI("/cached")),
+                HttpServer.requestKey(new URI("/cached?name=World")));
+        assertNotEquals(HttpServer.requestKey(new URI("/cached?name=John")),
+                HttpServer.requestKey(new URI("/cached?name=Jane")));
+    }
+
+    @Test
+    void testDifferentParametersAreCachedSeparately() throws Exception {
+        // Test que parámetros distintos producen entradas distintas
+        assertTrue(call("/cached?name=John").contains("Hello John"));
+        assertTrue(call("/cached?name=Jane").contains("Hello Jane"));
+
+        assertEquals(2, invocations.get());
+        assertEquals(2, ResponseCache.forRoute("/cached").size());
+    }
+
+    @Test
+    void testCacheIsBounded() throws Exception {
+        // Test que la caché no supera maxEntries y desaloja lo no usado recientemente
+        call("/cached?name=a");
+        call("/cached?name=b");
+        call("/cached?name=a");
+        call("/cached?name=c");
+
+        ResponseCache cache = ResponseCache.forRoute("/cached");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        // "a" fue usado y sobrevive, "b" fue desalojado
+        int before = invocations.get();
+        call("/cached?name=a");
+        assertEquals(before, invocations.get());
+        call("/cached?name=b");
+        assertEquals(before + 1, invocations.get());
+    }
+
+    @Test
+    void testEntriesExpire() throws Exception {
+        // Test que las entradas vencen después del TTL
+        call("/short");
+        Thread.sleep(60);
+        call("/short");
+
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void testClockQueueStaysBoundedWhenEntriesExpire() throws Exception {
+        // Test que recargar una entrada vencida no vuelve a encolar su llave en el reloj de desalojo
+        ResponseCache cache = new ResponseCache("/churn", 1, 10);
+        byte[] ok = "HTTP/1.1 200 OK\r\ncontent-length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < 50; i++) {
+            cache.get("k" + (i % 3), () -> ok);
+            Thread.sleep(2);
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.queued());
+        assertEquals(50, cache.misses());
+    }
+
+    @Test
+    void testErrorsAreNotCached() throws Exception {
+        // Test que las respuestas de error no se guardan
+        assertTrue(call("/failing").contains("500 Internal Server Error"));
+        assertTrue(call("/failing").contains("500 Internal Server Error"));
+
+        assertEquals(2, invocations.get());
+        assertEquals(0, ResponseCache.forRoute("/failing").size());
+    }
+
+    @Test
+    void testConcurrentMissesAreCoalesced() throws Exception {
+        // Test que varias peticiones simultáneas invocan el método una sola vez
+        release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> call("/slow")));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS).contains("slow"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    void testRoutesWithoutAnnotationAreNotCached() throws Exception {
+        // Test que las rutas sin @Cacheable siempre invocan el método
+        assertNull(ResponseCache.forRoute("/plain"));
+        call("/plain");
+        call("/plain");
+
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void testCacheStatsAreExported() throws Exception {
+        // Test que /metrics expone aciertos y fallos de la caché
+        call("/cached?name=John");
+        call("/cached?name=John");
+
+        String metrics = ServerMetrics.render();
+        assertTrue(metrics.contains("microspringboot_cache_requests_total{route=\"/cached\",result=\"hit\"} 1"));
+        assertTrue(metrics.contains("microspringboot_cache_requests_total{route=\"/cached\",result=\"miss\"} 1"));
+    }
+}
@@ -0,0 +1,167 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ServerMetricsTest {
+
+    @BeforeEach
+    void setUp() {
+        // Limpiar métricas y servicios antes de cada test
+        ServerMetrics.reset();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ServerMetrics.reset();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    // ========== TESTS DEL HISTOGRAMA ==========
+
+    @Test
+    void testHistogramBucketIndex() {
+        // Test que cada muestra cae en el primer bucket cuyo límite la contiene
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        assertEquals(0, LatencyHistogram.bucketIndex(50_000));
+        assertEquals(1, LatencyHistogram.bucketIndex(50_001));
+        assertEquals(LatencyHistogram.BOUNDS_NANOS.length, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testHistogramCountAndSum() {
+        // Test que el histograma acumula conteo y suma
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        histogram.record(3_000_000);
+        histogram.record(-5);
+
+        assertEquals(3, histogram.count());
+        assertEquals(4_000_000, histogram.sumNanos());
+        assertEquals(5_000_000, histogram.percentileNanos(99));
+    }
+
+    @Test
+    void testHistogramConcurrentRecording() throws InterruptedException {
+        // Test que el histograma no pierde muestras con varios hilos
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i * 1000L);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.count());
+    }
+
+    @Test
+    void testHistogramPrometheusFormat() {
+        // Test que los buckets se exportan acumulados con el bucket +Inf
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10_000);
+        histogram.record(20_000_000_000L);
+        StringBuilder out = new StringBuilder();
+        histogram.writePrometheus(out, "latency", "route=\"/x\"");
+        String text = out.toString();
+
+        assertTrue(text.contains("latency_bucket{route=\"/x\",le=\"5.0E-5\"} 1"));
+        assertTrue(text.contains("latency_bucket{route=\"/x\",le=\"+Inf\"} 2"));
+        assertTrue(text.contains("latency_count{route=\"/x\"} 2"));
+    }
+
+    // ========== TESTS DE MÉTRICAS DEL SERVIDOR ==========
+
+    @Test
+    void testRecordRequestByRouteAndStatus() {
+        // Test que se cuentan requests por ruta y por código de estado
+        ServerMetrics.recordRequest("/hello", 200, 1000);
+        ServerMetrics.recordRequest("/hello", 200, 1000);
+        ServerMetrics.recordRequest(ServerMetrics.NOT_FOUND_ROUTE, 404, 1000);
+
+        assertEquals(2, ServerMetrics.route("/hello").requests());
+        assertEquals(2, ServerMetrics.statusCount(200));
+        assertEquals(1, ServerMetrics.statusCount(404));
+        assertEquals(0, ServerMetrics.statusCount(42));
+    }
+
+    @Test
+    void testResetKeepsTheActiveConnections() {
+        // Test que reset limpia los contadores pero no el número de conexiones abiertas
+        long before = ServerMetrics.activeConnections();
+        ServerMetrics.connectionOpened();
+        ServerMetrics.recordRequest("/hello", 200, 1000);
+        ServerMetrics.reset();
+
+        assertEquals(0, ServerMetrics.statusCount(200));
+        assertEquals(before + 1, ServerMetrics.activeConnections());
+        ServerMetrics.connectionClosed();
+        assertEquals(before, ServerMetrics.activeConnections());
+    }
+
+    @Test
+    void testInvokeServiceRecordsHandlerLatency() throws URISyntaxException {
+        // Test que invokeService mide el tiempo del método del controlador
+        HttpServer.invokeService(new URI("/hello"));
+        HttpServer.invokeService(new URI("/greeting?name=John"));
+
+        assertEquals(1, ServerMetrics.route("/hello").handlerLatency().count());
+        assertEquals(1, ServerMetrics.route("/greeting").handlerLatency().count());
+    }
+
+    @Test
+    void testMetricsEndpoint() throws Exception {
+        // Test que /metrics responde en formato de texto de Prometheus
+        ServerMetrics.recordRequest("/hello", 200, 2_000_000);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        PrintWriter out = new PrintWriter(raw, true);
+
+        int status = HttpServer.handleRequest(new URI("/metrics"), out, raw);
+        String response = raw.toString(StandardCharsets.UTF_8);
+
+        assertEquals(200, status);
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response.contains("content-type: text/plain; version=0.0.4"));
+        assertTrue(response.contains("microspringboot_requests_total{route=\"/hello\"} 1"));
+        assertTrue(response.contains("microspringboot_responses_total{status=\"200\"} 1"));
+        assertTrue(response.contains("# TYPE microspringboot_request_duration_seconds histogram"));
+    }
+
+    @Test
+    void testRouteLabelFoldsUnknownPaths() throws URISyntaxException {
+        // Test que las rutas desconocidas no crean series nuevas
+        assertEquals("/hello", HttpServer.routeLabel(new URI("/hello"), 200));
+        assertEquals("/app/helloget", HttpServer.routeLabel(new URI("/app/helloget?name=x"), 200));
+        assertEquals(ServerMetrics.NOT_FOUND_ROUTE, HttpServer.routeLabel(new URI("/nope/123"), 404));
+        assertEquals(ServerMetrics.STATIC_ROUTE, HttpServer.routeLabel(new URI("/style.css"), 200));
+    }
+
+    @Test
+    void testStatusOf() {
+        // Test que se extrae el código de estado de una respuesta
+        assertEquals(200, HttpServer.statusOf("HTTP/1.1 200 OK\r\n"));
+        assertEquals(404, HttpServer.statusOf("HTTP/1.1 404 Not Found\r\n"));
+        assertEquals(0, HttpServer.statusOf("garbage"));
+        assertEquals(0, HttpServer.statusOf(null));
+    }
+}
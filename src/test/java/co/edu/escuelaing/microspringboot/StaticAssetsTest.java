@@ -0,0 +1,217 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class StaticAssetsTest {
+
+    @TempDir
+    Path dir;
+
+    private final String originalRoot = HttpServer.ROOT_DIRECTORY;
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.ROOT_DIRECTORY = originalRoot;
+    }
+
+    private static byte[] large() {
+        byte[] data = new byte[(int) StaticAssets.PRELOAD_BYTES + 1000];
+        Arrays.fill(data, (byte) 'x');
+        return data;
+    }
+
+    private static String get(String path, String... headers) throws IOException {
+        StringBuilder raw = new StringBuilder("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n");
+        for (String header : headers) {
+            raw.append(header).append("\r\n");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpRequest request = HttpRequest.read(new BufferedInputStream(new ByteArrayInputStream(
+                raw.append("\r\n").toString().getBytes(StandardCharsets.UTF_8))), out);
+        HttpServer.handleRequest(request, new PrintWriter(out, true), out);
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void testDirectoryIsIndexedOnceAndServedFromTheIndex() throws IOException {
+        // Test que el índice sirve los archivos del directorio, incluidos index.html y archivos grandes
+        Files.writeString(dir.resolve("index.html"), "<h1>home</h1>");
+        Files.createDirectories(dir.resolve("docs"));
+        Files.writeString(dir.resolve("docs/index.html"), "<h1>docs</h1>");
+        Files.write(dir.resolve("big.bin"), large());
+        HttpServer.ROOT_DIRECTORY = dir.toString();
+
+        String home = get("/");
+        assertTrue(home.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(home.contains("content-type: text/html; charset=utf-8"));
+        assertTrue(home.endsWith("<h1>home</h1>"));
+        assertTrue(get("/docs").endsWith("<h1>docs</h1>"));
+        assertTrue(get("/docs/").endsWith("<h1>docs</h1>"));
+        assertTrue(get("/big.bin").endsWith(new String(large(), StandardCharsets.ISO_8859_1)));
+        assertTrue(get("/../pom.xml").startsWith("HTTP/1.1 404"));
+
+        // Un archivo creado después del índice no se sirve hasta reconstruirlo
+        Files.writeString(dir.resolve("late.txt"), "late");
+        assertTrue(get("/late.txt").startsWith("HTTP/1.1 404"));
+        assertEquals(3, HttpServer.staticAssets().files().size());
+    }
+
+    @Test
+    void testMatchingEtagGets304() throws IOException {
+        // Test que un If-None-Match con el ETag vigente recibe 304 sin cuerpo
+        Files.writeString(dir.resolve("style.css"), "body{}");
+        HttpServer.ROOT_DIRECTORY = dir.toString();
+        String etag = HttpServer.staticAssets().get("/style.css").etag;
+
+        assertTrue(get("/style.css").contains("etag: " + etag));
+        String revalidated = get("/style.css", "If-None-Match: " + etag);
+        assertTrue(revalidated.startsWith("HTTP/1.1 304 Not Modified"));
+        assertTrue(revalidated.endsWith("\r\n\r\n"));
+        assertTrue(get("/style.css", "If-None-Match: \"other\"").endsWith("body{}"));
+    }
+
+    @Test
+    void testJarEntriesAreIndexed() throws IOException {
+        // Test que los archivos empaquetados en un jar se indexan y los grandes se leen del jar
+        Path jar = dir.resolve("app.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            put(out, "webroot/", null);
+            put(out, "webroot/index.html", "<p>jar</p>".getBytes(StandardCharsets.UTF_8));
+            put(out, "webroot/img/big.png", large());
+            put(out, "webroot/App.class", new byte[] {1});
+            put(out, "other.txt", "no".getBytes(StandardCharsets.UTF_8));
+        }
+        StaticAssets assets = StaticAssets.loadJar("jar", jar, "webroot");
+        assertEquals(2, assets.files().size());
+        assertNull(assets.get("/other.txt"));
+        assertEquals("image/png", assets.get("/img/big.png").contentType);
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        assertEquals(200, assets.get("/").send(new HttpRequest(URI.create("/")), index));
+        assertTrue(index.toString(StandardCharsets.UTF_8).endsWith("<p>jar</p>"));
+        ByteArrayOutputStream big = new ByteArrayOutputStream();
+        assets.get("/img/big.png").send(new HttpRequest(URI.create("/img/big.png")), big);
+        assertTrue(big.toString(StandardCharsets.ISO_8859_1).endsWith(new String(large(), StandardCharsets.ISO_8859_1)));
+
+        assertEquals("webroot", StaticAssets.classpathLocation("target/classes/webroot"));
+        assertEquals("public/site", StaticAssets.classpathLocation("target/classes/public/site/"));
+    }
+
+    @Test
+    void testFingerprintedAssetsAreImmutableAndPagesReferenceThem() throws IOException {
+        // Test que los archivos se sirven con nombre con huella e immutable, y la página los referencia
+        Files.writeString(dir.resolve("style.css"), "body{}");
+        Files.createDirectories(dir.resolve("img"));
+        Files.write(dir.resolve("img/logo.png"), new byte[] {1, 2, 3});
+        Files.writeString(dir.resolve("index.html"), "<link rel=\"stylesheet\" href=\"/style.css\">"
+                + "<img src='img/logo.png?v=1'><a href=\"https://example.com/style.css\">x</a>");
+        HttpServer.ROOT_DIRECTORY = dir.toString();
+        StaticAssets assets = HttpServer.staticAssets();
+        String css = HttpServer.assetUrl("/style.css");
+        String png = HttpServer.assetUrl("/img/logo.png");
+        assertTrue(css.matches("/style\\.[0-9a-f]{10}\\.css"), css);
+        assertTrue(png.matches("/img/logo\\.[0-9a-f]{10}\\.png"), png);
+        assertEquals("/missing.js", HttpServer.assetUrl("/missing.js"));
+        assertEquals("/index.html", HttpServer.assetUrl("/index.html"));
+
+        String printed = get(css);
+        assertTrue(printed.contains("content-type: text/css; charset=utf-8"));
+        assertTrue(printed.contains("cache-control: " + StaticAssets.IMMUTABLE));
+        assertTrue(printed.endsWith("body{}"));
+        assertFalse(get("/style.css").contains("cache-control"));
+
+        assertTrue(get("/").endsWith("<link rel=\"stylesheet\" href=\"" + css + "\">"
+                + "<img src='img/" + png.substring("/img/".length()) + "?v=1'>"
+                + "<a href=\"https://example.com/style.css\">x</a>"));
+        assertEquals(3, assets.files().size());
+
+        // Un nuevo contenido cambia el nombre
+        Files.writeString(dir.resolve("style.css"), "body{color:red}");
+        HttpServer.ROOT_DIRECTORY = dir.toString() + "/";
+        assertNotEquals(css, HttpServer.assetUrl("/style.css"));
+        assertTrue(get(css).startsWith("HTTP/1.1 404"));
+    }
+
+    @Test
+    void testFingerprintedAliasSharesThePreloadedBody() throws IOException {
+        // Test que el alias con huella reutiliza el cuerpo precargado y solo agrega su cabecera
+        byte[] data = new byte[10_000];
+        Arrays.fill(data, (byte) 'z');
+        Files.write(dir.resolve("app.js"), data);
+        HttpServer.ROOT_DIRECTORY = dir.toString();
+        StaticAssets assets = HttpServer.staticAssets();
+        StaticAssets.Asset plain = assets.get("/app.js");
+        StaticAssets.Asset printed = assets.get(HttpServer.assetUrl("/app.js"));
+
+        assertTrue(printed.offHeapBytes() < data.length);
+        assertEquals(plain.offHeapBytes() + printed.offHeapBytes(), assets.preloadedBytes());
+
+        // El alias se escribe al socket con su cabecera y el cuerpo compartido
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        HttpConnector connector = new HttpConnector(config);
+        connector.start();
+        try (Socket socket = new Socket("localhost", connector.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET " + printed.path + " HTTP/1.0\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+            assertTrue(response.contains("cache-control: " + StaticAssets.IMMUTABLE), response);
+            assertTrue(response.endsWith("\r\n\r\n" + new String(data, StandardCharsets.ISO_8859_1)));
+        } finally {
+            connector.close();
+        }
+    }
+
+    @Test
+    void testFingerprintedAliasOfAnEmptyFileIsServed() throws IOException {
+        // Test que el alias con huella de un archivo vacío envía su cabecera por el socket
+        Files.write(dir.resolve("empty.css"), new byte[0]);
+        HttpServer.ROOT_DIRECTORY = dir.toString();
+        String printed = HttpServer.assetUrl("/empty.css");
+        assertNotEquals("/empty.css", printed);
+
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        HttpConnector connector = new HttpConnector(config);
+        connector.start();
+        try (Socket socket = new Socket("localhost", connector.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET " + printed + " HTTP/1.0\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK"), response);
+            assertTrue(response.contains("content-length: 0\r\n"), response);
+            assertTrue(response.endsWith("\r\n\r\n"), response);
+        } finally {
+            connector.close();
+        }
+    }
+
+    private static void put(JarOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        if (data != null) {
+            out.write(data);
+        }
+        out.closeEntry();
+    }
+}
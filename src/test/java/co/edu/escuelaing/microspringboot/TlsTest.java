@@ -0,0 +1,137 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+public class TlsTest {
+
+    private static final String PASSWORD = "changeit";
+    private static Path keyStore;
+    private static SSLContext clientContext;
+
+    private HttpConnector connector;
+
+    @BeforeAll
+    static void createKeyStore() throws Exception {
+        Path dir = Files.createTempDirectory("tls-test");
+        keyStore = dir.resolve("server.p12");
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", keyStore.toString(), "-storepass", PASSWORD,
+                "-dname", "CN=localhost", "-ext", "san=dns:localhost,ip:127.0.0.1")
+                .redirectErrorStream(true).start();
+        keytool.getInputStream().transferTo(OutputStream.nullOutputStream());
+        assertTrue(keytool.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, keytool.exitValue());
+
+        KeyStore trusted = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStore)) {
+            trusted.load(in, PASSWORD.toCharArray());
+        }
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(trusted);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trust.getTrustManagers(), null);
+    }
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private int start() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(2);
+        config.setTlsKeyStore(keyStore.toString());
+        config.setTlsKeyStorePassword(PASSWORD);
+        connector = new HttpConnector(config);
+        connector.start();
+        return connector.getLocalPort();
+    }
+
+    @Test
+    void testHttpsServesHttp11AndKeepsConnectionAlive() throws Exception {
+        // Test que un cliente HTTP/1.1 recibe respuestas sobre TLS y reutiliza la conexion
+        int port = start();
+        HttpClient client = HttpClient.newBuilder().sslContext(clientContext)
+                .version(HttpClient.Version.HTTP_1_1).build();
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                    URI.create("https://localhost:" + port + "/greeting?name=tls" + i)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals(HttpClient.Version.HTTP_1_1, response.version());
+            assertEquals("Hello tls" + i, response.body());
+        }
+    }
+
+    @Test
+    void testAlpnNegotiatesHttp2() throws Exception {
+        // Test que ALPN elige h2 y las peticiones se atienden como streams HTTP/2 sobre TLS
+        int port = start();
+        HttpClient client = HttpClient.newBuilder().sslContext(clientContext)
+                .version(HttpClient.Version.HTTP_2).build();
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                URI.create("https://localhost:" + port + "/hello")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals("Hello World!", response.body());
+    }
+
+    @Test
+    void testReturningClientResumesSession() throws Exception {
+        // Test que un cliente que vuelve reanuda su sesion TLS sin un handshake completo
+        int port = start();
+        long resumedBefore = TlsContext.resumedHandshakes();
+        byte[] firstId = fetchOverSocket(port);
+        byte[] secondId = fetchOverSocket(port);
+        assertArrayEquals(firstId, secondId);
+        assertTrue(TlsContext.resumedHandshakes() > resumedBefore);
+    }
+
+    /** Hace una peticion con un socket TLS 1.2 y devuelve el id de la sesion */
+    private static byte[] fetchOverSocket(int port) throws IOException {
+        try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.setEnabledProtocols(new String[] {"TLSv1.2"});
+            socket.startHandshake();
+            OutputStream out = socket.getOutputStream();
+            out.write("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.endsWith("Hello World!"), response);
+            return socket.getSession().getId();
+        }
+    }
+}
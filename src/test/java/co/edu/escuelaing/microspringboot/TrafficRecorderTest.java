@@ -0,0 +1,124 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class TrafficRecorderTest {
+
+    @TempDir
+    Path dir;
+    private HttpConnector connector;
+    private TrafficRecorder recorder;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        recorder = new TrafficRecorder(dir.resolve("capture.bin"), Set.of("authorization"), 1024);
+        HttpServer.recorder = recorder;
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.recorder = null;
+        connector.close();
+        recorder.close();
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+    }
+
+    private URI target() {
+        return URI.create("http://localhost:" + connector.getLocalPort());
+    }
+
+    private void get(String path, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(target().resolve(path));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        assertEquals(200, client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    private List<TrafficRecorder.Entry> read(Path file) throws Exception {
+        List<TrafficRecorder.Entry> entries = new ArrayList<>();
+        try (TrafficRecorder.Reader reader = new TrafficRecorder.Reader(file)) {
+            for (TrafficRecorder.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    void testCapturesRequestMetadata() throws Exception {
+        // Test que la captura guarda método, ruta, query, headers (sin los sensibles), tamaños y estado
+        get("/greeting?name=Ana%20B", "Authorization", "Bearer secret", "X-Client", "mobile");
+        get("/hello");
+        assertTrue(recorder.flush(5, TimeUnit.SECONDS));
+
+        List<TrafficRecorder.Entry> entries = read(recorder.file());
+        assertEquals(2, entries.size());
+        TrafficRecorder.Entry greeting = entries.get(0);
+        assertEquals("GET", greeting.method());
+        assertEquals("/greeting", greeting.path());
+        assertEquals("name=Ana%20B", greeting.query());
+        assertEquals("", greeting.headers().get("authorization"));
+        assertEquals("mobile", greeting.headers().get("x-client"));
+        assertEquals(200, greeting.status());
+        assertTrue(greeting.responseBytes() > 0);
+        assertTrue(entries.get(1).startMicros() >= greeting.startMicros());
+        assertFalse(new String(Files.readAllBytes(recorder.file())).contains("secret"));
+
+        // Una entrada cortada al final, como la de un servidor que no se detuvo limpiamente, termina el archivo
+        Path truncated = dir.resolve("truncated.bin");
+        Files.copy(recorder.file(), truncated);
+        try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        assertEquals(1, read(truncated).size());
+    }
+
+    @Test
+    void testReplaysCaptureAgainstServer() throws Exception {
+        // Test que la repetición vuelve a enviar las peticiones capturadas y reporta estados y latencias
+        for (int i = 0; i < 5; i++) {
+            get("/greeting?name=c" + i);
+        }
+        get("/hello");
+        assertTrue(recorder.flush(5, TimeUnit.SECONDS));
+        Path capture = dir.resolve("replay.bin");
+        Files.copy(recorder.file(), capture);
+
+        TrafficReplay.Report report = TrafficReplay.replay(capture, target(), 10, 4, false);
+        assertEquals(6, report.requests());
+        assertEquals(0, report.failed());
+        assertEquals(Map.of(200, 6L), report.statuses());
+        assertEquals(6, report.latencyNanos().length);
+        assertTrue(report.percentileNanos(50) > 0 && report.percentileNanos(50) <= report.percentileNanos(100));
+        assertTrue(report.toString().contains("latency_ms p50="), report.toString());
+    }
+}
@@ -0,0 +1,82 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WarmUpTest {
+
+    @RestController
+    public static class FailingController {
+        static final AtomicInteger calls = new AtomicInteger();
+
+        @GetMapping("/broken")
+        public static String broken() {
+            calls.incrementAndGet();
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(FailingController.class);
+        FailingController.calls.set(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        ServerMetrics.reset();
+    }
+
+    private static WarmUp.Result result(List<WarmUp.Result> results, String path) {
+        return results.stream().filter(r -> r.path().equals(path)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void testWarmsEveryGetRouteAndTheIndexPage() {
+        // Test que el calentamiento envía las iteraciones pedidas a cada ruta GET y a la página principal
+        List<WarmUp.Result> results = WarmUp.run(20, TimeUnit.SECONDS.toNanos(10));
+
+        WarmUp.Result hello = result(results, "/hello");
+        assertEquals(200, hello.status());
+        assertEquals(20, hello.requests());
+        assertTrue(hello.firstNanos() > 0 && hello.lastNanos() > 0);
+        assertEquals(200, result(results, "/").status());
+        assertEquals(200, result(results, "/greeting").status());
+    }
+
+    @Test
+    void testStopsWarmingRoutesThatFail() {
+        // Test que una ruta que responde con error de servidor se deja de calentar tras la primera petición
+        WarmUp.Result broken = result(WarmUp.run(50, TimeUnit.SECONDS.toNanos(10)), "/broken");
+
+        assertEquals(500, broken.status());
+        assertEquals(1, broken.requests());
+        assertEquals(1, FailingController.calls.get());
+    }
+
+    @Test
+    void testReportsStartupAndFirstRequest() {
+        // Test que /metrics expone el tiempo de arranque y la latencia de la primera petición, que reset() olvida
+        ServerMetrics.reset();
+        ServerMetrics.started(1500);
+        ServerMetrics.recordRequest("/hello", 200, 2_000_000);
+        ServerMetrics.recordRequest("/hello", 200, 9_000_000);
+
+        String metrics = ServerMetrics.render();
+        assertTrue(metrics.contains("microspringboot_startup_seconds 1.5\n"), metrics);
+        assertTrue(metrics.contains("microspringboot_first_request_seconds 0.002\n"), metrics);
+        ServerMetrics.reset();
+        assertFalse(ServerMetrics.render().contains("microspringboot_first_request_seconds"));
+    }
+}
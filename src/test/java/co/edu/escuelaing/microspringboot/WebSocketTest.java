@@ -0,0 +1,276 @@
+package co.edu.escuelaing.microspringboot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class WebSocketTest {
+
+    @WebSocketMapping(value = "/ws/echo", maxMessageBytes = 1024)
+    public static class EchoSocket implements WebSocketHandler {
+        static final BlockingQueue<String> closes = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onText(WebSocketSession session, String message) {
+            try {
+                session.sendText(message);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onBinary(WebSocketSession session, ByteBuffer message) {
+            try {
+                session.sendBinary(message);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onClose(WebSocketSession session, int code, String reason) {
+            closes.add(code + " " + reason);
+        }
+    }
+
+    private HttpConnector connector;
+
+    @BeforeEach
+    void setUp() {
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.webSockets.clear();
+        HttpServer.loadComponent(IntegrationController.class);
+        HttpServer.loadComponent(EchoSocket.class);
+        HttpServer.loadComponent(ChatWebSocket.class);
+        EchoSocket.closes.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        HttpServer.clearRoutes();
+        HttpServer.requests.clear();
+        HttpServer.webSockets.clear();
+    }
+
+    private int start() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setWorkers(1);
+        connector = new HttpConnector(config);
+        connector.start();
+        return connector.getLocalPort();
+    }
+
+    /** Cliente que guarda los mensajes recibidos */
+    private static final class Collector implements WebSocket.Listener {
+        final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            text.append(data);
+            if (last) {
+                received.add(text.toString());
+                text.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            received.add(bytes);
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+            received.add("pong");
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            received.add("close " + statusCode);
+            return null;
+        }
+
+        Object next() throws InterruptedException {
+            Object message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "No message received");
+            return message;
+        }
+    }
+
+    private static WebSocket connect(int port, String path, Collector collector) throws Exception {
+        return HttpClient.newHttpClient().newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:" + port + path), collector).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testUnmaskMatchesBytewiseXor() {
+        // Test que el desenmascarado por palabras coincide con el XOR byte a byte en cualquier desplazamiento
+        Random random = new Random(7);
+        for (int offset = 0; offset < 5; offset++) {
+            for (int length = 0; length < 40; length++) {
+                byte[] data = new byte[offset + length];
+                random.nextBytes(data);
+                int mask = random.nextInt();
+                byte[] expected = data.clone();
+                for (int i = 0; i < length; i++) {
+                    expected[offset + i] ^= (byte) (mask >>> (24 - 8 * (i % 4)));
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                WebSocketFrames.unmask(buffer, offset, length, mask);
+                assertArrayEquals(expected, data);
+            }
+        }
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketFrames.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    void testEchoesTextBinaryFragmentsAndPings() throws Exception {
+        // Test que la sesion devuelve texto, binario y mensajes fragmentados, y responde a los ping
+        int port = start();
+        Collector collector = new Collector();
+        WebSocket ws = connect(port, "/ws/echo", collector);
+
+        ws.sendText("hola", true).get(5, TimeUnit.SECONDS);
+        assertEquals("hola", collector.next());
+
+        ws.sendBinary(ByteBuffer.wrap(new byte[] {1, 2, 3}), true).get(5, TimeUnit.SECONDS);
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) collector.next());
+
+        ws.sendText("frag", false).get(5, TimeUnit.SECONDS);
+        ws.sendText("mentado", true).get(5, TimeUnit.SECONDS);
+        assertEquals("fragmentado", collector.next());
+
+        ws.sendPing(ByteBuffer.wrap(new byte[] {9})).get(5, TimeUnit.SECONDS);
+        assertEquals("pong", collector.next());
+
+        ws.sendClose(WebSocket.NORMAL_CLOSURE, "bye").get(5, TimeUnit.SECONDS);
+        assertEquals("close 1000", collector.next());
+        assertEquals("1000 bye", EchoSocket.closes.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testBroadcastReachesEverySession() throws Exception {
+        // Test que un mensaje del chat llega a todas las sesiones conectadas
+        int port = start();
+        List<Collector> collectors = new ArrayList<>();
+        List<WebSocket> sockets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Collector collector = new Collector();
+            collectors.add(collector);
+            sockets.add(connect(port, "/ws/chat", collector));
+        }
+        // Cada cliente recibe su propio mensaje una vez registrado en el chat
+        for (int i = 0; i < 3; i++) {
+            sockets.get(i).sendText("join " + i, true).get(5, TimeUnit.SECONDS);
+            while (!((String) collectors.get(i).next()).endsWith(": join " + i)) {
+                // Mensajes de los clientes anteriores
+            }
+        }
+        sockets.get(0).sendText("hola a todos", true).get(5, TimeUnit.SECONDS);
+        for (Collector collector : collectors) {
+            Object message;
+            do {
+                message = collector.next();
+            } while (((String) message).contains(": join "));
+            assertTrue(((String) message).endsWith(": hola a todos"), message.toString());
+        }
+        for (WebSocket socket : sockets) {
+            socket.abort();
+        }
+    }
+
+    @Test
+    void testProtocolViolationsCloseTheSession() throws Exception {
+        // Test que un frame sin mascara y un mensaje demasiado grande cierran la sesion con su codigo
+        int port = start();
+        try (Socket socket = handshake(port)) {
+            // Frame de texto sin mascara
+            socket.getOutputStream().write(new byte[] {(byte) 0x81, 0x02, 'h', 'i'});
+            assertEquals(1002, readCloseCode(socket));
+        }
+        assertTrue(EchoSocket.closes.poll(5, TimeUnit.SECONDS).startsWith("1002"));
+
+        try (Socket socket = handshake(port)) {
+            // Cabecera de un mensaje de 2000 bytes, mayor que maxMessageBytes
+            socket.getOutputStream().write(new byte[] {(byte) 0x82, (byte) (0x80 | 126), 0x07, (byte) 0xD0, 1, 2, 3, 4});
+            assertEquals(1009, readCloseCode(socket));
+        }
+    }
+
+    @Test
+    void testPlainRequestToSocketPathGets426() throws Exception {
+        // Test que una peticion sin Upgrade a una ruta WebSocket recibe 426
+        int port = start();
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET /ws/echo HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 426 Upgrade Required"), response);
+            assertTrue(response.contains("sec-websocket-version: 13"), response);
+        }
+    }
+
+    private static Socket handshake(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /ws/echo HTTP/1.1\r\nHost: x\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        InputStream in = socket.getInputStream();
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int c = in.read();
+            assertTrue(c >= 0);
+            head.append((char) c);
+        }
+        assertTrue(head.toString().startsWith("HTTP/1.1 101"), head.toString());
+        assertTrue(head.toString().contains("sec-websocket-accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+        return socket;
+    }
+
+    private static int readCloseCode(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        assertEquals(0x88, in.readUnsignedByte());
+        int length = in.readUnsignedByte();
+        assertTrue(length >= 2);
+        int code = in.readUnsignedShort();
+        in.readNBytes(length - 2);
+        return code;
+    }
+}